@@ -29,6 +29,11 @@ import org.slf4j.LoggerFactory;
 /**
  * State based Frame reader that is used in the NIO based transports where
  * AMQP frames can come in in partial or overlapping forms.
+ *
+ * Consecutive AMQP frames that are complete in the incoming data are handed to the
+ * sink together in one buffer so that they are processed as a single batch, SASL
+ * frames are always handed over one at a time as they can change how the data that
+ * follows them must be read.
  */
 public class AmqpFrameParser {
 
@@ -40,6 +45,9 @@ public class AmqpFrameParser {
 
     private static final byte AMQP_FRAME_SIZE_BYTES = 4;
     private static final byte AMQP_HEADER_BYTES = 8;
+    private static final byte AMQP_FRAME_HEADER_BYTES = 8;
+    private static final byte AMQP_FRAME_TYPE_OFFSET = 5;
+    private static final byte AMQP_FRAME_TYPE = 0;
 
     private final AMQPFrameSink frameSink;
 
@@ -106,6 +114,36 @@ public class AmqpFrameParser {
         return this.wireFormat;
     }
 
+    /**
+     * Reads the run of complete AMQP frames at the start of the incoming data.
+     *
+     * @return a buffer holding the frames, or null if the incoming data does not start
+     *         with a complete AMQP frame.
+     */
+    private Buffer readCompleteFrames(ByteBuffer incoming) throws IOException {
+        int start = incoming.position();
+        int position = start;
+        while (incoming.limit() - position >= AMQP_FRAME_HEADER_BYTES) {
+            int frameSize = incoming.getInt(position);
+            if (frameSize < AMQP_FRAME_HEADER_BYTES || frameSize > incoming.limit() - position ||
+                incoming.get(position + AMQP_FRAME_TYPE_OFFSET) != AMQP_FRAME_TYPE) {
+                break;
+            }
+
+            validateFrameSize(frameSize);
+            position += frameSize;
+        }
+
+        if (position == start) {
+            return null;
+        }
+
+        Buffer frames = new Buffer(position - start);
+        incoming.get(frames.data, 0, frames.length);
+        LOG.trace("Read {} bytes of complete frames", frames.length);
+        return frames;
+    }
+
     //----- Prepare the current frame parser for use -------------------------//
 
     private FrameParser initializeHeaderParser() {
@@ -168,6 +206,19 @@ public class AmqpFrameParser {
         @Override
         public void parse(ByteBuffer incoming) throws IOException {
 
+            if (multiplier == AMQP_FRAME_SIZE_BYTES) {
+                Buffer frames = readCompleteFrames(incoming);
+                if (frames != null) {
+                    frameSink.onFrame(frames);
+                    if (currentParser != this) {
+                        if (incoming.hasRemaining()) {
+                            currentParser.parse(incoming);
+                        }
+                        return;
+                    }
+                }
+            }
+
             while (incoming.hasRemaining()) {
                 frameSize += ((incoming.get() & 0xFF) << --multiplier * Byte.SIZE);
 
@@ -216,6 +216,14 @@ public class AmqpTransportFilter extends TransportFilter implements AmqpTranspor
         return wireFormat.getProducerCredit();
     }
 
+    public void setProducerCreditThreshold(int producerCreditThreshold) {
+        wireFormat.setProducerCreditThreshold(producerCreditThreshold);
+    }
+
+    public int getProducerCreditThreshold() {
+        return wireFormat.getProducerCreditThreshold();
+    }
+
     @Override
     public void setInactivityMonitor(AmqpInactivityMonitor monitor) {
         this.monitor = monitor;
@@ -44,6 +44,7 @@ public class AmqpWireFormat implements WireFormat {
     public static final int DEFAULT_CONNECTION_TIMEOUT = 30000;
     public static final int DEFAULT_IDLE_TIMEOUT = 30000;
     public static final int DEFAULT_PRODUCER_CREDIT = 1000;
+    public static final int DEFAULT_PRODUCER_CREDIT_THRESHOLD = 30;
     public static final boolean DEFAULT_ALLOW_NON_SASL_CONNECTIONS = false;
     public static final int DEFAULT_ANQP_FRAME_SIZE = 128 * 1024;
 
@@ -55,6 +56,7 @@ public class AmqpWireFormat implements WireFormat {
     private int connectAttemptTimeout = DEFAULT_CONNECTION_TIMEOUT;
     private int idelTimeout = DEFAULT_IDLE_TIMEOUT;
     private int producerCredit = DEFAULT_PRODUCER_CREDIT;
+    private int producerCreditThreshold = DEFAULT_PRODUCER_CREDIT_THRESHOLD;
     private String transformer = InboundTransformer.TRANSFORMER_JMS;
     private boolean allowNonSaslConnections = DEFAULT_ALLOW_NON_SASL_CONNECTIONS;
 
@@ -246,6 +248,28 @@ public class AmqpWireFormat implements WireFormat {
         return producerCredit;
     }
 
+    /**
+     * Sets the percentage of the producer credit that may be left on a link before it
+     * is topped back up to the full producer credit.  Lower values send fewer flow
+     * frames to the producer, higher values make it less likely the producer stalls
+     * waiting for credit.
+     *
+     * @param producerCreditThreshold
+     *        the percentage (0-100) of the credit left at which more is granted.
+     *
+     * @throws IllegalArgumentException if the value is not between 0 and 100.
+     */
+    public void setProducerCreditThreshold(int producerCreditThreshold) {
+        if (producerCreditThreshold < 0 || producerCreditThreshold > 100) {
+            throw new IllegalArgumentException("Producer credit threshold must be between 0 and 100: " + producerCreditThreshold);
+        }
+        this.producerCreditThreshold = producerCreditThreshold;
+    }
+
+    public int getProducerCreditThreshold() {
+        return producerCreditThreshold;
+    }
+
     public String getTransformer() {
         return transformer;
     }
@@ -29,6 +29,7 @@ public class AmqpWireFormatFactory implements WireFormatFactory {
     private int maxAmqpFrameSize = AmqpWireFormat.DEFAULT_ANQP_FRAME_SIZE;
     private int idelTimeout = AmqpWireFormat.DEFAULT_IDLE_TIMEOUT;
     private int producerCredit = AmqpWireFormat.DEFAULT_PRODUCER_CREDIT;
+    private int producerCreditThreshold = AmqpWireFormat.DEFAULT_PRODUCER_CREDIT_THRESHOLD;
     private String transformer = InboundTransformer.TRANSFORMER_NATIVE;
     private boolean allowNonSaslConnections = AmqpWireFormat.DEFAULT_ALLOW_NON_SASL_CONNECTIONS;
 
@@ -40,6 +41,7 @@ public class AmqpWireFormatFactory implements WireFormatFactory {
         wireFormat.setMaxAmqpFrameSize(getMaxAmqpFrameSize());
         wireFormat.setIdleTimeout(getIdelTimeout());
         wireFormat.setProducerCredit(getProducerCredit());
+        wireFormat.setProducerCreditThreshold(getProducerCreditThreshold());
         wireFormat.setTransformer(getTransformer());
         wireFormat.setAllowNonSaslConnections(isAllowNonSaslConnections());
 
@@ -78,6 +80,17 @@ public class AmqpWireFormatFactory implements WireFormatFactory {
         this.producerCredit = producerCredit;
     }
 
+    public int getProducerCreditThreshold() {
+        return producerCreditThreshold;
+    }
+
+    public void setProducerCreditThreshold(int producerCreditThreshold) {
+        if (producerCreditThreshold < 0 || producerCreditThreshold > 100) {
+            throw new IllegalArgumentException("Producer credit threshold must be between 0 and 100: " + producerCreditThreshold);
+        }
+        this.producerCreditThreshold = producerCreditThreshold;
+    }
+
     public String getTransformer() {
         return transformer;
     }
@@ -27,7 +27,6 @@ import org.apache.activemq.command.ActiveMQMessage;
 import org.apache.qpid.proton.amqp.Binary;
 import org.apache.qpid.proton.amqp.UnsignedInteger;
 import org.apache.qpid.proton.amqp.messaging.Header;
-import org.apache.qpid.proton.message.ProtonJMessage;
 
 public class AMQPNativeOutboundTransformer implements OutboundTransformer {
 
@@ -56,37 +55,31 @@ public class AMQPNativeOutboundTransformer implements OutboundTransformer {
         byte encodedData[] = encodedMessage.getArray();
         int encodedSize = encodedMessage.getLength();
 
+        int encodedOffset = encodedMessage.getArrayOffset();
+
         int count = message.getRedeliveryCounter();
         if (count >= 1) {
+            EncodedMessage original = new EncodedMessage(messageFormat, encodedData, encodedOffset, encodedSize);
 
-            // decode...
-            ProtonJMessage amqp = (ProtonJMessage) org.apache.qpid.proton.message.Message.Factory.create();
-            int offset = 0;
-            int len = encodedSize;
-            while (len > 0) {
-                final int decoded = amqp.decode(encodedData, offset, len);
-                assert decoded > 0 : "Make progress decoding the message";
-                offset += decoded;
-                len -= decoded;
-            }
+            // decode only the sections ahead of the body...
+            AmqpMessageSections sections = AmqpMessageSections.decode(original);
 
             // Update the DeliveryCount header...
             // The AMQP delivery-count field only includes prior failed delivery attempts,
             // whereas JMSXDeliveryCount includes the first/current delivery attempt. Subtract 1.
-            if (amqp.getHeader() == null) {
-                amqp.setHeader(new Header());
+            Header header = sections.getHeader();
+            if (header == null) {
+                header = new Header();
             }
 
-            amqp.getHeader().setDeliveryCount(new UnsignedInteger(count));
-
-            // Re-encode...
-            final AmqpWritableBuffer buffer = new AmqpWritableBuffer();
-            int written = amqp.encode(buffer);
+            header.setDeliveryCount(new UnsignedInteger(count));
 
-            encodedData = buffer.getArray();
-            encodedSize = written;
+            // Re-encode the header, the other sections are kept as they are...
+            encodedData = sections.replaceHeader(original, header);
+            encodedOffset = 0;
+            encodedSize = encodedData.length;
         }
 
-        return new EncodedMessage(messageFormat, encodedData, 0, encodedSize);
+        return new EncodedMessage(messageFormat, encodedData, encodedOffset, encodedSize);
     }
 }
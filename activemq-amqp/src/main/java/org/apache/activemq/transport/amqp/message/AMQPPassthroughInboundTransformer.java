@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.amqp.message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import jakarta.jms.Message;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.Header;
+import org.apache.qpid.proton.amqp.messaging.MessageAnnotations;
+import org.apache.qpid.proton.amqp.messaging.Properties;
+
+/**
+ * Stores the AMQP encoding of a message as is, for brokers where messages are sent
+ * and consumed over AMQP.
+ *
+ * Unlike the native transformer the body and footer are never decoded and only the
+ * fields the broker needs for routing, expiry, scheduling and selectors are mapped
+ * onto the stored message. The delivery annotations are dropped on the way in and
+ * outbound the original encoding is sent with only the header section rewritten
+ * when the delivery count changes.
+ */
+public class AMQPPassthroughInboundTransformer extends AMQPRawInboundTransformer {
+
+    @Override
+    public String getTransformerName() {
+        return TRANSFORMER_PASSTHROUGH;
+    }
+
+    @Override
+    public InboundTransformer getFallbackTransformer() {
+        return new AMQPRawInboundTransformer();
+    }
+
+    @Override
+    protected ActiveMQMessage doTransform(EncodedMessage amqpMessage) throws Exception {
+        AmqpMessageSections sections = AmqpMessageSections.decode(amqpMessage);
+
+        ActiveMQMessage result = super.doTransform(sections.removeDeliveryAnnotations(amqpMessage));
+
+        Header header = sections.getHeader();
+        if (header != null) {
+            result.setPersistent(header.getDurable() != null && header.getDurable());
+            if (header.getPriority() != null) {
+                result.setJMSPriority(header.getPriority().intValue());
+            }
+            if (header.getDeliveryCount() != null) {
+                result.setRedeliveryCounter(header.getDeliveryCount().intValue());
+            }
+        } else {
+            result.setPersistent(false);
+        }
+
+        MessageAnnotations annotations = sections.getMessageAnnotations();
+        if (annotations != null) {
+            for (Map.Entry<?, ?> entry : annotations.getValue().entrySet()) {
+                populateScheduling(result, entry.getKey().toString(), entry.getValue());
+            }
+        }
+
+        Properties properties = sections.getProperties();
+        if (properties != null) {
+            if (properties.getMessageId() != null) {
+                result.setJMSMessageID(AMQPMessageIdHelper.INSTANCE.toBaseMessageIdString(properties.getMessageId()));
+            }
+            Binary userId = properties.getUserId();
+            if (userId != null) {
+                result.setUserID(new String(userId.getArray(), userId.getArrayOffset(), userId.getLength(), StandardCharsets.UTF_8));
+            }
+            if (properties.getTo() != null) {
+                result.setDestination(ActiveMQDestination.createDestination(properties.getTo(), ActiveMQDestination.QUEUE_TYPE));
+            }
+            if (properties.getSubject() != null) {
+                result.setType(properties.getSubject());
+            }
+            if (properties.getCorrelationId() != null) {
+                result.setCorrelationId(AMQPMessageIdHelper.INSTANCE.toBaseMessageIdString(properties.getCorrelationId()));
+            }
+            if (properties.getCreationTime() != null) {
+                result.setTimestamp(properties.getCreationTime().getTime());
+            }
+            if (properties.getGroupId() != null) {
+                result.setGroupID(properties.getGroupId());
+            }
+            if (properties.getGroupSequence() != null) {
+                result.setGroupSequence(properties.getGroupSequence().intValue());
+            }
+            if (properties.getAbsoluteExpiryTime() != null) {
+                result.setExpiration(properties.getAbsoluteExpiryTime().getTime());
+            }
+        }
+
+        if (header != null && header.getTtl() != null && result.getExpiration() == 0) {
+            long ttl = header.getTtl().longValue();
+            if (ttl != Message.DEFAULT_TIME_TO_LIVE) {
+                result.setExpiration(System.currentTimeMillis() + ttl);
+            }
+        }
+
+        // application properties are what selectors are evaluated against
+        ApplicationProperties applicationProperties = sections.getApplicationProperties();
+        if (applicationProperties != null) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) applicationProperties.getValue()).entrySet()) {
+                setProperty(result, entry.getKey().toString(), entry.getValue());
+            }
+        }
+
+        return result;
+    }
+}
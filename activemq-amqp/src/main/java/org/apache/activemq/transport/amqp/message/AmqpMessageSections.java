@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.amqp.message;
+
+import java.nio.ByteBuffer;
+
+import org.apache.qpid.proton.amqp.messaging.AmqpSequence;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.amqp.messaging.DeliveryAnnotations;
+import org.apache.qpid.proton.amqp.messaging.Footer;
+import org.apache.qpid.proton.amqp.messaging.Header;
+import org.apache.qpid.proton.amqp.messaging.MessageAnnotations;
+import org.apache.qpid.proton.amqp.messaging.Properties;
+import org.apache.qpid.proton.codec.AMQPDefinedTypes;
+import org.apache.qpid.proton.codec.DecoderImpl;
+import org.apache.qpid.proton.codec.EncoderImpl;
+import org.apache.qpid.proton.codec.ReadableBuffer;
+import org.apache.qpid.proton.codec.WritableBuffer;
+
+/**
+ * The sections of an encoded AMQP message that come before the body.
+ *
+ * The sections are decoded one at a time and decoding stops at the first body
+ * section, the body and footer are never decoded. The positions of the header and
+ * delivery annotations sections are kept so that the original encoding can be
+ * reused with only those sections replaced or removed.
+ */
+public class AmqpMessageSections {
+
+    private static final long DATA_CODE = 0x75L;
+    private static final long FOOTER_CODE = 0x78L;
+
+    private static final ThreadLocal<EncoderImpl> CODEC = new ThreadLocal<EncoderImpl>() {
+
+        @Override
+        protected EncoderImpl initialValue() {
+            DecoderImpl decoder = new DecoderImpl();
+            EncoderImpl encoder = new EncoderImpl(decoder);
+            AMQPDefinedTypes.registerAllTypes(decoder, encoder);
+            return encoder;
+        }
+    };
+
+    private Header header;
+    private DeliveryAnnotations deliveryAnnotations;
+    private MessageAnnotations messageAnnotations;
+    private Properties properties;
+    private ApplicationProperties applicationProperties;
+
+    private int headerOffset = -1;
+    private int headerLength;
+    private int deliveryAnnotationsOffset = -1;
+    private int deliveryAnnotationsLength;
+
+    /**
+     * Decodes the sections of the given message up to its body.
+     *
+     * @param message
+     *        the encoded message.
+     *
+     * @return the decoded sections.
+     */
+    public static AmqpMessageSections decode(EncodedMessage message) {
+        return decode(message.getArray(), message.getArrayOffset(), message.getLength());
+    }
+
+    public static AmqpMessageSections decode(byte[] data, int offset, int length) {
+        AmqpMessageSections sections = new AmqpMessageSections();
+
+        DecoderImpl decoder = CODEC.get().getDecoder();
+        ReadableBuffer buffer = ReadableBuffer.ByteBufferReader.wrap(ByteBuffer.wrap(data, offset, length));
+        decoder.setBuffer(buffer);
+        try {
+            while (buffer.hasRemaining()) {
+                int position = buffer.position();
+                long code = peekDescriptorCode(data, position, offset + length);
+                if (code >= DATA_CODE && code <= FOOTER_CODE) {
+                    break;
+                }
+
+                Object section = decoder.readObject();
+                if (section instanceof Header) {
+                    sections.header = (Header) section;
+                    sections.headerOffset = position;
+                    sections.headerLength = buffer.position() - position;
+                } else if (section instanceof DeliveryAnnotations) {
+                    sections.deliveryAnnotations = (DeliveryAnnotations) section;
+                    sections.deliveryAnnotationsOffset = position;
+                    sections.deliveryAnnotationsLength = buffer.position() - position;
+                } else if (section instanceof MessageAnnotations) {
+                    sections.messageAnnotations = (MessageAnnotations) section;
+                } else if (section instanceof Properties) {
+                    sections.properties = (Properties) section;
+                } else if (section instanceof ApplicationProperties) {
+                    sections.applicationProperties = (ApplicationProperties) section;
+                } else if (section instanceof Data || section instanceof AmqpValue ||
+                           section instanceof AmqpSequence || section instanceof Footer) {
+                    break;
+                }
+            }
+        } finally {
+            decoder.setBuffer(null);
+        }
+
+        return sections;
+    }
+
+    /**
+     * Creates a copy of the encoded message with the header section replaced by the
+     * given one, all the other sections keep their original encoding.
+     *
+     * @param message
+     *        the encoded message the sections were decoded from.
+     * @param header
+     *        the header to encode in the copy.
+     *
+     * @return the bytes of the new encoding.
+     */
+    public byte[] replaceHeader(EncodedMessage message, Header header) {
+        AmqpWritableBuffer buffer = new AmqpWritableBuffer(message.getLength() + 32);
+        EncoderImpl encoder = CODEC.get();
+        encoder.setByteBuffer(buffer);
+        try {
+            encoder.writeObject(header);
+        } finally {
+            encoder.setByteBuffer((WritableBuffer) null);
+        }
+
+        int start = message.getArrayOffset();
+        int end = start + message.getLength();
+        if (headerOffset >= 0) {
+            buffer.put(message.getArray(), start, headerOffset - start);
+            start = headerOffset + headerLength;
+        }
+        buffer.put(message.getArray(), start, end - start);
+
+        byte[] encoded = new byte[buffer.getArrayLength()];
+        System.arraycopy(buffer.getArray(), 0, encoded, 0, encoded.length);
+        return encoded;
+    }
+
+    /**
+     * Creates a copy of the encoded message without its delivery annotations, which
+     * are only meant for the immediate receiver of the message.
+     *
+     * @param message
+     *        the encoded message the sections were decoded from.
+     *
+     * @return the bytes of the new encoding, or the original message when it has no
+     *         delivery annotations.
+     */
+    public EncodedMessage removeDeliveryAnnotations(EncodedMessage message) {
+        if (deliveryAnnotationsOffset < 0) {
+            return message;
+        }
+
+        int start = message.getArrayOffset();
+        int before = deliveryAnnotationsOffset - start;
+        byte[] encoded = new byte[message.getLength() - deliveryAnnotationsLength];
+        System.arraycopy(message.getArray(), start, encoded, 0, before);
+        System.arraycopy(message.getArray(), deliveryAnnotationsOffset + deliveryAnnotationsLength,
+                         encoded, before, encoded.length - before);
+
+        return new EncodedMessage(message.getMessageFormat(), encoded, 0, encoded.length);
+    }
+
+    /**
+     * @return the numeric descriptor of the described type at the given position, or
+     *         -1 when it is not a numeric descriptor.
+     */
+    private static long peekDescriptorCode(byte[] data, int position, int limit) {
+        if (position + 2 >= limit || data[position] != 0x00) {
+            return -1;
+        }
+
+        switch (data[position + 1] & 0xff) {
+            case 0x44:
+                return 0;
+            case 0x53:
+                return data[position + 2] & 0xff;
+            case 0x80:
+                if (position + 10 > limit) {
+                    return -1;
+                }
+                long code = 0;
+                for (int i = 2; i < 10; i++) {
+                    code = (code << 8) | (data[position + i] & 0xff);
+                }
+                return code;
+            default:
+                return -1;
+        }
+    }
+
+    public Header getHeader() {
+        return header;
+    }
+
+    public DeliveryAnnotations getDeliveryAnnotations() {
+        return deliveryAnnotations;
+    }
+
+    public MessageAnnotations getMessageAnnotations() {
+        return messageAnnotations;
+    }
+
+    public Properties getProperties() {
+        return properties;
+    }
+
+    public ApplicationProperties getApplicationProperties() {
+        return applicationProperties;
+    }
+}
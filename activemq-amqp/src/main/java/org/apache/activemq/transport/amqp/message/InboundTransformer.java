@@ -56,6 +56,7 @@ public abstract class InboundTransformer {
     public static final String TRANSFORMER_NATIVE = "native";
     public static final String TRANSFORMER_RAW = "raw";
     public static final String TRANSFORMER_JMS = "jms";
+    public static final String TRANSFORMER_PASSTHROUGH = "passthrough";
 
     public abstract String getTransformerName();
 
@@ -117,33 +118,7 @@ public abstract class InboundTransformer {
         if (ma != null) {
             for (Map.Entry<?, ?> entry : ma.getValue().entrySet()) {
                 String key = entry.getKey().toString();
-                if ("x-opt-delivery-time".equals(key) && entry.getValue() != null) {
-                    long deliveryTime = ((Number) entry.getValue()).longValue();
-                    long delay = deliveryTime - System.currentTimeMillis();
-                    if (delay > 0) {
-                        jms.setLongProperty(ScheduledMessage.AMQ_SCHEDULED_DELAY, delay);
-                    }
-                } else if ("x-opt-delivery-delay".equals(key) && entry.getValue() != null) {
-                    long delay = ((Number) entry.getValue()).longValue();
-                    if (delay > 0) {
-                        jms.setLongProperty(ScheduledMessage.AMQ_SCHEDULED_DELAY, delay);
-                    }
-                } else if ("x-opt-delivery-repeat".equals(key) && entry.getValue() != null) {
-                    int repeat = ((Number) entry.getValue()).intValue();
-                    if (repeat > 0) {
-                        jms.setIntProperty(ScheduledMessage.AMQ_SCHEDULED_REPEAT, repeat);
-                    }
-                } else if ("x-opt-delivery-period".equals(key) && entry.getValue() != null) {
-                    long period = ((Number) entry.getValue()).longValue();
-                    if (period > 0) {
-                        jms.setLongProperty(ScheduledMessage.AMQ_SCHEDULED_PERIOD, period);
-                    }
-                } else if ("x-opt-delivery-cron".equals(key) && entry.getValue() != null) {
-                    String cronEntry = (String) entry.getValue();
-                    if (cronEntry != null) {
-                        jms.setStringProperty(ScheduledMessage.AMQ_SCHEDULED_CRON, cronEntry);
-                    }
-                }
+                populateScheduling(jms, key, entry.getValue());
 
                 setProperty(jms, JMS_AMQP_MESSAGE_ANNOTATION_PREFIX + key, entry.getValue());
             }
@@ -223,7 +198,41 @@ public abstract class InboundTransformer {
         }
     }
 
-    private void setProperty(Message msg, String key, Object value) throws JMSException {
+    /**
+     * Applies the delivery scheduling message annotations to the message.
+     */
+    protected void populateScheduling(ActiveMQMessage jms, String key, Object value) throws JMSException {
+        if (value == null) {
+            return;
+        }
+
+        if ("x-opt-delivery-time".equals(key)) {
+            long deliveryTime = ((Number) value).longValue();
+            long delay = deliveryTime - System.currentTimeMillis();
+            if (delay > 0) {
+                jms.setLongProperty(ScheduledMessage.AMQ_SCHEDULED_DELAY, delay);
+            }
+        } else if ("x-opt-delivery-delay".equals(key)) {
+            long delay = ((Number) value).longValue();
+            if (delay > 0) {
+                jms.setLongProperty(ScheduledMessage.AMQ_SCHEDULED_DELAY, delay);
+            }
+        } else if ("x-opt-delivery-repeat".equals(key)) {
+            int repeat = ((Number) value).intValue();
+            if (repeat > 0) {
+                jms.setIntProperty(ScheduledMessage.AMQ_SCHEDULED_REPEAT, repeat);
+            }
+        } else if ("x-opt-delivery-period".equals(key)) {
+            long period = ((Number) value).longValue();
+            if (period > 0) {
+                jms.setLongProperty(ScheduledMessage.AMQ_SCHEDULED_PERIOD, period);
+            }
+        } else if ("x-opt-delivery-cron".equals(key)) {
+            jms.setStringProperty(ScheduledMessage.AMQ_SCHEDULED_CRON, (String) value);
+        }
+    }
+
+    protected void setProperty(Message msg, String key, Object value) throws JMSException {
         if (value instanceof UnsignedLong) {
             long v = ((UnsignedLong) value).longValue();
             msg.setLongProperty(key, v);
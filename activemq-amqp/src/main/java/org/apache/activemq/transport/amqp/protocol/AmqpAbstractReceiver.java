@@ -36,6 +36,7 @@ public abstract class AmqpAbstractReceiver extends AmqpAbstractLink<Receiver> {
     protected ByteArrayOutputStream current = new ByteArrayOutputStream();
     protected final byte[] recvBuffer = new byte[1024 * 8];
     protected final int configuredCredit;
+    protected final int configuredCreditThreshold;
 
     /**
      * Handle create of new AMQP Receiver instance.
@@ -48,6 +49,7 @@ public abstract class AmqpAbstractReceiver extends AmqpAbstractLink<Receiver> {
     public AmqpAbstractReceiver(AmqpSession session, Receiver endpoint) {
         super(session, endpoint);
         this.configuredCredit = session.getConnection().getConfiguredReceiverCredit();
+        this.configuredCreditThreshold = (int) (configuredCredit * (session.getConnection().getConfiguredReceiverCreditThreshold() / 100.0));
 
         // We don't support second so enforce it as First and let remote decide what to do
         this.endpoint.setReceiverSettleMode(ReceiverSettleMode.FIRST);
@@ -75,6 +77,16 @@ public abstract class AmqpAbstractReceiver extends AmqpAbstractLink<Receiver> {
         return configuredCredit;
     }
 
+    /**
+     * Returns the amount of credit that may be left on this receiver before it is topped
+     * back up to the configured receiver credit.
+     *
+     * @return the configured credit threshold of this receiver.
+     */
+    public int getConfiguredReceiverCreditThreshold() {
+        return configuredCreditThreshold;
+    }
+
     /**
      * Provide the receiver endpoint with the given amount of credits.
      *
@@ -122,7 +134,11 @@ public abstract class AmqpAbstractReceiver extends AmqpAbstractLink<Receiver> {
         try {
             processDelivery(delivery, current.toBuffer());
         } finally {
-            getEndpoint().advance();
+            // Settling the current delivery already advances the link, advancing again
+            // would skip a delivery that arrived in the same batch of frames.
+            if (getEndpoint().current() == delivery) {
+                getEndpoint().advance();
+            }
             current = null;
         }
     }
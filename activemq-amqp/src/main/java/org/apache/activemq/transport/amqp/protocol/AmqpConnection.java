@@ -35,8 +35,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
@@ -151,6 +155,11 @@ public class AmqpConnection implements AmqpProtocolConverter {
     private boolean closedSocket;
     private AmqpAuthenticator authenticator;
 
+    // While the events of the data read from the socket are processed output is only
+    // written once and the settlements of the senders are coalesced at the end.
+    private boolean processingEvents;
+    private final Set<AmqpSender> pendingSettlements = new LinkedHashSet<>();
+
     private final Map<TransactionId, AmqpTransactionCoordinator> transactions = new HashMap<>();
     private final ConcurrentMap<Integer, ResponseHandler> resposeHandlers = new ConcurrentHashMap<>();
     private final ConcurrentMap<ConsumerId, AmqpSender> subscriptionsByConsumerId = new ConcurrentHashMap<>();
@@ -284,6 +293,14 @@ public class AmqpConnection implements AmqpProtocolConverter {
         return amqpWireFormat.getProducerCredit();
     }
 
+    /**
+     * @return the percentage of the receiver credit that may be left on a link before
+     *         it is topped back up.
+     */
+    public int getConfiguredReceiverCreditThreshold() {
+        return amqpWireFormat.getProducerCreditThreshold();
+    }
+
     /**
      * @return the transformer type that was configured for this AMQP transport.
      */
@@ -315,6 +332,39 @@ public class AmqpConnection implements AmqpProtocolConverter {
     //----- Proton Event handling and IO support -----------------------------//
 
     void pumpProtonToSocket() {
+        // When processing events the output is written once they have all been handled.
+        if (!processingEvents) {
+            flushProtonToSocket();
+        }
+    }
+
+    /**
+     * Called by a sender that has settlements waiting to be acknowledged to the broker,
+     * they are flushed right away unless events are being processed in which case all
+     * the settlements are flushed together once the events are done.
+     *
+     * @param sender
+     *        the sender whose settlements should be flushed.
+     */
+    void settlementsPending(AmqpSender sender) {
+        if (processingEvents) {
+            pendingSettlements.add(sender);
+        } else {
+            sender.flushSettlements();
+        }
+    }
+
+    private void flushSettlements() {
+        while (!pendingSettlements.isEmpty()) {
+            List<AmqpSender> senders = new ArrayList<>(pendingSettlements);
+            pendingSettlements.clear();
+            for (AmqpSender sender : senders) {
+                sender.flushSettlements();
+            }
+        }
+    }
+
+    private void flushProtonToSocket() {
         try {
             boolean done = false;
             while (!done) {
@@ -396,12 +446,18 @@ public class AmqpConnection implements AmqpProtocolConverter {
     }
 
     private void processProtonEvents() throws Exception {
+        processingEvents = true;
         try {
             Event event = null;
             while ((event = eventCollector.peek()) != null) {
                 if (amqpTransport.isTrace()) {
                     LOG.trace("Server: Processing event: {}", event.getType());
                 }
+                if (!isSenderEvent(event)) {
+                    // Incoming messages, transaction commands and endpoints going away must
+                    // not overtake the acknowledgements of messages already settled by the remote.
+                    flushSettlements();
+                }
                 switch (event.getType()) {
                     case CONNECTION_REMOTE_OPEN:
                         processConnectionOpen(event.getConnection());
@@ -437,11 +493,25 @@ public class AmqpConnection implements AmqpProtocolConverter {
                 eventCollector.pop();
             }
 
+            flushSettlements();
         } catch (Throwable e) {
             handleException(new AmqpProtocolException("Could not process AMQP commands", true, e));
+        } finally {
+            processingEvents = false;
         }
 
-        pumpProtonToSocket();
+        flushProtonToSocket();
+    }
+
+    private static boolean isSenderEvent(Event event) {
+        switch (event.getType()) {
+            case LINK_FLOW:
+                return true;
+            case DELIVERY:
+                return event.getLink() instanceof Sender;
+            default:
+                return false;
+        }
     }
 
     protected void processConnectionOpen(Connection connection) throws Exception {
@@ -465,7 +535,7 @@ public class AmqpConnection implements AmqpProtocolConverter {
             protonConnection.open();
             protonConnection.setCondition(new ErrorCondition(AmqpError.PRECONDITION_FAILED, "Cannot send idle frames"));
             protonConnection.close();
-            pumpProtonToSocket();
+            flushProtonToSocket();
 
             amqpTransport.onException(new IOException(
                 "Connection failed, remote requested idle processing but inactivity monitoring is disbaled."));
@@ -511,7 +581,7 @@ public class AmqpConnection implements AmqpProtocolConverter {
                         configureInactivityMonitor();
                     }
                 } finally {
-                    pumpProtonToSocket();
+                    flushProtonToSocket();
 
                     if (response.isException()) {
                         amqpTransport.onException(IOExceptionSupport.create(exception));
@@ -620,7 +690,7 @@ public class AmqpConnection implements AmqpProtocolConverter {
                 // so that the client doesn't wait around forever.
                 protonConnection.setCondition(new ErrorCondition(AmqpError.DECODE_ERROR, error.getMessage()));
                 protonConnection.close();
-                pumpProtonToSocket();
+                flushProtonToSocket();
             } catch (Exception ignore) {
             }
             amqpTransport.sendToActiveMQ(error);
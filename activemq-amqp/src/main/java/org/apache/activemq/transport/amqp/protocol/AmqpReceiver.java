@@ -35,6 +35,7 @@ import org.apache.activemq.command.Response;
 import org.apache.activemq.command.TransactionId;
 import org.apache.activemq.transport.amqp.AmqpProtocolConverter;
 import org.apache.activemq.transport.amqp.message.AMQPNativeInboundTransformer;
+import org.apache.activemq.transport.amqp.message.AMQPPassthroughInboundTransformer;
 import org.apache.activemq.transport.amqp.message.AMQPRawInboundTransformer;
 import org.apache.activemq.transport.amqp.message.EncodedMessage;
 import org.apache.activemq.transport.amqp.message.InboundTransformer;
@@ -143,6 +144,8 @@ public class AmqpReceiver extends AmqpAbstractReceiver {
                 inboundTransformer = new AMQPNativeInboundTransformer();
             } else if (transformer.equalsIgnoreCase(InboundTransformer.TRANSFORMER_RAW)) {
                 inboundTransformer = new AMQPRawInboundTransformer();
+            } else if (transformer.equalsIgnoreCase(InboundTransformer.TRANSFORMER_PASSTHROUGH)) {
+                inboundTransformer = new AMQPPassthroughInboundTransformer();
             } else {
                 LOG.warn("Unknown transformer type {} using native one instead", transformer);
                 inboundTransformer = new AMQPNativeInboundTransformer();
@@ -248,9 +251,10 @@ public class AmqpReceiver extends AmqpAbstractReceiver {
                     }
                 }
 
-                if (getEndpoint().getCredit() + --sendsInFlight <= (getConfiguredReceiverCredit() * .3)) {
-                    LOG.trace("Sending more credit ({}) to producer: {}", getConfiguredReceiverCredit() * .7, getProducerId());
-                    getEndpoint().flow((int) (getConfiguredReceiverCredit() * .7));
+                int remainingCredit = getEndpoint().getCredit() + --sendsInFlight;
+                if (remainingCredit <= getConfiguredReceiverCreditThreshold()) {
+                    LOG.trace("Sending more credit ({}) to producer: {}", getConfiguredReceiverCredit() - remainingCredit, getProducerId());
+                    getEndpoint().flow(getConfiguredReceiverCredit() - remainingCredit);
                 }
 
                 delivery.settle();
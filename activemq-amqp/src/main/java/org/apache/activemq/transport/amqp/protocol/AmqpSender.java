@@ -19,7 +19,14 @@ package org.apache.activemq.transport.amqp.protocol;
 import static org.apache.activemq.transport.amqp.AmqpSupport.toLong;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.activemq.broker.region.AbstractSubscription;
@@ -32,6 +39,7 @@ import org.apache.activemq.command.ExceptionResponse;
 import org.apache.activemq.command.LocalTransactionId;
 import org.apache.activemq.command.MessageAck;
 import org.apache.activemq.command.MessageDispatch;
+import org.apache.activemq.command.MessageId;
 import org.apache.activemq.command.MessagePull;
 import org.apache.activemq.command.RemoveInfo;
 import org.apache.activemq.command.RemoveSubscriptionInfo;
@@ -79,6 +87,14 @@ public class AmqpSender extends AmqpAbstractLink<Sender> {
     private final LinkedList<MessageDispatch> outbound = new LinkedList<>();
     private final LinkedList<Delivery> dispatchedInTx = new LinkedList<>();
 
+    // The position of each unacknowledged message in the order the broker dispatched
+    // them, so that accepted deliveries which are adjacent in the broker's dispatched
+    // list can be acknowledged with a single ranged ack.
+    private final Map<MessageId, Long> dispatchSequences = new HashMap<>();
+    private final TreeSet<Long> unacknowledged = new TreeSet<>();
+    private final List<Delivery> pendingSettlements = new ArrayList<>();
+    private long nextDispatchSequence;
+
     private final ConsumerInfo consumerInfo;
     private AbstractSubscription subscription;
     private AtomicInteger prefetchExtension;
@@ -310,6 +326,7 @@ public class AmqpSender extends AmqpAbstractLink<Sender> {
         if (!dispatchedInTx.isEmpty()) {
             for (final Delivery delivery : dispatchedInTx) {
                 MessageDispatch dispatch = (MessageDispatch) delivery.getContext();
+                forget(dispatch);
 
                 MessageAck pendingTxAck = new MessageAck(dispatch, MessageAck.INDIVIDUAL_ACK_TYPE, 1);
                 pendingTxAck.setFirstMessageId(dispatch.getMessage().getMessageId());
@@ -374,6 +391,11 @@ public class AmqpSender extends AmqpAbstractLink<Sender> {
             synchronized (outbound) {
                 outbound.addLast(dispatch);
             }
+            if (dispatch.getMessage() != null && !dispatchSequences.containsKey(dispatch.getMessage().getMessageId())) {
+                long sequence = nextDispatchSequence++;
+                dispatchSequences.put(dispatch.getMessage().getMessageId(), sequence);
+                unacknowledged.add(sequence);
+            }
             pumpOutbound();
             session.pumpProtonToSocket();
         }
@@ -506,33 +528,106 @@ public class AmqpSender extends AmqpAbstractLink<Sender> {
             // we are going to settle, but redeliver.. we we won't yet ack to ActiveMQ
             delivery.settle();
             onMessageDispatch((MessageDispatch) delivery.getContext());
+        } else if (ackType == MessageAck.INDIVIDUAL_ACK_TYPE) {
+            pendingSettlements.add(delivery);
+            session.getConnection().settlementsPending(this);
         } else {
-            MessageDispatch md = (MessageDispatch) delivery.getContext();
-            lastDeliveredSequenceId = md.getMessage().getMessageId().getBrokerSequenceId();
-            MessageAck ack = new MessageAck();
-            ack.setConsumerId(getConsumerId());
-            ack.setFirstMessageId(md.getMessage().getMessageId());
-            ack.setLastMessageId(md.getMessage().getMessageId());
-            ack.setMessageCount(1);
-            ack.setAckType((byte) ackType);
-            ack.setDestination(md.getDestination());
-            LOG.trace("Sending Ack to ActiveMQ: {}", ack);
-
-            sendToActiveMQ(ack, new ResponseHandler() {
-                @Override
-                public void onResponse(AmqpProtocolConverter converter, Response response) throws IOException {
-                    if (response.isException()) {
-                        if (response.isException()) {
-                            Throwable exception = ((ExceptionResponse) response).getException();
-                            exception.printStackTrace();
-                            getEndpoint().close();
+            acknowledge(Collections.singletonList(delivery), (byte) ackType);
+        }
+    }
+
+    /**
+     * Acknowledges the deliveries that were settled since the last flush, deliveries
+     * that are adjacent in the broker's dispatch order are covered by a single ack.
+     */
+    void flushSettlements() {
+        if (pendingSettlements.isEmpty()) {
+            return;
+        }
+
+        List<Delivery> settled = new ArrayList<>(pendingSettlements);
+        pendingSettlements.clear();
+        settled.sort(Comparator.comparingLong(this::getDispatchSequence));
+
+        List<Delivery> range = new ArrayList<>();
+        long last = -1;
+        for (Delivery delivery : settled) {
+            long sequence = getDispatchSequence(delivery);
+            if (!range.isEmpty() && !isNextInRange(range.get(range.size() - 1), last, delivery, sequence)) {
+                acknowledge(range, MessageAck.INDIVIDUAL_ACK_TYPE);
+                range = new ArrayList<>();
+            }
+            range.add(delivery);
+            last = sequence;
+        }
+        acknowledge(range, MessageAck.INDIVIDUAL_ACK_TYPE);
+    }
+
+    private boolean isNextInRange(Delivery previous, long previousSequence, Delivery delivery, long sequence) {
+        Long next = unacknowledged.higher(previousSequence);
+        if (next == null || next.longValue() != sequence) {
+            return false;
+        }
+
+        // Keep a range within one destination so the broker routes it as a single ack
+        ActiveMQDestination destination = ((MessageDispatch) previous.getContext()).getDestination();
+        return destination != null && destination.equals(((MessageDispatch) delivery.getContext()).getDestination());
+    }
+
+    private long getDispatchSequence(Delivery delivery) {
+        MessageDispatch md = (MessageDispatch) delivery.getContext();
+        Long sequence = dispatchSequences.get(md.getMessage().getMessageId());
+        return sequence != null ? sequence : Long.MAX_VALUE;
+    }
+
+    private void forget(MessageDispatch md) {
+        Long sequence = dispatchSequences.remove(md.getMessage().getMessageId());
+        if (sequence != null) {
+            unacknowledged.remove(sequence);
+        }
+    }
+
+    private void acknowledge(final List<Delivery> deliveries, final byte ackType) {
+        MessageDispatch first = (MessageDispatch) deliveries.get(0).getContext();
+        MessageDispatch md = (MessageDispatch) deliveries.get(deliveries.size() - 1).getContext();
+        for (Delivery delivery : deliveries) {
+            forget((MessageDispatch) delivery.getContext());
+        }
+
+        lastDeliveredSequenceId = md.getMessage().getMessageId().getBrokerSequenceId();
+        MessageAck ack = new MessageAck();
+        ack.setConsumerId(getConsumerId());
+        ack.setFirstMessageId(first.getMessage().getMessageId());
+        ack.setLastMessageId(md.getMessage().getMessageId());
+        ack.setMessageCount(deliveries.size());
+        // a standard ack covers all the messages dispatched from the first to the last one
+        ack.setAckType(deliveries.size() > 1 ? MessageAck.STANDARD_ACK_TYPE : ackType);
+        ack.setDestination(md.getDestination());
+        LOG.trace("Sending Ack to ActiveMQ: {}", ack);
+
+        sendToActiveMQ(ack, new ResponseHandler() {
+            @Override
+            public void onResponse(AmqpProtocolConverter converter, Response response) throws IOException {
+                if (response.isException()) {
+                    if (deliveries.size() > 1) {
+                        // The broker's dispatched list did not match the range, fall back
+                        // to acknowledging each of the messages on its own.
+                        LOG.debug("Ranged ack not accepted, acknowledging {} messages individually", deliveries.size());
+                        for (Delivery delivery : deliveries) {
+                            acknowledge(Collections.singletonList(delivery), ackType);
                         }
                     } else {
+                        Throwable exception = ((ExceptionResponse) response).getException();
+                        exception.printStackTrace();
+                        getEndpoint().close();
+                    }
+                } else {
+                    for (Delivery delivery : deliveries) {
                         delivery.settle();
                     }
-                    session.pumpProtonToSocket();
                 }
-            });
-        }
+                session.pumpProtonToSocket();
+            }
+        });
     }
 }
@@ -19,11 +19,13 @@ package org.apache.activemq.transport.amqp;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.net.URI;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import jakarta.jms.BytesMessage;
 import jakarta.jms.Connection;
@@ -41,8 +43,11 @@ import org.apache.activemq.broker.TransportConnector;
 import org.apache.activemq.transport.amqp.client.AmqpClient;
 import org.apache.activemq.transport.amqp.client.AmqpConnection;
 import org.apache.activemq.transport.amqp.client.AmqpMessage;
+import org.apache.activemq.transport.amqp.client.AmqpReceiver;
 import org.apache.activemq.transport.amqp.client.AmqpSender;
 import org.apache.activemq.transport.amqp.client.AmqpSession;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.Data;
 import org.junit.After;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -243,6 +248,65 @@ public class AmqpTransformerTest {
         }
     }
 
+    @Test(timeout = 60000)
+    public void testPassthroughTransformation() throws Exception {
+        startBrokerWithAmqpTransport(String.format(AMQP_URL, "?transport.transformer=passthrough"));
+
+        URI remoteURI = new URI("tcp://" + amqpConnectionURI.getHost() + ":" + amqpConnectionURI.getPort());
+        AmqpClient client = new AmqpClient(remoteURI, null, null);
+        AmqpConnection connection = client.connect();
+        try {
+            connection.connect();
+
+            AmqpSession session = connection.createSession();
+            AmqpSender sender = session.createSender(TEST_QUEUE);
+            for (String color : new String[] {"red", "blue"}) {
+                AmqpMessage message = createAmqpMessage((byte) color.charAt(0), 1024);
+                message.setApplicationProperty("color", color);
+                message.setMessageAnnotation("x-opt-test", color);
+                message.setGroupId("group");
+                message.setDurable(true);
+                message.setPriority((short) 7);
+                sender.send(message);
+            }
+
+            AmqpReceiver receiver = session.createReceiver(TEST_QUEUE, "color = 'blue'");
+            receiver.flow(2);
+
+            AmqpMessage received = receiver.receive(5, TimeUnit.SECONDS);
+            assertNotNull(received);
+            org.apache.qpid.proton.message.Message protonMessage = received.getWrappedMessage();
+            assertEquals("blue", received.getApplicationProperty("color"));
+            assertEquals("blue", received.getMessageAnnotation("x-opt-test"));
+            assertEquals("group", received.getGroupId());
+            assertEquals(7, received.getPriority());
+            assertTrue(received.isDurable());
+            assertEquals(0, protonMessage.getDeliveryCount());
+
+            Binary body = ((Data) protonMessage.getBody()).getValue();
+            assertEquals(1024, body.getLength());
+            assertEquals('b', body.getArray()[body.getArrayOffset()]);
+
+            // only the header changes when the message is delivered again
+            received.modified(true, false);
+            received = receiver.receive(5, TimeUnit.SECONDS);
+            assertNotNull(received);
+            protonMessage = received.getWrappedMessage();
+            assertEquals(1, protonMessage.getDeliveryCount());
+            assertEquals(7, received.getPriority());
+            assertEquals("blue", received.getApplicationProperty("color"));
+            assertEquals("blue", received.getMessageAnnotation("x-opt-test"));
+            assertEquals(1024, ((Data) protonMessage.getBody()).getValue().getLength());
+            received.accept();
+
+            assertNull(receiver.receive(500, TimeUnit.MILLISECONDS));
+            receiver.close();
+            session.close();
+        } finally {
+            connection.close();
+        }
+    }
+
     public void startBrokerWithAmqpTransport(String amqpUrl) throws Exception {
         brokerService = new BrokerService();
         brokerService.setPersistent(false);
@@ -110,6 +110,10 @@ public class AmqpMessage {
         return null;
     }
 
+    Delivery getDelivery() {
+        return delivery;
+    }
+
     /**
      * @return the AMQP Message that is wrapped by this object.
      */
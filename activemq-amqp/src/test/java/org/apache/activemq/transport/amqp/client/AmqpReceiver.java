@@ -22,6 +22,7 @@ import static org.apache.activemq.transport.amqp.AmqpSupport.NO_LOCAL_NAME;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
@@ -549,6 +550,43 @@ public class AmqpReceiver extends AmqpAbstractResource<Receiver> {
         request.sync();
     }
 
+    /**
+     * Accepts and settles the given messages, the dispositions are all written to the
+     * transport together.
+     *
+     * @param messages
+     *        the received messages to accept.
+     *
+     * @throws IOException if an error occurs while sending the accept.
+     */
+    public void accept(final Collection<AmqpMessage> messages) throws IOException {
+        checkClosed();
+
+        final ClientFuture request = new ClientFuture();
+        session.getScheduler().execute(new Runnable() {
+
+            @Override
+            public void run() {
+                checkClosed();
+                try {
+                    for (AmqpMessage message : messages) {
+                        Delivery delivery = message.getDelivery();
+                        if (!delivery.isSettled()) {
+                            delivery.disposition(Accepted.getInstance());
+                            delivery.settle();
+                        }
+                    }
+                    session.pumpToProtonTransport(request);
+                    request.onSuccess();
+                } catch (Exception e) {
+                    request.onFailure(e);
+                }
+            }
+        });
+
+        request.sync();
+    }
+
     /**
      * Mark a message that was dispatched under the given Delivery instance as Modified.
      *
@@ -50,6 +50,7 @@ public class AmqpDeliveryAnnotationsTest extends AmqpClientTestSupport {
     public static Collection<Object[]> data() {
         return Arrays.asList(new Object[][] {
             {"jms"},
+            {"passthrough"},
             // {"native"},
             // {"raw"}  We cannot fix these now because proton has no way to selectively
             //          prune the incoming message bytes from delivery annotations section
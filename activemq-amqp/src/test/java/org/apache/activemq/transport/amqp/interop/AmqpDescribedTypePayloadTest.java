@@ -61,6 +61,7 @@ public class AmqpDescribedTypePayloadTest extends AmqpClientTestSupport {
         return Arrays.asList(new Object[][] {
             {"jms"},
             {"native"},
+            {"passthrough"},
             {"raw"}
         });
     }
@@ -57,6 +57,7 @@ public class AmqpMessageIdPreservationTest extends AmqpClientTestSupport {
         return Arrays.asList(new Object[][] {
                 {"jms"},
                 {"native"},
+                {"passthrough"},
                 {"raw"},
             });
     }
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.amqp.interop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.broker.jmx.QueueViewMBean;
+import org.apache.activemq.transport.amqp.client.AmqpClient;
+import org.apache.activemq.transport.amqp.client.AmqpClientTestSupport;
+import org.apache.activemq.transport.amqp.client.AmqpConnection;
+import org.apache.activemq.transport.amqp.client.AmqpMessage;
+import org.apache.activemq.transport.amqp.client.AmqpReceiver;
+import org.apache.activemq.transport.amqp.client.AmqpSender;
+import org.apache.activemq.transport.amqp.client.AmqpSession;
+import org.apache.activemq.util.Wait;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Test that settlements arriving together are acknowledged correctly when the broker
+ * coalesces them into ranged acks, and that producer credit is topped up at the
+ * configured threshold.
+ */
+@RunWith(Parameterized.class)
+public class AmqpReceiverSettlementTest extends AmqpClientTestSupport {
+
+    private static final int PRODUCER_CREDIT = 100;
+    private static final int PRODUCER_CREDIT_THRESHOLD = 50;
+
+    @Parameters(name="{0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+                { "amqp", false },
+                { "amqp+nio", false },
+                { "amqp+ws", false },
+            });
+    }
+
+    public AmqpReceiverSettlementTest(String connectorScheme, boolean useSSL) {
+        super(connectorScheme, useSSL);
+    }
+
+    @Override
+    protected boolean isUseOpenWireConnector() {
+        return true;
+    }
+
+    @Override
+    protected String getAdditionalConfig() {
+        return "&wireFormat.producerCredit=" + PRODUCER_CREDIT +
+               "&wireFormat.producerCreditThreshold=" + PRODUCER_CREDIT_THRESHOLD;
+    }
+
+    @Test(timeout = 60000)
+    public void testAcceptInterleavedBatches() throws Exception {
+        final int MSG_COUNT = 100;
+        sendMessages(getTestName(), MSG_COUNT, false);
+
+        AmqpClient client = createAmqpClient();
+        AmqpConnection connection = trackConnection(client.connect());
+        AmqpSession session = connection.createSession();
+        AmqpReceiver receiver = session.createReceiver("queue://" + getTestName());
+
+        final QueueViewMBean queueView = getProxyToQueue(getTestName());
+
+        receiver.flow(MSG_COUNT);
+        List<AmqpMessage> even = new ArrayList<>();
+        List<AmqpMessage> odd = new ArrayList<>();
+        for (int i = 0; i < MSG_COUNT; ++i) {
+            AmqpMessage message = receiver.receive(5, TimeUnit.SECONDS);
+            assertNotNull("Should have received message: " + i, message);
+            (i % 2 == 0 ? even : odd).add(message);
+        }
+
+        // None of these are adjacent in the dispatched list
+        receiver.accept(even);
+        assertTrue("Should have ack'd half", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisified() throws Exception {
+                return queueView.getQueueSize() == MSG_COUNT / 2;
+            }
+        }, TimeUnit.SECONDS.toMillis(10), TimeUnit.MILLISECONDS.toMillis(20)));
+
+        // With the even ones gone all of these are now adjacent
+        receiver.accept(odd);
+        assertTrue("Queue should be empty now", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisified() throws Exception {
+                return queueView.getQueueSize() == 0;
+            }
+        }, TimeUnit.SECONDS.toMillis(10), TimeUnit.MILLISECONDS.toMillis(20)));
+
+        assertEquals(MSG_COUNT, queueView.getDequeueCount());
+
+        receiver.close();
+        connection.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testAcceptAroundReleasedMessage() throws Exception {
+        final int MSG_COUNT = 20;
+        sendMessages(getTestName(), MSG_COUNT, false);
+
+        AmqpClient client = createAmqpClient();
+        AmqpConnection connection = trackConnection(client.connect());
+        AmqpSession session = connection.createSession();
+        AmqpReceiver receiver = session.createReceiver("queue://" + getTestName());
+
+        final QueueViewMBean queueView = getProxyToQueue(getTestName());
+
+        receiver.flow(MSG_COUNT);
+        List<AmqpMessage> accepted = new ArrayList<>();
+        AmqpMessage released = null;
+        for (int i = 0; i < MSG_COUNT; ++i) {
+            AmqpMessage message = receiver.receive(5, TimeUnit.SECONDS);
+            assertNotNull("Should have received message: " + i, message);
+            if (i == MSG_COUNT / 2) {
+                released = message;
+            } else {
+                accepted.add(message);
+            }
+        }
+
+        released.release();
+        receiver.flow(1);
+        AmqpMessage redelivered = receiver.receive(5, TimeUnit.SECONDS);
+        assertNotNull(redelivered);
+
+        // The released message sits between the accepted ones in the dispatched list
+        receiver.accept(accepted);
+        assertTrue("Should leave only the released message", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisified() throws Exception {
+                return queueView.getQueueSize() == 1;
+            }
+        }, TimeUnit.SECONDS.toMillis(10), TimeUnit.MILLISECONDS.toMillis(20)));
+
+        redelivered.accept();
+        assertTrue("Queue should be empty now", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisified() throws Exception {
+                return queueView.getQueueSize() == 0;
+            }
+        }, TimeUnit.SECONDS.toMillis(10), TimeUnit.MILLISECONDS.toMillis(20)));
+
+        receiver.close();
+        connection.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testProducerCreditToppedUpAtThreshold() throws Exception {
+        AmqpClient client = createAmqpClient();
+        AmqpConnection connection = trackConnection(client.connect());
+        AmqpSession session = connection.createSession();
+        final AmqpSender sender = session.createSender("queue://" + getTestName());
+
+        assertTrue("Should be granted the configured credit", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisified() throws Exception {
+                return sender.getSender().getCredit() == PRODUCER_CREDIT;
+            }
+        }, TimeUnit.SECONDS.toMillis(5), TimeUnit.MILLISECONDS.toMillis(20)));
+
+        int lowestCredit = PRODUCER_CREDIT;
+        for (int i = 0; i < PRODUCER_CREDIT * 2; ++i) {
+            AmqpMessage message = new AmqpMessage();
+            message.setText("Test-Message: " + i);
+            sender.send(message);
+            lowestCredit = Math.min(lowestCredit, sender.getSender().getCredit());
+        }
+
+        LOG.info("Lowest producer credit seen was {}", lowestCredit);
+        assertTrue("Credit should not drop much below the threshold", lowestCredit >= PRODUCER_CREDIT_THRESHOLD - 1);
+        assertTrue("Credit should be topped up at the threshold", lowestCredit <= PRODUCER_CREDIT_THRESHOLD);
+
+        assertEquals(PRODUCER_CREDIT * 2, getProxyToQueue(getTestName()).getQueueSize());
+
+        sender.close();
+        connection.close();
+    }
+}
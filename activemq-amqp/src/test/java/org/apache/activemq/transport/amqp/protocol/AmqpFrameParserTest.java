@@ -288,6 +288,74 @@ public class AmqpFrameParserTest {
         }
     }
 
+    @Test
+    public void testCompleteAMQPFramesAreReadTogether() throws Exception {
+        AmqpHeader inputHeader = new AmqpHeader();
+
+        final int FRAME_SIZE = 64;
+        final int NUM_FRAMES = 5;
+
+        DataByteArrayOutputStream output = new DataByteArrayOutputStream();
+        output.write(inputHeader.getBuffer());
+        for (int i = 0; i < NUM_FRAMES; ++i) {
+            writeFrame(output, FRAME_SIZE, (byte) 0);
+        }
+        // Partial frame that completes on the next read
+        output.writeInt(FRAME_SIZE);
+        output.close();
+
+        codec.parse(output.toBuffer().toByteBuffer());
+
+        assertEquals(2, frames.size());
+        assertTrue(frames.get(0) instanceof AmqpHeader);
+        assertTrue(frames.get(1) instanceof Buffer);
+        assertEquals(FRAME_SIZE * NUM_FRAMES, ((Buffer) frames.get(1)).length());
+
+        output = new DataByteArrayOutputStream();
+        output.write(new byte[FRAME_SIZE - 4]);
+        output.close();
+
+        codec.parse(output.toBuffer().toByteBuffer());
+
+        assertEquals(3, frames.size());
+        assertEquals(FRAME_SIZE, ((Buffer) frames.get(2)).length());
+    }
+
+    @Test
+    public void testSaslFramesAreReadOneAtATime() throws Exception {
+        AmqpHeader inputHeader = new AmqpHeader();
+
+        final int FRAME_SIZE = 64;
+
+        DataByteArrayOutputStream output = new DataByteArrayOutputStream();
+        output.write(inputHeader.getBuffer());
+        writeFrame(output, FRAME_SIZE, (byte) 1);
+        output.write(inputHeader.getBuffer());
+        writeFrame(output, FRAME_SIZE, (byte) 0);
+        writeFrame(output, FRAME_SIZE, (byte) 0);
+        output.close();
+
+        codec = new AmqpFrameParser(new AmqpFrameParser.AMQPFrameSink() {
+
+            @Override
+            public void onFrame(Object frame) {
+                frames.add(frame);
+                if (frames.size() == 2) {
+                    // SASL exchange done, the next AMQP header follows
+                    codec.reset();
+                }
+            }
+        });
+
+        codec.parse(output.toBuffer().toByteBuffer());
+
+        assertEquals(4, frames.size());
+        assertTrue(frames.get(0) instanceof AmqpHeader);
+        assertEquals(FRAME_SIZE, ((Buffer) frames.get(1)).length());
+        assertTrue(frames.get(2) instanceof AmqpHeader);
+        assertEquals(FRAME_SIZE * 2, ((Buffer) frames.get(3)).length());
+    }
+
     @Test
     public void testCodecRejectsToLargeFrames() throws Exception {
         amqpWireFormat.setMaxFrameSize(MESSAGE_SIZE);
@@ -345,6 +413,13 @@ public class AmqpFrameParserTest {
         assertEquals(2, frames.size());
     }
 
+    private void writeFrame(DataByteArrayOutputStream output, int size, byte type) throws Exception {
+        output.writeInt(size);
+        output.writeByte(2);
+        output.writeByte(type);
+        output.write(new byte[size - 6]);
+    }
+
     private void assertHeadersEqual(AmqpHeader expected, AmqpHeader actual) {
         assertTrue(expected.getBuffer().equals(actual.getBuffer()));
     }
@@ -16,6 +16,7 @@
  */
 package org.apache.activemq.transport.amqp.protocol;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -78,4 +79,22 @@ public class AmqpWireFormatTest {
         wireFormat.resetMagicRead();
         assertTrue(reset.get());
     }
+
+    @Test
+    public void testProducerCreditThresholdRange() {
+        wireFormat.setProducerCreditThreshold(0);
+        assertEquals(0, wireFormat.getProducerCreditThreshold());
+        wireFormat.setProducerCreditThreshold(100);
+        assertEquals(100, wireFormat.getProducerCreditThreshold());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeProducerCreditThresholdRejected() {
+        wireFormat.setProducerCreditThreshold(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testProducerCreditThresholdOverHundredRejected() {
+        wireFormat.setProducerCreditThreshold(101);
+    }
 }
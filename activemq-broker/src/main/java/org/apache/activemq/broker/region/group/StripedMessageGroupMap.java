@@ -0,0 +1,224 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.group;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.Subscription;
+import org.apache.activemq.command.ConsumerId;
+
+/**
+ * A {@link MessageGroupMap} split into independently locked stripes by the hash
+ * of the group id, so assigning groups on one stripe does not wait for another.
+ * The groups owned by each consumer are also indexed, so removing a consumer
+ * only visits that consumer's groups rather than every group on the queue.
+ *
+ * When a cache size is set each stripe holds up to its share of it and drops the
+ * least recently used group when full, like {@link CachedMessageGroupMap}. The shares
+ * add up to the cache size, so there are never more stripes than groups allowed.
+ */
+public class StripedMessageGroupMap implements MessageGroupMap {
+
+    private final Stripe[] stripes;
+    private final int maximumCacheSize;
+    private final ConcurrentMap<ConsumerId, Set<String>> ownedGroups = new ConcurrentHashMap<ConsumerId, Set<String>>();
+    private volatile Destination destination;
+
+    StripedMessageGroupMap(int stripeCount, int cacheSize) {
+        int count = 1;
+        while (count < stripeCount && (cacheSize <= 0 || count << 1 <= cacheSize)) {
+            count <<= 1;
+        }
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            // the first stripes take one each of what does not divide evenly
+            int stripeSize = cacheSize > 0 ? cacheSize / count + (i < cacheSize % count ? 1 : 0) : 0;
+            stripes[i] = new Stripe(stripeSize);
+        }
+        maximumCacheSize = cacheSize;
+    }
+
+    @Override
+    public void put(String groupId, ConsumerId consumerId) {
+        Stripe stripe = stripeFor(groupId);
+        synchronized (stripe) {
+            ConsumerId previous = stripe.groups.put(groupId, consumerId);
+            if (previous != null && !previous.equals(consumerId)) {
+                removeOwned(previous, groupId);
+            }
+            ownedGroups.computeIfAbsent(consumerId, k -> ConcurrentHashMap.newKeySet()).add(groupId);
+        }
+    }
+
+    @Override
+    public ConsumerId get(String groupId) {
+        Stripe stripe = stripeFor(groupId);
+        synchronized (stripe) {
+            return stripe.groups.get(groupId);
+        }
+    }
+
+    @Override
+    public ConsumerId removeGroup(String groupId) {
+        Stripe stripe = stripeFor(groupId);
+        synchronized (stripe) {
+            ConsumerId owner = stripe.groups.remove(groupId);
+            if (owner != null) {
+                removeOwned(owner, groupId);
+            }
+            return owner;
+        }
+    }
+
+    @Override
+    public MessageGroupSet removeConsumer(ConsumerId consumerId) {
+        SimpleMessageGroupSet result = new SimpleMessageGroupSet();
+        Set<String> groups = ownedGroups.remove(consumerId);
+        if (groups != null) {
+            for (String group : groups) {
+                Stripe stripe = stripeFor(group);
+                synchronized (stripe) {
+                    // the group may have moved on since it was indexed
+                    if (consumerId.equals(stripe.groups.get(group))) {
+                        stripe.groups.remove(group);
+                        result.add(group);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void removeAll() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.groups.clear();
+            }
+        }
+        ownedGroups.clear();
+        Destination destination = this.destination;
+        if (destination != null) {
+            for (Subscription s : destination.getConsumers()) {
+                s.getConsumerInfo().clearAssignedGroupCount(destination.getActiveMQDestination());
+            }
+        }
+    }
+
+    @Override
+    public Map<String, String> getGroups() {
+        Map<String, String> result = new HashMap<String, String>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (Map.Entry<String, ConsumerId> entry : stripe.groups.entrySet()) {
+                    result.put(entry.getKey(), entry.getValue().toString());
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String getType() {
+        return "striped";
+    }
+
+    @Override
+    public void setDestination(Destination destination) {
+        this.destination = destination;
+    }
+
+    public int getMaximumCacheSize() {
+        return maximumCacheSize;
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    int getCacheCapacity() {
+        int capacity = 0;
+        for (Stripe stripe : stripes) {
+            capacity += stripe.maximumSize;
+        }
+        return capacity;
+    }
+
+    @Override
+    public String toString() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.groups.size();
+            }
+        }
+        return "message groups: " + size;
+    }
+
+    private Stripe stripeFor(String groupId) {
+        int h = groupId.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (stripes.length - 1)];
+    }
+
+    private void removeOwned(ConsumerId consumerId, String groupId) {
+        Set<String> groups = ownedGroups.get(consumerId);
+        if (groups != null) {
+            groups.remove(groupId);
+        }
+    }
+
+    private void evicted(String groupId, ConsumerId consumerId) {
+        removeOwned(consumerId, groupId);
+        Destination destination = this.destination;
+        if (destination != null) {
+            for (Subscription s : destination.getConsumers()) {
+                if (s.getConsumerInfo().getConsumerId().equals(consumerId)) {
+                    s.getConsumerInfo().decrementAssignedGroupCount(destination.getActiveMQDestination());
+                    break;
+                }
+            }
+        }
+    }
+
+    private final class Stripe {
+        private final int maximumSize;
+        private final LinkedHashMap<String, ConsumerId> groups;
+
+        Stripe(final int maximumSize) {
+            this.maximumSize = maximumSize;
+            groups = new LinkedHashMap<String, ConsumerId>(16, 0.75f, maximumSize > 0) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ConsumerId> eldest) {
+                    if (maximumSize > 0 && size() > maximumSize) {
+                        evicted(eldest.getKey(), eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.group;
+
+/**
+ * A factory to create instances of {@link StripedMessageGroupMap} when implementing the
+ * <a href="http://activemq.apache.org/message-groups.html">Message Groups</a> functionality.
+ *
+ * @org.apache.xbean.XBean
+ */
+public class StripedMessageGroupMapFactory implements MessageGroupMapFactory {
+
+    private int stripeCount = 64;
+    private int cacheSize = 0;
+
+    @Override
+    public MessageGroupMap createMessageGroupMap() {
+        return new StripedMessageGroupMap(getStripeCount(), getCacheSize());
+    }
+
+    public int getStripeCount() {
+        return stripeCount;
+    }
+
+    /**
+     * Sets the number of independently locked stripes the groups are spread over,
+     * rounded up to a power of two.
+     */
+    public void setStripeCount(int stripeCount) {
+        this.stripeCount = stripeCount;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Sets the maximum number of groups held, shared equally between the stripes.
+     * When it is smaller than the stripe count fewer stripes are used.
+     * Zero, the default, keeps every group until it is closed or its consumer goes.
+     */
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+}
@@ -17,6 +17,8 @@
 package org.apache.activemq.broker.region.virtual;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicReference;
@@ -77,7 +79,7 @@ public class VirtualTopicInterceptor extends BaseVirtualDestinationFilter {
     @Override
     protected void send(final ProducerBrokerExchange context, final Message message, ActiveMQDestination destination) throws Exception {
         final Broker broker = context.getConnectionContext().getBroker();
-        final Set<Destination> destinations = broker.getDestinations(destination);
+        final List<Destination> destinations = selectDestinations(broker, message, broker.getDestinations(destination));
         final int numDestinations = destinations.size();
 
         final LocalTransactionId localBrokerTransactionToCoalesceJournalSync =
@@ -90,28 +92,24 @@ public class VirtualTopicInterceptor extends BaseVirtualDestinationFilter {
                 final BrokerService brokerService = broker.getBrokerService();
 
                 for (final Destination dest : destinations) {
-                    if (shouldDispatch(broker, message, dest)) {
-                        brokerService.getTaskRunnerFactory().execute(new Runnable() {
-                            @Override
-                            public void run() {
-                                try {
-                                    if (exceptionAtomicReference.get() == null) {
-                                        dest.send(context, copy(message, dest.getActiveMQDestination()));
-                                    }
-                                } catch (ResourceAllocationException e) {
-                                    if (!dropMessageOnResourceLimit) {
-                                        exceptionAtomicReference.set(e);
-                                    }
-                                } catch (Exception e) {
+                    brokerService.getTaskRunnerFactory().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                if (exceptionAtomicReference.get() == null) {
+                                    dest.send(context, copy(message, dest.getActiveMQDestination()));
+                                }
+                            } catch (ResourceAllocationException e) {
+                                if (!dropMessageOnResourceLimit) {
                                     exceptionAtomicReference.set(e);
-                                } finally {
-                                    concurrent.countDown();
                                 }
+                            } catch (Exception e) {
+                                exceptionAtomicReference.set(e);
+                            } finally {
+                                concurrent.countDown();
                             }
-                        });
-                    } else {
-                        concurrent.countDown();
-                    }
+                        }
+                    });
                 }
                 concurrent.await();
                 if (exceptionAtomicReference.get() != null) {
@@ -120,13 +118,11 @@ public class VirtualTopicInterceptor extends BaseVirtualDestinationFilter {
 
             } else {
                 for (final Destination dest : destinations) {
-                    if (shouldDispatch(broker, message, dest)) {
-                        try {
-                            dest.send(context, copy(message, dest.getActiveMQDestination()));
-                        } catch (ResourceAllocationException e) {
-                            if (!dropMessageOnResourceLimit) {
-                                throw e;
-                            }
+                    try {
+                        dest.send(context, copy(message, dest.getActiveMQDestination()));
+                    } catch (ResourceAllocationException e) {
+                        if (!dropMessageOnResourceLimit) {
+                            throw e;
                         }
                     }
                 }
@@ -165,6 +161,20 @@ public class VirtualTopicInterceptor extends BaseVirtualDestinationFilter {
         }
     }
 
+    /**
+     * @return the destinations of those matching the consumer queue wildcard that the
+     *         message should be dispatched to
+     */
+    protected List<Destination> selectDestinations(Broker broker, Message message, Set<Destination> destinations) throws IOException {
+        List<Destination> selected = new ArrayList<Destination>(destinations.size());
+        for (Destination dest : destinations) {
+            if (shouldDispatch(broker, message, dest)) {
+                selected.add(dest);
+            }
+        }
+        return selected;
+    }
+
     protected boolean shouldDispatch(Broker broker, Message message, Destination dest) throws IOException {
     	//if can't find .* in the prefix, default back to old logic and return true
     	return prefix.contains(".*") && !prefix.startsWith("*") ? dest.getName().startsWith(prefix.substring(0, prefix.indexOf(".*"))) : true;
@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.virtual;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.Subscription;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.filter.BooleanExpression;
+import org.apache.activemq.filter.MessageEvaluationContext;
+import org.apache.activemq.filter.NonCachedMessageEvaluationContext;
+import org.apache.activemq.plugin.SubQueueSelectorCacheBroker;
+import org.apache.activemq.selector.SelectorParser;
+import org.apache.activemq.util.LRUCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Routing index over the selectors of the consumer queues of a virtual topic.
+ *
+ * Each queue has an entry with the selectors of its consumers and those cached for
+ * it by the {@link SubQueueSelectorCacheBroker}, which is only rebuilt when either
+ * changes. Selectors are compiled once and shared by all queues, and while routing
+ * a message each distinct selector is evaluated once however many queues use it.
+ * Consumers that have to be matched on more than their selector, such as network
+ * bridge consumers with an additional predicate, are matched one by one.
+ */
+final class VirtualTopicSelectorIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualTopicSelectorIndex.class);
+
+    private final LRUCache<String, BooleanExpression> expressionCache = new LRUCache<String, BooleanExpression>();
+    private final ConcurrentMap<ActiveMQDestination, QueueSelectors> queues = new ConcurrentHashMap<>();
+    private final SubQueueSelectorCacheBroker selectorCachePlugin;
+
+    VirtualTopicSelectorIndex(SubQueueSelectorCacheBroker selectorCachePlugin) {
+        this.selectorCachePlugin = selectorCachePlugin;
+    }
+
+    /**
+     * Drops the entries of queues that are no longer among the given destinations.
+     */
+    void retainAll(Set<Destination> destinations) {
+        for (Iterator<QueueSelectors> iterator = queues.values().iterator(); iterator.hasNext();) {
+            if (!destinations.contains(iterator.next().destination)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the routing of the given message, to be used from a single thread
+     */
+    Routing route(Message message) {
+        return new Routing(message);
+    }
+
+    private QueueSelectors getSelectors(Destination dest) {
+        ActiveMQDestination destination = dest.getActiveMQDestination();
+        List<Subscription> consumers = dest.getConsumers();
+        Set<String> cachedSelectors = selectorCachePlugin != null
+                ? selectorCachePlugin.getSelectorsForDestination(destination.getQualifiedName())
+                : Collections.<String>emptySet();
+
+        QueueSelectors selectors = queues.get(destination);
+        if (selectors == null || selectors.destination != dest
+                || !selectors.consumers.equals(consumers) || !selectors.cachedSelectors.equals(cachedSelectors)) {
+            selectors = new QueueSelectors(dest, consumers, cachedSelectors);
+            if (consumers.isEmpty() && cachedSelectors.isEmpty()) {
+                queues.remove(destination);
+            } else {
+                queues.put(destination, selectors);
+            }
+        }
+        return selectors;
+    }
+
+    private BooleanExpression getExpression(String selector) throws Exception {
+        BooleanExpression result;
+        synchronized (expressionCache) {
+            result = expressionCache.get(selector);
+            if (result == null) {
+                result = SelectorParser.parse(selector);
+                expressionCache.put(selector, result);
+            }
+        }
+        return result;
+    }
+
+    final class Routing {
+
+        private final Message message;
+        private final MessageEvaluationContext context = new NonCachedMessageEvaluationContext();
+        private final Map<String, Boolean> results = new HashMap<>();
+
+        private Routing(Message message) {
+            this.message = message;
+            context.setMessageReference(message);
+        }
+
+        boolean matches(Destination dest) throws IOException {
+            QueueSelectors selectors = getSelectors(dest);
+            context.setDestination(dest.getActiveMQDestination());
+            if (!selectors.exact && message.getTargetConsumerId() == null) {
+                return selectors.matchAll || matchesAny(selectors.selectors);
+            }
+            // consumers have to be matched on more than their selector
+            for (Subscription sub : selectors.consumers) {
+                if (sub.matches(message, context)) {
+                    return true;
+                }
+            }
+            LOG.debug("No active consumer match found. Will try cache if configured...");
+            return matchesAny(selectors.cachedSelectors);
+        }
+
+        private boolean matchesAny(Set<String> selectors) {
+            for (String selector : selectors) {
+                Boolean result = results.get(selector);
+                if (result == null) {
+                    result = evaluate(selector);
+                    results.put(selector, result);
+                }
+                if (result) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean evaluate(String selector) {
+            try {
+                return getExpression(selector).matches(context);
+            } catch (Exception e) {
+                LOG.error(e.getMessage(), e);
+                return false;
+            }
+        }
+    }
+
+    private static final class QueueSelectors {
+
+        final Destination destination;
+        final List<Subscription> consumers;
+        final Set<String> cachedSelectors;
+        // distinct selectors of the consumers followed by the cached ones
+        final Set<String> selectors = new LinkedHashSet<>();
+        final boolean matchAll;
+        final boolean exact;
+
+        QueueSelectors(Destination destination, List<Subscription> consumers, Set<String> cachedSelectors) {
+            this.destination = destination;
+            this.consumers = consumers;
+            this.cachedSelectors = cachedSelectors;
+
+            boolean matchAll = false;
+            boolean exact = false;
+            for (Subscription sub : consumers) {
+                if (sub.getConsumerInfo().getAdditionalPredicate() != null
+                        || (sub.getContext() != null && sub.getContext().getMessageAuthorizationPolicy() != null)) {
+                    exact = true;
+                } else if (sub.getSelector() == null) {
+                    matchAll = true;
+                } else {
+                    selectors.add(sub.getSelector());
+                }
+            }
+            selectors.addAll(cachedSelectors);
+            this.exact = exact;
+            this.matchAll = matchAll;
+        }
+    }
+}
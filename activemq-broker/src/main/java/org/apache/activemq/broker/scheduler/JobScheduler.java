@@ -16,6 +16,7 @@
  */
 package org.apache.activemq.broker.scheduler;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.activemq.util.ByteSequence;
@@ -133,6 +134,20 @@ public interface JobScheduler {
      */
     void remove(String jobId) throws Exception;
 
+    /**
+     * remove all the jobs with a matching jobId
+     *
+     * @param jobIds
+     *      The unique Job Ids to search for and remove from the scheduled set of jobs.
+     *
+     * @throws Exception if an error occurs while removing the Jobs.
+     */
+    default void remove(Collection<String> jobIds) throws Exception {
+        for (String jobId : jobIds) {
+            remove(jobId);
+        }
+    }
+
     /**
      * remove all the Jobs from the scheduler
      *
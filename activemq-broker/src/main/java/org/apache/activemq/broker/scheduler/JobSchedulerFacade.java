@@ -16,6 +16,7 @@
  */
 package org.apache.activemq.broker.scheduler;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
@@ -104,6 +105,14 @@ public class JobSchedulerFacade implements JobScheduler {
         }
     }
 
+    @Override
+    public void remove(Collection<String> jobIds) throws Exception {
+        JobScheduler js = this.broker.getInternalScheduler();
+        if (js != null) {
+            js.remove(jobIds);
+        }
+    }
+
     @Override
     public void removeAllJobs() throws Exception {
         JobScheduler js = this.broker.getInternalScheduler();
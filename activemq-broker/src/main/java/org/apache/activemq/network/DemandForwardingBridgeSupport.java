@@ -19,21 +19,28 @@ package org.apache.activemq.network;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -169,13 +176,28 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
     private final ExecutorService serialExecutor = Executors.newSingleThreadExecutor();
     //Use a new executor for processing BrokerSubscriptionInfo so we don't block other threads
     private final ExecutorService syncExecutor = Executors.newSingleThreadExecutor();
+    //Only used when forwarding in batches, see NetworkBridgeConfiguration.setForwardBatchSize
+    private final ExecutorService forwardExecutor;
+    private final ConcurrentLinkedQueue<MessageDispatch> pendingForwards = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean forwardScheduled = new AtomicBoolean();
+    //Only used when coalescing advisories, see NetworkBridgeConfiguration.setAdvisoryCoalescePeriod
+    private final ScheduledExecutorService advisoryExecutor;
+    private final Map<ConsumerId, ConsumerInfo> pendingConsumerAdds = new LinkedHashMap<>();
+    private final Set<ConsumerId> pendingConsumerRemoves = new LinkedHashSet<>();
+    private final Object advisoryFlushLock = new Object();
+    private boolean advisoryFlushScheduled;
     private Transport duplexInboundLocalBroker = null;
     private ProducerInfo duplexInboundLocalProducerInfo;
+    //Only used when bridging over several lanes, see NetworkBridgeConfiguration.setBridgeLanes
+    private int lane;
+    private int laneCount = 1;
 
     public DemandForwardingBridgeSupport(NetworkBridgeConfiguration configuration, Transport localBroker, Transport remoteBroker) {
         this.configuration = configuration;
         this.localBroker = localBroker;
         this.remoteBroker = remoteBroker;
+        this.forwardExecutor = configuration.getForwardBatchSize() > 0 ? Executors.newSingleThreadExecutor() : null;
+        this.advisoryExecutor = configuration.getAdvisoryCoalescePeriod() > 0 ? Executors.newSingleThreadScheduledExecutor() : null;
     }
 
     public void duplexStart(TransportConnection connection, BrokerInfo localBrokerInfo, BrokerInfo remoteBrokerInfo) throws Exception {
@@ -312,6 +334,16 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
                                     List<Runnable> pendingTasks = syncExecutor.shutdownNow();
                                     LOG.info("pending tasks on stop {}", pendingTasks);
                                 }
+                                if (advisoryExecutor != null) {
+                                    advisoryExecutor.shutdownNow();
+                                }
+                                if (forwardExecutor != null) {
+                                    forwardExecutor.shutdown();
+                                    if (!forwardExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                                        List<Runnable> pendingTasks = forwardExecutor.shutdownNow();
+                                        LOG.info("pending tasks on stop {}", pendingTasks);
+                                    }
+                                }
                                 localBroker.oneway(new ShutdownInfo());
                                 remoteBroker.oneway(new ShutdownInfo());
                             } catch (Throwable e) {
@@ -495,7 +527,7 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
 
                     localConnectionInfo = new ConnectionInfo();
                     localConnectionInfo.setConnectionId(new ConnectionId(idGenerator.generateId()));
-                    localClientId = configuration.getName() + configuration.getClientIdToken() + remoteBrokerName + configuration.getClientIdToken() + "inbound" + configuration.getClientIdToken() + configuration.getBrokerName();
+                    localClientId = getLaneName() + configuration.getClientIdToken() + remoteBrokerName + configuration.getClientIdToken() + "inbound" + configuration.getClientIdToken() + configuration.getBrokerName();
                     localConnectionInfo.setClientId(localClientId);
                     localConnectionInfo.setUserName(configuration.getUserName());
                     localConnectionInfo.setPassword(configuration.getPassword());
@@ -523,7 +555,7 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
 
                         ConnectionInfo duplexLocalConnectionInfo = new ConnectionInfo();
                         duplexLocalConnectionInfo.setConnectionId(new ConnectionId(idGenerator.generateId()));
-                        duplexLocalConnectionInfo.setClientId(configuration.getName() + configuration.getClientIdToken() + remoteBrokerName + configuration.getClientIdToken() + "inbound" + configuration.getClientIdToken() + "duplex"
+                        duplexLocalConnectionInfo.setClientId(getLaneName() + configuration.getClientIdToken() + remoteBrokerName + configuration.getClientIdToken() + "inbound" + configuration.getClientIdToken() + "duplex"
                                 + configuration.getClientIdToken() + configuration.getBrokerName());
                         duplexLocalConnectionInfo.setUserName(configuration.getUserName());
                         duplexLocalConnectionInfo.setPassword(configuration.getPassword());
@@ -610,7 +642,7 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
                 }
                 remoteConnectionInfo = new ConnectionInfo();
                 remoteConnectionInfo.setConnectionId(new ConnectionId(idGenerator.generateId()));
-                remoteConnectionInfo.setClientId(configuration.getName() + configuration.getClientIdToken() + configuration.getBrokerName() + configuration.getClientIdToken() + "outbound");
+                remoteConnectionInfo.setClientId(getLaneName() + configuration.getClientIdToken() + configuration.getBrokerName() + configuration.getClientIdToken() + "outbound");
                 
                 if(configuration.getRemoteUserName() != null) {
                     remoteConnectionInfo.setUserName(configuration.getRemoteUserName());
@@ -728,7 +760,7 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
                 if (command.isMessageDispatch()) {
                     safeWaitUntilStarted();
                     MessageDispatch md = (MessageDispatch) command;
-                    serviceRemoteConsumerAdvisory(md.getMessage().getDataStructure());
+                    serviceRemoteAdvisory(md.getMessage().getDataStructure());
                     ackAdvisory(md.getMessage());
                 } else if (command.isBrokerInfo()) {
                     futureRemoteBrokerInfo.set((BrokerInfo) command);
@@ -802,7 +834,7 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
                         if (command.isMessage()) {
                             final ActiveMQMessage message = (ActiveMQMessage) command;
                             if (NetworkBridgeFilter.isAdvisoryInterpretedByNetworkBridge(message)) {
-                                serviceRemoteConsumerAdvisory(message.getDataStructure());
+                                serviceRemoteAdvisory(message.getDataStructure());
                                 ackAdvisory(message);
                             } else {
                                 if (!isPermissableDestination(message.getDestination(), true)) {
@@ -934,6 +966,76 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
         }
     }
 
+    private void serviceRemoteAdvisory(DataStructure data) throws IOException {
+        if (advisoryExecutor != null) {
+            if (data.getClass() == ConsumerInfo.class || data.getClass() == RemoveInfo.class) {
+                coalesceConsumerAdvisory(data);
+                return;
+            }
+            // anything else must see the consumer changes that came before it
+            flushConsumerAdvisories();
+        }
+        serviceRemoteConsumerAdvisory(data);
+    }
+
+    private void coalesceConsumerAdvisory(DataStructure data) {
+        synchronized (pendingConsumerAdds) {
+            if (data.getClass() == ConsumerInfo.class) {
+                ConsumerInfo info = (ConsumerInfo) data;
+                pendingConsumerAdds.put(info.getConsumerId(), info);
+            } else {
+                ConsumerId id = (ConsumerId) ((RemoveInfo) data).getObjectId();
+                // a consumer that went away before it was bridged is simply dropped
+                if (pendingConsumerAdds.remove(id) == null) {
+                    pendingConsumerRemoves.add(id);
+                }
+            }
+            if (!advisoryFlushScheduled && !disposed.get()) {
+                try {
+                    advisoryExecutor.schedule(() -> {
+                        try {
+                            flushConsumerAdvisories();
+                        } catch (Throwable e) {
+                            serviceRemoteException(e);
+                        }
+                    }, configuration.getAdvisoryCoalescePeriod(), TimeUnit.MILLISECONDS);
+                    advisoryFlushScheduled = true;
+                } catch (RejectedExecutionException e) {
+                    LOG.debug("{} not applying consumer advisories, bridge is stopping", configuration.getBrokerName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the consumer advisories collected since the last flush, adds first
+     * so that demand moving from one consumer to another on a destination is never
+     * seen as the destination having no consumers.
+     */
+    private void flushConsumerAdvisories() throws IOException {
+        synchronized (advisoryFlushLock) {
+            final List<ConsumerInfo> adds;
+            final List<ConsumerId> removes;
+            synchronized (pendingConsumerAdds) {
+                adds = new ArrayList<>(pendingConsumerAdds.values());
+                removes = new ArrayList<>(pendingConsumerRemoves);
+                pendingConsumerAdds.clear();
+                pendingConsumerRemoves.clear();
+                advisoryFlushScheduled = false;
+            }
+            if (!adds.isEmpty() || !removes.isEmpty()) {
+                LOG.debug("{} applying {} consumer adds and {} removes from {}",
+                        configuration.getBrokerName(), adds.size(), removes.size(), remoteBrokerName);
+            }
+            for (ConsumerInfo info : adds) {
+                serviceRemoteConsumerAdvisory(info);
+            }
+            for (ConsumerId id : removes) {
+                serviceRemoteConsumerAdvisory(new RemoveInfo(id));
+            }
+        }
+    }
+
     private void serviceRemoteConsumerAdvisory(DataStructure data) throws IOException {
         final int networkTTL = configuration.getConsumerTTL();
         if (data.getClass() == ConsumerInfo.class) {
@@ -966,6 +1068,12 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
                 return;
             }
 
+            if (!isLaneDestination(info.getDestination())) {
+                LOG.trace("{} Ignoring sub from {}, destination {} is bridged by another lane: {}",
+                        configuration.getBrokerName(), remoteBrokerName, info.getDestination(), info);
+                return;
+            }
+
             // in a cyclic network there can be multiple bridges per broker that can propagate
             // a network subscription so there is a need to synchronize on a shared entity
             // if duplicate suppression is required
@@ -1226,77 +1334,13 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
             try {
                 if (command.isMessageDispatch()) {
                     safeWaitUntilStarted();
-                    networkBridgeStatistics.getEnqueues().increment();
-                    final MessageDispatch md = (MessageDispatch) command;
-                    final DemandSubscription sub = subscriptionMapByLocalId.get(md.getConsumerId());
-                    if (sub != null && md.getMessage() != null && sub.incrementOutstandingResponses()) {
-
-                        if (suppressMessageDispatch(md, sub)) {
-                            LOG.debug("{} message not forwarded to {} because message came from there or fails TTL, brokerPath: {}, message: {}",
-                                    configuration.getBrokerName(), remoteBrokerName, Arrays.toString(md.getMessage().getBrokerPath()), md.getMessage());
-                            // still ack as it may be durable
-                            try {
-                                localBroker.oneway(new MessageAck(md, MessageAck.INDIVIDUAL_ACK_TYPE, 1));
-                            } finally {
-                                sub.decrementOutstandingResponses();
-                            }
-                            return;
-                        }
-
-                        Message message = configureMessage(md);
-                        LOG.debug("bridging ({} -> {}), consumer: {}, destination: {}, brokerPath: {}, message: {}",
-                                configuration.getBrokerName(), remoteBrokerName, md.getConsumerId(), message.getDestination(), Arrays.toString(message.getBrokerPath()), (LOG.isTraceEnabled() ? message : message.getMessageId()));
-                        if (isDuplex() && NetworkBridgeFilter.isAdvisoryInterpretedByNetworkBridge(message)) {
-                            try {
-                                // never request b/c they are eventually                     acked async
-                                remoteBroker.oneway(message);
-                            } finally {
-                                sub.decrementOutstandingResponses();
-                            }
-                            return;
-                        }
-                        if (isPermissableDestination(md.getDestination())) {
-                           if (message.isPersistent() || configuration.isAlwaysSyncSend()) {
-
-                              // The message was not sent using async send, so we should only
-                              // ack the local broker when we get confirmation that the remote
-                              // broker has received the message.
-                              remoteBroker.asyncRequest(message, new ResponseCallback() {
-                                 @Override
-                                 public void onCompletion(FutureResponse future) {
-                                    try {
-                                       Response response = future.getResult();
-                                       if (response.isException()) {
-                                          ExceptionResponse er = (ExceptionResponse) response;
-                                          serviceLocalException(md, er.getException());
-                                       } else {
-                                          localBroker.oneway(new MessageAck(md, MessageAck.INDIVIDUAL_ACK_TYPE, 1));
-                                          networkBridgeStatistics.getDequeues().increment();
-                                       }
-                                    } catch (IOException e) {
-                                       serviceLocalException(md, e);
-                                    } finally {
-                                       sub.decrementOutstandingResponses();
-                                    }
-                                 }
-                              });
-
-                           } else {
-                              // If the message was originally sent using async send, we will
-                              // preserve that QOS by bridging it using an async send (small chance
-                              // of message loss).
-                              try {
-                                 remoteBroker.oneway(message);
-                                 localBroker.oneway(new MessageAck(md, MessageAck.INDIVIDUAL_ACK_TYPE, 1));
-                                 networkBridgeStatistics.getDequeues().increment();
-                              } finally {
-                                 sub.decrementOutstandingResponses();
-                              }
-                           }
-                           serviceOutbound(message);
+                    if (forwardExecutor != null) {
+                        pendingForwards.add((MessageDispatch) command);
+                        if (forwardScheduled.compareAndSet(false, true)) {
+                            forwardExecutor.execute(this::forwardPendingDispatches);
                         }
                     } else {
-                        LOG.debug("No subscription registered with this network bridge for consumerId: {} for message: {}", md.getConsumerId(), md.getMessage());
+                        forwardMessageDispatch((MessageDispatch) command);
                     }
                 } else if (command.isBrokerInfo()) {
                     futureLocalBrokerInfo.set((BrokerInfo) command);
@@ -1323,6 +1367,154 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
         }
     }
 
+    /**
+     * Forwards a message dispatched to one of the bridge's local consumers on to the
+     * remote broker.
+     *
+     * @return true if anything was written to the remote broker.
+     */
+    private boolean forwardMessageDispatch(final MessageDispatch md) throws Exception {
+        networkBridgeStatistics.getEnqueues().increment();
+        final DemandSubscription sub = subscriptionMapByLocalId.get(md.getConsumerId());
+        if (sub != null && md.getMessage() != null && sub.incrementOutstandingResponses()) {
+
+            if (suppressMessageDispatch(md, sub)) {
+                LOG.debug("{} message not forwarded to {} because message came from there or fails TTL, brokerPath: {}, message: {}",
+                        configuration.getBrokerName(), remoteBrokerName, Arrays.toString(md.getMessage().getBrokerPath()), md.getMessage());
+                // still ack as it may be durable
+                try {
+                    localBroker.oneway(new MessageAck(md, MessageAck.INDIVIDUAL_ACK_TYPE, 1));
+                } finally {
+                    sub.decrementOutstandingResponses();
+                }
+                return false;
+            }
+
+            Message message = configureMessage(md);
+            LOG.debug("bridging ({} -> {}), consumer: {}, destination: {}, brokerPath: {}, message: {}",
+                    configuration.getBrokerName(), remoteBrokerName, md.getConsumerId(), message.getDestination(), Arrays.toString(message.getBrokerPath()), (LOG.isTraceEnabled() ? message : message.getMessageId()));
+            if (isDuplex() && NetworkBridgeFilter.isAdvisoryInterpretedByNetworkBridge(message)) {
+                try {
+                    // never request b/c they are eventually                     acked async
+                    remoteBroker.oneway(message);
+                } finally {
+                    sub.decrementOutstandingResponses();
+                }
+                return true;
+            }
+            if (isPermissableDestination(md.getDestination())) {
+               if (message.isPersistent() || configuration.isAlwaysSyncSend()) {
+
+                  // The message was not sent using async send, so we should only
+                  // ack the local broker when we get confirmation that the remote
+                  // broker has received the message.
+                  remoteBroker.asyncRequest(message, new ResponseCallback() {
+                     @Override
+                     public void onCompletion(FutureResponse future) {
+                        try {
+                           Response response = future.getResult();
+                           if (response.isException()) {
+                              ExceptionResponse er = (ExceptionResponse) response;
+                              serviceLocalException(md, er.getException());
+                           } else {
+                              localBroker.oneway(new MessageAck(md, MessageAck.INDIVIDUAL_ACK_TYPE, 1));
+                              networkBridgeStatistics.getDequeues().increment();
+                           }
+                        } catch (IOException e) {
+                           serviceLocalException(md, e);
+                        } finally {
+                           sub.decrementOutstandingResponses();
+                        }
+                     }
+                  });
+
+               } else {
+                  // If the message was originally sent using async send, we will
+                  // preserve that QOS by bridging it using an async send (small chance
+                  // of message loss).
+                  try {
+                     remoteBroker.oneway(message);
+                     localBroker.oneway(new MessageAck(md, MessageAck.INDIVIDUAL_ACK_TYPE, 1));
+                     networkBridgeStatistics.getDequeues().increment();
+                  } finally {
+                     sub.decrementOutstandingResponses();
+                  }
+               }
+               serviceOutbound(message);
+               return true;
+            }
+        } else {
+            LOG.debug("No subscription registered with this network bridge for consumerId: {} for message: {}", md.getConsumerId(), md.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * Drains the dispatches queued by the local transport thread, forwarding them in
+     * batches of at most forwardBatchSize.  The local thread keeps queueing while a
+     * batch is being written so batches grow with load and stay at a single message
+     * when the bridge is idle.
+     */
+    private void forwardPendingDispatches() {
+        final TcpTransport tcpTransport = remoteBroker.narrow(TcpTransport.class);
+        final int batchSize = configuration.getForwardBatchSize();
+        final List<MessageDispatch> batch = new ArrayList<>(batchSize);
+
+        do {
+            MessageDispatch md;
+            while (!disposed.get() && (md = pendingForwards.poll()) != null) {
+                batch.add(md);
+                if (batch.size() == batchSize || pendingForwards.isEmpty()) {
+                    forwardBatch(tcpTransport, batch);
+                    batch.clear();
+                }
+            }
+            forwardScheduled.set(false);
+        } while (!disposed.get() && !pendingForwards.isEmpty() && forwardScheduled.compareAndSet(false, true));
+    }
+
+    private void forwardBatch(TcpTransport tcpTransport, List<MessageDispatch> batch) {
+        final boolean deferring = tcpTransport != null && batch.size() > 1;
+        boolean flushed = false;
+        try {
+            if (deferring) {
+                tcpTransport.deferFlush(true);
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                boolean last = i == batch.size() - 1;
+                if (deferring && last) {
+                    // the last send flushes what the batch buffered
+                    tcpTransport.deferFlush(false);
+                }
+                try {
+                    boolean written = forwardMessageDispatch(batch.get(i));
+                    if (last) {
+                        flushed = written;
+                    }
+                } catch (Throwable e) {
+                    LOG.warn("Caught an exception processing local command", e);
+                    serviceLocalException(e);
+                }
+            }
+        } finally {
+            if (deferring) {
+                tcpTransport.deferFlush(false);
+            }
+        }
+
+        if (deferring && !flushed && !disposed.get()) {
+            // The last message wasn't sent on, push out whatever was left in the
+            // socket buffer, by this batch or by any other thread sharing the
+            // transport while the flush was deferred.
+            try {
+                remoteBroker.oneway(new KeepAliveInfo());
+            } catch (IOException e) {
+                serviceLocalException(e);
+            }
+        }
+    }
+
     private boolean suppressMessageDispatch(MessageDispatch md, DemandSubscription sub) throws Exception {
         boolean suppress = false;
         // for durable subs, suppression via filter leaves dangling acks so we
@@ -1416,6 +1608,52 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
         return true;
     }
 
+    /**
+     * When bridging over several lanes each destination has its subscriptions
+     * created by exactly one of them. Queues are spread over the lanes by name.
+     * Topics all stay on the first lane, wildcard subscriptions overlap with the
+     * topics they match and a message must be forwarded by one demand subscription
+     * only.
+     *
+     * @return true if this bridge is the lane for the given destination
+     */
+    protected boolean isLaneDestination(ActiveMQDestination destination) {
+        if (laneCount <= 1) {
+            return true;
+        }
+        if (destination.isTopic()) {
+            return lane == 0;
+        }
+        return Math.floorMod(destination.hashCode(), laneCount) == lane;
+    }
+
+    /**
+     * Makes this bridge one of several to the same remote broker.
+     *
+     * @param lane the index of this bridge, from zero
+     * @param laneCount the number of bridges to the remote broker
+     */
+    public void setLane(int lane, int laneCount) {
+        this.lane = lane;
+        this.laneCount = laneCount;
+    }
+
+    public int getLane() {
+        return lane;
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    /**
+     * @return the name used for the client ids of this bridge's connections, lanes
+     * other than the first need their own to be allowed to connect alongside it.
+     */
+    protected String getLaneName() {
+        return lane == 0 ? configuration.getName() : configuration.getName() + "-lane" + lane;
+    }
+
     /**
      * Subscriptions for these destinations are always created
      */
@@ -1423,6 +1661,9 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
         ActiveMQDestination[] dests = staticallyIncludedDestinations;
         if (dests != null) {
             for (ActiveMQDestination dest : dests) {
+                if (!isLaneDestination(dest)) {
+                    continue;
+                }
                 if (isPermissableDestination(dest)) {
                     DemandSubscription sub = createDemandSubscription(dest, null, null);
                     if (sub != null) {
@@ -19,7 +19,9 @@ package org.apache.activemq.network;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -117,65 +119,83 @@ public class DiscoveryNetworkConnector extends NetworkConnector implements Disco
                 LOG.warn("could not apply query parameters: {} to: {}",parameters, connectUri, e);
             }
 
+            int lanes = getLaneCount();
+            for (int lane = 0; lane < lanes; lane++) {
+                if (!startBridge(uri, connectUri, event, lane, lanes)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean startBridge(URI uri, URI connectUri, DiscoveryEvent event, int lane, int lanes) {
+        if (lanes > 1) {
+            LOG.info("Establishing network connection lane {} of {} from {} to {}", lane + 1, lanes, localURI, connectUri);
+        } else {
             LOG.info("Establishing network connection from {} to {}", localURI, connectUri);
+        }
 
-            Transport remoteTransport;
-            Transport localTransport;
+        Transport remoteTransport;
+        Transport localTransport;
+        try {
+            // Allows the transport to access the broker's ssl configuration.
+            if (getSslContext() != null) {
+                SslContext.setCurrentSslContext(getSslContext());
+            } else {
+                SslContext.setCurrentSslContext(getBrokerService().getSslContext());
+            }
             try {
-                // Allows the transport to access the broker's ssl configuration.
-                if (getSslContext() != null) {
-                    SslContext.setCurrentSslContext(getSslContext());
-                } else {
-                    SslContext.setCurrentSslContext(getBrokerService().getSslContext());
-                }
-                try {
-                    remoteTransport = TransportFactory.connect(connectUri);
-                } catch (Exception e) {
-                    LOG.warn("Could not connect to remote URI: {}: {}", connectUri, e.getMessage());
-                    LOG.debug("Connection failure exception: ", e);
-                    try {
-                        discoveryAgent.serviceFailed(event);
-                    } catch (IOException e1) {
-                        LOG.debug("Failure while handling create remote transport failure event: {}", e1.getMessage(), e1);
-                    }
-                    return;
-                }
+                remoteTransport = TransportFactory.connect(connectUri);
+            } catch (Exception e) {
+                LOG.warn("Could not connect to remote URI: {}: {}", connectUri, e.getMessage());
+                LOG.debug("Connection failure exception: ", e);
                 try {
-                    localTransport = createLocalTransport();
-                } catch (Exception e) {
-                    ServiceSupport.dispose(remoteTransport);
-                    LOG.warn("Could not connect to local URI: {}: {}", localURI, e.getMessage());
-                    LOG.debug("Connection failure exception: ", e);
-
-                    try {
-                        discoveryAgent.serviceFailed(event);
-                    } catch (IOException e1) {
-                        LOG.debug("Failure while handling create local transport failure event: {}", e1.getMessage(), e1);
-                    }
-                    return;
+                    discoveryAgent.serviceFailed(event);
+                } catch (IOException e1) {
+                    LOG.debug("Failure while handling create remote transport failure event: {}", e1.getMessage(), e1);
                 }
-            } finally {
-                SslContext.setCurrentSslContext(null);
+                return false;
             }
-            NetworkBridge bridge = createBridge(localTransport, remoteTransport, event);
             try {
-                synchronized (bridges) {
-                    bridges.put(uri, bridge);
-                }
-                bridge.start();
+                localTransport = createLocalTransport();
             } catch (Exception e) {
-                ServiceSupport.dispose(localTransport);
                 ServiceSupport.dispose(remoteTransport);
-                LOG.warn("Could not start network bridge between: {} and: {} due to: {}", localURI, uri, e.getMessage());
-                LOG.debug("Start failure exception: ", e);
+                LOG.warn("Could not connect to local URI: {}: {}", localURI, e.getMessage());
+                LOG.debug("Connection failure exception: ", e);
+
                 try {
-                    // Will remove bridge and active event.
                     discoveryAgent.serviceFailed(event);
                 } catch (IOException e1) {
-                    LOG.debug("Discovery agent failure while handling failure event: {}", e1.getMessage(), e1);
+                    LOG.debug("Failure while handling create local transport failure event: {}", e1.getMessage(), e1);
                 }
+                return false;
+            }
+        } finally {
+            SslContext.setCurrentSslContext(null);
+        }
+        NetworkBridge bridge = createBridge(localTransport, remoteTransport, event);
+        if (lanes > 1 && bridge instanceof DemandForwardingBridgeSupport) {
+            ((DemandForwardingBridgeSupport) bridge).setLane(lane, lanes);
+        }
+        try {
+            synchronized (bridges) {
+                bridges.put(getLaneURI(uri, lane), bridge);
+            }
+            bridge.start();
+        } catch (Exception e) {
+            ServiceSupport.dispose(localTransport);
+            ServiceSupport.dispose(remoteTransport);
+            LOG.warn("Could not start network bridge between: {} and: {} due to: {}", localURI, uri, e.getMessage());
+            LOG.debug("Start failure exception: ", e);
+            try {
+                // Will remove bridge and active event.
+                discoveryAgent.serviceFailed(event);
+            } catch (IOException e1) {
+                LOG.debug("Discovery agent failure while handling failure event: {}", e1.getMessage(), e1);
             }
+            return false;
         }
+        return true;
     }
 
     @Override
@@ -192,8 +212,21 @@ public class DiscoveryNetworkConnector extends NetworkConnector implements Disco
 
             // Only remove bridge if this is the active discovery event for the URL.
             if (activeEvents.remove(uri, event)) {
+                List<NetworkBridge> lanes = new ArrayList<>();
                 synchronized (bridges) {
-                    bridges.remove(uri);
+                    lanes.add(bridges.remove(uri));
+                    for (int lane = 1; lane < getLaneCount(); lane++) {
+                        lanes.add(bridges.remove(getLaneURI(uri, lane)));
+                    }
+                }
+                if (lanes.size() > 1) {
+                    // a failed lane takes the others down with it so that they
+                    // are all established again together
+                    for (NetworkBridge bridge : lanes) {
+                        if (bridge != null) {
+                            ServiceSupport.dispose(bridge);
+                        }
+                    }
                 }
             }
         }
@@ -215,6 +248,9 @@ public class DiscoveryNetworkConnector extends NetworkConnector implements Disco
         if (discoveryAgent == null) {
             throw new IllegalStateException("You must configure the 'discoveryAgent' property");
         }
+        if (isDuplex() && getBridgeLanes() > 1) {
+            LOG.warn("Network connector {} is duplex, bridgeLanes={} is ignored", getName(), getBridgeLanes());
+        }
         this.discoveryAgent.start();
         super.handleStart();
     }
@@ -240,6 +276,21 @@ public class DiscoveryNetworkConnector extends NetworkConnector implements Disco
         super.handleStop(stopper);
     }
 
+    private int getLaneCount() {
+        return isDuplex() ? 1 : Math.max(1, getBridgeLanes());
+    }
+
+    private static URI getLaneURI(URI uri, int lane) {
+        if (lane == 0) {
+            return uri;
+        }
+        try {
+            return new URI(uri.getScheme(), uri.getSchemeSpecificPart(), "lane-" + lane);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
     protected NetworkBridge createBridge(Transport localTransport, Transport remoteTransport, final DiscoveryEvent event) {
         class DiscoverNetworkBridgeListener extends MBeanNetworkListener {
 
@@ -65,6 +65,9 @@ public class DurableConduitBridge extends ConduitBridge {
         ActiveMQDestination[] dests = configuration.isDynamicOnly() ? null : durableDestinations;
         if (dests != null) {
             for (ActiveMQDestination dest : dests) {
+                if (!isLaneDestination(dest)) {
+                    continue;
+                }
                 if (isPermissableDestination(dest) && !doesConsumerExist(dest)) {
                     try {
                         //Filtering by non-empty subscriptions, see AMQ-5875
@@ -91,7 +91,7 @@ public class MBeanNetworkListener implements NetworkBridgeListener {
 
 
     protected ObjectName createNetworkBridgeObjectName(NetworkBridge bridge) throws MalformedObjectNameException {
-        return BrokerMBeanSupport.createNetworkBridgeObjectName(connectorName, bridge.getRemoteAddress());
+        return BrokerMBeanSupport.createNetworkBridgeObjectName(connectorName, NetworkConnector.getNetworkBridgeName(bridge));
     }
 
     public void setCreatedByDuplex(boolean createdByDuplex) {
@@ -81,6 +81,9 @@ public class NetworkBridgeConfiguration {
     private long gcSweepTime = 60 * 1000;
     private boolean checkDuplicateMessagesOnDuplex = false;
     private boolean autoStart = true;
+    private int forwardBatchSize = 0;
+    private int bridgeLanes = 1;
+    private long advisoryCoalescePeriod = 0;
 
     /**
      * Bridge factory implementation - by default backed by static factory, which is default implementation and will rely change.
@@ -608,4 +611,50 @@ public class NetworkBridgeConfiguration {
     public boolean isAutoStart() {
         return autoStart;
     }
+
+    public int getForwardBatchSize() {
+        return forwardBatchSize;
+    }
+
+    /**
+     * @param forwardBatchSize when greater than zero, messages dispatched to the
+     * bridge are handed to a forwarding thread which sends up to this many of the
+     * messages waiting at a time with a single socket flush. Under load this trades
+     * a thread hop for far fewer socket writes to the remote broker, when idle each
+     * message is still forwarded on its own straight away.
+     */
+    public void setForwardBatchSize(int forwardBatchSize) {
+        this.forwardBatchSize = forwardBatchSize;
+    }
+
+    public int getBridgeLanes() {
+        return bridgeLanes;
+    }
+
+    /**
+     * @param bridgeLanes the number of bridges opened to each remote broker. When
+     * greater than one every destination is bridged by exactly one of the lanes,
+     * chosen by the hash of its name, so each lane has its own connections and
+     * dispatch and a busy destination does not hold up the others. Only applies
+     * to connectors that are not duplex.
+     */
+    public void setBridgeLanes(int bridgeLanes) {
+        this.bridgeLanes = bridgeLanes;
+    }
+
+    public long getAdvisoryCoalescePeriod() {
+        return advisoryCoalescePeriod;
+    }
+
+    /**
+     * @param advisoryCoalescePeriod when greater than zero, consumer add and remove
+     * advisories from the remote broker are collected for this many milliseconds
+     * and then applied together. A consumer that comes and goes within the period
+     * is never bridged at all, and adds are applied before removes so that demand
+     * which is only moving between consumers, as in a rolling restart, keeps its
+     * bridge subscription rather than having it torn down and created again.
+     */
+    public void setAdvisoryCoalescePeriod(long advisoryCoalescePeriod) {
+        this.advisoryCoalescePeriod = advisoryCoalescePeriod;
+    }
 }
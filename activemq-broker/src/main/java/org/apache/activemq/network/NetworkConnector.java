@@ -234,7 +234,22 @@ public abstract class NetworkConnector extends NetworkBridgeConfiguration implem
     }
 
     protected ObjectName createNetworkBridgeObjectName(NetworkBridge bridge) throws MalformedObjectNameException {
-        return BrokerMBeanSupport.createNetworkBridgeObjectName(getObjectName(), bridge.getRemoteAddress());
+        return BrokerMBeanSupport.createNetworkBridgeObjectName(getObjectName(), getNetworkBridgeName(bridge));
+    }
+
+    /**
+     * @return the name of a bridge in JMX, lanes to the same remote broker share its
+     * address so lanes other than the first add their number to it.
+     */
+    static String getNetworkBridgeName(NetworkBridge bridge) {
+        String name = bridge.getRemoteAddress();
+        if (bridge instanceof DemandForwardingBridgeSupport) {
+            int lane = ((DemandForwardingBridgeSupport) bridge).getLane();
+            if (lane > 0) {
+                name += "-lane" + lane;
+            }
+        }
+        return name;
     }
 
     // ask all the bridges as we can't know to which this consumer is tied
@@ -17,7 +17,6 @@
 package org.apache.activemq.security;
 
 import java.util.Arrays;
-import java.util.Set;
 
 import org.apache.activemq.broker.Broker;
 import org.apache.activemq.broker.BrokerFilter;
@@ -45,6 +44,7 @@ import org.apache.activemq.command.ProducerInfo;
 public class AuthorizationBroker extends BrokerFilter implements SecurityAdminMBean {
 
     private volatile AuthorizationMap authorizationMap;
+    private volatile AuthorizationDecisionCache decisionCache = new AuthorizationDecisionCache(0);
 
     public AuthorizationBroker(Broker next, AuthorizationMap authorizationMap) {
         super(next);
@@ -65,6 +65,20 @@ public class AuthorizationBroker extends BrokerFilter implements SecurityAdminMB
 
     public void setAuthorizationMap(AuthorizationMap map) {
         authorizationMap = map;
+        decisionCache.clear();
+    }
+
+    /**
+     * Sets how many authorization decisions, by the user's principals, destination
+     * and operation, are cached until the authorization map changes. Zero, the
+     * default, disables caching.
+     */
+    public void setDecisionCacheSize(int decisionCacheSize) {
+        decisionCache = new AuthorizationDecisionCache(decisionCacheSize);
+    }
+
+    boolean isAuthorized(SecurityContext securityContext, ActiveMQDestination destination, AuthorizationDecisionCache.Operation operation) {
+        return decisionCache.isAuthorized(authorizationMap, securityContext, destination, operation);
     }
 
     protected SecurityContext checkSecurityContext(ConnectionContext context) throws SecurityException {
@@ -81,19 +95,7 @@ public class AuthorizationBroker extends BrokerFilter implements SecurityAdminMB
             return true;
         }
 
-        if (!securityContext.isBrokerContext()) {
-            Set<?> allowedACLs = null;
-            if (!destination.isTemporary()) {
-                allowedACLs = authorizationMap.getAdminACLs(destination);
-            } else {
-                allowedACLs = authorizationMap.getTempDestinationAdminACLs();
-            }
-
-            if (allowedACLs != null && !securityContext.isInOneOf(allowedACLs)) {
-                return false;
-            }
-        }
-        return true;
+        return securityContext.isBrokerContext() || isAuthorized(securityContext, destination, AuthorizationDecisionCache.Operation.ADMIN);
     }
 
     @Override
@@ -148,14 +150,7 @@ public class AuthorizationBroker extends BrokerFilter implements SecurityAdminMB
     public Subscription addConsumer(ConnectionContext context, ConsumerInfo info) throws Exception {
         final SecurityContext securityContext = checkSecurityContext(context);
 
-        Set<?> allowedACLs = null;
-        if (!info.getDestination().isTemporary()) {
-            allowedACLs = authorizationMap.getReadACLs(info.getDestination());
-        } else {
-            allowedACLs = authorizationMap.getTempDestinationReadACLs();
-        }
-
-        if (!securityContext.isBrokerContext() && allowedACLs != null && !securityContext.isInOneOf(allowedACLs) ) {
+        if (!securityContext.isBrokerContext() && !isAuthorized(securityContext, info.getDestination(), AuthorizationDecisionCache.Operation.READ)) {
             throw new SecurityException("User " + securityContext.getUserName() + " is not authorized to read from: " + info.getDestination());
         }
 
@@ -189,13 +184,7 @@ public class AuthorizationBroker extends BrokerFilter implements SecurityAdminMB
 
         if (!securityContext.isBrokerContext() && info.getDestination() != null) {
 
-            Set<?> allowedACLs = null;
-            if (!info.getDestination().isTemporary()) {
-                allowedACLs = authorizationMap.getWriteACLs(info.getDestination());
-            } else {
-                allowedACLs = authorizationMap.getTempDestinationWriteACLs();
-            }
-            if (allowedACLs != null && !securityContext.isInOneOf(allowedACLs)) {
+            if (!isAuthorized(securityContext, info.getDestination(), AuthorizationDecisionCache.Operation.WRITE)) {
                 throw new SecurityException("User " + securityContext.getUserName() + " is not authorized to write to: " + info.getDestination());
             }
             securityContext.getAuthorizedWriteDests().put(info.getDestination(), info.getDestination());
@@ -210,14 +199,7 @@ public class AuthorizationBroker extends BrokerFilter implements SecurityAdminMB
 
         if (!securityContext.isBrokerContext() && !securityContext.getAuthorizedWriteDests().containsValue(messageSend.getDestination())) {
 
-            Set<?> allowedACLs = null;
-            if (!messageSend.getDestination().isTemporary()) {
-                allowedACLs = authorizationMap.getWriteACLs(messageSend.getDestination());
-            } else {
-                allowedACLs = authorizationMap.getTempDestinationWriteACLs();
-            }
-
-            if (allowedACLs != null && !securityContext.isInOneOf(allowedACLs)) {
+            if (!isAuthorized(securityContext, messageSend.getDestination(), AuthorizationDecisionCache.Operation.WRITE)) {
                 throw new SecurityException("User " + securityContext.getUserName() + " is not authorized to write to: " + messageSend.getDestination());
             }
             securityContext.getAuthorizedWriteDests().put(messageSend.getDestination(), messageSend.getDestination());
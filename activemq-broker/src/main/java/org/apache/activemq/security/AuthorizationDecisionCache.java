@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.security;
+
+import java.security.Principal;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.activemq.command.ActiveMQDestination;
+
+/**
+ * Caches the authorization decisions of an {@link AuthorizationBroker} by the
+ * principals of the user, the destination and the operation.
+ *
+ * All temporary destinations share the same ACLs, so a decision for one holds for
+ * all of them. Decisions are dropped when the authorization map is replaced or its
+ * {@link AuthorizationMap#getVersion() version} changes, and maps without a version
+ * are not cached at all. When the cache is full it is cleared.
+ */
+final class AuthorizationDecisionCache {
+
+    enum Operation {
+        ADMIN, READ, WRITE
+    }
+
+    private final int maxSize;
+    private volatile Decisions decisions = new Decisions(null, -1);
+
+    AuthorizationDecisionCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    boolean isAuthorized(AuthorizationMap map, SecurityContext securityContext, ActiveMQDestination destination, Operation operation) {
+        long version = maxSize > 0 ? map.getVersion() : -1;
+        if (version < 0 || securityContext.getPrincipals() == null) {
+            return decide(map, securityContext, destination, operation);
+        }
+
+        Decisions current = decisions;
+        if (current.map != map || current.version != version) {
+            current = new Decisions(map, version);
+            decisions = current;
+        }
+
+        Key key = new Key(securityContext.getPrincipals(), destination.isTemporary() ? null : destination, operation);
+        Boolean authorized = current.entries.get(key);
+        if (authorized == null) {
+            authorized = decide(map, securityContext, destination, operation);
+            if (current.entries.size() >= maxSize) {
+                current.entries.clear();
+            }
+            current.entries.put(key.copy(), authorized);
+        }
+        return authorized;
+    }
+
+    void clear() {
+        decisions = new Decisions(null, -1);
+    }
+
+    private static boolean decide(AuthorizationMap map, SecurityContext securityContext, ActiveMQDestination destination, Operation operation) {
+        Set<?> allowedACLs;
+        switch (operation) {
+            case ADMIN:
+                allowedACLs = destination.isTemporary() ? map.getTempDestinationAdminACLs() : map.getAdminACLs(destination);
+                break;
+            case READ:
+                allowedACLs = destination.isTemporary() ? map.getTempDestinationReadACLs() : map.getReadACLs(destination);
+                break;
+            default:
+                allowedACLs = destination.isTemporary() ? map.getTempDestinationWriteACLs() : map.getWriteACLs(destination);
+                break;
+        }
+        return allowedACLs == null || securityContext.isInOneOf(allowedACLs);
+    }
+
+    private static final class Decisions {
+        final AuthorizationMap map;
+        final long version;
+        final ConcurrentMap<Key, Boolean> entries = new ConcurrentHashMap<>();
+
+        Decisions(AuthorizationMap map, long version) {
+            this.map = map;
+            this.version = version;
+        }
+    }
+
+    private static final class Key {
+        final Set<Principal> principals;
+        final ActiveMQDestination destination;
+        final Operation operation;
+        final int hashCode;
+
+        Key(Set<Principal> principals, ActiveMQDestination destination, Operation operation) {
+            this.principals = principals;
+            this.destination = destination;
+            this.operation = operation;
+            this.hashCode = 31 * (31 * principals.hashCode() + (destination != null ? destination.hashCode() : 0)) + operation.hashCode();
+        }
+
+        // the principals of a context may change, the cached key must not
+        Key copy() {
+            return new Key(new HashSet<>(principals), destination, operation);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return operation == other.operation &&
+                   (destination == null ? other.destination == null : destination.equals(other.destination)) &&
+                   principals.equals(other.principals);
+        }
+    }
+}
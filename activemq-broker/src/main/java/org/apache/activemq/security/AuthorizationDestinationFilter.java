@@ -16,8 +16,6 @@
  */
 package org.apache.activemq.security;
 
-import java.util.Set;
-
 import org.apache.activemq.broker.ConnectionContext;
 import org.apache.activemq.broker.region.Destination;
 import org.apache.activemq.broker.region.DestinationFilter;
@@ -41,19 +39,11 @@ public class AuthorizationDestinationFilter extends DestinationFilter {
         // authorize subscription
         final SecurityContext securityContext = broker.checkSecurityContext(context);
 
-        final AuthorizationMap authorizationMap = broker.getAuthorizationMap();
         // use the destination being filtered, instead of the destination from the consumerinfo in the subscription
         // since that could be a wildcard destination
         final ActiveMQDestination destination = next.getActiveMQDestination();
 
-        Set<?> allowedACLs;
-        if (!destination.isTemporary()) {
-            allowedACLs = authorizationMap.getReadACLs(destination);
-        } else {
-            allowedACLs = authorizationMap.getTempDestinationReadACLs();
-        }
-
-        if (!securityContext.isBrokerContext() && allowedACLs != null && !securityContext.isInOneOf(allowedACLs) ) {
+        if (!securityContext.isBrokerContext() && !broker.isAuthorized(securityContext, destination, AuthorizationDecisionCache.Operation.READ)) {
             throw new SecurityException("User " + securityContext.getUserName() + " is not authorized to read from: " + destination);
         }
 
@@ -57,4 +57,13 @@ public interface AuthorizationMap {
      */
     Set<?> getWriteACLs(ActiveMQDestination destination);
 
+    /**
+     * Returns a version that changes whenever the ACLs returned by this map
+     * change, or a negative value if they may change at any time and so may
+     * not be cached.
+     */
+    default long getVersion() {
+        return -1;
+    }
+
 }
@@ -30,6 +30,7 @@ import org.apache.activemq.broker.BrokerPlugin;
 public class AuthorizationPlugin implements BrokerPlugin {
 
     private AuthorizationMap map;
+    private int decisionCacheSize;
 
     public AuthorizationPlugin() {
     }
@@ -42,7 +43,9 @@ public class AuthorizationPlugin implements BrokerPlugin {
         if (map == null) {
             throw new IllegalArgumentException("You must configure a 'map' property");
         }
-        return new AuthorizationBroker(broker, map);
+        AuthorizationBroker authorizationBroker = new AuthorizationBroker(broker, map);
+        authorizationBroker.setDecisionCacheSize(decisionCacheSize);
+        return authorizationBroker;
     }
 
     public AuthorizationMap getMap() {
@@ -53,4 +56,17 @@ public class AuthorizationPlugin implements BrokerPlugin {
         this.map = map;
     }
 
+    public int getDecisionCacheSize() {
+        return decisionCacheSize;
+    }
+
+    /**
+     * Sets how many authorization decisions are cached by the broker, zero (the
+     * default) disables the cache. Only maps that report a version, such as the
+     * {@link DefaultAuthorizationMap}, are cached.
+     */
+    public void setDecisionCacheSize(int decisionCacheSize) {
+        this.decisionCacheSize = decisionCacheSize;
+    }
+
 }
@@ -20,6 +20,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.security.Principal;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.activemq.filter.DestinationMap;
@@ -43,6 +44,8 @@ public class DefaultAuthorizationMap extends DestinationMap implements Authoriza
 
     protected String groupClass = DEFAULT_GROUP_CLASS;
 
+    private final AtomicLong settingsVersion = new AtomicLong();
+
     public DefaultAuthorizationMap() {
     }
 
@@ -54,6 +57,7 @@ public class DefaultAuthorizationMap extends DestinationMap implements Authoriza
 
     public void setTempDestinationAuthorizationEntry(TempDestinationAuthorizationEntry tempDestinationAuthorizationEntry) {
         this.tempDestinationAuthorizationEntry = tempDestinationAuthorizationEntry;
+        settingsVersion.incrementAndGet();
     }
 
     public TempDestinationAuthorizationEntry getTempDestinationAuthorizationEntry() {
@@ -185,6 +189,17 @@ public class DefaultAuthorizationMap extends DestinationMap implements Authoriza
 
     public void setDefaultEntry(AuthorizationEntry defaultEntry) {
         this.defaultEntry = defaultEntry;
+        settingsVersion.incrementAndGet();
+    }
+
+    /**
+     * Changes when entries are added to or removed from the map or its default and
+     * temp destination entries are replaced. Changes made to the ACLs of entries
+     * already in the map are not reflected.
+     */
+    @Override
+    public long getVersion() {
+        return getModificationCount() + settingsVersion.get();
     }
 
     @Override
@@ -208,6 +223,7 @@ public class DefaultAuthorizationMap extends DestinationMap implements Authoriza
 
     public void setGroupClass(String groupClass) {
         this.groupClass = groupClass;
+        settingsVersion.incrementAndGet();
     }
 
     final static String WILDCARD = "*";
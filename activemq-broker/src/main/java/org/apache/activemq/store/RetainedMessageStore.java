@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.activemq.Service;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.Message;
+
+/**
+ * Stores the last retained message of each topic, as published with the
+ * {@link org.apache.activemq.broker.region.policy.RetainedMessageSubscriptionRecoveryPolicy#RETAIN_PROPERTY},
+ * so that it survives a restart of the broker.
+ */
+public interface RetainedMessageStore extends Service {
+
+    File getDirectory();
+
+    void setDirectory(File directory);
+
+    /**
+     * Replaces the retained message of a topic.
+     *
+     * @param destination the topic
+     * @param message the message to retain, or null to clear the retained message of the topic
+     * @throws IOException
+     */
+    void setRetainedMessage(ActiveMQDestination destination, Message message) throws IOException;
+
+    /**
+     * @param destination the topic
+     * @return the retained message of the topic or null if there is none
+     * @throws IOException
+     */
+    Message getRetainedMessage(ActiveMQDestination destination) throws IOException;
+
+    /**
+     * Recovers the retained messages of all topics matching a destination, which
+     * may be a wildcard or composite destination, in topic name order. Recovery
+     * stops as soon as the listener returns false.
+     *
+     * @param destination the destination to match
+     * @param listener receives the retained messages
+     * @throws Exception
+     */
+    void recover(ActiveMQDestination destination, MessageRecoveryListener listener) throws Exception;
+
+    /**
+     * @return the number of retained messages
+     */
+    long size();
+}
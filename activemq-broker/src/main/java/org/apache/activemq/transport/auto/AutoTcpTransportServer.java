@@ -296,10 +296,21 @@ public class AutoTcpTransportServer extends TcpTransportServer {
             future.cancel(true);
         }
         data.flip();
-        ProtocolInfo protocolInfo = detectProtocol(data.array());
+        return configureTransport(socket, data.array(), readBytes.get());
+    }
+
+    /**
+     * Creates the transport of the protocol detected from the first bytes read from the socket.
+     *
+     * @param socket
+     * @param data the bytes read to detect the protocol
+     * @param readBytes the number of bytes read
+     */
+    protected TransportInfo configureTransport(final Socket socket, final byte[] data, final int readBytes) throws Exception {
+        ProtocolInfo protocolInfo = detectProtocol(data);
 
-        InitBuffer initBuffer = new InitBuffer(readBytes.get(), ByteBuffer.allocate(readBytes.get()));
-        initBuffer.buffer.put(data.array());
+        InitBuffer initBuffer = new InitBuffer(readBytes, ByteBuffer.allocate(readBytes));
+        initBuffer.buffer.put(data);
 
         if (protocolInfo.detectedTransportFactory instanceof BrokerServiceAware) {
             ((BrokerServiceAware) protocolInfo.detectedTransportFactory).setBrokerService(brokerService);
@@ -0,0 +1,309 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.auto.nio;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ServerSocketFactory;
+
+import org.apache.activemq.ThreadPriorities;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.transport.InactivityIOException;
+import org.apache.activemq.transport.auto.AutoTcpTransportServer;
+import org.apache.activemq.transport.tcp.ExceededMaximumConnectionsException;
+import org.apache.activemq.transport.tcp.TcpTransportFactory;
+import org.apache.activemq.transport.tcp.TcpTransportServer;
+import org.apache.activemq.util.ServiceStopper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An auto detecting transport server for NIO connections.
+ *
+ * Instead of blocking a thread per connection until the bytes needed to detect the
+ * protocol arrive, new connections are registered with a selector serviced by a single
+ * thread of the server. The bytes are read as they arrive, once enough of them are read
+ * the {@link org.apache.activemq.transport.protocol.ProtocolVerifier}s detect the protocol
+ * and the connection is handed to the transport of that protocol. Connections that do not
+ * send enough bytes within the protocol detection timeout are closed.
+ */
+public class AutoNIOTransportServer extends AutoTcpTransportServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AutoNIOTransportServer.class);
+
+    private static final int DETECTION_BYTES = 8;
+
+    private final Queue<Socket> pendingSockets = new ConcurrentLinkedQueue<Socket>();
+    private final ConcurrentMap<Socket, byte[]> detectedBytes = new ConcurrentHashMap<Socket, byte[]>();
+
+    private volatile Selector detectionSelector;
+    private Thread detectionThread;
+
+    public AutoNIOTransportServer(TcpTransportFactory transportFactory, URI location, ServerSocketFactory serverSocketFactory,
+            BrokerService brokerService, Set<String> enabledProtocols) throws IOException, URISyntaxException {
+        super(transportFactory, location, serverSocketFactory, brokerService, enabledProtocols);
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        detectionSelector = Selector.open();
+        detectionThread = new Thread(null, new Runnable() {
+            @Override
+            public void run() {
+                detectProtocols(detectionSelector);
+            }
+        }, "ActiveMQ Transport Server Protocol Detection: " + toString(), getStackSize());
+        detectionThread.setDaemon(true);
+        detectionThread.setPriority(ThreadPriorities.BROKER_MANAGEMENT - 1);
+        detectionThread.start();
+
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop(ServiceStopper stopper) throws Exception {
+        Selector selector = detectionSelector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (detectionThread != null) {
+            detectionThread.join(TimeUnit.SECONDS.toMillis(3));
+            if (detectionThread.isAlive()) {
+                LOG.warn("Auto NIO Transport protocol detection thread didn't shutdown cleanly");
+            }
+            detectionThread = null;
+        }
+        Socket socket;
+        while ((socket = pendingSockets.poll()) != null) {
+            discard(socket);
+        }
+        super.doStop(stopper);
+    }
+
+    @Override
+    protected void handleSocket(Socket socket) {
+        if (isStopping() || isStopped()) {
+            close(socket);
+            return;
+        }
+        Selector selector = detectionSelector;
+        if (selector == null) {
+            // The detection thread is gone, detect the protocol on the executors instead.
+            super.handleSocket(socket);
+            return;
+        }
+        try {
+            // The connection counts towards the maximum number of connections while
+            // its protocol is detected, as it does when detection blocks.
+            incrementCurrentTransportCount();
+        } catch (ExceededMaximumConnectionsException e) {
+            close(socket);
+            onAcceptError(e);
+            return;
+        }
+        pendingSockets.add(socket);
+        if (detectionSelector == null) {
+            // The detection thread went away while the socket was queued.
+            if (pendingSockets.remove(socket)) {
+                fallBack(socket);
+            }
+        } else {
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    protected TransportInfo configureTransport(final TcpTransportServer server, final Socket socket) throws Exception {
+        byte[] data = detectedBytes.remove(socket);
+        if (data == null) {
+            return super.configureTransport(server, socket);
+        }
+        return configureTransport(socket, data, data.length);
+    }
+
+    private void detectProtocols(Selector selector) {
+        ArrayDeque<Detection> byDeadline = new ArrayDeque<Detection>();
+        List<Detection> detected = new ArrayList<Detection>();
+        try {
+            while (!isStopping() && !isStopped()) {
+                Detection next;
+                while ((next = byDeadline.peek()) != null && (next.done || next.isExpired())) {
+                    byDeadline.poll();
+                    if (!next.done) {
+                        fail(next, new InactivityIOException("Client timed out before wire format could be detected. " +
+                                " 8 bytes are required to detect the protocol but only: " + next.data.position() + " byte(s) were sent."));
+                    }
+                }
+
+                if (next == null) {
+                    selector.select();
+                } else {
+                    selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(next.deadline - System.nanoTime())));
+                }
+
+                Socket socket;
+                while ((socket = pendingSockets.poll()) != null) {
+                    Detection detection = new Detection(socket);
+                    try {
+                        SocketChannel channel = socket.getChannel();
+                        channel.configureBlocking(false);
+                        detection.key = channel.register(selector, SelectionKey.OP_READ, detection);
+                        if (protocolDetectionTimeOut > 0) {
+                            detection.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(protocolDetectionTimeOut);
+                            byDeadline.add(detection);
+                        }
+                    } catch (IOException e) {
+                        fail(detection, e);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Detection detection = (Detection) key.attachment();
+                    if (key.isValid() && !detection.done) {
+                        read(detection, detected);
+                    }
+                }
+
+                if (!detected.isEmpty()) {
+                    // Deregister the channels before handing them to their transports,
+                    // which register them with their own selectors.
+                    selector.selectNow();
+                    for (Iterator<Detection> iterator = detected.iterator(); iterator.hasNext();) {
+                        Detection detection = iterator.next();
+                        iterator.remove();
+                        detectedBytes.put(detection.socket, detection.data.array());
+                        try {
+                            doHandleSocket(detection.socket, true);
+                        } catch (Throwable e) {
+                            detectedBytes.remove(detection.socket);
+                            discard(detection.socket);
+                            throw e;
+                        }
+                    }
+                }
+            }
+        } catch (Throwable e) {
+            if (!isStopping() && !isStopped()) {
+                LOG.warn("Auto NIO Transport protocol detection failed, new connections will be detected on the executors", e);
+                onAcceptError(e instanceof Exception ? (Exception) e : new Exception(e));
+            }
+        } finally {
+            detectionSelector = null;
+            Socket socket;
+            while ((socket = pendingSockets.poll()) != null) {
+                if (isStopping() || isStopped()) {
+                    discard(socket);
+                } else {
+                    fallBack(socket);
+                }
+            }
+            for (Detection detection : detected) {
+                detectedBytes.remove(detection.socket);
+                discard(detection.socket);
+            }
+            for (SelectionKey key : selector.keys()) {
+                Detection detection = (Detection) key.attachment();
+                if (!detection.done) {
+                    discard(detection.socket);
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private void read(Detection detection, List<Detection> detected) {
+        try {
+            int read = detection.socket.getChannel().read(detection.data);
+            if (read == -1) {
+                throw new IOException("Connection failed, stream is closed.");
+            }
+            if (!detection.data.hasRemaining()) {
+                detection.done = true;
+                detection.key.cancel();
+                detected.add(detection);
+            }
+        } catch (IOException e) {
+            fail(detection, e);
+        }
+    }
+
+    private void fail(Detection detection, Exception error) {
+        detection.done = true;
+        discard(detection.socket);
+        if (!isStopping() && !isStopped()) {
+            onAcceptError(error);
+        }
+    }
+
+    private void fallBack(Socket socket) {
+        // The executor based detection counts the connection itself.
+        currentTransportCount.decrementAndGet();
+        super.handleSocket(socket);
+    }
+
+    private void discard(Socket socket) {
+        currentTransportCount.decrementAndGet();
+        close(socket);
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    private static final class Detection {
+
+        private final Socket socket;
+        private final ByteBuffer data = ByteBuffer.allocate(DETECTION_BYTES);
+        private SelectionKey key;
+        private long deadline;
+        private boolean done;
+
+        Detection(Socket socket) {
+            this.socket = socket;
+        }
+
+        boolean isExpired() {
+            return deadline - System.nanoTime() <= 0;
+        }
+    }
+}
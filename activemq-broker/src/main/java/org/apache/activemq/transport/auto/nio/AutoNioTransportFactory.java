@@ -57,7 +57,7 @@ public class AutoNioTransportFactory extends NIOTransportFactory implements Brok
 
     @Override
     protected AutoTcpTransportServer createTcpTransportServer(URI location, ServerSocketFactory serverSocketFactory) throws IOException, URISyntaxException {
-        return new AutoTcpTransportServer(this, location, serverSocketFactory, brokerService, enabledProtocols) {
+        return new AutoNIOTransportServer(this, location, serverSocketFactory, brokerService, enabledProtocols) {
             @Override
             protected TcpTransport createTransport(Socket socket, WireFormat format, TcpTransportFactory detectedTransportFactory, InitBuffer initBuffer) throws IOException {
                 TcpTransport nioTransport = null;
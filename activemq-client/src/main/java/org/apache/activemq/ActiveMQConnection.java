@@ -36,6 +36,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
 
 import jakarta.jms.Connection;
 import jakarta.jms.ConnectionConsumer;
@@ -144,6 +145,8 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
     private boolean optimizedMessageDispatch = true;
     private boolean copyMessageOnSend = true;
     private boolean useCompression;
+    private int compressionThreshold;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
     private boolean objectMessageSerializationDefered;
     private boolean useAsyncSend;
     private boolean optimizeAcknowledge;
@@ -2186,6 +2189,42 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
         this.useCompression = useCompression;
     }
 
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Sets the body size in bytes below which messages are sent uncompressed
+     * even when compression is enabled, small bodies rarely shrink enough to
+     * be worth the CPU spent compressing them.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the deflate level used when compressing message bodies, from
+     * {@link java.util.zip.Deflater#BEST_SPEED} to {@link java.util.zip.Deflater#BEST_COMPRESSION},
+     * defaults to {@link java.util.zip.Deflater#DEFAULT_COMPRESSION}.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between -1 and 9: " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * @return true if a message body of the given size should be compressed
+     */
+    public boolean isCompressionRequired(int size) {
+        return useCompression && size >= compressionThreshold;
+    }
+
     public void destroyDestination(ActiveMQDestination destination) throws JMSException {
 
         checkClosedOrFailed();
@@ -149,6 +149,7 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
     private final AtomicBoolean started = new AtomicBoolean(false);
 
     private MessageAvailableListener availableListener;
+    private volatile Runnable closeListener;
 
     private RedeliveryPolicy redeliveryPolicy;
     private boolean optimizeAcknowledge;
@@ -476,6 +477,19 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
         this.availableListener = availableListener;
     }
 
+    /**
+     * Sets a callback run once the consumer is disposed, whether it was closed
+     * itself, with its session or connection, or because the connection failed.
+     * In the last case {@link #getFailureError()} returns the failure.
+     */
+    void setCloseListener(Runnable closeListener) {
+        this.closeListener = closeListener;
+    }
+
+    boolean isClosed() {
+        return unconsumedMessages.isClosed();
+    }
+
     /**
      * Used to get an enqueued message from the unconsumedMessages list. The
      * amount of time this method blocks is based on the timeout value. - if
@@ -879,6 +893,10 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
                     session.connection.rollbackDuplicate(this, old.getMessage());
                 }
             }
+            Runnable listener = closeListener;
+            if (listener != null) {
+                listener.run();
+            }
         }
         if (previouslyDeliveredMessages != null) {
             for (PreviouslyDelivered previouslyDelivered : previouslyDeliveredMessages.values()) {
@@ -18,6 +18,8 @@ package org.apache.activemq;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.atomic.AtomicLong;
 
 import jakarta.jms.CompletionListener;
@@ -331,6 +333,57 @@ public class ActiveMQMessageProducer extends ActiveMQMessageProducerSupport impl
         stats.onMessage();
     }
 
+    /**
+     * Sends a message to the producer's default destination without blocking
+     * for the broker's response.
+     *
+     * @param message the message to send
+     * @return a stage that completes when the broker has accepted the message,
+     *         or completes exceptionally with the {@link JMSException} raised
+     *         by the send.
+     */
+    public CompletionStage<Void> sendAsync(Message message) {
+        return sendAsync(this.info.getDestination(), message, this.defaultDeliveryMode, this.defaultPriority, this.defaultTimeToLive);
+    }
+
+    /**
+     * Sends a message to the given destination without blocking for the
+     * broker's response.
+     *
+     * @see #sendAsync(Message)
+     */
+    public CompletionStage<Void> sendAsync(Destination destination, Message message) {
+        return sendAsync(destination, message, this.defaultDeliveryMode, this.defaultPriority, this.defaultTimeToLive);
+    }
+
+    /**
+     * Sends a message without blocking for the broker's response. The send is
+     * issued as a request so the returned stage reflects the broker's outcome
+     * regardless of the delivery mode or the connection's async send settings.
+     * Producer flow control still applies when a producer window is in use.
+     *
+     * @see #sendAsync(Message)
+     */
+    public CompletionStage<Void> sendAsync(Destination destination, Message message, int deliveryMode, int priority, long timeToLive) {
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+        try {
+            this.send(destination, message, deliveryMode, priority, timeToLive, new AsyncCallback() {
+                @Override
+                public void onSuccess() {
+                    future.complete(null);
+                }
+
+                @Override
+                public void onException(JMSException exception) {
+                    future.completeExceptionally(exception);
+                }
+            });
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     public MessageTransformer getTransformer() {
         return transformer;
     }
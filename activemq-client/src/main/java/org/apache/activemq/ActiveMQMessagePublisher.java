@@ -0,0 +1,217 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import java.io.IOException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.MessageConsumer;
+
+import org.apache.activemq.util.JMSExceptionSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Flow.Publisher} view of an {@link ActiveMQMessageConsumer} which
+ * delivers messages without dedicating a thread to the consumer.
+ * <P>
+ * Messages are handed to the subscriber only as it signals demand. Anything
+ * the subscriber has not asked for stays in the consumer's prefetch buffer, so
+ * once that buffer is full the broker stops dispatching and the subscriber's
+ * demand is effectively the consumer credit. Delivery happens on the thread
+ * that signalled demand or on the session's dispatch thread when new messages
+ * arrive.
+ * <P>
+ * The publisher accepts a single subscriber. Cancelling the subscription
+ * closes the underlying consumer. The subscriber is completed when the
+ * consumer, its session or its connection is closed, and receives the error
+ * when the connection fails. Since messages are taken with
+ * {@link MessageConsumer#receiveNoWait()} the session must not also be used
+ * with a {@link jakarta.jms.MessageListener}, and the consumer must have a
+ * prefetch of at least 1.
+ */
+public class ActiveMQMessagePublisher implements Flow.Publisher<Message> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ActiveMQMessagePublisher.class);
+
+    private final ActiveMQMessageConsumer consumer;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    public ActiveMQMessagePublisher(ActiveMQMessageConsumer consumer) throws JMSException {
+        if (consumer.getPrefetchNumber() == 0) {
+            throw new JMSException("Illegal prefetch size of zero. This setting is not supported for publishers please set a value of at least 1");
+        }
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Message> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("This publisher only supports a single subscriber"));
+            return;
+        }
+
+        MessageSubscription subscription = new MessageSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        consumer.setAvailableListener(subscription);
+        consumer.setCloseListener(subscription::onConsumerClosed);
+        subscription.drain();
+    }
+
+    public ActiveMQMessageConsumer getConsumer() {
+        return consumer;
+    }
+
+    private final class MessageSubscription implements Flow.Subscription, MessageAvailableListener {
+
+        private final Flow.Subscriber<? super Message> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean done;
+        private volatile boolean consumerClosed;
+        private volatile Throwable error;
+
+        MessageSubscription(Flow.Subscriber<? super Message> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (done) {
+                return;
+            }
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Demand must be positive, was: " + n));
+                return;
+            }
+            long current;
+            long next;
+            do {
+                current = requested.get();
+                next = current + n;
+                if (next < 0) {
+                    next = Long.MAX_VALUE;
+                }
+            } while (!requested.compareAndSet(current, next));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (!done) {
+                done = true;
+                closeConsumer();
+            }
+        }
+
+        @Override
+        public void onMessageAvailable(MessageConsumer consumer) {
+            drain();
+        }
+
+        void onConsumerClosed() {
+            consumerClosed = true;
+            drain();
+        }
+
+        /**
+         * Moves as many messages as the subscriber has asked for out of the
+         * prefetch buffer. Only one thread drains at a time; a caller that
+         * finds a drain in progress just marks more work for that thread. The
+         * terminal signals are sent from here as well so they never overlap
+         * with a delivery.
+         */
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                while (!done && !consumerClosed && error == null && requested.get() > 0) {
+                    Message message;
+                    try {
+                        message = consumer.receiveNoWait();
+                    } catch (JMSException e) {
+                        if (consumer.isClosed()) {
+                            consumerClosed = true;
+                        } else if (error == null) {
+                            error = e;
+                        }
+                        break;
+                    }
+                    if (message == null) {
+                        break;
+                    }
+                    requested.decrementAndGet();
+                    subscriber.onNext(message);
+                }
+                if (!done) {
+                    if (error != null) {
+                        done = true;
+                        closeConsumer();
+                        subscriber.onError(error);
+                    } else if (consumerClosed) {
+                        done = true;
+                        consumer.setAvailableListener(null);
+                        consumer.setCloseListener(null);
+                        IOException failure = consumer.getFailureError();
+                        if (failure != null) {
+                            subscriber.onError(JMSExceptionSupport.create(failure));
+                        } else {
+                            subscriber.onComplete();
+                        }
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void fail(Throwable error) {
+            if (this.error == null) {
+                this.error = error;
+            }
+            drain();
+        }
+
+        private void closeConsumer() {
+            consumer.setAvailableListener(null);
+            consumer.setCloseListener(null);
+            try {
+                consumer.close();
+            } catch (JMSException e) {
+                LOG.debug("Error closing consumer {} of cancelled publisher", consumer.getConsumerId(), e);
+            }
+        }
+    }
+}
@@ -1228,6 +1228,33 @@ public class ActiveMQSession implements Session, QueueSession, TopicSession, Sta
         return createConsumer(destination, messageSelector, false, messageListener);
     }
 
+    /**
+     * Creates an {@link ActiveMQMessagePublisher} which delivers the messages
+     * sent to the specified destination to a {@link java.util.concurrent.Flow.Subscriber}
+     * as it signals demand.
+     *
+     * @param destination the <CODE>Destination</CODE> to access
+     * @param messageSelector only messages with properties matching the message
+     *                selector expression are delivered. A value of null or an
+     *                empty string indicates that there is no message selector.
+     * @return the publisher
+     * @throws JMSException if the session fails to create the underlying
+     *                 consumer due to some internal error.
+     */
+    public ActiveMQMessagePublisher createFlowPublisher(Destination destination, String messageSelector) throws JMSException {
+        ActiveMQMessageConsumer consumer = (ActiveMQMessageConsumer) createConsumer(destination, messageSelector);
+        try {
+            return new ActiveMQMessagePublisher(consumer);
+        } catch (JMSException e) {
+            consumer.close();
+            throw e;
+        }
+    }
+
+    public ActiveMQMessagePublisher createFlowPublisher(Destination destination) throws JMSException {
+        return createFlowPublisher(destination, null);
+    }
+
     /**
      * Creates <CODE>MessageConsumer</CODE> for the specified destination,
      * using a message selector. This method can specify whether messages
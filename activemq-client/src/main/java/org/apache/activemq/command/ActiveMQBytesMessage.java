@@ -22,9 +22,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Arrays;
 import java.util.zip.Deflater;
-import java.util.zip.Inflater;
 
 import jakarta.jms.BytesMessage;
 import jakarta.jms.JMSException;
@@ -38,6 +36,7 @@ import org.apache.activemq.util.ByteArrayInputStream;
 import org.apache.activemq.util.ByteArrayOutputStream;
 import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.ByteSequenceData;
+import org.apache.activemq.util.CompressionSupport;
 import org.apache.activemq.util.JMSExceptionSupport;
 
 /**
@@ -130,8 +129,8 @@ public class ActiveMQBytesMessage extends ActiveMQMessage implements BytesMessag
                 setContent(bs);
 
                 ActiveMQConnection connection = getConnection();
-                if (connection != null && connection.isUseCompression()) {
-                    doCompress();
+                if (connection != null && connection.isCompressionRequired(bs.getLength())) {
+                    doCompress(connection.getCompressionLevel());
                 }
             } catch (IOException ioe) {
                 throw new RuntimeException(ioe.getMessage(), ioe);
@@ -897,23 +896,14 @@ public class ActiveMQBytesMessage extends ActiveMQMessage implements BytesMessag
     }
 
     protected byte[] decompress(ByteSequence dataSequence) throws IOException {
-        Inflater inflater = new Inflater();
-        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
-        try {
-            length = ByteSequenceData.readIntBig(dataSequence);
-            dataSequence.offset = 0;
-            byte[] data = Arrays.copyOfRange(dataSequence.getData(), 4, dataSequence.getLength());
-            inflater.setInput(data);
-            byte[] buffer = new byte[length];
-            int count = inflater.inflate(buffer);
-            decompressed.write(buffer, 0, count);
-            return decompressed.toByteArray();
-        } catch (Exception e) {
-            throw new IOException(e);
-        } finally {
-            inflater.end();
-            decompressed.close();
+        length = ByteSequenceData.readIntBig(dataSequence);
+        dataSequence.offset = 0;
+        byte[] decompressed = new byte[length];
+        int count = CompressionSupport.inflate(dataSequence.getData(), 4, dataSequence.getLength() - 4, decompressed);
+        if (count != length) {
+            throw new IOException("Compressed body holds " + count + " bytes, expected " + length);
         }
+        return decompressed;
     }
 
     @Override
@@ -930,30 +920,19 @@ public class ActiveMQBytesMessage extends ActiveMQMessage implements BytesMessag
 
     @Override
     protected void doCompress() throws IOException {
+        doCompress(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    private void doCompress(int level) throws IOException {
         compressed = true;
         ByteSequence bytes = getContent();
         if (bytes != null) {
             int length = bytes.getLength();
-            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
-            compressed.write(new byte[4]);
-            Deflater deflater = new Deflater();
-            try {
-                deflater.setInput(bytes.data);
-                deflater.finish();
-                byte[] buffer = new byte[1024];
-                while (!deflater.finished()) {
-                    int count = deflater.deflate(buffer);
-                    compressed.write(buffer, 0, count);
-                }
-
-                bytes = compressed.toByteSequence();
-                ByteSequenceData.writeIntBig(bytes, length);
-                bytes.offset = 0;
-                setContent(bytes);
-            } finally {
-                deflater.end();
-                compressed.close();
-            }
+            // leave room for the uncompressed length ahead of the deflated data
+            bytes = CompressionSupport.deflate(bytes.getData(), bytes.getOffset(), length, level, 4);
+            ByteSequenceData.writeIntBig(bytes, length);
+            bytes.offset = 0;
+            setContent(bytes);
         }
     }
 
@@ -21,13 +21,11 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectStreamException;
-import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
 import jakarta.jms.JMSException;
@@ -35,7 +33,6 @@ import jakarta.jms.MapMessage;
 import jakarta.jms.MessageFormatException;
 import jakarta.jms.MessageNotWriteableException;
 
-import org.apache.activemq.ActiveMQConnection;
 import org.apache.activemq.util.ByteArrayInputStream;
 import org.apache.activemq.util.ByteArrayOutputStream;
 import org.apache.activemq.util.ByteSequence;
@@ -149,16 +146,10 @@ public class ActiveMQMapMessage extends ActiveMQMessage implements MapMessage {
         try {
             if (getContent() == null && !map.isEmpty()) {
                 ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
-                OutputStream os = bytesOut;
-                ActiveMQConnection connection = getConnection();
-                if (connection != null && connection.isUseCompression()) {
-                    compressed = true;
-                    os = new DeflaterOutputStream(os);
-                }
-                DataOutputStream dataOut = new DataOutputStream(os);
+                DataOutputStream dataOut = new DataOutputStream(bytesOut);
                 MarshallingSupport.marshalPrimitiveMap(map, dataOut);
                 dataOut.close();
-                setContent(bytesOut.toByteSequence());
+                setContent(compressContentIfRequired(bytesOut.toByteSequence()));
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
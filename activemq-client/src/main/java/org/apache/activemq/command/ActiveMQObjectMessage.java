@@ -22,11 +22,9 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectOutputStream;
-import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
-import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
 import jakarta.jms.JMSException;
@@ -107,19 +105,13 @@ public class ActiveMQObjectMessage extends ActiveMQMessage implements ObjectMess
         if (bodyAsBytes == null && object != null) {
             try {
                 ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
-                OutputStream os = bytesOut;
-                ActiveMQConnection connection = getConnection();
-                if (connection != null && connection.isUseCompression()) {
-                    compressed = true;
-                    os = new DeflaterOutputStream(os);
-                }
-                DataOutputStream dataOut = new DataOutputStream(os);
+                DataOutputStream dataOut = new DataOutputStream(bytesOut);
                 ObjectOutputStream objOut = new ObjectOutputStream(dataOut);
                 objOut.writeObject(object);
                 objOut.flush();
                 objOut.reset();
                 objOut.close();
-                setContent(bytesOut.toByteSequence());
+                setContent(compressContentIfRequired(bytesOut.toByteSequence()));
             } catch (IOException ioe) {
                 throw new RuntimeException(ioe.getMessage(), ioe);
             }
@@ -23,8 +23,6 @@ import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
 import jakarta.jms.JMSException;
@@ -34,7 +32,6 @@ import jakarta.jms.MessageNotReadableException;
 import jakarta.jms.MessageNotWriteableException;
 import jakarta.jms.StreamMessage;
 
-import org.apache.activemq.ActiveMQConnection;
 import org.apache.activemq.util.ByteArrayInputStream;
 import org.apache.activemq.util.ByteArrayOutputStream;
 import org.apache.activemq.util.ByteSequence;
@@ -144,7 +141,7 @@ public class ActiveMQStreamMessage extends ActiveMQMessage implements StreamMess
         if (dataOut != null) {
             try {
                 dataOut.close();
-                setContent(bytesOut.toByteSequence());
+                setContent(compressContentIfRequired(bytesOut.toByteSequence()));
                 bytesOut = null;
                 dataOut = null;
             } catch (IOException ioe) {
@@ -1148,14 +1145,10 @@ public class ActiveMQStreamMessage extends ActiveMQMessage implements StreamMess
     private void initializeWriting() throws JMSException {
         checkReadOnlyBody();
         if (this.dataOut == null) {
+            // The body is written plain and compressed when it is stored so that the
+            // compression threshold can be applied to its size.
             this.bytesOut = new ByteArrayOutputStream();
-            OutputStream os = bytesOut;
-            ActiveMQConnection connection = getConnection();
-            if (connection != null && connection.isUseCompression()) {
-                compressed = true;
-                os = new DeflaterOutputStream(os);
-            }
-            this.dataOut = new DataOutputStream(os);
+            this.dataOut = new DataOutputStream(bytesOut);
         }
 
         // For a message that already had a body and was sent we need to restore the content
@@ -1180,6 +1173,7 @@ public class ActiveMQStreamMessage extends ActiveMQMessage implements StreamMess
                 // Free up the buffer from the old content, will be re-written when
                 // tbe message is sent again and storeContent() is called.
                 this.content = null;
+                this.compressed = false;
             } catch (IOException ioe) {
                 throw JMSExceptionSupport.create(ioe);
             }
@@ -21,12 +21,11 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectStreamException;
-import java.io.OutputStream;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Deflater;
 
 import jakarta.jms.JMSException;
 
@@ -37,6 +36,7 @@ import org.apache.activemq.usage.MemoryUsage;
 import org.apache.activemq.util.ByteArrayInputStream;
 import org.apache.activemq.util.ByteArrayOutputStream;
 import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.CompressionSupport;
 import org.apache.activemq.util.MarshallingSupport;
 import org.apache.activemq.wireformat.WireFormat;
 import org.fusesource.hawtbuf.UTF8Buffer;
@@ -834,11 +834,22 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     protected void doCompress() throws IOException {
         compressed = true;
         ByteSequence bytes = getContent();
-        ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
-        OutputStream os = new DeflaterOutputStream(bytesOut);
-        os.write(bytes.data, bytes.offset, bytes.length);
-        os.close();
-        setContent(bytesOut.toByteSequence());
+        setContent(CompressionSupport.deflate(bytes, Deflater.DEFAULT_COMPRESSION));
+    }
+
+    /**
+     * Compresses freshly marshalled body bytes if the connection has compression
+     * enabled and the body is at least its compression threshold in size.
+     *
+     * @return the bytes to use as the message content
+     */
+    protected ByteSequence compressContentIfRequired(ByteSequence bytes) {
+        ActiveMQConnection connection = getConnection();
+        if (connection != null && connection.isCompressionRequired(bytes.getLength())) {
+            compressed = true;
+            return CompressionSupport.deflate(bytes, connection.getCompressionLevel());
+        }
+        return bytes;
     }
 
     @Override
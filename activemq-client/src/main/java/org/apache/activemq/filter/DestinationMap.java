@@ -26,6 +26,7 @@ import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.util.LRUCache;
 
 /**
  * A Map-like data structure allowing values to be indexed by
@@ -41,12 +42,15 @@ import org.apache.activemq.command.ActiveMQDestination;
 public class DestinationMap {
     protected static final String ANY_DESCENDENT = DestinationFilter.ANY_DESCENDENT;
     protected static final String ANY_CHILD = DestinationFilter.ANY_CHILD;
+    private static final Object NO_VALUE = new Object();
 
     private DestinationMapNode queueRootNode = new DestinationMapNode(null);
     private DestinationMapNode tempQueueRootNode = new DestinationMapNode(null);
     private DestinationMapNode topicRootNode = new DestinationMapNode(null);
     private DestinationMapNode tempTopicRootNode = new DestinationMapNode(null);
-
+    // chooseValue results by destination, cleared whenever the map changes
+    private LRUCache<ActiveMQDestination, Object> chosenValues = new LRUCache<ActiveMQDestination, Object>(10000);
+    private volatile long modificationCount;
 
     /**
      * Looks up the value(s) matching the given Destination key. For simple
@@ -101,6 +105,7 @@ public class DestinationMap {
         }
         String[] paths = key.getDestinationPaths();
         getRootNode(key).add(paths, 0, value);
+        clearChosenValues();
     }
 
 
@@ -124,7 +129,38 @@ public class DestinationMap {
         }
         String[] paths = key.getDestinationPaths();
         getRootNode(key).remove(paths, 0, value);
+        clearChosenValues();
+    }
 
+    /**
+     * Sets how many destinations the result of {@link #chooseValue(ActiveMQDestination)}
+     * is remembered for, until the map is next changed. Zero disables this.
+     */
+    public void setChosenValueCacheSize(int chosenValueCacheSize) {
+        synchronized (this) {
+            chosenValues = new LRUCache<ActiveMQDestination, Object>(chosenValueCacheSize);
+        }
+    }
+
+    public int getChosenValueCacheSize() {
+        synchronized (this) {
+            return chosenValues.getMaxCacheSize();
+        }
+    }
+
+    private void clearChosenValues() {
+        synchronized (this) {
+            chosenValues.clear();
+            modificationCount++;
+        }
+    }
+
+    /**
+     * Returns a count that is increased whenever values are added to or removed
+     * from the map, so that results derived from it can tell when they are stale.
+     */
+    public long getModificationCount() {
+        return modificationCount;
     }
 
     public int getTopicRootChildCount() {
@@ -211,6 +247,7 @@ public class DestinationMap {
         }
         String[] paths = key.getDestinationPaths();
         getRootNode(key).removeAll(rc, paths, 0);
+        clearChosenValues();
         return rc;
     }
 
@@ -224,6 +261,20 @@ public class DestinationMap {
      */
     @SuppressWarnings({"rawtypes", "unchecked"})
     public DestinationMapEntry chooseValue(final ActiveMQDestination destination) {
+        synchronized (this) {
+            Object chosen = chosenValues.get(destination);
+            if (chosen == null) {
+                chosen = findChosenValue(destination);
+                if (chosenValues.getMaxCacheSize() > 0) {
+                    chosenValues.put(destination, chosen == null ? NO_VALUE : chosen);
+                }
+            }
+            return chosen == NO_VALUE ? null : (DestinationMapEntry) chosen;
+        }
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private DestinationMapEntry findChosenValue(final ActiveMQDestination destination) {
         Set<DestinationMapEntry> set = get(destination);
         if (set == null || set.isEmpty()) {
             return null;
@@ -277,6 +328,7 @@ public class DestinationMap {
     }
 
     public void reset() {
+        clearChosenValues();
         queueRootNode = new DestinationMapNode(null);
         tempQueueRootNode = new DestinationMapNode(null);
         topicRootNode = new DestinationMapNode(null);
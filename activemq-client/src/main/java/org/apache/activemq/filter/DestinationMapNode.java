@@ -18,6 +18,7 @@ package org.apache.activemq.filter;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -36,7 +37,8 @@ public class DestinationMapNode implements DestinationNode {
     // we synchronize at the DestinationMap level
     private DestinationMapNode parent;
     private List<Object> values = new ArrayList<Object>();
-    private Map<String, DestinationNode> childNodes = new HashMap<String, DestinationNode>();
+    // leaf nodes, the bulk of a large tree, share the empty map until they get a child
+    private Map<String, DestinationNode> childNodes = Collections.emptyMap();
     private String path = "Root";
     // private DestinationMapNode anyChild;
     private int pathLength;
@@ -78,6 +80,9 @@ public class DestinationMapNode implements DestinationNode {
         if (answer == null) {
             answer = createChildNode();
             answer.path = path;
+            if (childNodes.isEmpty()) {
+                childNodes = new HashMap<String, DestinationNode>();
+            }
             childNodes.put(path, answer);
         }
         return answer;
@@ -277,6 +282,9 @@ public class DestinationMapNode implements DestinationNode {
 
     protected void removeChild(DestinationMapNode node) {
         childNodes.remove(node.getPath());
+        if (childNodes.isEmpty()) {
+            childNodes = Collections.emptyMap();
+        }
         pruneIfEmpty();
     }
 }
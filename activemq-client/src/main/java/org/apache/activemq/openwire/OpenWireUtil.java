@@ -16,6 +16,7 @@
  */
 package org.apache.activemq.openwire;
 
+import java.io.DataInput;
 import java.io.IOException;
 import org.apache.activemq.util.IOExceptionSupport;
 
@@ -24,6 +25,9 @@ public class OpenWireUtil {
     static final String jmsPackageToReplace = "javax.jms";
     static final String jmsPackageToUse = "jakarta.jms";
 
+    // Strings are length prefixed by a short so this never grows past 32k
+    private static final ThreadLocal<byte[]> asciiBuffer = ThreadLocal.withInitial(() -> new byte[256]);
+
     /**
      * Verify that the provided class extends {@link Throwable} and throw an
      * {@link IllegalArgumentException} if it does not.
@@ -80,6 +84,33 @@ public class OpenWireUtil {
         }
     }
 
+    /**
+     * Reads a string that was written as single byte ASCII characters. The bytes
+     * are read into a buffer kept per thread rather than a new array for every
+     * string, as most commands carry several such strings (ids, destinations,
+     * type names) and they would otherwise be garbage as soon as they are read.
+     *
+     * @param dataIn the stream to read from
+     * @param size the number of characters in the string
+     * @return the decoded string
+     * @throws IOException if the size is negative or the stream cannot be read
+     */
+    @SuppressWarnings("deprecation")
+    public static String readAsciiString(DataInput dataIn, int size) throws IOException {
+        if (size < 0) {
+            throw new IOException("Invalid string length: " + size);
+        }
+        byte[] data = asciiBuffer.get();
+        if (data.length < size) {
+            data = new byte[Math.max(size, data.length * 2)];
+            asciiBuffer.set(data);
+        }
+        dataIn.readFully(data, 0, size);
+        // Yes deprecated, but we know what we are doing.
+        // This allows us to create a String from a ASCII byte array. (no UTF-8 decoding)
+        return new String(data, 0, 0, size);
+    }
+
     /**
      * This method can be used to convert from javax -> jakarta or
      * vice versa depending on the version used by the client
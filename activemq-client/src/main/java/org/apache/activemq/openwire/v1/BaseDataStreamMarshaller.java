@@ -286,16 +286,10 @@ public abstract class BaseDataStreamMarshaller implements DataStreamMarshaller {
         }
     }
 
-    @SuppressWarnings("deprecation")
     protected String tightUnmarshalString(DataInput dataIn, BooleanStream bs) throws IOException {
         if (bs.readBoolean()) {
             if (bs.readBoolean()) {
-                int size = dataIn.readShort();
-                byte data[] = new byte[size];
-                dataIn.readFully(data);
-                // Yes deprecated, but we know what we are doing.
-                // This allows us to create a String from a ASCII byte array. (no UTF-8 decoding)
-                return new String(data, 0);
+                return OpenWireUtil.readAsciiString(dataIn, dataIn.readShort());
             } else {
                 return dataIn.readUTF();
             }
@@ -46,6 +46,9 @@ import org.apache.activemq.command.SessionId;
 import org.apache.activemq.command.SessionInfo;
 import org.apache.activemq.command.TransactionInfo;
 import org.apache.activemq.transport.Transport;
+import org.apache.activemq.transport.TransportFilter;
+import org.apache.activemq.transport.TransportListener;
+import org.apache.activemq.transport.tcp.TcpTransport;
 import org.apache.activemq.util.IOExceptionSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -70,6 +73,7 @@ public class ConnectionStateTracker extends CommandVisitorAdapter {
     private boolean restoreTransaction = true;
     private boolean trackMessages = true;
     private boolean trackTransactionProducers = true;
+    private boolean pipelineRestore = true;
     private int maxCacheSize = 128 * 1024;
     private long currentCacheSize;  // use long to prevent overflow for folks who set high max.
 
@@ -193,6 +197,23 @@ public class ConnectionStateTracker extends CommandVisitorAdapter {
     }
 
     public void restore(Transport transport) throws IOException {
+        TcpTransport tcpTransport = pipelineRestore ? transport.narrow(TcpTransport.class) : null;
+        if (tcpTransport == null) {
+            doRestore(transport);
+            return;
+        }
+
+        PipelinedRestoreTransport pipeline = new PipelinedRestoreTransport(transport);
+        tcpTransport.deferFlush(true);
+        try {
+            doRestore(pipeline);
+        } finally {
+            tcpTransport.deferFlush(false);
+        }
+        pipeline.flush();
+    }
+
+    private void doRestore(Transport transport) throws IOException {
         // Restore the connections.
         for (Iterator<ConnectionState> iter = connectionStates.values().iterator(); iter.hasNext();) {
             ConnectionState connectionState = iter.next();
@@ -720,6 +741,19 @@ public class ConnectionStateTracker extends CommandVisitorAdapter {
         this.trackMessages = trackMessages;
     }
 
+    public boolean isPipelineRestore() {
+        return pipelineRestore;
+    }
+
+    /**
+     * When enabled the state commands replayed by {@link #restore(Transport)} are
+     * written back to back and only flushed to the socket once, rather than
+     * flushing after every session, consumer, producer and message.
+     */
+    public void setPipelineRestore(boolean pipelineRestore) {
+        this.pipelineRestore = pipelineRestore;
+    }
+
     public int getMaxCacheSize() {
         return maxCacheSize;
     }
@@ -767,4 +801,39 @@ public class ConnectionStateTracker extends CommandVisitorAdapter {
             connectionState.setConnectionInterruptProcessingComplete(false);
         }
     }
+
+    /**
+     * Holds back the most recent command of a restore so that it can be sent
+     * once flush deferral on the underlying TcpTransport has been lifted, the
+     * write of that last command then flushes the whole replay in one go.
+     */
+    private static final class PipelinedRestoreTransport extends TransportFilter {
+
+        private Object pending;
+
+        PipelinedRestoreTransport(Transport next) {
+            super(next);
+        }
+
+        @Override
+        public void oneway(Object command) throws IOException {
+            if (pending != null) {
+                next.oneway(pending);
+            }
+            pending = command;
+        }
+
+        @Override
+        public TransportListener getTransportListener() {
+            return next.getTransportListener();
+        }
+
+        void flush() throws IOException {
+            if (pending != null) {
+                Object command = pending;
+                pending = null;
+                next.oneway(command);
+            }
+        }
+    }
 }
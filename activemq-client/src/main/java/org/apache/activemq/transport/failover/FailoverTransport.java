@@ -114,6 +114,7 @@ public class FailoverTransport implements CompositeTransport {
     private int backupPoolSize = 1;
     private boolean trackMessages = false;
     private boolean trackTransactionProducers = true;
+    private boolean pipelineRestore = true;
     private int maxCacheSize = 128 * 1024;
     private final TransportListener disposedListener = new DefaultTransportListener() {};
     private boolean updateURIsSupported = true;
@@ -365,6 +366,7 @@ public class FailoverTransport implements CompositeTransport {
             stateTracker.setMaxCacheSize(getMaxCacheSize());
             stateTracker.setTrackMessages(isTrackMessages());
             stateTracker.setTrackTransactionProducers(isTrackTransactionProducers());
+            stateTracker.setPipelineRestore(isPipelineRestore());
             if (connectedTransport.get() != null) {
                 stateTracker.restore(connectedTransport.get());
             } else {
@@ -539,6 +541,14 @@ public class FailoverTransport implements CompositeTransport {
         this.trackTransactionProducers = trackTransactionProducers;
     }
 
+    public boolean isPipelineRestore() {
+        return pipelineRestore;
+    }
+
+    public void setPipelineRestore(boolean pipelineRestore) {
+        this.pipelineRestore = pipelineRestore;
+    }
+
     public int getMaxCacheSize() {
         return maxCacheSize;
     }
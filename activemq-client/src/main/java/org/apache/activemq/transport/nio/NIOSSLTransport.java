@@ -165,7 +165,7 @@ public class NIOSSLTransport extends NIOTransport {
                 doHandshake();
             }
 
-            selection = SelectorManager.getInstance().register(channel, new SelectorManager.Listener() {
+            selection = selectorManager.register(channel, new SelectorManager.Listener() {
                 @Override
                 public void onSelect(SelectorSelection selection) {
                     try {
@@ -261,36 +261,40 @@ public class NIOSSLTransport extends NIOTransport {
 
             doOpenWireInit();
 
-            ByteBuffer plain = ByteBuffer.allocate(sslSession.getApplicationBufferSize());
+            ByteBuffer plain = allocateApplicationBuffer();
             plain.position(plain.limit());
 
-            while (true) {
-                //If the transport was already stopped then break
-                if (this.isStopped()) {
-                    return;
-                }
+            try {
+                while (true) {
+                    //If the transport was already stopped then break
+                    if (this.isStopped()) {
+                        return;
+                    }
 
-                if (!plain.hasRemaining()) {
+                    if (!plain.hasRemaining()) {
 
-                    int readCount = secureRead(plain);
+                        int readCount = secureRead(plain);
 
-                    if (readCount == 0) {
-                        break;
-                    }
+                        if (readCount == 0) {
+                            break;
+                        }
 
-                    // channel is closed, cleanup
-                    if (readCount == -1) {
-                        onException(new EOFException());
-                        selection.close();
-                        break;
-                    }
+                        // channel is closed, cleanup
+                        if (readCount == -1) {
+                            onException(new EOFException());
+                            selection.close();
+                            break;
+                        }
 
-                    receiveCounter.addAndGet(readCount);
-                }
+                        receiveCounter.addAndGet(readCount);
+                    }
 
-                if (status == SSLEngineResult.Status.OK && handshakeStatus != SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
-                    processCommand(plain);
+                    if (status == SSLEngineResult.Status.OK && handshakeStatus != SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
+                        processCommand(plain);
+                    }
                 }
+            } finally {
+                releaseApplicationBuffer(plain);
             }
         } catch (IOException e) {
             onException(e);
@@ -384,6 +388,21 @@ public class NIOSSLTransport extends NIOTransport {
         }
     }
 
+    /**
+     * @return the buffer that a read decrypts into, it is released again once all
+     * data read from the channel is processed.
+     */
+    protected ByteBuffer allocateApplicationBuffer() {
+        return ByteBuffer.allocate(sslSession.getApplicationBufferSize());
+    }
+
+    /**
+     * Called with the buffer of {@link #allocateApplicationBuffer()} once a read is done,
+     * nothing refers to its content anymore.
+     */
+    protected void releaseApplicationBuffer(ByteBuffer plain) {
+    }
+
     //Prevent concurrent access while reading from the channel
     protected synchronized int secureRead(ByteBuffer plain) throws Exception {
 
@@ -26,10 +26,9 @@ import javax.net.ssl.SSLContext;
 
 import org.apache.activemq.transport.Transport;
 import org.apache.activemq.transport.tcp.TcpTransportFactory;
-import org.apache.activemq.transport.tcp.TcpTransportServer;
 import org.apache.activemq.wireformat.WireFormat;
 
-public class NIOSSLTransportServer extends TcpTransportServer {
+public class NIOSSLTransportServer extends NIOTransportServer {
 
     private SSLContext context;
 
@@ -48,6 +47,7 @@ public class NIOSSLTransportServer extends TcpTransportServer {
         if (context != null) {
             transport.setSslContext(context);
         }
+        transport.setSelectorManager(getSelectorManager());
 
         transport.setNeedClientAuth(needClientAuth);
         transport.setWantClientAuth(wantClientAuth);
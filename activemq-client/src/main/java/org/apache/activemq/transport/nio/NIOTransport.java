@@ -50,6 +50,7 @@ public class NIOTransport extends TcpTransport {
     protected ByteBuffer inputBuffer;
     protected ByteBuffer currentBuffer;
     protected int nextFrameSize;
+    protected SelectorManager selectorManager = SelectorManager.getInstance();
 
     public NIOTransport(WireFormat wireFormat, SocketFactory socketFactory, URI remoteLocation, URI localLocation) throws UnknownHostException, IOException {
         super(wireFormat, socketFactory, remoteLocation, localLocation);
@@ -75,7 +76,7 @@ public class NIOTransport extends TcpTransport {
         channel.configureBlocking(false);
 
         // listen for events telling us when the socket is readable.
-        selection = SelectorManager.getInstance().register(channel, new SelectorManager.Listener() {
+        selection = selectorManager.register(channel, new SelectorManager.Listener() {
             @Override
             public void onSelect(SelectorSelection selection) {
                 serviceRead();
@@ -191,4 +192,16 @@ public class NIOTransport extends TcpTransport {
         }
         super.doStop(stopper);
     }
+
+    public SelectorManager getSelectorManager() {
+        return selectorManager;
+    }
+
+    /**
+     * Sets the manager whose selector threads watch the channel of this transport,
+     * the shared {@link SelectorManager#getInstance()} is used by default.
+     */
+    public void setSelectorManager(SelectorManager selectorManager) {
+        this.selectorManager = selectorManager;
+    }
 }
@@ -30,7 +30,6 @@ import java.nio.channels.SocketChannel;
 import javax.net.ServerSocketFactory;
 import javax.net.SocketFactory;
 
-import org.apache.activemq.transport.Transport;
 import org.apache.activemq.transport.tcp.TcpTransport;
 import org.apache.activemq.transport.tcp.TcpTransport.InitBuffer;
 import org.apache.activemq.transport.tcp.TcpTransportFactory;
@@ -41,12 +40,7 @@ public class NIOTransportFactory extends TcpTransportFactory {
 
     @Override
     protected TcpTransportServer createTcpTransportServer(URI location, ServerSocketFactory serverSocketFactory) throws IOException, URISyntaxException {
-        return new TcpTransportServer(this, location, serverSocketFactory) {
-            @Override
-            protected Transport createTransport(Socket socket, WireFormat format) throws IOException {
-                return new NIOTransport(format, socket);
-            }
-        };
+        return new NIOTransportServer(this, location, serverSocketFactory);
     }
 
     @Override
@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.nio;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import javax.net.ServerSocketFactory;
+
+import org.apache.activemq.transport.Transport;
+import org.apache.activemq.transport.tcp.TcpTransportFactory;
+import org.apache.activemq.transport.tcp.TcpTransportServer;
+import org.apache.activemq.wireformat.WireFormat;
+
+/**
+ * A {@link TcpTransportServer} accepting {@link NIOTransport} connections.
+ *
+ * With the selectorThreads option set the connections of this connector are
+ * spread over that many selector threads of their own instead of sharing the
+ * selector threads of the default {@link SelectorManager}.
+ */
+public class NIOTransportServer extends TcpTransportServer {
+
+    private int selectorThreads;
+    private SelectorManager selectorManager;
+
+    public NIOTransportServer(TcpTransportFactory transportFactory, URI location, ServerSocketFactory serverSocketFactory) throws IOException, URISyntaxException {
+        super(transportFactory, location, serverSocketFactory);
+    }
+
+    @Override
+    protected Transport createTransport(Socket socket, WireFormat format) throws IOException {
+        NIOTransport transport = new NIOTransport(format, socket);
+        transport.setSelectorManager(getSelectorManager());
+        return transport;
+    }
+
+    protected synchronized SelectorManager getSelectorManager() {
+        if (selectorManager == null) {
+            selectorManager = selectorThreads > 0 ? SelectorManager.newInstance(selectorThreads) : SelectorManager.getInstance();
+        }
+        return selectorManager;
+    }
+
+    public int getSelectorThreads() {
+        return selectorThreads;
+    }
+
+    /**
+     * Sets the number of selector threads the connections of this connector are
+     * spread over, a value of 0 uses the default {@link SelectorManager}.
+     */
+    public synchronized void setSelectorThreads(int selectorThreads) {
+        this.selectorThreads = selectorThreads;
+        this.selectorManager = null;
+    }
+}
@@ -18,7 +18,10 @@ package org.apache.activemq.transport.nio;
 
 import java.io.IOException;
 import java.nio.channels.spi.AbstractSelectableChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
@@ -33,17 +36,38 @@ import java.util.concurrent.TimeUnit;
  * The SelectorManager will manage one Selector and the thread that checks the
  * selector.
  *
- * We may need to consider running more than one thread to check the selector if
- * servicing the selector takes too long.
+ * By default channels are packed onto a worker until it holds maxChannelsPerWorker
+ * of them before another worker is started. When selectorThreads is set a fixed
+ * number of workers is used instead and each new channel goes to the worker with
+ * the fewest channels, spreading connections over that many selector threads.
+ * A transport connector can be given its own balanced manager through its
+ * selectorThreads option, see {@link #newInstance(int)}.
+ *
+ * Ready channels are always serviced on the channel executor, as reading from a
+ * channel runs the command processing of the transport, which may block on flow
+ * control or a slow write and would hold up every other channel of the selector.
  */
 public final class SelectorManager {
 
     public static final SelectorManager SINGLETON = new SelectorManager();
 
-    private Executor selectorExecutor = createDefaultExecutor();
-    private Executor channelExecutor = selectorExecutor;
+    private Executor selectorExecutor;
+    private Executor channelExecutor;
     private final LinkedList<SelectorWorker> freeWorkers = new LinkedList<SelectorWorker>();
+    private final List<SelectorWorker> balancedWorkers = new ArrayList<SelectorWorker>();
     private int maxChannelsPerWorker = -1;
+    private int selectorThreads = getDefaultSelectorThreads();
+
+    public SelectorManager() {
+        selectorExecutor = createDefaultExecutor();
+        channelExecutor = selectorExecutor;
+    }
+
+    private SelectorManager(SelectorManager parent, int selectorThreads) {
+        selectorExecutor = parent.getSelectorExecutor();
+        channelExecutor = parent.getChannelExecutor();
+        this.selectorThreads = selectorThreads;
+    }
 
     protected ExecutorService createDefaultExecutor() {
         ThreadPoolExecutor rc = new ThreadPoolExecutor(getDefaultCorePoolSize(), getDefaultMaximumPoolSize(), getDefaultKeepAliveTime(), TimeUnit.SECONDS, newWorkQueue(),
@@ -95,10 +119,24 @@ public final class SelectorManager {
         return Integer.getInteger("org.apache.activemq.transport.nio.SelectorManager.maxChannelsPerWorker", 1024);
     }
 
+    private static int getDefaultSelectorThreads() {
+        return Integer.getInteger("org.apache.activemq.transport.nio.SelectorManager.selectorThreads", 0);
+    }
+
     public static SelectorManager getInstance() {
         return SINGLETON;
     }
 
+    /**
+     * Creates a manager that spreads its channels over its own selectorThreads
+     * selector threads. The threads are run, and ready channels serviced, on the
+     * executors of the default manager so no thread pool is left behind once
+     * all of its channels are closed.
+     */
+    public static SelectorManager newInstance(int selectorThreads) {
+        return new SelectorManager(SINGLETON, selectorThreads);
+    }
+
     public interface Listener {
         void onSelect(SelectorSelection selector);
 
@@ -106,6 +144,10 @@ public final class SelectorManager {
     }
 
     public synchronized SelectorSelection register(AbstractSelectableChannel selectableChannel, Listener listener) throws IOException {
+        if (selectorThreads > 0) {
+            return registerBalanced(selectableChannel, listener);
+        }
+
         SelectorSelection selection = null;
         while (selection == null) {
             if (freeWorkers.size() > 0) {
@@ -127,16 +169,49 @@ public final class SelectorManager {
         return selection;
     }
 
+    private SelectorSelection registerBalanced(AbstractSelectableChannel selectableChannel, Listener listener) throws IOException {
+        SelectorWorker leastLoaded = null;
+        for (Iterator<SelectorWorker> i = balancedWorkers.iterator(); i.hasNext();) {
+            SelectorWorker worker = i.next();
+            if (worker.isReleased()) {
+                i.remove();
+            } else if (leastLoaded == null || worker.getChannelCount() < leastLoaded.getChannelCount()) {
+                leastLoaded = worker;
+            }
+        }
+
+        if (leastLoaded == null || (leastLoaded.getChannelCount() > 0 && balancedWorkers.size() < selectorThreads)) {
+            // Worker starts /w retain count of 1
+            SelectorWorker worker = new SelectorWorker(this);
+            balancedWorkers.add(worker);
+            return new SelectorSelection(worker, selectableChannel, listener);
+        }
+
+        leastLoaded.retain();
+        return new SelectorSelection(leastLoaded, selectableChannel, listener);
+    }
+
+    synchronized int[] getSelectorThreadChannelCounts() {
+        int[] counts = new int[balancedWorkers.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = balancedWorkers.get(i).getChannelCount();
+        }
+        return counts;
+    }
+
     synchronized void onWorkerFullEvent(SelectorWorker worker) {
         freeWorkers.remove(worker);
     }
 
     public synchronized void onWorkerEmptyEvent(SelectorWorker worker) {
         freeWorkers.remove(worker);
+        balancedWorkers.remove(worker);
     }
 
     public synchronized void onWorkerNotFullEvent(SelectorWorker worker) {
-        freeWorkers.addFirst(worker);
+        if (!balancedWorkers.contains(worker)) {
+            freeWorkers.addFirst(worker);
+        }
     }
 
     public Executor getChannelExecutor() {
@@ -155,6 +230,18 @@ public final class SelectorManager {
         this.maxChannelsPerWorker = maxChannelsPerWorker;
     }
 
+    public int getSelectorThreads() {
+        return selectorThreads;
+    }
+
+    /**
+     * Sets the number of selector threads channels are spread over, a value of 0
+     * keeps the default of filling each worker up to maxChannelsPerWorker.
+     */
+    public synchronized void setSelectorThreads(int selectorThreads) {
+        this.selectorThreads = selectorThreads;
+    }
+
     public Executor getSelectorExecutor() {
         return selectorExecutor;
     }
@@ -67,6 +67,10 @@ public class SelectorWorker implements Runnable {
         return retainCounter.get() == 0;
     }
 
+    int getChannelCount() {
+        return retainCounter.get();
+    }
+
     public void addIoTask(Runnable work) {
         ioTasks.add(work);
         selector.wakeup();
@@ -133,6 +133,7 @@ public class TcpTransport extends TransportThreadSupport implements Transport, S
     protected SocketFactory socketFactory;
     protected final AtomicReference<CountDownLatch> stoppedLatch = new AtomicReference<>();
     protected final AtomicInteger receiveCounter = new AtomicInteger();
+    protected volatile boolean flushDeferred;
 
     protected Map<String, Object> socketOptions;
     private int soLinger = Integer.MIN_VALUE;
@@ -192,7 +193,21 @@ public class TcpTransport extends TransportThreadSupport implements Transport, S
     public void oneway(Object command) throws IOException {
         checkStarted();
         wireFormat.marshal(command, dataOut);
-        dataOut.flush();
+        if (!flushDeferred) {
+            dataOut.flush();
+        }
+    }
+
+    /**
+     * Holds back the flush that normally follows each command so that a run of
+     * commands written by a single thread can share socket writes. Once
+     * deferral is switched off the next command sent flushes everything
+     * buffered before it.
+     *
+     * @param defer true to buffer commands until deferral is switched off
+     */
+    public void deferFlush(boolean defer) {
+        this.flushDeferred = defer;
     }
 
     /**
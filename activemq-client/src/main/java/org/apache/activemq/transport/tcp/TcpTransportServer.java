@@ -574,26 +574,27 @@ public class TcpTransportServer extends TransportServerThreadSupport implements
     }
 
     final protected void doHandleSocket(Socket socket) {
+        doHandleSocket(socket, false);
+    }
+
+    /**
+     * Configures and accepts the transport of a socket.
+     *
+     * @param socket
+     * @param countIncremented true if the socket was already counted as a connection by
+     *        {@link #incrementCurrentTransportCount()}
+     */
+    final protected void doHandleSocket(Socket socket, boolean countIncremented) {
         boolean closeSocket = true;
-        boolean countIncremented = false;
         try {
-            int currentCount;
-            do {
-                currentCount = currentTransportCount.get();
-                if (currentCount >= this.maximumConnections) {
-                    this.maximumConnectionsExceededCount.incrementAndGet();
-                    throw new ExceededMaximumConnectionsException(
-                        "Exceeded the maximum number of allowed client connections. See the '" +
-                        "maximumConnections' property on the TCP transport configuration URI " +
-                        "in the ActiveMQ configuration file (e.g., activemq.xml)");
-                 }
-
-            //Increment this value before configuring the transport
-            //This is necessary because some of the transport servers must read from the
-            //socket during configureTransport() so we want to make sure this value is
-            //accurate as the transport server could pause here waiting for data to be sent from a client
-            } while(!currentTransportCount.compareAndSet(currentCount, currentCount + 1));
-            countIncremented = true;
+            if (!countIncremented) {
+                //Increment this value before configuring the transport
+                //This is necessary because some of the transport servers must read from the
+                //socket during configureTransport() so we want to make sure this value is
+                //accurate as the transport server could pause here waiting for data to be sent from a client
+                incrementCurrentTransportCount();
+                countIncremented = true;
+            }
 
             HashMap<String, Object> options = new HashMap<String, Object>();
             options.put("maxInactivityDuration", maxInactivityDuration);
@@ -645,6 +646,25 @@ public class TcpTransportServer extends TransportServerThreadSupport implements
         }
     }
 
+    /**
+     * Counts a new connection unless the maximum number of connections is reached.
+     *
+     * @throws ExceededMaximumConnectionsException if the maximum number of connections is reached
+     */
+    protected void incrementCurrentTransportCount() throws ExceededMaximumConnectionsException {
+        int currentCount;
+        do {
+            currentCount = currentTransportCount.get();
+            if (currentCount >= this.maximumConnections) {
+                this.maximumConnectionsExceededCount.incrementAndGet();
+                throw new ExceededMaximumConnectionsException(
+                    "Exceeded the maximum number of allowed client connections. See the '" +
+                    "maximumConnections' property on the TCP transport configuration URI " +
+                    "in the ActiveMQ configuration file (e.g., activemq.xml)");
+            }
+        } while(!currentTransportCount.compareAndSet(currentCount, currentCount + 1));
+    }
+
     protected TransportInfo configureTransport(final TcpTransportServer server, final Socket socket) throws Exception {
         WireFormat format = wireFormatFactory.createWireFormat();
         Transport transport = createTransport(socket, format);
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.util;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate and inflate helpers for message bodies.
+ *
+ * The {@link Deflater} and {@link Inflater} used are kept per thread and reset
+ * between uses rather than being created, and their native buffers released,
+ * for every message. The data produced is a plain zlib stream so it can be
+ * read back with an {@link java.util.zip.InflaterInputStream} as well.
+ */
+public final class CompressionSupport {
+
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(Deflater::new);
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+    private CompressionSupport() {
+    }
+
+    /**
+     * Compresses the given range into a new buffer.
+     *
+     * @param data the data to compress
+     * @param offset the offset of the first byte to compress
+     * @param length the number of bytes to compress
+     * @param level the {@link Deflater} compression level to use
+     * @param reserve the number of bytes to leave free at the start of the result
+     *
+     * @return the compressed data, preceded by <code>reserve</code> unused bytes
+     */
+    public static ByteSequence deflate(byte[] data, int offset, int length, int level, int reserve) {
+        Deflater deflater = DEFLATERS.get();
+        try {
+            deflater.setLevel(level);
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, reserve + length / 2));
+            compressed.write(new byte[reserve], 0, reserve);
+            byte[] buffer = new byte[Math.min(8 * 1024, Math.max(64, length))];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                compressed.write(buffer, 0, count);
+            }
+            return compressed.toByteSequence();
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    public static ByteSequence deflate(ByteSequence bytes, int level) {
+        return deflate(bytes.getData(), bytes.getOffset(), bytes.getLength(), level, 0);
+    }
+
+    /**
+     * Decompresses the given range into the supplied buffer, which must be
+     * large enough to hold all of the uncompressed data.
+     *
+     * @return the number of bytes written to <code>target</code>
+     *
+     * @throws IOException if the data is not a valid zlib stream
+     */
+    public static int inflate(byte[] data, int offset, int length, byte[] target) throws IOException {
+        Inflater inflater = INFLATERS.get();
+        try {
+            inflater.setInput(data, offset, length);
+            int count = 0;
+            while (count < target.length && !inflater.finished()) {
+                int read = inflater.inflate(target, count, target.length - count);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                count += read;
+            }
+            return count;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.reset();
+        }
+    }
+}
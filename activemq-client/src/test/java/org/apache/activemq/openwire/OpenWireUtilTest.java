@@ -24,8 +24,11 @@ import org.apache.activemq.MaxFrameSizeExceededException;
 import org.apache.activemq.command.WireFormatInfo;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
@@ -102,6 +105,28 @@ public class OpenWireUtilTest {
         }
     }
 
+    @Test
+    public void testReadAsciiString() throws IOException {
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longValue.append((char) ('a' + i % 26));
+        }
+        String[] values = { "queue://TEST", "", longValue.toString(), "ID:host-1234-1:1:1" };
+
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+            DataInputStream dataIn = new DataInputStream(new ByteArrayInputStream(bytes));
+            assertEquals(value, OpenWireUtil.readAsciiString(dataIn, bytes.length));
+        }
+
+        try {
+            OpenWireUtil.readAsciiString(new DataInputStream(new ByteArrayInputStream(new byte[0])), -1);
+            fail("should have failed");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private void initContext(OpenWireFormat format, int frameSize) throws IOException {
         try {
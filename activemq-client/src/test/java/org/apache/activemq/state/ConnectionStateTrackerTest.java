@@ -17,16 +17,27 @@
 package org.apache.activemq.state;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
+import javax.net.SocketFactory;
+
 import org.apache.activemq.command.ActiveMQQueue;
 import org.apache.activemq.command.ConnectionId;
+import org.apache.activemq.command.ConnectionInfo;
 import org.apache.activemq.command.ConsumerId;
+import org.apache.activemq.command.ConsumerInfo;
 import org.apache.activemq.command.MessagePull;
 import org.apache.activemq.command.SessionId;
+import org.apache.activemq.command.SessionInfo;
+import org.apache.activemq.openwire.OpenWireFormat;
+import org.apache.activemq.transport.tcp.TcpTransport;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -77,6 +88,68 @@ public class ConnectionStateTrackerTest {
         assertEquals(currentSize, tracker.getCurrentCacheSize());
     }
 
+    @Test
+    public void testRestoreFlushesOnlyOnLastCommand() throws Exception {
+        ConnectionStateTracker tracker = createTrackerWithConsumers(10);
+        RecordingTcpTransport transport = new RecordingTcpTransport();
+
+        tracker.restore(transport);
+
+        // connection, default and tracked session, ten consumers
+        assertEquals(13, transport.sent.size());
+        assertTrue(transport.sent.get(0) instanceof ConnectionInfo);
+        for (int i = 0; i < transport.deferred.size() - 1; i++) {
+            assertTrue("command " + i + " should not flush", transport.deferred.get(i));
+        }
+        assertFalse(transport.deferred.get(transport.deferred.size() - 1));
+        assertFalse(transport.isFlushDeferred());
+    }
+
+    @Test
+    public void testRestoreWithoutPipelining() throws Exception {
+        ConnectionStateTracker tracker = createTrackerWithConsumers(3);
+        tracker.setPipelineRestore(false);
+        RecordingTcpTransport transport = new RecordingTcpTransport();
+
+        tracker.restore(transport);
+
+        assertEquals(6, transport.sent.size());
+        assertFalse(transport.deferred.contains(Boolean.TRUE));
+    }
+
+    private ConnectionStateTracker createTrackerWithConsumers(int count) throws IOException {
+        ConnectionStateTracker tracker = new ConnectionStateTracker();
+        ConnectionInfo connectionInfo = new ConnectionInfo(testConnectionId);
+        tracker.track(connectionInfo);
+        tracker.track(new SessionInfo(testSessionId));
+        for (int i = 0; i < count; i++) {
+            ConsumerInfo consumerInfo = new ConsumerInfo(createConsumerId(testSessionId));
+            consumerInfo.setDestination(queue);
+            tracker.track(consumerInfo);
+        }
+        return tracker;
+    }
+
+    private static class RecordingTcpTransport extends TcpTransport {
+
+        final List<Object> sent = new ArrayList<>();
+        final List<Boolean> deferred = new ArrayList<>();
+
+        RecordingTcpTransport() throws Exception {
+            super(new OpenWireFormat(), SocketFactory.getDefault(), new URI("tcp://localhost:61616"), null);
+        }
+
+        @Override
+        public void oneway(Object command) throws IOException {
+            sent.add(command);
+            deferred.add(flushDeferred);
+        }
+
+        boolean isFlushDeferred() {
+            return flushDeferred;
+        }
+    }
+
     private MessagePull createPullCommand(ConsumerId id) {
         MessagePull pullCommand = new MessagePull();
         pullCommand.setDestination(queue);
@@ -34,8 +34,11 @@ import org.apache.activemq.wireformat.WireFormat;
 public class BlockingQueueTransport extends TransportSupport {
 
     public static final long MAX_TIMEOUT = 30000L;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64 * 1024;
 
     private BlockingQueue<Object> queue;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private long maxBatchWait;
 
     public BlockingQueueTransport(BlockingQueue<Object> channel) {
         this.queue = channel;
@@ -57,6 +60,37 @@ public class BlockingQueueTransport extends TransportSupport {
         }
     }
 
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Sets the number of bytes after which a batched poll returns the commands it has
+     * collected, a single command larger than this is still returned on its own.
+     *
+     * Default value is 64k.
+     *
+     * @param maxBatchSize
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getMaxBatchWait() {
+        return maxBatchWait;
+    }
+
+    /**
+     * Sets the time in milliseconds a batched poll keeps waiting for more commands once
+     * it has one to return.  With the default of 0 a poll returns the commands that are
+     * queued at the time without waiting for more.
+     *
+     * @param maxBatchWait
+     */
+    public void setMaxBatchWait(long maxBatchWait) {
+        this.maxBatchWait = maxBatchWait;
+    }
+
     @Override
     public String getRemoteAddress() {
         return "blockingQueue_" + queue.hashCode();
@@ -31,6 +31,7 @@ import org.apache.activemq.command.ShutdownInfo;
 import org.apache.activemq.transport.FutureResponse;
 import org.apache.activemq.transport.util.TextWireFormat;
 import org.apache.activemq.util.ByteArrayOutputStream;
+import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.IOExceptionSupport;
 import org.apache.activemq.util.IdGenerator;
 import org.apache.activemq.util.ServiceStopper;
@@ -91,6 +92,18 @@ public class HttpClientTransport extends HttpTransportSupport {
     protected boolean canSendCompressed = false;
     private int minSendAsCompressedSize = 0;
 
+    private boolean useBatching = false;
+    protected boolean canSendBatched = false;
+
+    // Commands of concurrent senders waiting for the POST in flight to complete, the
+    // next sender to find no POST in flight posts them all in one request.
+    private final Object batchMutex = new Object();
+    private final ByteArrayOutputStream pendingBatch = new ByteArrayOutputStream();
+    private long batchedCommands;
+    private long postedCommands;
+    private boolean posting;
+    private IOException batchFailure;
+
     public HttpClientTransport(TextWireFormat wireFormat, URI remoteUrl) {
         super(wireFormat, remoteUrl);
     }
@@ -105,10 +118,80 @@ public class HttpClientTransport extends HttpTransportSupport {
         if (isStopped()) {
             throw new IOException("stopped.");
         }
+
+        if (isBatched()) {
+            onewayBatched(command);
+        } else {
+            String data = getTextWireFormat().marshalText(command);
+            post(data.getBytes("UTF-8"), command);
+        }
+
+        if (command instanceof ShutdownInfo) {
+            try {
+                stop();
+            } catch (Exception e) {
+                LOG.warn("Error trying to stop HTTP client: "+ e, e);
+            }
+        }
+    }
+
+    private void onewayBatched(Object command) throws IOException {
+        ByteSequence data = getTextWireFormat().marshal(command);
+
+        byte[] batch;
+        long batchEnd;
+        synchronized (batchMutex) {
+            pendingBatch.write(data.getData(), data.getOffset(), data.getLength());
+            long sequence = ++batchedCommands;
+
+            while (posting && postedCommands < sequence && batchFailure == null) {
+                try {
+                    batchMutex.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting to post command: " + command);
+                }
+            }
+
+            if (batchFailure != null) {
+                throw IOExceptionSupport.create("Could not post command: " + command + " due to: " + batchFailure, batchFailure);
+            }
+            if (postedCommands >= sequence) {
+                return;
+            }
+
+            posting = true;
+            batch = pendingBatch.toByteArray();
+            pendingBatch.reset();
+            batchEnd = batchedCommands;
+        }
+
+        IOException failure = null;
+        try {
+            post(batch, command);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        } catch (Throwable e) {
+            // the batch did not make it either, the waiting senders must not report it as posted
+            failure = IOExceptionSupport.create("Could not post command: " + command + " due to: " + e, e);
+            throw e;
+        } finally {
+            synchronized (batchMutex) {
+                posting = false;
+                if (failure != null) {
+                    batchFailure = failure;
+                } else {
+                    postedCommands = batchEnd;
+                }
+                batchMutex.notifyAll();
+            }
+        }
+    }
+
+    private void post(byte[] bytes, Object command) throws IOException {
         HttpPost httpMethod = new HttpPost(getRemoteUrl().toString());
         configureMethod(httpMethod);
-        String data = getTextWireFormat().marshalText(command);
-        byte[] bytes = data.getBytes("UTF-8");
         if (useCompression && canSendCompressed && bytes.length > minSendAsCompressedSize) {
             ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
             GZIPOutputStream stream = new GZIPOutputStream(bytesOut);
@@ -132,13 +215,6 @@ public class HttpClientTransport extends HttpTransportSupport {
             if (status != HttpStatus.SC_OK) {
                 throw new IOException("Failed to post command: " + command + " as response was: " + answer);
             }
-            if (command instanceof ShutdownInfo) {
-                try {
-                    stop();
-                } catch (Exception e) {
-                    LOG.warn("Error trying to stop HTTP client: "+ e, e);
-                }
-            }
         } catch (IOException e) {
             throw IOExceptionSupport.create("Could not post command: " + command + " due to: " + e, e);
         } finally {
@@ -197,11 +273,19 @@ public class HttpClientTransport extends HttpTransportSupport {
                 } else {
                     receiveCounter++;
                     DataInputStream stream = createDataInputStream(answer);
-                    Object command = getTextWireFormat().unmarshal(stream);
-                    if (command == null) {
-                        LOG.debug("Received null command from url: " + remoteUrl);
+                    if (isBatched()) {
+                        // The response holds every command that was waiting, possibly none.
+                        Object command;
+                        while ((command = getTextWireFormat().unmarshalNext(stream, Long.MAX_VALUE)) != null) {
+                            doConsume(command);
+                        }
                     } else {
-                        doConsume(command);
+                        Object command = getTextWireFormat().unmarshal(stream);
+                        if (command == null) {
+                            LOG.debug("Received null command from url: " + remoteUrl);
+                        } else {
+                            doConsume(command);
+                        }
                     }
                     stream.close();
                 }
@@ -270,7 +354,9 @@ public class HttpClientTransport extends HttpTransportSupport {
                     if (header.getName().equals("Accepts-Encoding") && header.getValue().contains("gzip")) {
                         LOG.info("Broker Servlet supports GZip compression.");
                         canSendCompressed = true;
-                        break;
+                    } else if (header.getName().equals(ACCEPTS_BATCHING_HEADER) && header.getValue().contains("true")) {
+                        LOG.info("Broker Servlet supports batched requests.");
+                        canSendBatched = true;
                     }
                 }
 
@@ -374,6 +460,13 @@ public class HttpClientTransport extends HttpTransportSupport {
 
     protected void configureMethod(AbstractHttpMessage method) {
         method.setHeader("clientID", clientID);
+        if (isBatched()) {
+            method.setHeader(BATCHED_HEADER, "true");
+        }
+    }
+
+    protected boolean isBatched() {
+        return useBatching && canSendBatched;
     }
 
     public boolean isTrace() {
@@ -422,6 +515,24 @@ public class HttpClientTransport extends HttpTransportSupport {
         this.minSendAsCompressedSize = minSendAsCompressedSize;
     }
 
+    public boolean isUseBatching() {
+        return useBatching;
+    }
+
+    /**
+     * Sets whether commands are exchanged in batches when the broker supports it.  When
+     * enabled the commands of concurrent senders are posted together in one request and
+     * each poll returns all the commands the broker has queued for the client rather than
+     * a single one.
+     *
+     * Default value is false.
+     *
+     * @param useBatching
+     */
+    public void setUseBatching(boolean useBatching) {
+        this.useBatching = useBatching;
+    }
+
     @Override
     public X509Certificate[] getPeerCertificates() {
         return null;
@@ -27,6 +27,18 @@ import org.apache.activemq.transport.util.TextWireFormat;
  *
  */
 public abstract class HttpTransportSupport extends TransportThreadSupport {
+
+    /**
+     * Request header marking a POST whose body is a stream of commands, or a GET whose
+     * response may return several commands at once.
+     */
+    public static final String BATCHED_HEADER = "batched";
+
+    /**
+     * Header with which the server advertises that it accepts batched requests.
+     */
+    public static final String ACCEPTS_BATCHING_HEADER = "Accepts-Batching";
+
     private static final int DEFAULT_PROXY_PORT = 8080;
     private static final String PROPERTY_PROXY_HOST = "proxyHost";
     private static final String PROPERTY_NON_PROXY_HOST = "nonProxyHosts";
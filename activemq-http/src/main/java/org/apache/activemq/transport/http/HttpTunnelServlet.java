@@ -18,6 +18,7 @@ package org.apache.activemq.transport.http;
 
 import java.io.*;
 import java.util.HashMap;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -29,6 +30,7 @@ import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
+import org.apache.activemq.MaxFrameSizeExceededException;
 import org.apache.activemq.Service;
 import org.apache.activemq.command.Command;
 import org.apache.activemq.command.ConnectionInfo;
@@ -38,6 +40,7 @@ import org.apache.activemq.transport.Transport;
 import org.apache.activemq.transport.TransportAcceptListener;
 import org.apache.activemq.transport.util.TextWireFormat;
 import org.apache.activemq.transport.xstream.XStreamWireFormat;
+import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.IOExceptionSupport;
 import org.apache.activemq.util.ServiceListener;
 import org.slf4j.Logger;
@@ -83,6 +86,7 @@ public class HttpTunnelServlet extends HttpServlet {
     @Override
     protected void doOptions(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         response.addHeader("Accepts-Encoding", "gzip");
+        response.addHeader(HttpTransportSupport.ACCEPTS_BATCHING_HEADER, "true");
         super.doOptions(request, response);
     }
 
@@ -93,6 +97,11 @@ public class HttpTunnelServlet extends HttpServlet {
 
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (isBatched(request)) {
+            doBatchedGet(request, response);
+            return;
+        }
+
         // lets return the next response
         Command packet = null;
         int count = 0;
@@ -120,16 +129,53 @@ public class HttpTunnelServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Waits for the next command for the client like a regular GET does and then returns
+     * it together with the other commands that are queued, until the batch size or the
+     * batch wait time of the client's transport is reached.  A poll that times out returns
+     * an empty batch so the client can poll again right away.
+     */
+    protected void doBatchedGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        BlockingQueueTransport transportChannel = getTransportChannel(request, response);
+        if (transportChannel == null) {
+            return;
+        }
+
+        BlockingQueue<Object> queue = transportChannel.getQueue();
+        OutputStream stream = response.getOutputStream();
+        int size = 0;
+        try {
+            Object packet = queue.poll(requestTimeout, TimeUnit.MILLISECONDS);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(transportChannel.getMaxBatchWait());
+
+            // If the packet is ShutDownInfo then we are shutting down so stop here.
+            while (packet != null && !(packet instanceof ShutdownInfo)) {
+                ByteSequence data = wireFormat.marshal(packet);
+                stream.write(data.getData(), data.getOffset(), data.getLength());
+                size += data.getLength();
+                if (size >= transportChannel.getMaxBatchSize()) {
+                    break;
+                }
+
+                long wait = deadline - System.nanoTime();
+                packet = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+            }
+        } catch (InterruptedException ignore) {
+        }
+    }
+
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 
-        if (wireFormatOptions.get("maxFrameSize") != null && request.getContentLength() > Integer.parseInt(wireFormatOptions.get("maxFrameSize").toString())) {
-            response.setStatus(405);
-            response.setContentType("plain/text");
-            PrintWriter writer = response.getWriter();
-            writer.println("maxFrameSize exceeded");
-            writer.flush();
-            writer.close();
+        boolean batched = isBatched(request);
+        long maxFrameSize = Long.MAX_VALUE;
+        if (wireFormatOptions.get("maxFrameSize") != null) {
+            maxFrameSize = Long.parseLong(wireFormatOptions.get("maxFrameSize").toString());
+        }
+
+        // A batch may hold many commands, each of which is checked on its own.
+        if (!batched && request.getContentLength() > maxFrameSize) {
+            sendMaxFrameSizeExceeded(response);
             return;
         }
 
@@ -139,21 +185,39 @@ public class HttpTunnelServlet extends HttpServlet {
             stream = new GZIPInputStream(stream);
         }
 
-        // Read the command directly from the reader, assuming UTF8 encoding
-        Command command = (Command) wireFormat.unmarshalText(new InputStreamReader(stream, "UTF-8"));
+        if (batched) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            try {
+                Object command;
+                while ((command = wireFormat.unmarshalNext(in, maxFrameSize)) != null) {
+                    if (!processCommand((Command) command, request, response)) {
+                        return;
+                    }
+                }
+            } catch (MaxFrameSizeExceededException e) {
+                sendMaxFrameSizeExceeded(response);
+            }
+        } else {
+            // Read the command directly from the reader, assuming UTF8 encoding
+            Command command = (Command) wireFormat.unmarshalText(new InputStreamReader(stream, "UTF-8"));
+            processCommand(command, request, response);
+        }
+    }
 
+    private boolean processCommand(Command command, HttpServletRequest request, HttpServletResponse response) throws IOException {
         if (command instanceof WireFormatInfo) {
             WireFormatInfo info = (WireFormatInfo) command;
             if (!canProcessWireFormatVersion(info.getVersion())) {
                 response.sendError(HttpServletResponse.SC_NOT_FOUND, "Cannot process wire format of version: "
                         + info.getVersion());
+                return false;
             }
 
         } else {
 
             BlockingQueueTransport transport = getTransportChannel(request, response);
             if (transport == null) {
-                return;
+                return false;
             }
 
             if (command instanceof ConnectionInfo) {
@@ -161,6 +225,20 @@ public class HttpTunnelServlet extends HttpServlet {
             }
             transport.doConsume(command);
         }
+        return true;
+    }
+
+    private void sendMaxFrameSizeExceeded(HttpServletResponse response) throws IOException {
+        response.setStatus(405);
+        response.setContentType("plain/text");
+        PrintWriter writer = response.getWriter();
+        writer.println("maxFrameSize exceeded");
+        writer.flush();
+        writer.close();
+    }
+
+    private boolean isBatched(HttpServletRequest request) {
+        return "true".equals(request.getHeader(HttpTransportSupport.BATCHED_HEADER));
     }
 
     private boolean canProcessWireFormatVersion(int version) {
@@ -26,6 +26,7 @@ import java.io.Reader;
 import org.apache.activemq.util.ByteArrayInputStream;
 import org.apache.activemq.util.ByteArrayOutputStream;
 import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IOExceptionSupport;
 import org.apache.activemq.wireformat.WireFormat;
 
 /**
@@ -56,6 +57,35 @@ public abstract class TextWireFormat implements WireFormat {
         return unmarshalText(text);
     }
 
+    /**
+     * Reads the next command from a stream of commands that were each marshaled with
+     * {@link #marshal(Object, DataOutput)}.
+     *
+     * @param in
+     *        the stream of commands.
+     * @param maxLength
+     *        the largest number of bytes a single command may take.
+     *
+     * @return the next command, or null if the stream ended where the next command would start.
+     *
+     * @throws IOException if the command cannot be read or is larger than the maximum length.
+     */
+    public Object unmarshalNext(DataInputStream in, long maxLength) throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+
+        int length = (first << 24) | (in.readUnsignedByte() << 16) | in.readUnsignedShort();
+        if (length < 0 || length > maxLength) {
+            throw IOExceptionSupport.createFrameSizeException(length, maxLength);
+        }
+
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return unmarshalText(new String(utf8, "UTF-8"));
+    }
+
     public ByteSequence marshal(Object command) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         DataOutputStream dos = new DataOutputStream(baos);
@@ -17,6 +17,7 @@
 package org.apache.activemq.transport.ws;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.cert.X509Certificate;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.locks.ReentrantLock;
@@ -129,6 +130,17 @@ public abstract class AbstractStompSocket extends TransportSupport implements St
     //----- Internal implementation ------------------------------------------//
 
     protected void processStompFrame(String data) {
+        processStompFrame(data != null ? new ByteSequence(data.getBytes(StandardCharsets.UTF_8)) : null);
+    }
+
+    /**
+     * Processes a frame from its UTF-8 encoding, the data is not kept once the frame
+     * has been unmarshalled.
+     *
+     * @param data
+     *        the encoded frame or a single newline for a heart beat.
+     */
+    protected void processStompFrame(ByteSequence data) {
         if (!transportStartedAtLeastOnce()) {
             LOG.debug("Waiting for StompSocket to be properly started...");
             try {
@@ -141,12 +153,12 @@ public abstract class AbstractStompSocket extends TransportSupport implements St
         protocolLock.lock();
         try {
             if (data != null) {
-                receiveCounter += data.length();
+                receiveCounter += data.getLength();
 
-                if (data.equals("\n")) {
+                if (data.getLength() == 1 && data.getData()[data.getOffset()] == '\n') {
                     stompInactivityMonitor.onCommand(new KeepAliveInfo());
                 } else {
-                    StompFrame frame = (StompFrame)wireFormat.unmarshal(new ByteSequence(data.getBytes("UTF-8")));
+                    StompFrame frame = (StompFrame)wireFormat.unmarshal(data);
                     frame.setTransportContext(getPeerCertificates());
                     protocolConverter.onStompCommand(frame);
                 }
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.ws.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.activemq.transport.Transport;
+import org.apache.activemq.transport.mqtt.MQTTCodec;
+import org.apache.activemq.transport.ws.AbstractMQTTSocket;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IOExceptionSupport;
+import org.fusesource.hawtbuf.Buffer;
+import org.fusesource.hawtbuf.DataByteArrayInputStream;
+import org.fusesource.mqtt.codec.DISCONNECT;
+import org.fusesource.mqtt.codec.MQTTFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * MQTT over a NIO WebSocket connection.
+ */
+public class MQTTSocket extends AbstractMQTTSocket implements MQTTCodec.MQTTFrameSink, WSNIOSocket {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MQTTSocket.class);
+
+    private final int ORDERLY_CLOSE_TIMEOUT = 10;
+
+    private final WSNIOConnection connection;
+    private final AtomicBoolean receivedDisconnect = new AtomicBoolean();
+    private final MQTTCodec codec;
+
+    public MQTTSocket(WSNIOConnection connection, String remoteAddress) {
+        super(remoteAddress);
+
+        this.connection = connection;
+        this.codec = new MQTTCodec(this, getWireFormat());
+    }
+
+    @Override
+    public void sendToMQTT(MQTTFrame command) throws IOException {
+        ByteSequence bytes = wireFormat.marshal(command);
+        connection.sendBinary(bytes.getData(), bytes.getOffset(), bytes.getLength());
+    }
+
+    @Override
+    public void handleStopped() throws IOException {
+        connection.close(WSFrameCodec.CLOSE_NORMAL);
+    }
+
+    @Override
+    public Transport getTransport() {
+        return this;
+    }
+
+    @Override
+    public int getMaxFrameSize() {
+        return wireFormat.getMaxFrameSize();
+    }
+
+    //----- WebSocket event callbacks ----------------------------------------//
+
+    @Override
+    public void onWebSocketText(ByteBuffer data) throws IOException {
+    }
+
+    @Override
+    public void onWebSocketBinary(ByteBuffer data) throws IOException {
+        ByteSequence bytes = WSNIOConnection.toByteSequence(data);
+
+        protocolLock.lock();
+        try {
+            receiveCounter += bytes.getLength();
+            codec.parse(new DataByteArrayInputStream(new Buffer(bytes.getData(), bytes.getOffset(), bytes.getLength())), bytes.getLength());
+        } catch (Exception e) {
+            onException(IOExceptionSupport.create(e));
+        } finally {
+            protocolLock.unlock();
+        }
+    }
+
+    @Override
+    public void onWebSocketClosed() throws IOException {
+        try {
+            if (protocolLock.tryLock() || protocolLock.tryLock(ORDERLY_CLOSE_TIMEOUT, TimeUnit.SECONDS)) {
+                LOG.debug("MQTT WebSocket closed");
+                //Check if we received a disconnect packet before closing
+                if (!receivedDisconnect.get()) {
+                    getProtocolConverter().onTransportError();
+                }
+                getProtocolConverter().onMQTTCommand(new DISCONNECT().encode());
+            }
+        } catch (Exception e) {
+            LOG.debug("Failed to close MQTT WebSocket cleanly", e);
+        } finally {
+            if (protocolLock.isHeldByCurrentThread()) {
+                protocolLock.unlock();
+            }
+        }
+    }
+
+    //----- MQTTCodec Frame Sink event point ---------------------------------//
+
+    @Override
+    public void onFrame(MQTTFrame mqttFrame) {
+        try {
+            if (mqttFrame.messageType() == DISCONNECT.TYPE) {
+                receivedDisconnect.set(true);
+            }
+            getProtocolConverter().onMQTTCommand(mqttFrame);
+        } catch (Exception e) {
+            onException(IOExceptionSupport.create(e));
+        }
+    }
+}
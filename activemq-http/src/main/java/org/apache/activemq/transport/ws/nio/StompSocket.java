@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.ws.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.transport.Transport;
+import org.apache.activemq.transport.stomp.Stomp;
+import org.apache.activemq.transport.stomp.StompFrame;
+import org.apache.activemq.transport.ws.AbstractStompSocket;
+import org.apache.activemq.util.ByteSequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * STOMP over a NIO WebSocket connection.
+ *
+ * Frames are unmarshalled straight from the UTF-8 payload of the WebSocket messages
+ * and marshalled straight into the outgoing text frames.
+ */
+public class StompSocket extends AbstractStompSocket implements WSNIOSocket {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StompSocket.class);
+
+    private final int ORDERLY_CLOSE_TIMEOUT = 10;
+
+    private final WSNIOConnection connection;
+
+    public StompSocket(WSNIOConnection connection, String remoteAddress) {
+        super(remoteAddress);
+        this.connection = connection;
+    }
+
+    @Override
+    public void sendToStomp(StompFrame command) throws IOException {
+        ByteSequence bytes = wireFormat.marshal(command);
+        connection.sendText(bytes.getData(), bytes.getOffset(), bytes.getLength());
+    }
+
+    @Override
+    public void handleStopped() throws IOException {
+        connection.close(WSFrameCodec.CLOSE_NORMAL);
+    }
+
+    @Override
+    public Transport getTransport() {
+        return this;
+    }
+
+    @Override
+    public int getMaxFrameSize() {
+        return (int) Math.min(wireFormat.getMaxFrameSize(), Integer.MAX_VALUE);
+    }
+
+    //----- WebSocket event callbacks ----------------------------------------//
+
+    @Override
+    public void onWebSocketText(ByteBuffer data) throws IOException {
+        processStompFrame(WSNIOConnection.toByteSequence(data));
+    }
+
+    @Override
+    public void onWebSocketBinary(ByteBuffer data) throws IOException {
+        processStompFrame(WSNIOConnection.toByteSequence(data));
+    }
+
+    @Override
+    public void onWebSocketClosed() throws IOException {
+        try {
+            if (protocolLock.tryLock() || protocolLock.tryLock(ORDERLY_CLOSE_TIMEOUT, TimeUnit.SECONDS)) {
+                LOG.debug("Stomp WebSocket closed");
+                protocolConverter.onStompCommand(new StompFrame(Stomp.Commands.DISCONNECT));
+            }
+        } catch (Exception e) {
+            LOG.debug("Failed to close STOMP WebSocket cleanly", e);
+        } finally {
+            if (protocolLock.isHeldByCurrentThread()) {
+                protocolLock.unlock();
+            }
+        }
+    }
+}
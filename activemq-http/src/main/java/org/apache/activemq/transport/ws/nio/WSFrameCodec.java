@@ -0,0 +1,363 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.ws.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes the frames a WebSocket client sends and encodes the frames written back to
+ * it, as described in RFC 6455.
+ *
+ * Incoming data is parsed as it arrives. A frame whose payload is fully contained in
+ * the buffer being parsed is unmasked in place and handed to the sink as a view of
+ * that buffer, only frames split across reads and fragmented messages are copied.
+ * The sink must copy anything it keeps once the callback has returned.
+ *
+ * The buffer a split frame is copied into grows as its data arrives rather than
+ * being sized from the length the header declares, and frames longer than the
+ * maximum message size are rejected from their header.
+ */
+public class WSFrameCodec {
+
+    public static final byte OPCODE_CONTINUATION = 0x0;
+    public static final byte OPCODE_TEXT = 0x1;
+    public static final byte OPCODE_BINARY = 0x2;
+    public static final byte OPCODE_CLOSE = 0x8;
+    public static final byte OPCODE_PING = 0x9;
+    public static final byte OPCODE_PONG = 0xA;
+
+    public static final int CLOSE_NORMAL = 1000;
+    public static final int CLOSE_PROTOCOL_ERROR = 1002;
+    public static final int CLOSE_NO_STATUS = 1005;
+    public static final int CLOSE_MESSAGE_TOO_BIG = 1009;
+
+    /**
+     * Largest possible frame header, two bytes, an eight byte length and the mask.
+     */
+    public static final int MAX_HEADER_SIZE = 14;
+
+    /**
+     * The default maximum message size, the same as the Jetty based ws transport.
+     */
+    public static final int DEFAULT_MAX_MESSAGE_SIZE = 64 * 1024;
+
+    private static final int MAX_CONTROL_PAYLOAD = 125;
+    private static final int INITIAL_MESSAGE_SIZE = 1024;
+
+    /**
+     * Receives the messages decoded by the codec.
+     */
+    public interface WSFrameSink {
+
+        void onText(ByteBuffer data) throws IOException;
+
+        void onBinary(ByteBuffer data) throws IOException;
+
+        void onPing(ByteBuffer data) throws IOException;
+
+        void onClose(int statusCode, String reason) throws IOException;
+    }
+
+    /**
+     * Thrown when the client breaks the protocol, carries the status code the
+     * connection should be closed with.
+     */
+    public static class WSProtocolException extends IOException {
+
+        private static final long serialVersionUID = 6079321356328325373L;
+
+        private final int statusCode;
+
+        public WSProtocolException(int statusCode, String message) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+
+    private final WSFrameSink sink;
+    private int maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
+
+    private final ByteBuffer header = ByteBuffer.allocate(MAX_HEADER_SIZE);
+    private final byte[] mask = new byte[4];
+    private boolean fin;
+    private byte opcode;
+    private int payloadLength = -1;
+    private ByteBuffer payload;
+
+    private byte messageOpcode = -1;
+    private ByteBuffer message;
+
+    public WSFrameCodec(WSFrameSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Consumes all of the given data, dispatching every message it completes.
+     *
+     * @param data
+     *        the data read from the connection.
+     *
+     * @throws IOException if the data is not valid or the sink fails.
+     */
+    public void parse(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            if (payloadLength < 0 && !readHeader(data)) {
+                return;
+            }
+
+            if (payload == null && data.remaining() >= payloadLength) {
+                ByteBuffer frame = data.slice();
+                frame.limit(payloadLength);
+                data.position(data.position() + payloadLength);
+                onFrame(frame);
+            } else {
+                if (payload == null) {
+                    payload = ByteBuffer.allocate(Math.min(payloadLength, Math.max(INITIAL_MESSAGE_SIZE, data.remaining())));
+                } else if (!payload.hasRemaining()) {
+                    payload = expand(payload, Math.min(payloadLength, (long) payload.capacity() * 2));
+                }
+
+                int count = Math.min(payload.remaining(), data.remaining());
+                ByteBuffer chunk = data.slice();
+                chunk.limit(count);
+                payload.put(chunk);
+                data.position(data.position() + count);
+
+                if (payload.position() < payloadLength) {
+                    continue;
+                }
+
+                ByteBuffer frame = payload;
+                payload = null;
+                frame.flip();
+                onFrame(frame);
+            }
+        }
+    }
+
+    /**
+     * Writes the header of an unmasked frame carrying the given amount of data.
+     *
+     * @param opcode
+     *        the opcode of the frame.
+     * @param length
+     *        the size of the payload that follows the header.
+     * @param target
+     *        array of at least {@link #MAX_HEADER_SIZE} bytes to write the header to.
+     *
+     * @return the number of bytes written.
+     */
+    public static int encodeHeader(byte opcode, int length, byte[] target) {
+        target[0] = (byte) (0x80 | opcode);
+        if (length <= MAX_CONTROL_PAYLOAD) {
+            target[1] = (byte) length;
+            return 2;
+        } else if (length <= 0xFFFF) {
+            target[1] = 126;
+            target[2] = (byte) (length >>> 8);
+            target[3] = (byte) length;
+            return 4;
+        } else {
+            target[1] = 127;
+            for (int i = 0; i < 8; ++i) {
+                target[2 + i] = (byte) ((long) length >>> (56 - 8 * i));
+            }
+            return 10;
+        }
+    }
+
+    /**
+     * @return the payload of a close frame with the given status code and reason.
+     */
+    public static byte[] encodeClose(int statusCode, String reason) {
+        byte[] text = reason != null ? reason.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int length = Math.min(text.length, MAX_CONTROL_PAYLOAD - 2);
+        byte[] encoded = new byte[2 + length];
+        encoded[0] = (byte) (statusCode >>> 8);
+        encoded[1] = (byte) statusCode;
+        System.arraycopy(text, 0, encoded, 2, length);
+        return encoded;
+    }
+
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    /**
+     * Sets the largest message the client can send, a message spread over several
+     * frames counts as a whole.
+     */
+    public void setMaxMessageSize(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private boolean readHeader(ByteBuffer data) throws IOException {
+        while (data.hasRemaining() && header.position() < headerSize()) {
+            header.put(data.get());
+        }
+
+        if (header.position() < headerSize()) {
+            return false;
+        }
+
+        header.flip();
+        byte first = header.get();
+        byte second = header.get();
+
+        if ((first & 0x70) != 0) {
+            throw new WSProtocolException(CLOSE_PROTOCOL_ERROR, "Reserved bits set without a negotiated extension");
+        }
+        if ((second & 0x80) == 0) {
+            throw new WSProtocolException(CLOSE_PROTOCOL_ERROR, "Client frames must be masked");
+        }
+
+        fin = (first & 0x80) != 0;
+        opcode = (byte) (first & 0x0F);
+
+        long length = second & 0x7F;
+        if (length == 126) {
+            length = header.getShort() & 0xFFFF;
+        } else if (length == 127) {
+            length = header.getLong();
+        }
+
+        header.get(mask);
+        header.clear();
+
+        switch (opcode) {
+            case OPCODE_CLOSE:
+            case OPCODE_PING:
+            case OPCODE_PONG:
+                if (!fin || length > MAX_CONTROL_PAYLOAD) {
+                    throw new WSProtocolException(CLOSE_PROTOCOL_ERROR, "Invalid control frame");
+                }
+                break;
+            case OPCODE_TEXT:
+            case OPCODE_BINARY:
+                if (message != null) {
+                    throw new WSProtocolException(CLOSE_PROTOCOL_ERROR, "New message started before the previous one ended");
+                }
+                break;
+            case OPCODE_CONTINUATION:
+                if (message == null) {
+                    throw new WSProtocolException(CLOSE_PROTOCOL_ERROR, "Continuation frame without a message to continue");
+                }
+                break;
+            default:
+                throw new WSProtocolException(CLOSE_PROTOCOL_ERROR, "Unknown opcode: " + opcode);
+        }
+
+        long messageSize = length + (message != null ? message.position() : 0);
+        if (length < 0 || messageSize > maxMessageSize) {
+            throw new WSProtocolException(CLOSE_MESSAGE_TOO_BIG, "Message of " + messageSize + " bytes exceeds the maximum of " + maxMessageSize);
+        }
+
+        payloadLength = (int) length;
+        return true;
+    }
+
+    private int headerSize() {
+        if (header.position() < 2) {
+            return 2;
+        }
+
+        int size = 2;
+        int length = header.get(1) & 0x7F;
+        if (length == 126) {
+            size += 2;
+        } else if (length == 127) {
+            size += 8;
+        }
+        if ((header.get(1) & 0x80) != 0) {
+            size += 4;
+        }
+        return size;
+    }
+
+    private void onFrame(ByteBuffer frame) throws IOException {
+        payloadLength = -1;
+
+        for (int i = 0, position = frame.position(); position < frame.limit(); ++i, ++position) {
+            frame.put(position, (byte) (frame.get(position) ^ mask[i & 3]));
+        }
+
+        switch (opcode) {
+            case OPCODE_PING:
+                sink.onPing(frame);
+                break;
+            case OPCODE_PONG:
+                break;
+            case OPCODE_CLOSE:
+                if (frame.remaining() >= 2) {
+                    int statusCode = frame.getShort() & 0xFFFF;
+                    sink.onClose(statusCode, StandardCharsets.UTF_8.decode(frame).toString());
+                } else {
+                    sink.onClose(CLOSE_NO_STATUS, null);
+                }
+                break;
+            case OPCODE_CONTINUATION:
+                append(frame);
+                if (fin) {
+                    ByteBuffer complete = message;
+                    message = null;
+                    complete.flip();
+                    deliver(messageOpcode, complete);
+                }
+                break;
+            default:
+                if (fin) {
+                    deliver(opcode, frame);
+                } else {
+                    messageOpcode = opcode;
+                    message = ByteBuffer.allocate(Math.max(INITIAL_MESSAGE_SIZE, frame.remaining()));
+                    append(frame);
+                }
+        }
+    }
+
+    private void append(ByteBuffer frame) {
+        if (message.remaining() < frame.remaining()) {
+            int required = message.position() + frame.remaining();
+            message = expand(message, Math.min(Math.max((long) message.capacity() * 2, required), maxMessageSize));
+        }
+
+        message.put(frame);
+    }
+
+    private static ByteBuffer expand(ByteBuffer buffer, long capacity) {
+        ByteBuffer expanded = ByteBuffer.allocate((int) capacity);
+        buffer.flip();
+        expanded.put(buffer);
+        return expanded;
+    }
+
+    private void deliver(byte opcode, ByteBuffer data) throws IOException {
+        if (opcode == OPCODE_TEXT) {
+            sink.onText(data);
+        } else {
+            sink.onBinary(data);
+        }
+    }
+}
@@ -0,0 +1,505 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.ws.nio;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.BrokerServiceAware;
+import org.apache.activemq.transport.Transport;
+import org.apache.activemq.transport.TransportFactory;
+import org.apache.activemq.transport.tcp.TcpTransport;
+import org.apache.activemq.transport.ws.WSTransport.WSTransportSink;
+import org.apache.activemq.transport.ws.nio.WSFrameCodec.WSFrameSink;
+import org.apache.activemq.transport.ws.nio.WSFrameCodec.WSProtocolException;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.ServiceStopper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The WebSocket side of a connection accepted by one of the NIO WebSocket transports.
+ *
+ * The HTTP upgrade request is read from the socket first and the protocol is chosen
+ * from the requested sub-protocols the same way the Jetty based servlet chooses it.
+ * From then on the WebSocket frames are decoded from the transport's read buffer
+ * straight into the protocol's socket and everything the protocol writes is framed
+ * and written to the transport's output stream.
+ */
+public class WSNIOConnection implements WSFrameSink, WSTransportSink {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WSNIOConnection.class);
+
+    public static final long DEFAULT_UPGRADE_TIMEOUT = 30000;
+
+    private static final Map<String, Integer> STOMP_PROTOCOLS = new HashMap<>();
+    private static final Map<String, Integer> MQTT_PROTOCOLS = new HashMap<>();
+
+    private static Timer UPGRADE_TIMER;
+
+    private enum State {
+        UPGRADING, OPEN, CLOSED
+    }
+
+    static {
+        STOMP_PROTOCOLS.put("v12.stomp", 3);
+        STOMP_PROTOCOLS.put("v11.stomp", 2);
+        STOMP_PROTOCOLS.put("v10.stomp", 1);
+        STOMP_PROTOCOLS.put("stomp", 0);
+
+        MQTT_PROTOCOLS.put("mqttv3.1", 1);
+        MQTT_PROTOCOLS.put("mqtt", 0);
+    }
+
+    private final TcpTransport transport;
+    private final String scheme;
+    private final WSFrameCodec codec = new WSFrameCodec(this);
+    private final byte[] frameHeader = new byte[WSFrameCodec.MAX_HEADER_SIZE];
+
+    private volatile State state = State.UPGRADING;
+    private WSUpgradeRequest upgradeRequest = new WSUpgradeRequest();
+    private TimerTask upgradeTimeoutTask;
+    private volatile WSNIOSocket socket;
+    private DataOutputStream output;
+    private boolean closeSent;
+
+    private BrokerService brokerService;
+    private Map<String, Object> transportOptions = new HashMap<>();
+    private long upgradeTimeout = DEFAULT_UPGRADE_TIMEOUT;
+    private int maxMessageSize = WSFrameCodec.DEFAULT_MAX_MESSAGE_SIZE;
+
+    /**
+     * @param transport
+     *        the transport that owns the socket.
+     * @param scheme
+     *        the scheme reported in the remote address, ws or wss.
+     */
+    public WSNIOConnection(TcpTransport transport, String scheme) {
+        this.transport = transport;
+        this.scheme = scheme;
+    }
+
+    /**
+     * Starts the timer that closes the connection if the client does not complete the
+     * upgrade in time.
+     */
+    public void start() {
+        if (upgradeTimeout > 0) {
+            synchronized (WSNIOConnection.class) {
+                if (UPGRADE_TIMER == null) {
+                    UPGRADE_TIMER = new Timer("ActiveMQ WebSocket Upgrade Timer", true);
+                }
+
+                upgradeTimeoutTask = new TimerTask() {
+
+                    @Override
+                    public void run() {
+                        if (state == State.UPGRADING) {
+                            transport.onException(new IOException("WebSocket upgrade not completed within " + upgradeTimeout + " ms"));
+                        }
+                    }
+                };
+                UPGRADE_TIMER.schedule(upgradeTimeoutTask, upgradeTimeout);
+            }
+        }
+    }
+
+    /**
+     * Stops the protocol socket, telling the client the connection is closing if it
+     * is still open.
+     */
+    public void stop(ServiceStopper stopper) {
+        cancelUpgradeTimeout();
+
+        if (state == State.OPEN) {
+            try {
+                close(WSFrameCodec.CLOSE_NORMAL);
+            } catch (IOException e) {
+                LOG.trace("Failed to send WebSocket close frame", e);
+            }
+        }
+        state = State.CLOSED;
+
+        WSNIOSocket current = socket;
+        if (current != null) {
+            stopper.stop(current.getTransport());
+        }
+    }
+
+    /**
+     * Called with all the data read from the socket, the data is not kept once the call
+     * returns.
+     */
+    public void onData(ByteBuffer data) throws IOException {
+        if (state == State.UPGRADING) {
+            if (!upgradeRequest.parse(data)) {
+                return;
+            }
+
+            upgrade(upgradeRequest);
+            upgradeRequest = null;
+        }
+
+        if (state == State.OPEN) {
+            try {
+                codec.parse(data);
+            } catch (WSProtocolException e) {
+                close(e.getStatusCode());
+                throw e;
+            }
+        } else {
+            data.position(data.limit());
+        }
+    }
+
+    /**
+     * Sends a command from the broker to the protocol socket, commands that arrive
+     * before the upgrade has chosen the protocol are meaningless to the client and
+     * are dropped.
+     */
+    public void oneway(Object command) throws IOException {
+        WSNIOSocket current = socket;
+        if (current != null) {
+            current.getTransport().oneway(command);
+        } else {
+            LOG.trace("Dropping {} received before the WebSocket upgrade completed", command);
+        }
+    }
+
+    /**
+     * Called when the socket failed or reached its end, lets the protocol know the
+     * connection is gone if the client did not close it first.
+     */
+    public void onTransportError() {
+        cancelUpgradeTimeout();
+        if (state == State.OPEN) {
+            state = State.CLOSED;
+            notifyClosed();
+        }
+    }
+
+    //----- Output to the client ---------------------------------------------//
+
+    public void sendText(byte[] data, int offset, int length) throws IOException {
+        sendFrame(WSFrameCodec.OPCODE_TEXT, data, offset, length);
+    }
+
+    public void sendBinary(byte[] data, int offset, int length) throws IOException {
+        sendFrame(WSFrameCodec.OPCODE_BINARY, data, offset, length);
+    }
+
+    /**
+     * Sends a close frame unless one has already been sent.
+     */
+    public void close(int statusCode) throws IOException {
+        synchronized (frameHeader) {
+            if (closeSent || output == null || state == State.UPGRADING) {
+                return;
+            }
+            closeSent = true;
+        }
+
+        byte[] payload = WSFrameCodec.encodeClose(statusCode, null);
+        sendFrame(WSFrameCodec.OPCODE_CLOSE, payload, 0, payload.length);
+    }
+
+    @Override
+    public void onSocketOutboundText(String data) throws IOException {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        sendText(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void onSocketOutboundBinary(ByteBuffer data) throws IOException {
+        ByteSequence bytes = toByteSequence(data);
+        sendBinary(bytes.getData(), bytes.getOffset(), bytes.getLength());
+
+        // Mark the data consumed as the proxied transports expect.
+        data.position(data.limit());
+    }
+
+    //----- Frames from the client -------------------------------------------//
+
+    @Override
+    public void onText(ByteBuffer data) throws IOException {
+        socket.onWebSocketText(data);
+    }
+
+    @Override
+    public void onBinary(ByteBuffer data) throws IOException {
+        socket.onWebSocketBinary(data);
+    }
+
+    @Override
+    public void onPing(ByteBuffer data) throws IOException {
+        ByteSequence bytes = toByteSequence(data);
+        sendFrame(WSFrameCodec.OPCODE_PONG, bytes.getData(), bytes.getOffset(), bytes.getLength());
+    }
+
+    @Override
+    public void onClose(int statusCode, String reason) throws IOException {
+        LOG.debug("WebSocket closed by the client: code[{}] message[{}]", statusCode, reason);
+        close(statusCode == WSFrameCodec.CLOSE_NO_STATUS ? WSFrameCodec.CLOSE_NORMAL : statusCode);
+        state = State.CLOSED;
+        notifyClosed();
+    }
+
+    //----- Configuration ----------------------------------------------------//
+
+    public void setBrokerService(BrokerService brokerService) {
+        this.brokerService = brokerService;
+    }
+
+    /**
+     * Sets the options applied to the protocol socket once it has been created.
+     */
+    public void setTransportOptions(Map<String, Object> transportOptions) {
+        this.transportOptions = transportOptions;
+    }
+
+    public long getUpgradeTimeout() {
+        return upgradeTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds a client has to complete the upgrade request
+     * before the connection is closed, zero disables the timeout.
+     */
+    public void setUpgradeTimeout(long upgradeTimeout) {
+        this.upgradeTimeout = upgradeTimeout;
+    }
+
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    /**
+     * Sets the largest message in bytes a client may send, the frame size limit of
+     * the protocol applies as well when it is smaller.
+     */
+    public void setMaxMessageSize(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * Sets the stream the frames are written to, must be called before the transport
+     * starts reading.
+     */
+    public void setOutput(DataOutputStream output) {
+        this.output = output;
+    }
+
+    /**
+     * @return the sub-protocol level transport once the upgrade has completed.
+     */
+    public Transport getProtocolTransport() {
+        WSNIOSocket current = socket;
+        return current != null ? current.getTransport() : null;
+    }
+
+    /**
+     * @return the remote address of the given socket using the given scheme.
+     */
+    public static String getRemoteAddress(String scheme, Socket socket) {
+        SocketAddress address = socket.getRemoteSocketAddress();
+        if (address instanceof InetSocketAddress) {
+            InetSocketAddress inetAddress = (InetSocketAddress) address;
+            return scheme + "://" + inetAddress.getAddress().getHostAddress() + ":" + inetAddress.getPort();
+        } else {
+            return "" + address;
+        }
+    }
+
+    /**
+     * @return a view of the remaining data of the buffer, copying it only when the
+     *         buffer is not backed by an array.
+     */
+    static ByteSequence toByteSequence(ByteBuffer data) {
+        if (data.hasArray()) {
+            return new ByteSequence(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+
+        byte[] copy = new byte[data.remaining()];
+        data.duplicate().get(copy);
+        return new ByteSequence(copy);
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private void upgrade(WSUpgradeRequest request) throws IOException {
+        cancelUpgradeTimeout();
+
+        if (!request.isWebSocketUpgrade() || !WSUpgradeRequest.WEBSOCKET_VERSION.equals(request.getVersion())) {
+            byte[] response = request.createRejectResponse();
+            writeRaw(response);
+            throw new IOException("Invalid WebSocket upgrade request: " + request.getMethod() + " " + request.getPath());
+        }
+
+        String remoteAddress = transport.getRemoteAddress();
+        List<String> subProtocols = request.getSubProtocols();
+
+        boolean mqtt = false;
+        boolean stomp = subProtocols.isEmpty();
+        for (String subProtocol : subProtocols) {
+            if (subProtocol.startsWith("mqtt")) {
+                mqtt = true;
+                stomp = false;
+            } else if (subProtocol.contains("stomp")) {
+                stomp = true;
+                mqtt = false;
+            }
+        }
+
+        String acceptedSubProtocol = null;
+        WSNIOSocket created = null;
+        if (mqtt) {
+            MQTTSocket mqttSocket = new MQTTSocket(this, remoteAddress);
+            mqttSocket.setTransportOptions(new HashMap<>(transportOptions));
+            mqttSocket.setPeerCertificates(transport.getPeerCertificates());
+            mqttSocket.setBrokerService(brokerService);
+            acceptedSubProtocol = getAcceptedSubProtocol(MQTT_PROTOCOLS, subProtocols, "mqtt");
+            created = mqttSocket;
+        } else if (!stomp) {
+            WSNIOTransportProxy proxy = findWSTransport(subProtocols, remoteAddress);
+            if (proxy != null) {
+                acceptedSubProtocol = proxy.getSubProtocol();
+                created = proxy;
+            }
+        }
+
+        if (created == null) {
+            StompSocket stompSocket = new StompSocket(this, remoteAddress);
+            stompSocket.setPeerCertificates(transport.getPeerCertificates());
+            acceptedSubProtocol = subProtocols.isEmpty() ? null : getAcceptedSubProtocol(STOMP_PROTOCOLS, subProtocols, "stomp");
+            created = stompSocket;
+        }
+
+        if (created.getMaxFrameSize() > 0) {
+            codec.setMaxMessageSize(Math.min(maxMessageSize, created.getMaxFrameSize()));
+        } else {
+            codec.setMaxMessageSize(maxMessageSize);
+        }
+
+        Transport protocolTransport = created.getTransport();
+        protocolTransport.setTransportListener(transport.getTransportListener());
+        try {
+            protocolTransport.start();
+        } catch (Exception e) {
+            throw new IOException("Failed to start the " + acceptedSubProtocol + " WebSocket transport", e);
+        }
+
+        // Nothing the broker sends may reach the client ahead of the response.
+        writeRaw(request.createAcceptResponse(acceptedSubProtocol));
+
+        socket = created;
+        state = State.OPEN;
+    }
+
+    private WSNIOTransportProxy findWSTransport(List<String> subProtocols, String remoteAddress) {
+        String location = remoteAddress.substring(remoteAddress.indexOf("://"));
+
+        for (String subProtocol : subProtocols) {
+            try {
+                URI remoteURI = new URI(subProtocol + "+" + scheme + location);
+
+                TransportFactory factory = TransportFactory.findTransportFactory(remoteURI);
+
+                if (factory instanceof BrokerServiceAware) {
+                    ((BrokerServiceAware) factory).setBrokerService(brokerService);
+                }
+
+                Transport protocolTransport = factory.doConnect(remoteURI);
+
+                WSNIOTransportProxy proxy = new WSNIOTransportProxy(protocolTransport, this);
+                protocolTransport.setPeerCertificates(transport.getPeerCertificates());
+                proxy.setTransportOptions(new HashMap<>(transportOptions));
+                return proxy;
+            } catch (Exception e) {
+                LOG.trace("No WebSocket transport for sub-protocol {}", subProtocol, e);
+
+                // Keep going and try any other sub-protocols present.
+                continue;
+            }
+        }
+
+        return null;
+    }
+
+    private static String getAcceptedSubProtocol(Map<String, Integer> protocols, List<String> subProtocols, String defaultProtocol) {
+        String accepted = defaultProtocol;
+        int acceptedPriority = -1;
+        for (String subProtocol : subProtocols) {
+            Integer priority = protocols.get(subProtocol);
+            if (priority != null && priority > acceptedPriority) {
+                accepted = subProtocol;
+                acceptedPriority = priority;
+            }
+        }
+        return accepted;
+    }
+
+    private void notifyClosed() {
+        WSNIOSocket current = socket;
+        if (current != null) {
+            try {
+                current.onWebSocketClosed();
+            } catch (Exception e) {
+                LOG.debug("Failed to close WebSocket cleanly", e);
+            }
+        }
+    }
+
+    private void cancelUpgradeTimeout() {
+        TimerTask task = upgradeTimeoutTask;
+        if (task != null) {
+            task.cancel();
+            upgradeTimeoutTask = null;
+        }
+    }
+
+    private void sendFrame(byte opcode, byte[] data, int offset, int length) throws IOException {
+        synchronized (frameHeader) {
+            if (output == null) {
+                throw new IOException("WebSocket connection is not open");
+            }
+
+            int headerSize = WSFrameCodec.encodeHeader(opcode, length, frameHeader);
+            output.write(frameHeader, 0, headerSize);
+            output.write(data, offset, length);
+            output.flush();
+        }
+    }
+
+    private void writeRaw(byte[] data) throws IOException {
+        synchronized (frameHeader) {
+            output.write(data);
+            output.flush();
+        }
+    }
+}
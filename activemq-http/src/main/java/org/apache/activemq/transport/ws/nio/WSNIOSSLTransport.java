@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.ws.nio;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import javax.net.ssl.SSLEngineResult;
+
+import org.apache.activemq.transport.nio.NIOSSLTransport;
+import org.apache.activemq.transport.udp.ByteBufferPool;
+import org.apache.activemq.transport.udp.DefaultBufferPool;
+import org.apache.activemq.util.ServiceStopper;
+import org.apache.activemq.wireformat.WireFormat;
+
+/**
+ * A secure WebSocket server transport on the broker's NIO selector threads, the
+ * decrypted data is handed to the {@link WSNIOConnection} as it is read.
+ *
+ * Like {@link WSNIOTransport} the connection borrows its read buffers from shared
+ * pools. The application buffer that data is decrypted into is only held while the
+ * socket is read. The network buffer goes back to its pool as well once a read
+ * leaves no partial TLS record behind, so idle connections hold neither.
+ */
+public class WSNIOSSLTransport extends NIOSSLTransport {
+
+    // large enough for the buffers of a regular SSL session, larger ones are allocated
+    private static final int SSL_BUFFER_SIZE = 17 * 1024;
+    private static final ByteBufferPool APPLICATION_BUFFER_POOL = new DefaultBufferPool(false);
+    private static final ByteBufferPool NETWORK_BUFFER_POOL = new DefaultBufferPool(false);
+
+    static {
+        APPLICATION_BUFFER_POOL.setDefaultSize(SSL_BUFFER_SIZE);
+        NETWORK_BUFFER_POOL.setDefaultSize(SSL_BUFFER_SIZE);
+    }
+
+    private final WSNIOConnection connection;
+
+    public WSNIOSSLTransport(WireFormat wireFormat, Socket socket) throws IOException {
+        super(wireFormat, socket, null, null, null);
+
+        connection = new WSNIOConnection(this, "wss");
+    }
+
+    @Override
+    protected void doInit() throws Exception {
+        // The output stream exists once the SSL handshake is done and before any reads.
+        connection.setOutput(dataOut);
+        super.doInit();
+    }
+
+    @Override
+    protected void processCommand(ByteBuffer plain) throws Exception {
+        connection.onData(plain);
+    }
+
+    @Override
+    public void serviceRead() {
+        synchronized (this) {
+            if (inputBuffer == null) {
+                inputBuffer = borrowBuffer(NETWORK_BUFFER_POOL, sslSession.getPacketBufferSize());
+            }
+        }
+        try {
+            super.serviceRead();
+        } finally {
+            releaseIdleNetworkBuffer();
+        }
+    }
+
+    private synchronized void releaseIdleNetworkBuffer() {
+        // a partial TLS record has to wait in the buffer for the rest of it
+        if (inputBuffer != null && inputBuffer.position() == 0 && !handshakeInProgress &&
+            status != SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+            inputBuffer.clear();
+            NETWORK_BUFFER_POOL.returnBuffer(inputBuffer);
+            inputBuffer = null;
+        }
+    }
+
+    @Override
+    protected ByteBuffer allocateApplicationBuffer() {
+        return borrowBuffer(APPLICATION_BUFFER_POOL, sslSession.getApplicationBufferSize());
+    }
+
+    @Override
+    protected void releaseApplicationBuffer(ByteBuffer plain) {
+        // the connection copies whatever it keeps of the data
+        plain.clear();
+        APPLICATION_BUFFER_POOL.returnBuffer(plain);
+    }
+
+    private static ByteBuffer borrowBuffer(ByteBufferPool pool, int size) {
+        ByteBuffer buffer = pool.borrowBuffer();
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(size);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    @Override
+    public void oneway(Object command) throws IOException {
+        checkStarted();
+        connection.oneway(command);
+    }
+
+    @Override
+    public void onException(IOException error) {
+        connection.onTransportError();
+        super.onException(error);
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return socket != null ? WSNIOConnection.getRemoteAddress("wss", socket) : null;
+    }
+
+    @Override
+    public <T> T narrow(Class<T> target) {
+        T result = super.narrow(target);
+        if (result == null && connection.getProtocolTransport() != null) {
+            result = connection.getProtocolTransport().narrow(target);
+        }
+        return result;
+    }
+
+    /**
+     * @return the WebSocket connection served by this transport.
+     */
+    public WSNIOConnection getConnection() {
+        return connection;
+    }
+
+    public long getUpgradeTimeout() {
+        return connection.getUpgradeTimeout();
+    }
+
+    /**
+     * Sets the time in milliseconds a client has to complete the upgrade request.
+     */
+    public void setUpgradeTimeout(long upgradeTimeout) {
+        connection.setUpgradeTimeout(upgradeTimeout);
+    }
+
+    public int getMaxMessageSize() {
+        return connection.getMaxMessageSize();
+    }
+
+    /**
+     * Sets the largest message in bytes a client may send.
+     */
+    public void setMaxMessageSize(int maxMessageSize) {
+        connection.setMaxMessageSize(maxMessageSize);
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        super.doStart();
+        connection.start();
+    }
+
+    @Override
+    protected void doStop(ServiceStopper stopper) throws Exception {
+        try {
+            connection.stop(stopper);
+        } finally {
+            super.doStop(stopper);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.ws.nio;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import javax.net.ServerSocketFactory;
+import javax.net.ssl.SSLContext;
+
+import org.apache.activemq.broker.SslContext;
+import org.apache.activemq.transport.Transport;
+import org.apache.activemq.transport.TransportServer;
+import org.apache.activemq.transport.tcp.TcpTransportServer;
+import org.apache.activemq.wireformat.WireFormat;
+
+/**
+ * Factory for secure WebSocket connectors on the broker's NIO selector threads.
+ */
+public class WSNIOSSLTransportFactory extends WSNIOTransportFactory {
+
+    protected SSLContext context;
+
+    @Override
+    protected TcpTransportServer createTcpTransportServer(URI location, ServerSocketFactory serverSocketFactory) throws IOException, URISyntaxException {
+        return new TcpTransportServer(this, location, serverSocketFactory) {
+            @Override
+            protected Transport createTransport(Socket socket, WireFormat format) throws IOException {
+                WSNIOSSLTransport transport = new WSNIOSSLTransport(format, socket);
+                if (context != null) {
+                    transport.setSslContext(context);
+                }
+                transport.getConnection().setBrokerService(brokerService);
+                return transport;
+            }
+
+            @Override
+            public boolean isSslServer() {
+                return true;
+            }
+        };
+    }
+
+    @Override
+    protected WSNIOConnection getConnection(Transport transport) {
+        return ((WSNIOSSLTransport) transport).getConnection();
+    }
+
+    @Override
+    public TransportServer doBind(URI location) throws IOException {
+        if (SslContext.getCurrentSslContext() != null) {
+            try {
+                context = SslContext.getCurrentSslContext().getSSLContext();
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+        return super.doBind(location);
+    }
+}
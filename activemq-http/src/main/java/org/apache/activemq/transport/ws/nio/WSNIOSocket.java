@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.ws.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.activemq.transport.Transport;
+
+/**
+ * The protocol side of a NIO WebSocket connection, created once the upgrade request
+ * has chosen the protocol.
+ *
+ * The buffers given to the event methods are only valid for the duration of the call.
+ */
+public interface WSNIOSocket {
+
+    /**
+     * @return the protocol level transport that commands from the broker are sent to.
+     */
+    Transport getTransport();
+
+    /**
+     * @return the largest message the protocol accepts, or zero if there is no limit.
+     */
+    int getMaxFrameSize();
+
+    /**
+     * Called when a text message is received, the data is UTF-8 encoded.
+     */
+    void onWebSocketText(ByteBuffer data) throws IOException;
+
+    /**
+     * Called when a binary message is received.
+     */
+    void onWebSocketBinary(ByteBuffer data) throws IOException;
+
+    /**
+     * Called when the client closes the WebSocket or the connection is lost.
+     */
+    void onWebSocketClosed() throws IOException;
+
+}
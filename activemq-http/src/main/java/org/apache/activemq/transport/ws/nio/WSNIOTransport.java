@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.ws.nio;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import org.apache.activemq.transport.nio.NIOOutputStream;
+import org.apache.activemq.transport.nio.SelectorManager;
+import org.apache.activemq.transport.nio.SelectorSelection;
+import org.apache.activemq.transport.tcp.TcpTransport;
+import org.apache.activemq.transport.udp.ByteBufferPool;
+import org.apache.activemq.transport.udp.DefaultBufferPool;
+import org.apache.activemq.util.IOExceptionSupport;
+import org.apache.activemq.util.ServiceStopper;
+import org.apache.activemq.wireformat.WireFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A WebSocket server transport on the broker's NIO selector threads.
+ *
+ * The connection has no read buffer of its own, each time the socket is readable a
+ * buffer is borrowed from a shared pool, everything read into it is handed to the
+ * {@link WSNIOConnection} and the buffer goes back to the pool. Idle connections
+ * therefore only hold on to the data of frames that arrived partially.
+ */
+public class WSNIOTransport extends TcpTransport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WSNIOTransport.class);
+
+    private static final int IO_BUFFER_SIZE = 8 * 1024;
+    private static final ByteBufferPool BUFFER_POOL = new DefaultBufferPool(false);
+
+    static {
+        BUFFER_POOL.setDefaultSize(IO_BUFFER_SIZE);
+    }
+
+    private final WSNIOConnection connection;
+
+    private SocketChannel channel;
+    private SelectorSelection selection;
+
+    public WSNIOTransport(WireFormat wireFormat, Socket socket) throws IOException {
+        super(wireFormat, socket);
+
+        connection = new WSNIOConnection(this, "ws");
+    }
+
+    @Override
+    protected void initializeStreams() throws IOException {
+        channel = socket.getChannel();
+        channel.configureBlocking(false);
+        // listen for events telling us when the socket is readable.
+        selection = SelectorManager.getInstance().register(channel, new SelectorManager.Listener() {
+            @Override
+            public void onSelect(SelectorSelection selection) {
+                if (!isStopped()) {
+                    serviceRead();
+                }
+            }
+
+            @Override
+            public void onError(SelectorSelection selection, Throwable error) {
+                LOG.trace("Error detected: {}", error.getMessage());
+                if (error instanceof IOException) {
+                    onException((IOException) error);
+                } else {
+                    onException(IOExceptionSupport.create(error));
+                }
+            }
+        });
+
+        NIOOutputStream outPutStream = new NIOOutputStream(channel, IO_BUFFER_SIZE);
+        this.dataOut = new DataOutputStream(outPutStream);
+        this.buffOut = outPutStream;
+
+        connection.setOutput(dataOut);
+    }
+
+    private void serviceRead() {
+        ByteBuffer buffer = BUFFER_POOL.borrowBuffer();
+        try {
+            while (isStarted()) {
+                // read channel
+                int readSize = channel.read(buffer);
+
+                // channel is closed, cleanup
+                if (readSize == -1) {
+                    onException(new EOFException());
+                    selection.close();
+                    break;
+                }
+                // nothing more to read, break
+                if (readSize == 0) {
+                    break;
+                }
+
+                receiveCounter.addAndGet(readSize);
+
+                buffer.flip();
+                connection.onData(buffer);
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            onException(e);
+        } catch (Throwable e) {
+            onException(IOExceptionSupport.create(e));
+        } finally {
+            buffer.clear();
+            BUFFER_POOL.returnBuffer(buffer);
+        }
+    }
+
+    @Override
+    public void oneway(Object command) throws IOException {
+        checkStarted();
+        connection.oneway(command);
+    }
+
+    @Override
+    public void onException(IOException error) {
+        connection.onTransportError();
+        super.onException(error);
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return socket != null ? WSNIOConnection.getRemoteAddress("ws", socket) : null;
+    }
+
+    @Override
+    public <T> T narrow(Class<T> target) {
+        T result = super.narrow(target);
+        if (result == null && connection.getProtocolTransport() != null) {
+            result = connection.getProtocolTransport().narrow(target);
+        }
+        return result;
+    }
+
+    /**
+     * @return the WebSocket connection served by this transport.
+     */
+    public WSNIOConnection getConnection() {
+        return connection;
+    }
+
+    public long getUpgradeTimeout() {
+        return connection.getUpgradeTimeout();
+    }
+
+    /**
+     * Sets the time in milliseconds a client has to complete the upgrade request.
+     */
+    public void setUpgradeTimeout(long upgradeTimeout) {
+        connection.setUpgradeTimeout(upgradeTimeout);
+    }
+
+    public int getMaxMessageSize() {
+        return connection.getMaxMessageSize();
+    }
+
+    /**
+     * Sets the largest message in bytes a client may send.
+     */
+    public void setMaxMessageSize(int maxMessageSize) {
+        connection.setMaxMessageSize(maxMessageSize);
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        connect();
+        selection.setInterestOps(SelectionKey.OP_READ);
+        selection.enable();
+        connection.start();
+    }
+
+    @Override
+    protected void doStop(ServiceStopper stopper) throws Exception {
+        try {
+            connection.stop(stopper);
+            if (selection != null) {
+                selection.close();
+            }
+        } finally {
+            super.doStop(stopper);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.ws.nio;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.net.ServerSocketFactory;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.BrokerServiceAware;
+import org.apache.activemq.transport.Transport;
+import org.apache.activemq.transport.nio.NIOTransportFactory;
+import org.apache.activemq.transport.tcp.TcpTransport;
+import org.apache.activemq.transport.tcp.TcpTransportServer;
+import org.apache.activemq.util.IntrospectionSupport;
+import org.apache.activemq.wireformat.WireFormat;
+
+/**
+ * Factory for WebSocket connectors that serve STOMP, MQTT and any protocol with a
+ * WebSocket transport, such as AMQP, on the broker's NIO selector threads rather than
+ * through an embedded Jetty server.
+ *
+ * The sub-protocol is chosen from the upgrade request of each connection the same
+ * way the ws transport chooses it, options prefixed with "transport." are applied to
+ * the protocol of each connection.
+ */
+public class WSNIOTransportFactory extends NIOTransportFactory implements BrokerServiceAware {
+
+    protected BrokerService brokerService;
+
+    @Override
+    protected TcpTransportServer createTcpTransportServer(URI location, ServerSocketFactory serverSocketFactory) throws IOException, URISyntaxException {
+        return new TcpTransportServer(this, location, serverSocketFactory) {
+            @Override
+            protected Transport createTransport(Socket socket, WireFormat format) throws IOException {
+                WSNIOTransport transport = new WSNIOTransport(format, socket);
+                transport.getConnection().setBrokerService(brokerService);
+                return transport;
+            }
+        };
+    }
+
+    @Override
+    protected Transport createTransport(URI location, WireFormat wf) throws IOException {
+        throw new IOException("createTransport() method not implemented! No client over WS NIO implemented.");
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Transport serverConfigure(Transport transport, WireFormat format, HashMap options) throws Exception {
+        TcpTransport tcpTransport = transport.narrow(TcpTransport.class);
+        IntrospectionSupport.setProperties(tcpTransport, options);
+
+        Map<String, Object> socketOptions = IntrospectionSupport.extractProperties(options, "socket.");
+        tcpTransport.setSocketOptions(socketOptions);
+
+        // The OpenWire inactivity defaults of the server do not apply, each protocol
+        // monitors its own connections.
+        options.remove("maxInactivityDuration");
+        options.remove("maxInactivityDurationInitalDelay");
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> protocolOptions = options;
+        getConnection(transport).setTransportOptions(protocolOptions);
+
+        // The protocol sockets serialize their own output so no mutex is needed.
+        return transport;
+    }
+
+    protected WSNIOConnection getConnection(Transport transport) {
+        return ((WSNIOTransport) transport).getConnection();
+    }
+
+    @Override
+    public void setBrokerService(BrokerService brokerService) {
+        this.brokerService = brokerService;
+    }
+}
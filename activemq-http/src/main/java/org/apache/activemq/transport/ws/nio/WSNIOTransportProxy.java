@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.ws.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.apache.activemq.transport.Transport;
+import org.apache.activemq.transport.ws.WSTransport;
+import org.apache.activemq.transport.ws.WSTransport.WSTransportSink;
+import org.apache.activemq.util.IntrospectionSupport;
+
+/**
+ * Passes the events of a NIO WebSocket connection along to a protocol that provides
+ * its own {@link WSTransport} implementation, such as AMQP.
+ */
+public class WSNIOTransportProxy implements WSNIOSocket {
+
+    private final Transport transport;
+    private final WSTransport wsTransport;
+
+    /**
+     * Create a proxy for the given protocol level WebSocket transport.
+     *
+     * @param transport
+     *      The protocol level WebSocket Transport
+     * @param sink
+     *      The sink that the transport writes its output to.
+     */
+    public WSNIOTransportProxy(Transport transport, WSTransportSink sink) {
+        this.transport = transport;
+        this.wsTransport = transport.narrow(WSTransport.class);
+
+        if (wsTransport == null) {
+            throw new IllegalArgumentException("Provided Transport does not contains a WSTransport implementation");
+        } else {
+            wsTransport.setTransportSink(sink);
+        }
+    }
+
+    /**
+     * @return the sub-protocol of the proxied transport.
+     */
+    public String getSubProtocol() {
+        return wsTransport.getSubProtocol();
+    }
+
+    /**
+     * Apply any configure Transport options on the wrapped Transport and its contained
+     * wireFormat instance.
+     */
+    public void setTransportOptions(Map<String, Object> options) {
+        Map<String, Object> wireFormatOptions = IntrospectionSupport.extractProperties(options, "wireFormat.");
+
+        IntrospectionSupport.setProperties(transport, options);
+        IntrospectionSupport.setProperties(transport.getWireFormat(), wireFormatOptions);
+    }
+
+    @Override
+    public Transport getTransport() {
+        return transport;
+    }
+
+    @Override
+    public int getMaxFrameSize() {
+        return wsTransport.getMaxFrameSize();
+    }
+
+    @Override
+    public void onWebSocketText(ByteBuffer data) throws IOException {
+        wsTransport.onWebSocketText(StandardCharsets.UTF_8.decode(data).toString());
+    }
+
+    @Override
+    public void onWebSocketBinary(ByteBuffer data) throws IOException {
+        wsTransport.onWebSocketBinary(data);
+    }
+
+    @Override
+    public void onWebSocketClosed() throws IOException {
+        wsTransport.onWebSocketClosed();
+    }
+}
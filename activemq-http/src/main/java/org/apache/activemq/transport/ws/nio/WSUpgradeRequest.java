@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.ws.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The HTTP request a WebSocket client opens its connection with, read from the socket
+ * as it arrives up to the blank line that ends the headers.
+ */
+public class WSUpgradeRequest {
+
+    public static final int MAX_REQUEST_SIZE = 8 * 1024;
+    public static final String WEBSOCKET_VERSION = "13";
+
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private byte[] request = new byte[256];
+    private int size;
+
+    private String method;
+    private String path;
+    private final Map<String, String> headers = new HashMap<>();
+
+    /**
+     * Reads the request from the given data, stopping right after its end so that
+     * anything the client sent after it is left in the buffer.
+     *
+     * @param data
+     *        the data read from the connection.
+     *
+     * @return true once the whole request has been read.
+     *
+     * @throws IOException if the request is too large or cannot be parsed.
+     */
+    public boolean parse(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            if (size == request.length) {
+                if (size == MAX_REQUEST_SIZE) {
+                    throw new IOException("WebSocket upgrade request larger than " + MAX_REQUEST_SIZE + " bytes");
+                }
+                byte[] expanded = new byte[Math.min(size * 2, MAX_REQUEST_SIZE)];
+                System.arraycopy(request, 0, expanded, 0, size);
+                request = expanded;
+            }
+
+            request[size++] = data.get();
+
+            if (size >= 4 && request[size - 1] == '\n' && request[size - 2] == '\r' &&
+                request[size - 3] == '\n' && request[size - 4] == '\r') {
+                parseRequest(new String(request, 0, size - 4, StandardCharsets.ISO_8859_1));
+                request = null;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return true if the request asks for a WebSocket upgrade.
+     */
+    public boolean isWebSocketUpgrade() {
+        return "GET".equals(method) && getKey() != null &&
+               containsToken(getHeader("upgrade"), "websocket") &&
+               containsToken(getHeader("connection"), "upgrade");
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the value of the header with the given lower case name, repeated headers
+     *         have their values joined with commas.
+     */
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    public String getKey() {
+        return getHeader("sec-websocket-key");
+    }
+
+    public String getVersion() {
+        return getHeader("sec-websocket-version");
+    }
+
+    /**
+     * @return the sub-protocols the client asked for, in order of its preference.
+     */
+    public List<String> getSubProtocols() {
+        String value = getHeader("sec-websocket-protocol");
+        if (value == null) {
+            return Collections.emptyList();
+        }
+
+        List<String> subProtocols = new ArrayList<>();
+        for (String subProtocol : value.split(",")) {
+            subProtocol = subProtocol.trim();
+            if (!subProtocol.isEmpty()) {
+                subProtocols.add(subProtocol);
+            }
+        }
+        return subProtocols;
+    }
+
+    /**
+     * Creates the response that completes the upgrade.
+     *
+     * @param subProtocol
+     *        the sub-protocol chosen for the connection, or null if none.
+     *
+     * @return the encoded response.
+     */
+    public byte[] createAcceptResponse(String subProtocol) throws IOException {
+        StringBuilder response = new StringBuilder(192);
+        response.append("HTTP/1.1 101 Switching Protocols\r\n");
+        response.append("Upgrade: websocket\r\n");
+        response.append("Connection: Upgrade\r\n");
+        response.append("Sec-WebSocket-Accept: ").append(createAcceptKey(getKey())).append("\r\n");
+        if (subProtocol != null) {
+            response.append("Sec-WebSocket-Protocol: ").append(subProtocol).append("\r\n");
+        }
+        response.append("\r\n");
+        return response.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Creates the response that refuses the upgrade, the connection is closed once it
+     * has been written.
+     *
+     * @return the encoded response.
+     */
+    public byte[] createRejectResponse() {
+        StringBuilder response = new StringBuilder(128);
+        if (isWebSocketUpgrade()) {
+            response.append("HTTP/1.1 426 Upgrade Required\r\n");
+            response.append("Sec-WebSocket-Version: ").append(WEBSOCKET_VERSION).append("\r\n");
+        } else {
+            response.append("HTTP/1.1 400 Bad Request\r\n");
+        }
+        response.append("Connection: close\r\n");
+        response.append("Content-Length: 0\r\n");
+        response.append("\r\n");
+        return response.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return the value of the Sec-WebSocket-Accept header for the given key.
+     */
+    public static String createAcceptKey(String key) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private void parseRequest(String text) throws IOException {
+        String[] lines = text.split("\r\n");
+
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/")) {
+            throw new IOException("Invalid HTTP request line: " + lines[0]);
+        }
+        method = requestLine[0];
+        path = requestLine[1];
+
+        for (int i = 1; i < lines.length; ++i) {
+            int separator = lines[i].indexOf(':');
+            if (separator <= 0) {
+                throw new IOException("Invalid HTTP header: " + lines[i]);
+            }
+
+            String name = lines[i].substring(0, separator).trim().toLowerCase(Locale.ENGLISH);
+            String value = lines[i].substring(separator + 1).trim();
+            String previous = headers.get(name);
+            headers.put(name, previous != null ? previous + "," + value : value);
+        }
+    }
+
+    private static boolean containsToken(String value, String token) {
+        if (value != null) {
+            for (String element : value.split(",")) {
+                if (element.trim().equalsIgnoreCase(token)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,305 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.apache.activemq.command.Command;
+import org.apache.activemq.command.ConnectionId;
+import org.apache.activemq.command.ConnectionInfo;
+import org.apache.activemq.command.ProducerId;
+import org.apache.activemq.command.ProducerInfo;
+import org.apache.activemq.command.Response;
+import org.apache.activemq.command.SessionId;
+import org.apache.activemq.command.SessionInfo;
+import org.apache.activemq.transport.xstream.XStreamWireFormat;
+import org.apache.activemq.util.ByteArrayOutputStream;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IdGenerator;
+import org.apache.activemq.util.Wait;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests the batched requests of the HTTP tunnel servlet and the HTTP client transport.
+ */
+public class HttpBatchingTest {
+
+    private final XStreamWireFormat wireFormat = new XStreamWireFormat();
+    private final IdGenerator idGenerator = new IdGenerator();
+
+    private BrokerService broker;
+    private String batchingUrl;
+    private String singleCommandUrl;
+    private CloseableHttpClient httpClient;
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setAdvisorySupport(false);
+        TransportConnector batching = broker.addConnector(
+            "http://localhost:0?transport.maxBatchWait=1000&wireFormat.maxFrameSize=4000");
+        TransportConnector singleCommand = broker.addConnector(
+            "http://localhost:0?transport.maxBatchWait=1000&transport.maxBatchSize=1");
+        broker.start();
+        broker.waitUntilStarted();
+
+        batchingUrl = batching.getPublishableConnectString();
+        singleCommandUrl = singleCommand.getPublishableConnectString();
+        WaitForJettyListener.waitForJettySocketToAccept(batchingUrl);
+        WaitForJettyListener.waitForJettySocketToAccept(singleCommandUrl);
+
+        httpClient = HttpClientBuilder.create().build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (httpClient != null) {
+            httpClient.close();
+        }
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testSeveralCommandsInOnePostAndGet() throws Exception {
+        String clientId = connect(batchingUrl);
+
+        HttpResponse answer = post(batchingUrl, clientId, createConnectionCommands(clientId));
+        assertEquals(HttpStatus.SC_OK, answer.getStatusLine().getStatusCode());
+
+        // the poll lingers long enough for the responses to every posted command
+        List<Integer> correlationIds = new ArrayList<>();
+        for (Command command : get(batchingUrl, clientId)) {
+            if (command instanceof Response) {
+                correlationIds.add(((Response) command).getCorrelationId());
+            }
+        }
+        assertEquals(Arrays.asList(1, 2, 3), correlationIds);
+    }
+
+    @Test(timeout = 60000)
+    public void testMaxBatchSizeEndsBatch() throws Exception {
+        String clientId = connect(singleCommandUrl);
+
+        HttpResponse answer = post(singleCommandUrl, clientId, createConnectionCommands(clientId));
+        assertEquals(HttpStatus.SC_OK, answer.getStatusLine().getStatusCode());
+
+        // every command exceeds the batch size on its own, so each poll returns exactly one
+        List<Integer> correlationIds = new ArrayList<>();
+        while (correlationIds.size() < 3) {
+            List<Command> batch = get(singleCommandUrl, clientId);
+            assertEquals(1, batch.size());
+            if (batch.get(0) instanceof Response) {
+                correlationIds.add(((Response) batch.get(0)).getCorrelationId());
+            }
+        }
+        assertEquals(Arrays.asList(1, 2, 3), correlationIds);
+    }
+
+    @Test(timeout = 60000)
+    public void testMaxFrameSizeCheckedPerCommandInBatch() throws Exception {
+        String clientId = connect(batchingUrl);
+
+        // the batch as a whole is over the limit, yet each of its commands is small enough
+        List<Command> commands = createConnectionCommands(clientId);
+        SessionId sessionId = ((SessionInfo) commands.get(1)).getSessionId();
+        for (int i = 0; i < 40; i++) {
+            ProducerInfo producer = new ProducerInfo(new ProducerId(sessionId, i + 2));
+            producer.setCommandId(commands.size() + 1);
+            commands.add(producer);
+        }
+        HttpResponse answer = post(batchingUrl, clientId, commands);
+        assertEquals(HttpStatus.SC_OK, answer.getStatusLine().getStatusCode());
+
+        ConnectionInfo oversized = new ConnectionInfo(new ConnectionId(idGenerator.generateId()));
+        oversized.setClientId(StringUtils.repeat("*", 5000));
+        oversized.setCommandId(commands.size() + 2);
+        ProducerInfo producer = new ProducerInfo(new ProducerId(sessionId, 100));
+        producer.setCommandId(commands.size() + 1);
+        answer = post(batchingUrl, clientId, Arrays.<Command>asList(producer, oversized));
+        assertEquals(405, answer.getStatusLine().getStatusCode());
+    }
+
+    @Test(timeout = 60000)
+    public void testFailedPostFailsWaitingSenders() throws Exception {
+        assertWaitingSendersFail(new IOException("post failed"));
+    }
+
+    @Test(timeout = 60000)
+    public void testPostFailingWithRuntimeExceptionFailsWaitingSenders() throws Exception {
+        assertWaitingSendersFail(new IllegalStateException("post failed"));
+    }
+
+    private void assertWaitingSendersFail(final Exception failure) throws Exception {
+        final CountDownLatch posting = new CountDownLatch(1);
+        final CountDownLatch fail = new CountDownLatch(1);
+
+        HttpClient sendClient = Mockito.mock(HttpClient.class);
+        Mockito.when(sendClient.execute(Mockito.any(HttpUriRequest.class))).thenAnswer(invocation -> {
+            posting.countDown();
+            fail.await();
+            throw failure;
+        }).thenReturn(new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK"));
+
+        final HttpClientTransport transport = new HttpClientTransport(wireFormat, new URI("http://localhost:0"));
+        transport.setUseBatching(true);
+        transport.canSendBatched = true;
+        transport.setSendHttpClient(sendClient);
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            Future<?> first = executor.submit(() -> {
+                transport.oneway(new ProducerInfo());
+                return null;
+            });
+            assertTrue(posting.await(10, TimeUnit.SECONDS));
+
+            final List<Thread> waiting = new ArrayList<>();
+            List<Future<?>> senders = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                senders.add(executor.submit(() -> {
+                    synchronized (waiting) {
+                        waiting.add(Thread.currentThread());
+                    }
+                    transport.oneway(new ProducerInfo());
+                    return null;
+                }));
+            }
+            assertTrue(Wait.waitFor(() -> {
+                synchronized (waiting) {
+                    return waiting.size() == 2 && waiting.stream().allMatch(t -> t.getState() == Thread.State.WAITING);
+                }
+            }, TimeUnit.SECONDS.toMillis(10), 10));
+
+            fail.countDown();
+
+            assertFailed(first, failure.getClass());
+            for (Future<?> sender : senders) {
+                assertFailed(sender, IOException.class);
+            }
+            // the commands of the waiting senders were not posted on their own either
+            Mockito.verify(sendClient, Mockito.times(1)).execute(Mockito.any(HttpUriRequest.class));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void assertFailed(Future<?> sender, Class<? extends Exception> expected) throws Exception {
+        try {
+            sender.get(10, TimeUnit.SECONDS);
+            fail("Send should have failed");
+        } catch (ExecutionException e) {
+            assertTrue("Unexpected failure: " + e.getCause(), expected.isInstance(e.getCause()));
+        }
+    }
+
+    private List<Command> createConnectionCommands(String clientId) {
+        ConnectionInfo connection = new ConnectionInfo(new ConnectionId(idGenerator.generateId()));
+        connection.setClientId(clientId);
+        SessionInfo session = new SessionInfo(new SessionId(connection.getConnectionId(), 1));
+        ProducerInfo producer = new ProducerInfo(new ProducerId(session.getSessionId(), 1));
+
+        List<Command> commands = new ArrayList<>(Arrays.<Command>asList(connection, session, producer));
+        for (int i = 0; i < commands.size(); i++) {
+            commands.get(i).setCommandId(i + 1);
+            commands.get(i).setResponseRequired(true);
+        }
+        return commands;
+    }
+
+    private String connect(String url) throws Exception {
+        String clientId = idGenerator.generateId();
+        HttpHead head = new HttpHead(url);
+        head.setHeader("clientID", clientId);
+        HttpResponse answer = httpClient.execute(head);
+        EntityUtils.consume(answer.getEntity());
+        assertEquals(HttpStatus.SC_OK, answer.getStatusLine().getStatusCode());
+        return clientId;
+    }
+
+    private HttpResponse post(String url, String clientId, List<Command> commands) throws Exception {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        for (Command command : commands) {
+            ByteSequence data = wireFormat.marshal(command);
+            batch.write(data.getData(), data.getOffset(), data.getLength());
+        }
+
+        HttpPost post = new HttpPost(url);
+        post.setHeader("clientID", clientId);
+        post.setHeader(HttpTransportSupport.BATCHED_HEADER, "true");
+        post.setEntity(new ByteArrayEntity(batch.toByteArray()));
+        HttpResponse answer = httpClient.execute(post);
+        EntityUtils.consume(answer.getEntity());
+        return answer;
+    }
+
+    private List<Command> get(String url, String clientId) throws Exception {
+        HttpGet get = new HttpGet(url);
+        get.setHeader("clientID", clientId);
+        get.setHeader(HttpTransportSupport.BATCHED_HEADER, "true");
+        HttpResponse answer = httpClient.execute(get);
+        byte[] body = answer.getEntity() != null ? EntityUtils.toByteArray(answer.getEntity()) : new byte[0];
+        assertEquals(HttpStatus.SC_OK, answer.getStatusLine().getStatusCode());
+
+        List<Command> commands = new ArrayList<>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        Object command;
+        while ((command = wireFormat.unmarshalNext(in, Long.MAX_VALUE)) != null) {
+            commands.add((Command) command);
+        }
+        return commands;
+    }
+}
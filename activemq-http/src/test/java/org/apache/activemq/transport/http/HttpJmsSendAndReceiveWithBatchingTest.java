@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.http;
+
+import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.broker.BrokerService;
+
+/**
+ * Tests sending and receiving over the HTTP transport with batched requests.
+ */
+public class HttpJmsSendAndReceiveWithBatchingTest extends HttpJmsSendAndReceiveTest {
+
+    @Override
+    protected String getBrokerURL() {
+        return "http://localhost:8161?useBatching=true";
+    }
+
+    @Override
+    protected BrokerService createBroker() throws Exception {
+        BrokerService answer = new BrokerService();
+        answer.setPersistent(false);
+        answer.addConnector("http://localhost:8161?transport.maxBatchWait=5&transport.maxBatchSize=8192");
+        return answer;
+    }
+
+    public void testBatchingNegotiated() throws Exception {
+        HttpClientTransport transport = ((ActiveMQConnection) sendConnection).getTransport().narrow(HttpClientTransport.class);
+        assertNotNull(transport);
+        assertTrue(transport.isBatched());
+    }
+}
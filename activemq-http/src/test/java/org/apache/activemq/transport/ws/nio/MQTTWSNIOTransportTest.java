@@ -0,0 +1,44 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.ws.nio;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.transport.ws.MQTTWSTransportTest;
+
+/**
+ * Test MQTT over WebSockets served on the broker's NIO selector threads.
+ */
+public class MQTTWSNIOTransportTest extends MQTTWSTransportTest {
+
+    public MQTTWSNIOTransportTest(String testName, boolean partialFrames) {
+        super(testName, partialFrames);
+    }
+
+    @Override
+    protected String getWSConnectorURI() {
+        return "ws+nio://127.0.0.1:" + getProxyPort() +
+               "?allowLinkStealing=" + isAllowLinkStealing() +
+               "&trace=true&transport.trace=true";
+    }
+
+    @Override
+    protected BrokerService createBroker(boolean deleteMessages, boolean advisorySupport) throws Exception {
+        BrokerService broker = super.createBroker(deleteMessages, advisorySupport);
+        wsConnectUri = StompWSNIOTransportTest.toClientURI(wsConnectUri);
+        return broker;
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.ws.nio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.activemq.transport.ws.nio.WSFrameCodec.WSFrameSink;
+import org.apache.activemq.transport.ws.nio.WSFrameCodec.WSProtocolException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WSFrameCodecTest {
+
+    private static final byte[] MASK = new byte[] { 0x37, (byte) 0xfa, 0x21, 0x3d };
+
+    private final List<String> texts = new ArrayList<>();
+    private final List<byte[]> binaries = new ArrayList<>();
+    private final List<byte[]> pings = new ArrayList<>();
+    private final List<Integer> closes = new ArrayList<>();
+
+    private WSFrameCodec codec;
+
+    @Before
+    public void setUp() {
+        codec = new WSFrameCodec(new WSFrameSink() {
+
+            @Override
+            public void onText(ByteBuffer data) {
+                texts.add(StandardCharsets.UTF_8.decode(data).toString());
+            }
+
+            @Override
+            public void onBinary(ByteBuffer data) {
+                binaries.add(toArray(data));
+            }
+
+            @Override
+            public void onPing(ByteBuffer data) {
+                pings.add(toArray(data));
+            }
+
+            @Override
+            public void onClose(int statusCode, String reason) {
+                closes.add(statusCode);
+            }
+        });
+    }
+
+    @Test
+    public void testMaskedTextFrame() throws Exception {
+        codec.parse(ByteBuffer.wrap(clientFrame(true, WSFrameCodec.OPCODE_TEXT, "Hello".getBytes(StandardCharsets.UTF_8))));
+
+        assertEquals(1, texts.size());
+        assertEquals("Hello", texts.get(0));
+    }
+
+    @Test
+    public void testFramesSplitAcrossReads() throws Exception {
+        codec.setMaxMessageSize(100000);
+
+        byte[] payload = new byte[70000];
+        for (int i = 0; i < payload.length; ++i) {
+            payload[i] = (byte) i;
+        }
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(clientFrame(true, WSFrameCodec.OPCODE_BINARY, payload));
+        stream.write(clientFrame(true, WSFrameCodec.OPCODE_BINARY, new byte[300]));
+        byte[] data = stream.toByteArray();
+
+        for (int i = 0; i < data.length; i += 7) {
+            codec.parse(ByteBuffer.wrap(data, i, Math.min(7, data.length - i)));
+        }
+
+        assertEquals(2, binaries.size());
+        assertArrayEquals(payload, binaries.get(0));
+        assertEquals(300, binaries.get(1).length);
+    }
+
+    @Test
+    public void testFragmentedMessageWithInterleavedPing() throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(clientFrame(false, WSFrameCodec.OPCODE_TEXT, "Hel".getBytes(StandardCharsets.UTF_8)));
+        stream.write(clientFrame(true, WSFrameCodec.OPCODE_PING, new byte[] { 1, 2 }));
+        stream.write(clientFrame(true, WSFrameCodec.OPCODE_CONTINUATION, "lo".getBytes(StandardCharsets.UTF_8)));
+
+        codec.parse(ByteBuffer.wrap(stream.toByteArray()));
+
+        assertEquals(1, pings.size());
+        assertArrayEquals(new byte[] { 1, 2 }, pings.get(0));
+        assertEquals(1, texts.size());
+        assertEquals("Hello", texts.get(0));
+    }
+
+    @Test
+    public void testCloseFrame() throws Exception {
+        codec.parse(ByteBuffer.wrap(clientFrame(true, WSFrameCodec.OPCODE_CLOSE, new byte[] { 0x03, (byte) 0xe8 })));
+        codec.parse(ByteBuffer.wrap(clientFrame(true, WSFrameCodec.OPCODE_CLOSE, new byte[0])));
+
+        assertEquals(2, closes.size());
+        assertEquals(WSFrameCodec.CLOSE_NORMAL, closes.get(0).intValue());
+        assertEquals(WSFrameCodec.CLOSE_NO_STATUS, closes.get(1).intValue());
+    }
+
+    @Test
+    public void testUnmaskedFrameRejected() throws Exception {
+        byte[] frame = new byte[] { (byte) 0x81, 0x01, 'a' };
+        assertProtocolError(frame, WSFrameCodec.CLOSE_PROTOCOL_ERROR);
+    }
+
+    @Test
+    public void testUnexpectedContinuationRejected() throws Exception {
+        assertProtocolError(clientFrame(true, WSFrameCodec.OPCODE_CONTINUATION, new byte[1]), WSFrameCodec.CLOSE_PROTOCOL_ERROR);
+    }
+
+    @Test
+    public void testMessageTooBigRejected() throws Exception {
+        codec.setMaxMessageSize(100);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(clientFrame(false, WSFrameCodec.OPCODE_BINARY, new byte[60]));
+        stream.write(clientFrame(true, WSFrameCodec.OPCODE_CONTINUATION, new byte[60]));
+
+        assertProtocolError(stream.toByteArray(), WSFrameCodec.CLOSE_MESSAGE_TOO_BIG);
+    }
+
+    @Test
+    public void testOversizedDeclaredLengthRejected() throws Exception {
+        assertEquals(WSFrameCodec.DEFAULT_MAX_MESSAGE_SIZE, codec.getMaxMessageSize());
+
+        // Only the header arrives, claiming far more than the maximum
+        assertProtocolError(clientFrameHeader(WSFrameCodec.OPCODE_BINARY, Integer.MAX_VALUE), WSFrameCodec.CLOSE_MESSAGE_TOO_BIG);
+    }
+
+    @Test
+    public void testPartialFrameBufferGrowsWithData() throws Exception {
+        codec.setMaxMessageSize(Integer.MAX_VALUE);
+
+        // Sizing the buffer from the header alone would need 2GB
+        codec.parse(ByteBuffer.wrap(clientFrameHeader(WSFrameCodec.OPCODE_BINARY, Integer.MAX_VALUE - 8)));
+        codec.parse(ByteBuffer.wrap(new byte[100]));
+
+        assertTrue(binaries.isEmpty());
+    }
+
+    @Test
+    public void testEncodeHeader() throws Exception {
+        byte[] header = new byte[WSFrameCodec.MAX_HEADER_SIZE];
+
+        assertEquals(2, WSFrameCodec.encodeHeader(WSFrameCodec.OPCODE_TEXT, 125, header));
+        assertEquals((byte) 0x81, header[0]);
+        assertEquals(125, header[1]);
+
+        assertEquals(4, WSFrameCodec.encodeHeader(WSFrameCodec.OPCODE_BINARY, 65535, header));
+        assertEquals((byte) 0x82, header[0]);
+        assertEquals(126, header[1]);
+        assertEquals((byte) 0xff, header[2]);
+        assertEquals((byte) 0xff, header[3]);
+
+        assertEquals(10, WSFrameCodec.encodeHeader(WSFrameCodec.OPCODE_BINARY, 65536, header));
+        assertEquals(127, header[1]);
+        assertEquals(1, header[7]);
+        assertEquals(0, header[8]);
+    }
+
+    @Test
+    public void testAcceptKey() throws Exception {
+        // The example from RFC 6455 section 1.3
+        assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=", WSUpgradeRequest.createAcceptKey("dGhlIHNhbXBsZSBub25jZQ=="));
+    }
+
+    @Test
+    public void testUpgradeRequestSplitAcrossReads() throws Exception {
+        byte[] request = ("GET /chat HTTP/1.1\r\n" +
+                          "Host: server.example.com\r\n" +
+                          "Upgrade: websocket\r\n" +
+                          "Connection: keep-alive, Upgrade\r\n" +
+                          "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n" +
+                          "Sec-WebSocket-Protocol: v11.stomp, v12.stomp\r\n" +
+                          "Sec-WebSocket-Version: 13\r\n" +
+                          "\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        WSUpgradeRequest upgrade = new WSUpgradeRequest();
+        assertTrue(!upgrade.parse(ByteBuffer.wrap(request, 0, 40)));
+        assertTrue(upgrade.parse(ByteBuffer.wrap(request, 40, request.length - 40)));
+
+        assertTrue(upgrade.isWebSocketUpgrade());
+        assertEquals("/chat", upgrade.getPath());
+        assertEquals("13", upgrade.getVersion());
+        assertEquals(2, upgrade.getSubProtocols().size());
+        assertEquals("v12.stomp", upgrade.getSubProtocols().get(1));
+    }
+
+    private void assertProtocolError(byte[] data, int statusCode) throws Exception {
+        try {
+            codec.parse(ByteBuffer.wrap(data));
+            fail("Should have failed to parse the frame");
+        } catch (WSProtocolException e) {
+            assertEquals(statusCode, e.getStatusCode());
+        }
+    }
+
+    private static byte[] clientFrame(boolean fin, byte opcode, byte[] payload) {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write((fin ? 0x80 : 0) | opcode);
+        if (payload.length < 126) {
+            frame.write(0x80 | payload.length);
+        } else if (payload.length <= 0xFFFF) {
+            frame.write(0x80 | 126);
+            frame.write(payload.length >>> 8);
+            frame.write(payload.length);
+        } else {
+            frame.write(0x80 | 127);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                frame.write((int) ((long) payload.length >>> shift));
+            }
+        }
+        frame.write(MASK, 0, MASK.length);
+        for (int i = 0; i < payload.length; ++i) {
+            frame.write(payload[i] ^ MASK[i % 4]);
+        }
+        return frame.toByteArray();
+    }
+
+    private static byte[] clientFrameHeader(byte opcode, long length) {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write(0x80 | opcode);
+        frame.write(0x80 | 127);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            frame.write((int) (length >>> shift));
+        }
+        frame.write(MASK, 0, MASK.length);
+        return frame.toByteArray();
+    }
+
+    private static byte[] toArray(ByteBuffer data) {
+        byte[] result = new byte[data.remaining()];
+        data.get(result);
+        return result;
+    }
+}
@@ -749,6 +749,33 @@ public class KahaDBPersistenceAdapter extends LockableServiceSupport implements
         letter.setEnableAckCompaction(enableAckCompaction);
     }
 
+    public boolean isShareMessageBodies() {
+        return letter.isShareMessageBodies();
+    }
+
+    /**
+     * Configure if a message stored to several destinations, such as the queues of a
+     * virtual topic, has its body journaled once and referred to by the other destinations.
+     *
+     * @param shareMessageBodies
+     */
+    public void setShareMessageBodies(boolean shareMessageBodies) {
+        letter.setShareMessageBodies(shareMessageBodies);
+    }
+
+    public int getSharedMessageBodyCacheMaxSize() {
+        return letter.getSharedMessageBodyCacheMaxSize();
+    }
+
+    /**
+     * Sets how many bytes of recently journaled message bodies are kept for sharing.
+     *
+     * @param sharedMessageBodyCacheMaxSize
+     */
+    public void setSharedMessageBodyCacheMaxSize(int sharedMessageBodyCacheMaxSize) {
+        letter.setSharedMessageBodyCacheMaxSize(sharedMessageBodyCacheMaxSize);
+    }
+
     /**
      * Whether non-blocking subscription statistics have been enabled
      *
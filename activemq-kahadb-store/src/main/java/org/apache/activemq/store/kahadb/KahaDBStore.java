@@ -20,9 +20,12 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -76,6 +79,7 @@ import org.apache.activemq.store.TransactionStore;
 import org.apache.activemq.store.kahadb.data.KahaAddMessageCommand;
 import org.apache.activemq.store.kahadb.data.KahaDestination;
 import org.apache.activemq.store.kahadb.data.KahaDestination.DestinationType;
+import org.apache.activemq.store.kahadb.data.KahaEntryType;
 import org.apache.activemq.store.kahadb.data.KahaLocation;
 import org.apache.activemq.store.kahadb.data.KahaRemoveDestinationCommand;
 import org.apache.activemq.store.kahadb.data.KahaRemoveMessageCommand;
@@ -124,6 +128,11 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
     private int maxAsyncJobs = MAX_ASYNC_JOBS;
     private final KahaDBTransactionStore transactionStore;
     private TransactionIdTransformer transactionIdTransformer;
+    // recently journaled message bodies, by message id, that other destinations may refer to
+    private final LinkedHashMap<String, SharedMessageBody> sharedMessageBodies = new LinkedHashMap<String, SharedMessageBody>(16, 0.75f, true);
+    // bodies an add is referring to while it is journaled and indexed, guarded by sharedMessageBodies
+    private final List<SharedMessageBody> pinnedMessageBodies = new ArrayList<SharedMessageBody>();
+    private long sharedMessageBodiesSize;
 
     public KahaDBStore() {
         this.transactionStore = new KahaDBTransactionStore(this);
@@ -555,27 +564,50 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
             command.setPriority(message.getPriority());
             command.setPrioritySupported(isPrioritizedMessages());
             org.apache.activemq.util.ByteSequence packet = wireFormat.marshal(message);
-            command.setMessage(new Buffer(packet.getData(), packet.getOffset(), packet.getLength()));
-            store(command, isEnableJournalDiskSyncs() && message.isResponseRequired(), new IndexAware() {
-                // sync add? (for async, future present from getFutureOrSequenceLong)
-                Object possibleFuture = message.getMessageId().getFutureOrSequenceLong();
+            SharedMessageBody sharedBody = findSharedMessageBody(message, packet);
+            if (sharedBody != null) {
+                command.setMessage(new Buffer(new byte[0]));
+                command.setMessageLocation(convert(sharedBody.location));
+                if (!sharedBody.messageDestination.equals(message.getDestination())) {
+                    command.setRetargetDestination(true);
+                }
+                if (sharedBody.brokerSequenceId != message.getMessageId().getBrokerSequenceId()) {
+                    command.setBrokerSequenceId(message.getMessageId().getBrokerSequenceId());
+                }
+            } else {
+                command.setMessage(new Buffer(packet.getData(), packet.getOffset(), packet.getLength()));
+            }
+            Location location;
+            try {
+                location = store(command, isEnableJournalDiskSyncs() && message.isResponseRequired(), new IndexAware() {
+                    // sync add? (for async, future present from getFutureOrSequenceLong)
+                    Object possibleFuture = message.getMessageId().getFutureOrSequenceLong();
 
-                @Override
-                public void sequenceAssignedWithIndexLocked(final long sequence) {
-                    message.getMessageId().setFutureOrSequenceLong(sequence);
-                    if (indexListener != null) {
-                        if (possibleFuture == null) {
-                            trackPendingAdd(dest, sequence);
-                            indexListener.onAdd(new IndexListener.MessageContext(context, message, new Runnable() {
-                                @Override
-                                public void run() {
-                                    trackPendingAddComplete(dest, sequence);
-                                }
-                            }));
+                    @Override
+                    public void sequenceAssignedWithIndexLocked(final long sequence) {
+                        message.getMessageId().setFutureOrSequenceLong(sequence);
+                        if (indexListener != null) {
+                            if (possibleFuture == null) {
+                                trackPendingAdd(dest, sequence);
+                                indexListener.onAdd(new IndexListener.MessageContext(context, message, new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        trackPendingAddComplete(dest, sequence);
+                                    }
+                                }));
+                            }
                         }
                     }
+                }, null);
+            } finally {
+                if (sharedBody != null) {
+                    // the add is indexed, or pending in its transaction, and keeps the body's data file from now on
+                    unpin(sharedBody);
                 }
-            }, null);
+            }
+            if (sharedBody == null && isShareMessageBodies() && !isXATransaction(message)) {
+                cacheSharedMessageBody(command.getMessageId(), new SharedMessageBody(location, packet, message, destination));
+            }
 
             /*
              * After we store the command in the journal we no longer need to keep the message
@@ -601,6 +633,50 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
             command.clearMessage();
         }
 
+        /**
+         * Finds the journaled body of this message stored for another destination that
+         * this destination's add can refer to instead of journaling the body again. The
+         * body is only shared when its marshalled form matches this message's once the
+         * destination and broker sequence id, which differ per destination, are replaced
+         * with the body's. Those are restored from the referring add when loaded.
+         */
+        private SharedMessageBody findSharedMessageBody(Message message, org.apache.activemq.util.ByteSequence packet) throws IOException {
+            if (!isShareMessageBodies() || isXATransaction(message)) {
+                return null;
+            }
+            SharedMessageBody body;
+            synchronized (sharedMessageBodies) {
+                body = sharedMessageBodies.get(message.getMessageId().toProducerKey());
+                if (body == null || body.storeDestination.equals(destination)) {
+                    return null;
+                }
+                // keep the body's data file until the add referring to it is indexed,
+                // even if the body leaves the cache or a cleanup runs meanwhile
+                if (body.pins++ == 0) {
+                    pinnedMessageBodies.add(body);
+                }
+            }
+            boolean shared = false;
+            try {
+                boolean retarget = !body.messageDestination.equals(message.getDestination());
+                if (retarget && !(destination.equals(message.getDestination()) && body.storeDestination.equals(body.messageDestination))) {
+                    return null;
+                }
+                if (retarget || body.brokerSequenceId != message.getMessageId().getBrokerSequenceId()) {
+                    Message candidate = message.copy();
+                    candidate.setDestination(body.messageDestination);
+                    candidate.getMessageId().setBrokerSequenceId(body.brokerSequenceId);
+                    packet = wireFormat.marshal(candidate);
+                }
+                shared = body.hasContent(packet);
+                return shared ? body : null;
+            } finally {
+                if (!shared) {
+                    unpin(body);
+                }
+            }
+        }
+
         @Override
         public void updateMessage(Message message) throws IOException {
             if (LOG.isTraceEnabled()) {
@@ -1567,6 +1643,9 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
                 default:
                     throw new IOException("Could not load journal record, unexpected command type: " + command.type() + " at location: " + location);
             }
+            if (addMessage.hasMessageLocation()) {
+                return loadSharedMessage(addMessage);
+            }
             if (!addMessage.hasMessage()) {
                 throw new IOException("Could not load journal record, null message content at location: " + location);
             }
@@ -1580,6 +1659,102 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
         }
     }
 
+    private Message loadSharedMessage(KahaAddMessageCommand reference) throws IOException {
+        Location location = convert(reference.getMessageLocation());
+        JournalCommand<?> command = load(location);
+        if (command.type() != KahaEntryType.KAHA_ADD_MESSAGE_COMMAND || !((KahaAddMessageCommand) command).hasMessage()) {
+            throw new IOException("Could not load shared message body, unexpected journal record at location: " + location);
+        }
+        Message msg = (Message) wireFormat.unmarshal(new DataInputStream(((KahaAddMessageCommand) command).getMessage().newInput()));
+        if (reference.getRetargetDestination()) {
+            msg.setDestination(convert(reference.getDestination()));
+        }
+        if (reference.hasBrokerSequenceId()) {
+            msg.getMessageId().setBrokerSequenceId(reference.getBrokerSequenceId());
+        }
+        return msg;
+    }
+
+    private static boolean isXATransaction(Message message) {
+        return message.getTransactionId() != null && message.getTransactionId().isXATransaction();
+    }
+
+    private void cacheSharedMessageBody(String messageId, SharedMessageBody body) {
+        synchronized (sharedMessageBodies) {
+            SharedMessageBody replaced = sharedMessageBodies.put(messageId, body);
+            if (replaced != null) {
+                sharedMessageBodiesSize -= replaced.packet.getLength();
+            }
+            sharedMessageBodiesSize += body.packet.getLength();
+            for (Iterator<SharedMessageBody> eldest = sharedMessageBodies.values().iterator();
+                 sharedMessageBodiesSize > getSharedMessageBodyCacheMaxSize() && eldest.hasNext();) {
+                sharedMessageBodiesSize -= eldest.next().packet.getLength();
+                eldest.remove();
+            }
+        }
+    }
+
+    private void unpin(SharedMessageBody body) {
+        synchronized (sharedMessageBodies) {
+            if (--body.pins == 0) {
+                pinnedMessageBodies.remove(body);
+            }
+        }
+    }
+
+    /**
+     * Called for each cleanup, bodies that were already cached at the previous cleanup
+     * are dropped so that an idle cache does not keep data files forever. The stores
+     * of a fanned out message follow each other closely, so a body is long unused by then.
+     */
+    @Override
+    protected Set<Integer> getSharedMessageBodyFileIds() {
+        synchronized (sharedMessageBodies) {
+            if (sharedMessageBodies.isEmpty() && pinnedMessageBodies.isEmpty()) {
+                return Collections.emptySet();
+            }
+            Set<Integer> fileIds = new HashSet<>();
+            for (Iterator<SharedMessageBody> bodies = sharedMessageBodies.values().iterator(); bodies.hasNext();) {
+                SharedMessageBody body = bodies.next();
+                if (body.seenByCleanup) {
+                    sharedMessageBodiesSize -= body.packet.getLength();
+                    bodies.remove();
+                } else {
+                    body.seenByCleanup = true;
+                    fileIds.add(body.location.getDataFileId());
+                }
+            }
+            for (SharedMessageBody body : pinnedMessageBodies) {
+                fileIds.add(body.location.getDataFileId());
+            }
+            return fileIds;
+        }
+    }
+
+    private static final class SharedMessageBody {
+        final Location location;
+        final org.apache.activemq.util.ByteSequence packet;
+        final ActiveMQDestination messageDestination;
+        final long brokerSequenceId;
+        final ActiveMQDestination storeDestination;
+        // guarded by sharedMessageBodies
+        int pins;
+        boolean seenByCleanup;
+
+        SharedMessageBody(Location location, org.apache.activemq.util.ByteSequence packet, Message message, ActiveMQDestination storeDestination) {
+            this.location = location;
+            this.packet = packet;
+            this.messageDestination = message.getDestination();
+            this.brokerSequenceId = message.getMessageId().getBrokerSequenceId();
+            this.storeDestination = storeDestination;
+        }
+
+        boolean hasContent(org.apache.activemq.util.ByteSequence other) {
+            return Arrays.equals(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength(),
+                                 other.getData(), other.getOffset(), other.getOffset() + other.getLength());
+        }
+    }
+
     // /////////////////////////////////////////////////////////////////
     // Internal conversion methods.
     // /////////////////////////////////////////////////////////////////
@@ -79,6 +79,7 @@ import org.apache.activemq.store.kahadb.data.KahaAddMessageCommand;
 import org.apache.activemq.store.kahadb.data.KahaCommitCommand;
 import org.apache.activemq.store.kahadb.data.KahaDestination;
 import org.apache.activemq.store.kahadb.data.KahaEntryType;
+import org.apache.activemq.store.kahadb.data.KahaLocation;
 import org.apache.activemq.store.kahadb.data.KahaPrepareCommand;
 import org.apache.activemq.store.kahadb.data.KahaProducerAuditCommand;
 import org.apache.activemq.store.kahadb.data.KahaRemoveDestinationCommand;
@@ -151,6 +152,8 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         protected transient ActiveMQMessageAuditNoSync producerSequenceIdTracker = new ActiveMQMessageAuditNoSync();
         protected transient Map<Integer, Set<Integer>> ackMessageFileMap = new HashMap<>();
         protected transient AtomicBoolean ackMessageFileMapDirtyFlag = new AtomicBoolean(false);
+        // data file holding shared message bodies -> data files with add commands referring to them
+        protected transient Map<Integer, Set<Integer>> messageReferenceFileMap = new HashMap<>();
         protected int version = VERSION;
         protected int openwireVersion = OpenWireFormat.DEFAULT_STORE_VERSION;
 
@@ -295,6 +298,8 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
 
     private boolean enableAckCompaction = true;
+    private boolean shareMessageBodies = false;
+    private int sharedMessageBodyCacheMaxSize = 1024 * 1024;
     private int compactAcksAfterNoGC = 10;
     private boolean compactAcksIgnoresStoreGrowth = false;
     private int checkPointCyclesWithNoGC;
@@ -580,6 +585,23 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         return range;
     }
 
+    @SuppressWarnings("rawtypes")
+    private Set<Integer> getInProgressTxMessageBodyFileIds() {
+        Set<Integer> fileIds = new HashSet<>();
+        synchronized (inflightTransactions) {
+            for (Map<TransactionId, List<Operation>> transactions : Arrays.asList(inflightTransactions, preparedTransactions)) {
+                for (List<Operation> ops : transactions.values()) {
+                    for (Operation op : ops) {
+                        if (op instanceof AddOperation && ((AddOperation) op).getCommand().hasMessageLocation()) {
+                            fileIds.add(((AddOperation) op).getCommand().getMessageLocation().getLogId());
+                        }
+                    }
+                }
+            }
+        }
+        return fileIds;
+    }
+
     @SuppressWarnings("rawtypes")
     private void trackMaxAndMin(Location[] range, List<Operation> ops) {
         Location t = ops.get(0).getLocation();
@@ -847,6 +869,10 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 KahaAckMessageFileMapCommand audit = (KahaAckMessageFileMapCommand) load(metadata.ackMessageFileMapLocation);
                 ObjectInputStream objectIn = new MessageDatabaseObjectInputStream(audit.getAckMessageFileMap().newInput());
                 metadata.ackMessageFileMap = (Map<Integer, Set<Integer>>) objectIn.readObject();
+                if (audit.hasMessageReferenceFileMap()) {
+                    objectIn = new MessageDatabaseObjectInputStream(audit.getMessageReferenceFileMap().newInput());
+                    metadata.messageReferenceFileMap = (Map<Integer, Set<Integer>>) objectIn.readObject();
+                }
                 metadata.ackMessageFileMapDirtyFlag.lazySet(true);
                 requiresReplay = false;
             } catch (Exception e) {
@@ -1236,6 +1262,9 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 @Override
                 public void visit(KahaAddMessageCommand command) throws IOException {
                     metadata.producerSequenceIdTracker.isDuplicate(command.getMessageId());
+                    if (command.hasMessageLocation()) {
+                        recordMessageReferenceLocation(location, convert(command.getMessageLocation()));
+                    }
                 }
             });
         }
@@ -1538,6 +1567,10 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             return -1;
         }
 
+        if (command.hasMessageLocation()) {
+            recordMessageReferenceLocation(location, convert(command.getMessageLocation()));
+        }
+
         // Add the message.
         int priority = command.getPrioritySupported() ? command.getPriority() : jakarta.jms.Message.DEFAULT_PRIORITY;
         long id = sd.orderIndex.getNextMessageId();
@@ -1682,6 +1715,24 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         }
     }
 
+    private void recordMessageReferenceLocation(Location referenceLocation, Location messageLocation) {
+        if (referenceLocation.getDataFileId() == messageLocation.getDataFileId()) {
+            return;
+        }
+        Set<Integer> referenceFileIds = metadata.messageReferenceFileMap.get(messageLocation.getDataFileId());
+        if (referenceFileIds == null) {
+            referenceFileIds = new HashSet<>();
+            metadata.messageReferenceFileMap.put(messageLocation.getDataFileId(), referenceFileIds);
+        }
+        if (referenceFileIds.add(referenceLocation.getDataFileId())) {
+            metadata.ackMessageFileMapDirtyFlag.lazySet(true);
+        }
+    }
+
+    static Location convert(KahaLocation location) {
+        return new Location(location.getLogId(), location.getOffset());
+    }
+
     private void recordAckMessageReferenceLocation(Location ackLocation, Location messageLocation) {
         Set<Integer> referenceFileIds = metadata.ackMessageFileMap.get(ackLocation.getDataFileId());
         if (referenceFileIds == null) {
@@ -1847,6 +1898,9 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 gcCandidateSet.removeAll(journalFilesBeingReplicated);
             }
 
+            // Don't GC files with message bodies that new adds may still refer to
+            gcCandidateSet.removeAll(getSharedMessageBodyFileIds());
+
             if (metadata.producerSequenceIdTrackerLocation != null) {
                 int dataFileId = metadata.producerSequenceIdTrackerLocation.getDataFileId();
                 if (gcCandidateSet.contains(dataFileId) && gcCandidateSet.first() == dataFileId) {
@@ -1876,6 +1930,8 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                     gcCandidateSet.remove(pendingTx);
                 }
             }
+            // Nor the files of message bodies that adds in those tx refer to
+            gcCandidateSet.removeAll(getInProgressTxMessageBodyFileIds());
             if (LOG.isTraceEnabled()) {
                 LOG.trace("gc candidates after in progress tx range:" + Arrays.asList(inProgressTxRange) + ", " + gcCandidateSet);
             }
@@ -1984,6 +2040,26 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 LOG.trace("ackMessageFileMap: " +  metadata.ackMessageFileMap);
             }
 
+            // Files that hold message bodies referenced from a file that stays must stay too,
+            // as must files with acks for those, so keep going until nothing more is kept.
+            if (!metadata.messageReferenceFileMap.isEmpty()) {
+                boolean kept;
+                do {
+                    kept = false;
+                    for (Iterator<Integer> candidates = gcCandidateSet.iterator(); candidates.hasNext();) {
+                        Integer candidate = candidates.next();
+                        if (isReferencedByRetainedFile(metadata.messageReferenceFileMap.get(candidate), completeFileSet, gcCandidateSet) ||
+                            isReferencedByRetainedFile(metadata.ackMessageFileMap.get(candidate), completeFileSet, gcCandidateSet)) {
+                            if (LOG.isTraceEnabled()) {
+                                LOG.trace("not removing data file: " + candidate + " as it is referenced from a retained file");
+                            }
+                            candidates.remove();
+                            kept = true;
+                        }
+                    }
+                } while (kept);
+            }
+
             boolean ackMessageFileMapMod = false;
             Iterator<Integer> candidates = gcCandidateSet.iterator();
             while (candidates.hasNext()) {
@@ -2016,6 +2092,17 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                         ackMessageFileMapMod |= ackFiles.remove(candidate);
                         metadata.ackMessageFileMapDirtyFlag.lazySet(true);
                     }
+                    if (!metadata.messageReferenceFileMap.isEmpty()) {
+                        ackMessageFileMapMod |= metadata.messageReferenceFileMap.remove(candidate) != null;
+                        for (Iterator<Set<Integer>> references = metadata.messageReferenceFileMap.values().iterator(); references.hasNext();) {
+                            Set<Integer> referenceFiles = references.next();
+                            ackMessageFileMapMod |= referenceFiles.remove(candidate);
+                            if (referenceFiles.isEmpty()) {
+                                references.remove();
+                            }
+                        }
+                        metadata.ackMessageFileMapDirtyFlag.lazySet(true);
+                    }
                 }
                 if (ackMessageFileMapMod) {
                     checkpointUpdate(tx, false);
@@ -2144,6 +2231,25 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         }
     }
 
+    /**
+     * @return the ids of the data files holding message bodies that adds yet to be
+     *         journaled may refer to rather than journal the body again
+     */
+    protected Set<Integer> getSharedMessageBodyFileIds() {
+        return Collections.emptySet();
+    }
+
+    private static boolean isReferencedByRetainedFile(Set<Integer> referencedFileIds, Set<Integer> completeFileSet, Set<Integer> gcCandidateSet) {
+        if (referencedFileIds != null) {
+            for (Integer referencedFileId : referencedFileIds) {
+                if (completeFileSet.contains(referencedFileId) && !gcCandidateSet.contains(referencedFileId)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     // called with the index lock held
     private boolean blockedFromCompaction(int journalToAdvance) {
         // don't forward the current data file
@@ -2291,8 +2397,16 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         oout.writeObject(metadata.ackMessageFileMap);
         oout.flush();
         oout.close();
+        KahaAckMessageFileMapCommand command = new KahaAckMessageFileMapCommand().setAckMessageFileMap(new Buffer(baos.toByteArray()));
+        if (!metadata.messageReferenceFileMap.isEmpty()) {
+            baos = new ByteArrayOutputStream();
+            oout = new ObjectOutputStream(baos);
+            oout.writeObject(metadata.messageReferenceFileMap);
+            oout.close();
+            command.setMessageReferenceFileMap(new Buffer(baos.toByteArray()));
+        }
         // using completion callback allows a disk sync to be avoided when enableJournalDiskSyncs = false
-        Location location = store(new KahaAckMessageFileMapCommand().setAckMessageFileMap(new Buffer(baos.toByteArray())), nullCompletionCallback);
+        Location location = store(command, nullCompletionCallback);
         try {
             location.getLatch().await();
         } catch (InterruptedException e) {
@@ -4237,6 +4351,39 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         this.enableAckCompaction = enableAckCompaction;
     }
 
+    public boolean isShareMessageBodies() {
+        return shareMessageBodies;
+    }
+
+    /**
+     * Configure if a message stored to several destinations, as happens when a virtual
+     * topic or composite destination fans a message out, has its body written to the
+     * journal once. The other destinations then journal a small record referring to it,
+     * and the data file holding the body is kept until none of those remain.
+     *
+     * Journals written with this enabled cannot be read by versions without it.
+     *
+     * @param shareMessageBodies
+     */
+    public void setShareMessageBodies(boolean shareMessageBodies) {
+        this.shareMessageBodies = shareMessageBodies;
+    }
+
+    public int getSharedMessageBodyCacheMaxSize() {
+        return sharedMessageBodyCacheMaxSize;
+    }
+
+    /**
+     * Sets how many bytes of recently stored message bodies are remembered for sharing
+     * with the destinations the same message is stored to next. A remembered body also
+     * keeps its data file until the next cleanup but one.
+     *
+     * @param sharedMessageBodyCacheMaxSize
+     */
+    public void setSharedMessageBodyCacheMaxSize(int sharedMessageBodyCacheMaxSize) {
+        this.sharedMessageBodyCacheMaxSize = sharedMessageBodyCacheMaxSize;
+    }
+
     /**
      * @return
      */
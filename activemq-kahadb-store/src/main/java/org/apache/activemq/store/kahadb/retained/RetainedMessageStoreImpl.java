@@ -0,0 +1,387 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.retained;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.BrokerServiceAware;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.filter.DestinationFilter;
+import org.apache.activemq.filter.DestinationPath;
+import org.apache.activemq.openwire.OpenWireFormat;
+import org.apache.activemq.store.MessageRecoveryListener;
+import org.apache.activemq.store.RetainedMessageStore;
+import org.apache.activemq.store.kahadb.disk.index.BTreeIndex;
+import org.apache.activemq.store.kahadb.disk.page.Page;
+import org.apache.activemq.store.kahadb.disk.page.PageFile;
+import org.apache.activemq.store.kahadb.disk.page.Transaction;
+import org.apache.activemq.store.kahadb.disk.util.BytesMarshaller;
+import org.apache.activemq.store.kahadb.disk.util.LongMarshaller;
+import org.apache.activemq.store.kahadb.disk.util.StringMarshaller;
+import org.apache.activemq.store.kahadb.disk.util.VariableMarshaller;
+import org.apache.activemq.thread.Scheduler;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IOHelper;
+import org.apache.activemq.util.LockFile;
+import org.apache.activemq.util.ServiceStopper;
+import org.apache.activemq.util.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link RetainedMessageStore} kept in a KahaDB page file.
+ *
+ * The retained messages are indexed by topic name in a BTree, so the topics matching
+ * a wildcard all sit in the key range of the literal part of the wildcard in front of
+ * its first wildcard path. Recovery walks that range in batches of
+ * {@link #setRecoverBatchSize(int) recoverBatchSize} index entries, loading only the
+ * messages of matching topics, so memory use does not grow with the number of topics.
+ *
+ * Changes are flushed to disk every {@link #setCheckpointInterval(long) checkpointInterval}
+ * milliseconds and when the store is stopped.
+ *
+ * @org.apache.xbean.XBean
+ */
+public class RetainedMessageStoreImpl extends ServiceSupport implements RetainedMessageStore, BrokerServiceAware, Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RetainedMessageStoreImpl.class);
+
+    private File directory;
+    private PageFile pageFile;
+    private LockFile lockFile;
+    private MetaData metaData = new MetaData();
+    private final MetaDataMarshaller metaDataMarshaller = new MetaDataMarshaller();
+    private final BytesMarshaller bytesMarshaller = new BytesMarshaller();
+    private final OpenWireFormat wireFormat = new OpenWireFormat();
+    private final Object indexLock = new Object();
+    private Scheduler scheduler;
+    private long checkpointInterval = 5000;
+    private int recoverBatchSize = 100;
+    private int indexCacheSize = PageFile.DEFAULT_PAGE_CACHE_SIZE;
+
+    private class MetaData {
+        Page<MetaData> page;
+        BTreeIndex<String, Long> retained;
+        long size;
+
+        void read(DataInput is) throws IOException {
+            this.retained = new BTreeIndex<String, Long>(pageFile, is.readLong());
+            this.size = is.readLong();
+        }
+
+        void write(DataOutput os) throws IOException {
+            os.writeLong(this.retained.getPageId());
+            os.writeLong(this.size);
+        }
+    }
+
+    private class MetaDataMarshaller extends VariableMarshaller<MetaData> {
+        @Override
+        public MetaData readPayload(DataInput dataIn) throws IOException {
+            MetaData rc = new MetaData();
+            rc.read(dataIn);
+            return rc;
+        }
+
+        @Override
+        public void writePayload(MetaData object, DataOutput dataOut) throws IOException {
+            object.write(dataOut);
+        }
+    }
+
+    @Override
+    public void setBrokerService(BrokerService brokerService) {
+        this.scheduler = brokerService.getScheduler();
+    }
+
+    @Override
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * @param checkpointInterval milliseconds between flushes of the changed retained
+     *        messages to disk, changes since the last flush are lost if the broker crashes
+     */
+    public void setCheckpointInterval(long checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public int getRecoverBatchSize() {
+        return recoverBatchSize;
+    }
+
+    /**
+     * @param recoverBatchSize the number of index entries read at a time while
+     *        recovering the retained messages of a wildcard destination
+     */
+    public void setRecoverBatchSize(int recoverBatchSize) {
+        this.recoverBatchSize = recoverBatchSize;
+    }
+
+    public int getIndexCacheSize() {
+        return indexCacheSize;
+    }
+
+    public void setIndexCacheSize(int indexCacheSize) {
+        this.indexCacheSize = indexCacheSize;
+    }
+
+    @Override
+    public void setRetainedMessage(ActiveMQDestination destination, Message message) throws IOException {
+        final String key = destination.getPhysicalName();
+        final ByteSequence data = message != null ? wireFormat.marshal(message) : null;
+        synchronized (indexLock) {
+            pageFile.tx().execute(new Transaction.Closure<IOException>() {
+                @Override
+                public void execute(Transaction tx) throws IOException {
+                    Long previous;
+                    if (data != null) {
+                        Page<byte[]> page = tx.allocate();
+                        data.compact();
+                        page.set(data.getData());
+                        tx.store(page, bytesMarshaller, true);
+                        previous = metaData.retained.put(tx, key, page.getPageId());
+                        if (previous == null) {
+                            metaData.size++;
+                        }
+                    } else {
+                        previous = metaData.retained.remove(tx, key);
+                        if (previous != null) {
+                            metaData.size--;
+                        }
+                    }
+                    if (previous != null) {
+                        tx.free(previous);
+                    }
+                    tx.store(metaData.page, metaDataMarshaller, true);
+                }
+            });
+        }
+    }
+
+    @Override
+    public Message getRetainedMessage(final ActiveMQDestination destination) throws IOException {
+        synchronized (indexLock) {
+            return pageFile.tx().execute(new Transaction.CallableClosure<Message, IOException>() {
+                @Override
+                public Message execute(Transaction tx) throws IOException {
+                    Long pageId = metaData.retained.get(tx, destination.getPhysicalName());
+                    return pageId != null ? load(tx, pageId) : null;
+                }
+            });
+        }
+    }
+
+    @Override
+    public void recover(ActiveMQDestination destination, MessageRecoveryListener listener) throws Exception {
+        if (destination.isComposite()) {
+            for (ActiveMQDestination child : destination.getCompositeDestinations()) {
+                if (!doRecover(child, listener)) {
+                    break;
+                }
+            }
+        } else {
+            doRecover(destination, listener);
+        }
+    }
+
+    private boolean doRecover(ActiveMQDestination destination, MessageRecoveryListener listener) throws Exception {
+        if (!destination.isPattern()) {
+            Message message = getRetainedMessage(destination);
+            return message == null || listener.recoverMessage(message);
+        }
+
+        final DestinationFilter filter = DestinationFilter.parseFilter(destination);
+        final byte destinationType = destination.getDestinationType();
+        final String prefix = getLiteralPrefix(destination);
+        final int batchSize = Math.max(1, recoverBatchSize);
+        final String[] lastKey = new String[1];
+        boolean more = true;
+        while (more) {
+            final String fromKey = lastKey[0] != null ? lastKey[0] : prefix;
+            final boolean skipFromKey = lastKey[0] != null;
+            final List<Message> batch = new ArrayList<Message>();
+            synchronized (indexLock) {
+                more = pageFile.tx().execute(new Transaction.CallableClosure<Boolean, IOException>() {
+                    @Override
+                    public Boolean execute(Transaction tx) throws IOException {
+                        int scanned = 0;
+                        Iterator<Entry<String, Long>> iterator = metaData.retained.iterator(tx, fromKey);
+                        while (iterator.hasNext()) {
+                            Entry<String, Long> entry = iterator.next();
+                            String key = entry.getKey();
+                            if (!key.startsWith(prefix)) {
+                                return false;
+                            }
+                            if (skipFromKey && key.equals(fromKey)) {
+                                continue;
+                            }
+                            if (scanned++ == batchSize) {
+                                return true;
+                            }
+                            lastKey[0] = key;
+                            if (filter.matches(ActiveMQDestination.createDestination(key, destinationType))) {
+                                batch.add(load(tx, entry.getValue()));
+                            }
+                        }
+                        return false;
+                    }
+                });
+            }
+            for (Message message : batch) {
+                if (!listener.recoverMessage(message)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long size() {
+        synchronized (indexLock) {
+            return metaData.size;
+        }
+    }
+
+    private Message load(Transaction tx, long pageId) throws IOException {
+        Page<byte[]> page = tx.load(pageId, bytesMarshaller);
+        return (Message) wireFormat.unmarshal(new ByteSequence(page.get()));
+    }
+
+    /**
+     * @return the topic name up to the first wildcard path of the destination, all
+     *         topics matching the destination start with it
+     */
+    static String getLiteralPrefix(ActiveMQDestination destination) {
+        StringBuilder prefix = new StringBuilder();
+        for (String path : DestinationPath.getDestinationPaths(destination)) {
+            if (path.equals(DestinationFilter.ANY_CHILD) || path.equals(DestinationFilter.ANY_DESCENDENT)) {
+                break;
+            }
+            if (prefix.length() > 0) {
+                prefix.append(ActiveMQDestination.PATH_SEPERATOR);
+            }
+            prefix.append(path);
+        }
+        return prefix.toString();
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (isStopping()) {
+                return;
+            }
+            synchronized (indexLock) {
+                pageFile.flush();
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to checkpoint the retained messages of {}", this, e);
+        }
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        if (directory == null) {
+            directory = new File(IOHelper.getDefaultDataDirectory(), "retained");
+        }
+        IOHelper.mkdirs(directory);
+        lockFile = new LockFile(new File(directory, "lock"), true);
+        lockFile.lock();
+
+        pageFile = new PageFile(directory, "retained");
+        pageFile.setPageCacheSize(indexCacheSize);
+        pageFile.load();
+        pageFile.tx().execute(new Transaction.Closure<IOException>() {
+            @Override
+            public void execute(Transaction tx) throws IOException {
+                if (pageFile.getPageCount() == 0) {
+                    Page<MetaData> page = tx.allocate();
+                    assert page.getPageId() == 0;
+                    page.set(metaData);
+                    metaData.page = page;
+                    metaData.retained = new BTreeIndex<String, Long>(pageFile, tx.allocate().getPageId());
+                    tx.store(metaData.page, metaDataMarshaller, true);
+                } else {
+                    Page<MetaData> page = tx.load(0, metaDataMarshaller);
+                    metaData = page.get();
+                    metaData.page = page;
+                }
+                metaData.retained.setKeyMarshaller(StringMarshaller.INSTANCE);
+                metaData.retained.setValueMarshaller(LongMarshaller.INSTANCE);
+                metaData.retained.load(tx);
+            }
+        });
+        pageFile.flush();
+
+        if (checkpointInterval > 0) {
+            if (scheduler == null) {
+                scheduler = new Scheduler(RetainedMessageStoreImpl.class.getSimpleName());
+                scheduler.start();
+            }
+            scheduler.executePeriodically(this, checkpointInterval);
+        }
+        LOG.info("{} started with {} retained messages", this, metaData.size);
+    }
+
+    @Override
+    protected void doStop(ServiceStopper stopper) throws Exception {
+        if (scheduler != null) {
+            scheduler.cancel(this);
+            if (RetainedMessageStoreImpl.class.getSimpleName().equals(scheduler.getName())) {
+                scheduler.stop();
+            }
+            scheduler = null;
+        }
+        synchronized (indexLock) {
+            if (pageFile != null) {
+                pageFile.unload();
+                pageFile = null;
+            }
+        }
+        if (lockFile != null) {
+            lockFile.unlock();
+            lockFile = null;
+        }
+        LOG.info("{} stopped", this);
+    }
+
+    @Override
+    public String toString() {
+        return "RetainedMessageStore:" + directory;
+    }
+}
@@ -20,6 +20,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -34,6 +35,7 @@ import org.apache.activemq.broker.scheduler.Job;
 import org.apache.activemq.broker.scheduler.JobListener;
 import org.apache.activemq.broker.scheduler.JobScheduler;
 import org.apache.activemq.protobuf.Buffer;
+import org.apache.activemq.store.kahadb.JournalCommand;
 import org.apache.activemq.store.kahadb.data.KahaAddScheduledJobCommand;
 import org.apache.activemq.store.kahadb.data.KahaRemoveScheduledJobCommand;
 import org.apache.activemq.store.kahadb.data.KahaRemoveScheduledJobsCommand;
@@ -42,6 +44,7 @@ import org.apache.activemq.store.kahadb.disk.index.BTreeIndex;
 import org.apache.activemq.store.kahadb.disk.journal.Location;
 import org.apache.activemq.store.kahadb.disk.page.Transaction;
 import org.apache.activemq.store.kahadb.disk.util.LongMarshaller;
+import org.apache.activemq.store.kahadb.disk.util.StringMarshaller;
 import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.IdGenerator;
 import org.apache.activemq.util.ServiceStopper;
@@ -56,6 +59,7 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
     private final AtomicBoolean running = new AtomicBoolean();
     private String name;
     private BTreeIndex<Long, List<JobLocation>> index;
+    private BTreeIndex<String, Long> jobIdIndex;
     private Thread thread;
     private final AtomicBoolean started = new AtomicBoolean(false);
     private final List<JobListener> jobListeners = new CopyOnWriteArrayList<>();
@@ -110,6 +114,16 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
         doRemove(-1, jobId);
     }
 
+    @Override
+    public void remove(final Collection<String> jobIds) throws IOException {
+        // Only the last remove needs to wait on the journal sync, the ones before it
+        // are made durable by that same write.
+        int remaining = jobIds.size();
+        for (String jobId : jobIds) {
+            doRemove(-1, jobId, --remaining == 0);
+        }
+    }
+
     @Override
     public void removeAllJobs() throws IOException {
         doRemoveRange(0, Long.MAX_VALUE);
@@ -252,42 +266,57 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
         this.store.store(newJob);
     }
 
-    private void doReschedule(List<Closure> toReschedule) throws IOException {
-        for (Closure closure : toReschedule) {
-            closure.run();
+    /**
+     * Runs the updates collected while firing jobs.  Only the last one waits on the journal
+     * sync, the ones before it are made durable by that same write, so a large batch of due
+     * jobs doesn't pay for a disk sync per job.
+     */
+    private void doUpdates(final List<Closure> updates) throws IOException {
+        for (int i = 0; i < updates.size(); i++) {
+            updates.get(i).run(i == updates.size() - 1);
         }
     }
 
-    private void doReschedule(final String jobId, long executionTime, long nextExecutionTime, int rescheduledCount) throws IOException {
+    private void doReschedule(final String jobId, long executionTime, long nextExecutionTime, int rescheduledCount, boolean sync) throws IOException {
         KahaRescheduleJobCommand update = new KahaRescheduleJobCommand();
         update.setScheduler(name);
         update.setJobId(jobId);
         update.setExecutionTime(executionTime);
         update.setNextExecutionTime(nextExecutionTime);
         update.setRescheduledCount(rescheduledCount);
-        this.store.store(update);
+        store(update, sync);
     }
 
-    private void doRemove(final List<Closure> toRemove) throws IOException {
-        for (Closure closure : toRemove) {
-            closure.run();
-        }
+    private void doRemove(long executionTime, final String jobId) throws IOException {
+        doRemove(executionTime, jobId, true);
     }
 
-    private void doRemove(long executionTime, final String jobId) throws IOException {
+    private void doRemove(long executionTime, final String jobId, boolean sync) throws IOException {
         KahaRemoveScheduledJobCommand remove = new KahaRemoveScheduledJobCommand();
         remove.setScheduler(name);
         remove.setJobId(jobId);
         remove.setNextExecutionTime(executionTime);
-        this.store.store(remove);
+        store(remove, sync);
     }
 
     private void doRemoveRange(long start, long end) throws IOException {
+        doRemoveRange(start, end, true);
+    }
+
+    private void doRemoveRange(long start, long end, boolean sync) throws IOException {
         KahaRemoveScheduledJobsCommand destroy = new KahaRemoveScheduledJobsCommand();
         destroy.setScheduler(name);
         destroy.setStartTime(start);
         destroy.setEndTime(end);
-        this.store.store(destroy);
+        store(destroy, sync);
+    }
+
+    private void store(JournalCommand<?> command, boolean sync) throws IOException {
+        if (sync) {
+            this.store.store(command);
+        } else {
+            this.store.store(command, false);
+        }
     }
 
     /**
@@ -335,6 +364,7 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
             // Reference the log file where the add command is stored to prevent GC.
             this.store.incrementJournalCount(tx, location);
             this.index.put(tx, nextExecutionTime, values);
+            this.jobIdIndex.put(tx, jobLocation.getJobId(), nextExecutionTime);
             this.scheduleTime.newJob();
         } else {
             this.index.put(tx, nextExecutionTime, values);
@@ -413,6 +443,7 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
             }
 
             this.index.put(tx, command.getNextExecutionTime(), target);
+            this.jobIdIndex.put(tx, result.getJobId(), command.getNextExecutionTime());
             this.scheduleTime.newJob();
         } else {
             LOG.debug("Process reschedule command for non-scheduled job {} at executime time {}.",
@@ -424,7 +455,7 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
      * Removes a scheduled job from the scheduler.
      *
      * The remove operation can be of two forms.  The first is that there is a job Id but no set time
-     * (-1) in which case the jobs index is searched until the target job Id is located.  The alternate
+     * (-1) in which case the execution time is looked up in the job Id index.  The alternate
      * form is that a job Id and execution time are both set in which case the given time is checked
      * for a job matching that Id.  In either case once an execution time is identified the job is
      * removed and the index updated.
@@ -452,19 +483,10 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
         List<JobLocation> values = null;
 
         if (executionTime == -1) {
-            for (Iterator<Map.Entry<Long, List<JobLocation>>> i = this.index.iterator(tx); i.hasNext();) {
-                Map.Entry<Long, List<JobLocation>> entry = i.next();
-                List<JobLocation> candidates = entry.getValue();
-                if (candidates != null) {
-                    for (JobLocation jl : candidates) {
-                        if (jl.getJobId().equals(command.getJobId())) {
-                            LOG.trace("Entry {} contains the remove target: {}", entry.getKey(), command.getJobId());
-                            executionTime = entry.getKey();
-                            values = this.index.remove(tx, executionTime);
-                            break;
-                        }
-                    }
-                }
+            executionTime = this.jobIdIndex.get(tx, command.getJobId());
+            if (executionTime != null) {
+                LOG.trace("Entry {} contains the remove target: {}", executionTime, command.getJobId());
+                values = this.index.remove(tx, executionTime);
             }
         } else {
             values = this.index.remove(tx, executionTime);
@@ -489,6 +511,7 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
 
         if (removed != null) {
             LOG.trace("{} removed from scheduler {}", removed, this);
+            removeJobId(tx, removed.getJobId(), executionTime);
 
             // Remove the references for add and reschedule commands for this job
             // so that those logs can be GC'd when free.
@@ -562,6 +585,11 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
      * @throws IOException if an error occurs during the remove operation.
      */
     protected void removeInRange(Transaction tx, long start, long finish, Location location) throws IOException {
+        boolean removingAll = start <= 0 && finish == Long.MAX_VALUE;
+        if (removingAll) {
+            this.jobIdIndex.clear(tx);
+        }
+
         List<Long> keys = new ArrayList<>();
         for (Iterator<Map.Entry<Long, List<JobLocation>>> i = this.index.iterator(tx, start); i.hasNext();) {
             Map.Entry<Long, List<JobLocation>> entry = i.next();
@@ -577,6 +605,11 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
 
         for (Long executionTime : keys) {
             List<JobLocation> values = this.index.remove(tx, executionTime);
+            if (!removingAll) {
+                for (JobLocation job : values) {
+                    removeJobId(tx, job.getJobId(), executionTime);
+                }
+            }
             if (location != null) {
                 for (JobLocation job : values) {
                     LOG.trace("Removing {} scheduled at: {}", job, executionTime);
@@ -642,6 +675,7 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
                 if (job.getLastUpdate() != null) {
                     this.store.decrementJournalCount(tx, job.getLastUpdate());
                 }
+                removeJobId(tx, jobId, executionTime);
                 result = true;
                 break;
             }
@@ -653,6 +687,20 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
         return result;
     }
 
+    /**
+     * Drops the job Id index entry for a job that has been removed from the given execution
+     * time.  The entry is left alone if it points at some other time, which can only happen
+     * when the same job Id was scheduled more than once.
+     *
+     * This method must be called under index lock.
+     */
+    private void removeJobId(Transaction tx, String jobId, long executionTime) throws IOException {
+        Long indexed = this.jobIdIndex.remove(tx, jobId);
+        if (indexed != null && indexed != executionTime) {
+            this.jobIdIndex.put(tx, jobId, indexed);
+        }
+    }
+
     /**
      * Walks the Scheduled Job Tree and collects the add location and last update location
      * for all scheduled jobs.
@@ -727,6 +775,7 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
                 // needed before firing the job event.
                 List<Closure> toRemove = new ArrayList<>();
                 List<Closure> toReschedule = new ArrayList<>();
+                boolean rescheduledToCurrentTime = false;
                 try {
                     this.store.readLockIndex();
 
@@ -739,6 +788,7 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
                             long nextExecutionTime = 0;
 
                             if (executionTime <= currentTime) {
+                                List<Closure> removals = new ArrayList<>();
                                 for (final JobLocation job : list) {
 
                                     if (!running.get()) {
@@ -755,9 +805,10 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
                                             // Reschedule for the next time, the scheduler will take care of
                                             // updating the repeat counter on the update.
                                             final long finalNextExecutionTime = nextExecutionTime;
-                                            toReschedule.add(() -> doReschedule(job.getJobId(), executionTime, finalNextExecutionTime, job.getRescheduledCount() + 1));
+                                            toReschedule.add((sync) -> doReschedule(job.getJobId(), executionTime, finalNextExecutionTime, job.getRescheduledCount() + 1, sync));
+                                            rescheduledToCurrentTime |= finalNextExecutionTime == currentTime;
                                         } else {
-                                            toRemove.add(() -> doRemove(executionTime, job.getJobId()));
+                                            removals.add((sync) -> doRemove(executionTime, job.getJobId(), sync));
                                         }
                                     } else {
                                         if (repeat == 0) {
@@ -770,24 +821,36 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
                                             // a repeat then it will be stored separately and fired as a normal
                                             // event with decrementing repeat.
                                             final long finalNextExecutionTime = nextExecutionTime;
-                                            toReschedule.add(() -> doReschedule(job.getJobId(), executionTime, finalNextExecutionTime, job.getRescheduledCount() + 1));
+                                            toReschedule.add((sync) -> doReschedule(job.getJobId(), executionTime, finalNextExecutionTime, job.getRescheduledCount() + 1, sync));
 
                                             if (repeat != 0) {
                                                 // we have a separate schedule to run at this time
                                                 // so the cron job is used to set of a separate schedule
                                                 // hence we won't fire the original cron job to the
                                                 // listeners but we do need to start a separate schedule
+                                                // the new job is stored once the index read lock is released
                                                 String jobId = ID_GENERATOR.generateId();
                                                 ByteSequence payload = getPayload(job.getLocation());
-                                                schedule(jobId, payload, "", job.getDelay(), job.getPeriod(), job.getRepeat());
+                                                toReschedule.add((sync) -> schedule(jobId, payload, "", job.getDelay(), job.getPeriod(), job.getRepeat()));
                                                 waitTime = job.getDelay() != 0 ? job.getDelay() : job.getPeriod();
                                                 this.scheduleTime.setWaitTime(waitTime);
                                             }
                                         } else {
-                                            toRemove.add(() -> doRemove(executionTime, job.getJobId()));
+                                            removals.add((sync) -> doRemove(executionTime, job.getJobId(), sync));
                                         }
                                     }
                                 }
+
+                                // When every job at this time fired and none was rescheduled the whole
+                                // time slot goes in one command instead of one remove per job.  New jobs
+                                // are always scheduled after the current time, only a repeating job with
+                                // no period is rescheduled to it, and the range would remove that as well.
+                                if (removals.size() == list.size() && removals.size() > 1 &&
+                                    (executionTime < currentTime || !rescheduledToCurrentTime)) {
+                                    toRemove.add((sync) -> doRemoveRange(executionTime, executionTime, sync));
+                                } else {
+                                    toRemove.addAll(removals);
+                                }
                             } else {
                                 this.scheduleTime.setWaitTime(executionTime - currentTime);
                                 break;
@@ -797,11 +860,11 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
                 } finally {
                     this.store.readUnlockIndex();
 
-                    doReschedule(toReschedule);
-
-                    // now remove all jobs that have not been rescheduled,
+                    // reschedule repeating jobs and then remove all jobs that have not been rescheduled,
                     // if there are no more entries in that time it will be removed.
-                    doRemove(toRemove);
+                    List<Closure> updates = toReschedule;
+                    updates.addAll(toRemove);
+                    doUpdates(updates);
                 }
 
                 this.scheduleTime.pause();
@@ -877,28 +940,61 @@ public class JobSchedulerImpl extends ServiceSupport implements Runnable, JobSch
 
     void createIndexes(Transaction tx) throws IOException {
         this.index = new BTreeIndex<>(this.store.getPageFile(), tx.allocate().getPageId());
+        this.jobIdIndex = new BTreeIndex<>(this.store.getPageFile(), tx.allocate().getPageId());
     }
 
     void load(Transaction tx) throws IOException {
         this.index.setKeyMarshaller(LongMarshaller.INSTANCE);
         this.index.setValueMarshaller(JobLocationsMarshaller.INSTANCE);
         this.index.load(tx);
+        if (this.jobIdIndex == null) {
+            createJobIdIndex(tx);
+        } else {
+            this.jobIdIndex.setKeyMarshaller(StringMarshaller.INSTANCE);
+            this.jobIdIndex.setValueMarshaller(LongMarshaller.INSTANCE);
+            this.jobIdIndex.load(tx);
+        }
     }
 
-    void read(DataInput in) throws IOException {
+    /**
+     * Builds the job Id index for a scheduler read from a store version that predates it
+     * by walking the jobs currently scheduled.
+     */
+    private void createJobIdIndex(Transaction tx) throws IOException {
+        this.jobIdIndex = new BTreeIndex<>(this.store.getPageFile(), tx.allocate().getPageId());
+        this.jobIdIndex.setKeyMarshaller(StringMarshaller.INSTANCE);
+        this.jobIdIndex.setValueMarshaller(LongMarshaller.INSTANCE);
+        this.jobIdIndex.load(tx);
+
+        for (Iterator<Map.Entry<Long, List<JobLocation>>> i = this.index.iterator(tx); i.hasNext();) {
+            Map.Entry<Long, List<JobLocation>> entry = i.next();
+            for (JobLocation job : entry.getValue()) {
+                this.jobIdIndex.put(tx, job.getJobId(), entry.getKey());
+            }
+        }
+        LOG.info("Created job Id index for {}", this);
+    }
+
+    void read(DataInput in, int version) throws IOException {
         this.name = in.readUTF();
         this.index = new BTreeIndex<>(this.store.getPageFile(), in.readLong());
         this.index.setKeyMarshaller(LongMarshaller.INSTANCE);
         this.index.setValueMarshaller(JobLocationsMarshaller.INSTANCE);
+        if (version >= 2) {
+            this.jobIdIndex = new BTreeIndex<>(this.store.getPageFile(), in.readLong());
+            this.jobIdIndex.setKeyMarshaller(StringMarshaller.INSTANCE);
+            this.jobIdIndex.setValueMarshaller(LongMarshaller.INSTANCE);
+        }
     }
 
     public void write(DataOutput out) throws IOException {
         out.writeUTF(name);
         out.writeLong(this.index.getPageId());
+        out.writeLong(this.jobIdIndex.getPageId());
     }
 
     private interface Closure {
-        void run() throws IOException;
+        void run(boolean sync) throws IOException;
     }
 
     static class ScheduleTime {
@@ -153,6 +153,18 @@ public class JobSchedulerKahaDBMetaData extends AbstractKahaDBMetaData<JobSchedu
             entry.getValue().load(tx);
             schedulers.put(entry.getKey(), entry.getValue());
         }
+
+        // Schedulers from an older version had their missing indexes created on load.  The
+        // stored entries are dropped while still readable in the old format and then written
+        // back in the current one.
+        if (this.version < JobSchedulerStoreImpl.CURRENT_VERSION) {
+            LOG.info("Updating Scheduler Store from version {} to {}", this.version, JobSchedulerStoreImpl.CURRENT_VERSION);
+            this.storedSchedulers.clear(tx);
+            this.version = JobSchedulerStoreImpl.CURRENT_VERSION;
+            for (Entry<String, JobSchedulerImpl> entry : schedulers.entrySet()) {
+                this.storedSchedulers.put(tx, entry.getKey(), entry.getValue());
+            }
+        }
     }
 
     @Override
@@ -213,7 +225,7 @@ public class JobSchedulerKahaDBMetaData extends AbstractKahaDBMetaData<JobSchedu
         @Override
         public JobSchedulerImpl readPayload(DataInput dataIn) throws IOException {
             JobSchedulerImpl result = new JobSchedulerImpl(this.store);
-            result.read(dataIn);
+            result.read(dataIn, version);
             return result;
         }
 
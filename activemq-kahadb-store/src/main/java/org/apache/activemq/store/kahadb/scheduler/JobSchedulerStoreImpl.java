@@ -85,7 +85,7 @@ public class JobSchedulerStoreImpl extends AbstractKahaDBStore implements JobSch
      * The default scheduler store version.  All new store instance will be given this version and
      * earlier versions will be updated to this version.
      */
-    static final int CURRENT_VERSION = 1;
+    static final int CURRENT_VERSION = 2;
 
     @Override
     public JobScheduler getJobScheduler(final String name) throws Exception {
@@ -285,8 +285,12 @@ public class JobSchedulerStoreImpl extends AbstractKahaDBStore implements JobSch
                         metaData = page.get();
                         metaData.setPage(page);
                     }
+                    int version = metaData.getVersion();
                     metaData.load(tx);
                     metaData.loadScheduler(tx, schedulers);
+                    if (version != metaData.getVersion()) {
+                        tx.store(metaData.getPage(), metaDataMarshaller, true);
+                    }
                     for (JobSchedulerImpl js : schedulers.values()) {
                         try {
                             js.start();
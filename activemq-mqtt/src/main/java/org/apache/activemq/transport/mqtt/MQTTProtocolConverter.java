@@ -105,7 +105,7 @@ public class MQTTProtocolConverter {
 
     private final ConcurrentMap<Integer, ResponseHandler> resposeHandlers = new ConcurrentHashMap<Integer, ResponseHandler>();
     private final Map<String, ActiveMQDestination> activeMQDestinationMap = new LRUCache<String, ActiveMQDestination>(DEFAULT_CACHE_SIZE);
-    private final Map<ActiveMQDestination, String> mqttTopicMap = new LRUCache<ActiveMQDestination, String>(DEFAULT_CACHE_SIZE);
+    private final Map<ActiveMQDestination, UTF8Buffer> mqttTopicMap = new LRUCache<ActiveMQDestination, UTF8Buffer>(DEFAULT_CACHE_SIZE);
 
     private final Map<Short, MessageAck> consumerAcks = new LRUCache<Short, MessageAck>(DEFAULT_CACHE_SIZE);
     private final Map<Short, PUBREC> publisherRecs = new LRUCache<Short, PUBREC>(DEFAULT_CACHE_SIZE);
@@ -550,9 +550,14 @@ public class MQTTProtocolConverter {
         msg.setTimestamp(System.currentTimeMillis());
         msg.setPriority((byte) Message.DEFAULT_PRIORITY);
         msg.setPersistent(command.qos() != QoS.AT_MOST_ONCE);
-        msg.setIntProperty(QOS_PROPERTY_NAME, command.qos().ordinal());
-        if (command.retain()) {
-            msg.setBooleanProperty(RetainedMessageSubscriptionRecoveryPolicy.RETAIN_PROPERTY, true);
+        // set the properties directly, the JMS setters would open the body for writing
+        try {
+            msg.setProperty(QOS_PROPERTY_NAME, command.qos().ordinal());
+            if (command.retain()) {
+                msg.setProperty(RetainedMessageSubscriptionRecoveryPolicy.RETAIN_PROPERTY, true);
+            }
+        } catch (IOException e) {
+            throw JMSExceptionSupport.create(e);
         }
 
         ActiveMQDestination destination;
@@ -571,7 +576,13 @@ public class MQTTProtocolConverter {
         }
 
         msg.setJMSDestination(destination);
-        msg.writeBytes(command.payload().data, command.payload().offset, command.payload().length);
+        // each decoded frame has a buffer of its own, so the message can share the payload
+        Buffer payload = command.payload();
+        if (payload != null) {
+            msg.setContent(new ByteSequence(payload.data, payload.offset, payload.length));
+        } else {
+            msg.setContent(new ByteSequence(new byte[0]));
+        }
         return msg;
     }
 
@@ -591,7 +602,7 @@ public class MQTTProtocolConverter {
             result.retain(true);
         }
 
-        String topicName;
+        UTF8Buffer topicName;
         synchronized (mqttTopicMap) {
             ActiveMQDestination destination = message.getDestination();
             if (destination.isPattern() && message.getOriginalDestination() != null) {
@@ -600,13 +611,21 @@ public class MQTTProtocolConverter {
             topicName = mqttTopicMap.get(destination);
             if (topicName == null) {
                 String amqTopicName = findSubscriptionStrategy().onSend(destination);
-                topicName = MQTTProtocolSupport.convertActiveMQToMQTT(amqTopicName);
+                topicName = new UTF8Buffer(MQTTProtocolSupport.convertActiveMQToMQTT(amqTopicName));
                 mqttTopicMap.put(destination, topicName);
             }
         }
-        result.topicName(new UTF8Buffer(topicName));
+        result.topicName(topicName);
 
-        if (message.getDataStructureType() == ActiveMQTextMessage.DATA_STRUCTURE_TYPE) {
+        if (message.getDataStructureType() == ActiveMQBytesMessage.DATA_STRUCTURE_TYPE && !message.isCompressed()) {
+            // the content of a bytes message is the payload as published, send it as is
+            ByteSequence content = message.getContent();
+            if (content != null) {
+                result.payload(new Buffer(content.data, content.offset, content.length));
+            } else {
+                result.payload(new Buffer(new byte[0]));
+            }
+        } else if (message.getDataStructureType() == ActiveMQTextMessage.DATA_STRUCTURE_TYPE) {
             ActiveMQTextMessage msg = (ActiveMQTextMessage) message.copy();
             msg.setReadOnlyBody(true);
             String messageText = msg.getText();
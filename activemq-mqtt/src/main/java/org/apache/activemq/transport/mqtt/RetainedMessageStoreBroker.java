@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.mqtt;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.activemq.advisory.AdvisorySupport;
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerFilter;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.broker.ProducerBrokerExchange;
+import org.apache.activemq.broker.TransactionBroker;
+import org.apache.activemq.broker.region.AbstractSubscription;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.DestinationFilter;
+import org.apache.activemq.broker.region.PrefetchSubscription;
+import org.apache.activemq.broker.region.RegionBroker;
+import org.apache.activemq.broker.region.Subscription;
+import org.apache.activemq.broker.region.TopicRegion;
+import org.apache.activemq.broker.region.policy.RetainedMessageSubscriptionRecoveryPolicy;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ConsumerInfo;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.store.MessageRecoveryListener;
+import org.apache.activemq.store.RetainedMessageStore;
+import org.apache.activemq.transaction.Synchronization;
+import org.apache.activemq.transaction.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the retained messages of topics in a {@link RetainedMessageStore}.
+ *
+ * A message sent to a topic with the
+ * {@link RetainedMessageSubscriptionRecoveryPolicy#RETAIN_PROPERTY} replaces the
+ * retained message of the topic in the store, or clears it when its content is empty,
+ * and loses the property so the topic itself no longer retains it. Retroactive
+ * consumers of topics, as created for MQTT subscriptions, then recover the retained
+ * messages of the topics they match from the store. Durable subscriptions recover
+ * them when they are created, not each time they are reactivated.
+ */
+public class RetainedMessageStoreBroker extends BrokerFilter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RetainedMessageStoreBroker.class);
+
+    private final RetainedMessageStore store;
+
+    public RetainedMessageStoreBroker(Broker next, RetainedMessageStore store) {
+        super(next);
+        this.store = store;
+    }
+
+    public RetainedMessageStore getRetainedMessageStore() {
+        return store;
+    }
+
+    @Override
+    public void start() throws Exception {
+        store.start();
+        super.start();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        try {
+            super.stop();
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Override
+    public void send(ProducerBrokerExchange producerExchange, Message messageSend) throws Exception {
+        final ActiveMQDestination destination = messageSend.getDestination();
+        if (destination == null || !destination.isTopic() || !isRetain(messageSend)) {
+            super.send(producerExchange, messageSend);
+            return;
+        }
+
+        Message retained = null;
+        if (messageSend.getContent() != null && messageSend.getContent().getLength() > 0) {
+            retained = messageSend.copy();
+            retained.setTransactionId(null);
+            removeRetainProperty(retained);
+            retained.setProperty(RetainedMessageSubscriptionRecoveryPolicy.RETAINED_PROPERTY, true);
+        }
+        removeRetainProperty(messageSend);
+
+        super.send(producerExchange, messageSend);
+
+        final Message message = retained;
+        if (messageSend.getTransactionId() != null) {
+            TransactionBroker transactionBroker = (TransactionBroker) getAdaptor(TransactionBroker.class);
+            Transaction transaction = transactionBroker.getTransaction(producerExchange.getConnectionContext(), messageSend.getTransactionId(), false);
+            transaction.addSynchronization(new Synchronization() {
+                @Override
+                public void afterCommit() throws Exception {
+                    retain(destination, message);
+                }
+            });
+        } else {
+            retain(destination, message);
+        }
+    }
+
+    @Override
+    public Subscription addConsumer(ConnectionContext context, ConsumerInfo info) throws Exception {
+        ActiveMQDestination destination = info.getDestination();
+        boolean recover = info.isRetroactive() && !info.isBrowser() && destination != null && destination.isTopic() &&
+            !AdvisorySupport.isAdvisoryTopic(destination);
+        if (recover && info.isDurable()) {
+            // like the Topic, only a new durable subscription recovers retained messages, a
+            // reactivated one already received them
+            recover = !isExistingDurableSubscription(context, info);
+        }
+        Subscription subscription = super.addConsumer(context, info);
+        if (recover) {
+            recoverRetainedMessages(context, subscription);
+        }
+        return subscription;
+    }
+
+    /**
+     * Dispatches the retained messages of all topics matching a subscription to it.
+     * Only the topics the subscription was added to are recovered, the broker does not
+     * create a topic for a retained message.
+     *
+     * @param context the context of the subscription
+     * @param subscription a subscription to one or more topics
+     * @throws Exception
+     */
+    public void recoverRetainedMessages(final ConnectionContext context, final Subscription subscription) throws Exception {
+        if (!(subscription instanceof AbstractSubscription)) {
+            return;
+        }
+
+        // the subscription is added to the existing topics it matches, if it is authorized to
+        final Map<ActiveMQDestination, Destination> topics = new HashMap<>();
+        for (Destination topic : ((AbstractSubscription) subscription).getDestinations()) {
+            while (topic instanceof DestinationFilter) {
+                topic = ((DestinationFilter) topic).getNext();
+            }
+            topics.put(topic.getActiveMQDestination(), topic);
+        }
+        if (topics.isEmpty()) {
+            return;
+        }
+
+        store.recover(subscription.getActiveMQDestination(), new MessageRecoveryListener() {
+            @Override
+            public boolean recoverMessage(Message message) throws Exception {
+                Destination topic = topics.get(message.getDestination());
+                if (topic != null) {
+                    message.setRegionDestination(topic);
+                    subscription.addRecoveredMessage(context, message);
+                }
+                return !context.getStopping().get();
+            }
+
+            @Override
+            public boolean recoverMessageReference(MessageId messageReference) throws Exception {
+                return true;
+            }
+
+            @Override
+            public boolean hasSpace() {
+                return true;
+            }
+
+            @Override
+            public boolean isDuplicate(MessageId ref) {
+                return false;
+            }
+        });
+        if (subscription instanceof PrefetchSubscription) {
+            ((PrefetchSubscription) subscription).dispatchPending();
+        }
+    }
+
+    private void retain(ActiveMQDestination destination, Message message) throws IOException {
+        LOG.trace("{} retained message of {}", message != null ? "Replacing" : "Clearing", destination);
+        store.setRetainedMessage(destination, message);
+    }
+
+    private boolean isExistingDurableSubscription(ConnectionContext context, ConsumerInfo info) {
+        RegionBroker regionBroker = (RegionBroker) getAdaptor(RegionBroker.class);
+        if (regionBroker == null || !(regionBroker.getTopicRegion() instanceof TopicRegion)) {
+            return false;
+        }
+        TopicRegion topicRegion = (TopicRegion) regionBroker.getTopicRegion();
+        return topicRegion.lookupSubscription(info.getSubscriptionName(), context.getClientId()) != null;
+    }
+
+    private static void removeRetainProperty(Message message) throws IOException {
+        message.removeProperty(RetainedMessageSubscriptionRecoveryPolicy.RETAIN_PROPERTY);
+        // drop the marshalled form so the message is not stored or dispatched with the property
+        message.setMarshalledProperties(null);
+    }
+
+    private static boolean isRetain(Message message) throws IOException {
+        Object retainValue = message.getProperty(RetainedMessageSubscriptionRecoveryPolicy.RETAIN_PROPERTY);
+        return retainValue != null && Boolean.parseBoolean(retainValue.toString());
+    }
+}
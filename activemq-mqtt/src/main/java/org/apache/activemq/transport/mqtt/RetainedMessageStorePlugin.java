@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.mqtt;
+
+import java.io.File;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.BrokerServiceAware;
+import org.apache.activemq.store.RetainedMessageStore;
+
+/**
+ * A broker plugin that keeps the retained messages of topics in a
+ * {@link RetainedMessageStore} instead of in memory, so that they survive a restart
+ * of the broker and a wildcard subscription recovers them from the store rather
+ * than from every matching topic.
+ *
+ * Unless a store is configured the KahaDB based store is used, kept in the
+ * <code>retained</code> directory of the broker data directory.
+ *
+ * @org.apache.xbean.XBean element="retainedMessageStorePlugin"
+ */
+public class RetainedMessageStorePlugin implements BrokerPlugin {
+
+    static final String DEFAULT_STORE_CLASS = "org.apache.activemq.store.kahadb.retained.RetainedMessageStoreImpl";
+
+    private RetainedMessageStore retainedMessageStore;
+    private File directory;
+
+    @Override
+    public Broker installPlugin(Broker broker) throws Exception {
+        RetainedMessageStore store = retainedMessageStore;
+        if (store == null) {
+            try {
+                store = (RetainedMessageStore) getClass().getClassLoader().loadClass(DEFAULT_STORE_CLASS).getDeclaredConstructor().newInstance();
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Kahadb class RetainedMessageStoreImpl not found. Add activemq-kahadb jar or configure a retainedMessageStore.", e);
+            }
+        }
+        if (store.getDirectory() == null) {
+            store.setDirectory(directory != null ? directory : new File(broker.getBrokerService().getBrokerDataDirectory(), "retained"));
+        }
+        if (store instanceof BrokerServiceAware) {
+            ((BrokerServiceAware) store).setBrokerService(broker.getBrokerService());
+        }
+        return new RetainedMessageStoreBroker(broker, store);
+    }
+
+    public RetainedMessageStore getRetainedMessageStore() {
+        return retainedMessageStore;
+    }
+
+    public void setRetainedMessageStore(RetainedMessageStore retainedMessageStore) {
+        this.retainedMessageStore = retainedMessageStore;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param directory the directory of the default store, ignored if a store with
+     *        its own directory is configured
+     */
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+}
@@ -48,6 +48,7 @@ import org.apache.activemq.transport.mqtt.MQTTProtocolException;
 import org.apache.activemq.transport.mqtt.MQTTProtocolSupport;
 import org.apache.activemq.transport.mqtt.MQTTSubscription;
 import org.apache.activemq.transport.mqtt.ResponseHandler;
+import org.apache.activemq.transport.mqtt.RetainedMessageStoreBroker;
 import org.apache.activemq.util.LongSequenceGenerator;
 import org.fusesource.mqtt.client.QoS;
 import org.fusesource.mqtt.client.Topic;
@@ -146,6 +147,23 @@ public abstract class AbstractMQTTSubscriptionStrategy implements MQTTSubscripti
         }
         final ConnectionContext connectionContext = regionBroker.getConnectionContext(connectionInfoClientId);
 
+        // retained messages kept in a store are recovered from it for all matching Topics at once
+        final RetainedMessageStoreBroker retainedMessageStoreBroker;
+        try {
+            retainedMessageStoreBroker = (RetainedMessageStoreBroker) brokerService.getBroker().getAdaptor(RetainedMessageStoreBroker.class);
+        } catch (Exception e) {
+            throw new MQTTProtocolException("Error subscribing to " + topicName + ": " + e.getMessage(), false, e);
+        }
+        final Subscription topicSubscription = topicRegion.getSubscriptions().get(consumerId);
+        if (retainedMessageStoreBroker != null && topicSubscription != null) {
+            try {
+                retainedMessageStoreBroker.recoverRetainedMessages(connectionContext, topicSubscription);
+            } catch (Exception e) {
+                throw new MQTTProtocolException("Error recovering retained messages for " + topicName + ": " + e.getMessage(), false, e);
+            }
+            return;
+        }
+
         // get all matching Topics
         final Set<org.apache.activemq.broker.region.Destination> matchingDestinations =
             topicRegion.getDestinations(mqttSubscription.getDestination());
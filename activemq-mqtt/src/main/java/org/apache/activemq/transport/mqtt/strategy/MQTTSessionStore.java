@@ -0,0 +1,1048 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.mqtt.strategy;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.activemq.advisory.AdvisorySupport;
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerFilter;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.broker.ConsumerBrokerExchange;
+import org.apache.activemq.broker.ProducerBrokerExchange;
+import org.apache.activemq.broker.TransactionBroker;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.command.ConnectionId;
+import org.apache.activemq.command.ConnectionInfo;
+import org.apache.activemq.command.ConsumerId;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageDispatch;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.apache.activemq.command.SessionId;
+import org.apache.activemq.filter.DestinationMap;
+import org.apache.activemq.store.MessageRecoveryListener;
+import org.apache.activemq.store.MessageStore;
+import org.apache.activemq.store.PersistenceAdapter;
+import org.apache.activemq.store.memory.MemoryPersistenceAdapter;
+import org.apache.activemq.transaction.Synchronization;
+import org.apache.activemq.transaction.Transaction;
+import org.apache.activemq.transport.mqtt.MQTTProtocolSupport;
+import org.apache.activemq.usage.MemoryUsage;
+import org.apache.activemq.util.BrokerSupport;
+import org.fusesource.mqtt.client.QoS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the state of MQTT sessions with clean session false in one structure shared
+ * by the whole broker, as used by the {@link MQTTSessionSubscriptionStrategy}.
+ *
+ * While a client is connected its subscriptions are ordinary topic subscriptions.
+ * Once it disconnects the store indexes the topic filters of its session in a
+ * {@link DestinationMap}, so an offline session costs no subscription, cursor or
+ * MBean. A message sent to a topic matching offline sessions is stored once, off
+ * the send path of the producer, and each of the sessions keeps a small reference
+ * to it. Messages dispatched to a connected session but not yet acknowledged are
+ * kept again when the client disconnects, ahead of the rest of its backlog.
+ *
+ * The sessions, the kept messages and the references are kept in a
+ * {@link PersistenceAdapter} of their own, so they survive a restart of the broker
+ * when it is a persistent one. They are read back, and delivered to a reconnecting
+ * client, maxPageSize messages at a time. The memory taken by the sessions, and by
+ * the kept messages when they are kept in memory, is charged to the memory usage of
+ * the broker. Sessions that stay offline longer than the offline session timeout
+ * are removed.
+ */
+public class MQTTSessionStore extends BrokerFilter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MQTTSessionStore.class);
+
+    static final String SESSIONS_QUEUE = "ActiveMQ.MQTT.Sessions";
+    static final String MESSAGES_QUEUE = "ActiveMQ.MQTT.Session.Messages";
+    static final String REFERENCES_QUEUE = "ActiveMQ.MQTT.Session.References";
+    static final String CLIENT_ID_PROPERTY = "ActiveMQ.MQTT.ClientId";
+    static final String SUBSCRIPTIONS_PROPERTY = "ActiveMQ.MQTT.Subscriptions";
+    static final String OFFLINE_SINCE_PROPERTY = "ActiveMQ.MQTT.OfflineSince";
+    static final String TOPIC_NAME_PROPERTY = "ActiveMQ.MQTT.TopicName";
+    static final String MESSAGE_ID_PROPERTY = "ActiveMQ.MQTT.MessageId";
+    static final String KEPT_MESSAGE_PROPERTY = "ActiveMQ.MQTT.KeptMessage";
+
+    // rough heap cost of a session without its topic filters
+    private static final int SESSION_MEMORY_SIZE = 512;
+
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+    private final ConcurrentMap<ConnectionId, Session> sessionsByConnection = new ConcurrentHashMap<ConnectionId, Session>();
+    private final ConcurrentMap<ConsumerId, Session> sessionsByConsumer = new ConcurrentHashMap<ConsumerId, Session>();
+    private final DestinationMap offlineSessions = new DestinationMap();
+    private final PersistenceAdapter persistenceAdapter;
+    // the same for every start, so the stored ids follow each other across restarts
+    private final ProducerId producerId = new ProducerId(new SessionId(new ConnectionId(SESSIONS_QUEUE), 0), 0);
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong keptMemory = new AtomicLong();
+    private final Runnable expireTask = new Runnable() {
+        @Override
+        public void run() {
+            expireSessions();
+        }
+    };
+
+    private MessageStore sessionRecords;
+    private MessageStore keptMessages;
+    private MessageStore references;
+    private ExecutorService fanOutExecutor;
+    private MemoryUsage memoryUsage;
+    private boolean backlogsInMemory;
+    private volatile boolean memoryFullWarned;
+    private long offlineSessionTimeout = -1;
+    private long offlineSessionTaskSchedule = 300000;
+    private int maxPageSize = 200;
+
+    public MQTTSessionStore(Broker next, PersistenceAdapter persistenceAdapter) {
+        super(next);
+        this.persistenceAdapter = persistenceAdapter;
+    }
+
+    /**
+     * A message to deliver to a session, either to the subscription with the given
+     * topic name or, when there is none, to the matching subscription with the highest QoS.
+     */
+    static final class Delivery {
+
+        private final Message message;
+        private final String topicName;
+
+        Delivery(Message message, String topicName) {
+            this.message = message;
+            this.topicName = topicName;
+        }
+
+        Message getMessage() {
+            return message;
+        }
+
+        String getTopicName() {
+            return topicName;
+        }
+    }
+
+    /**
+     * A message stored once for all the sessions that keep it.
+     */
+    private static final class KeptMessage {
+
+        private final long sequence;
+        private final int size;
+        private int references;
+
+        KeptMessage(long sequence, int size) {
+            this.sequence = sequence;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The reference of one session to a kept message.
+     */
+    private static final class Reference {
+
+        private final long sequence;
+        private final KeptMessage message;
+        private final String topicName;
+
+        Reference(long sequence, KeptMessage message, String topicName) {
+            this.sequence = sequence;
+            this.message = message;
+            this.topicName = topicName;
+        }
+    }
+
+    /**
+     * The state of one MQTT session.
+     */
+    static final class Session {
+
+        private final String clientId;
+        private final Map<String, QoS> subscriptions = new LinkedHashMap<String, QoS>();
+        private final Map<String, ActiveMQDestination> destinations = new LinkedHashMap<String, ActiveMQDestination>();
+        private final Map<String, Delivery> inFlight = new LinkedHashMap<String, Delivery>();
+        private final Map<ConsumerId, String> consumers = new HashMap<ConsumerId, String>();
+        // messages that were in flight when a previous connection closed
+        private final ArrayDeque<Reference> redeliveries = new ArrayDeque<Reference>();
+        private final ArrayDeque<Reference> backlog = new ArrayDeque<Reference>();
+        // messages dispatched to and kept for the session while its connection closes
+        private final Set<MessageId> dispatchedWhileClosing = new HashSet<MessageId>();
+        private final Map<MessageId, Reference> keptWhileClosing = new HashMap<MessageId, Reference>();
+        private long sessionMemory;
+        private MessageId recordId;
+        private ConnectionId connectionId;
+        private boolean online;
+        private boolean closing;
+        private boolean removed;
+        private long offlineSince;
+
+        Session(String clientId) {
+            this.clientId = clientId;
+        }
+
+        String getClientId() {
+            return clientId;
+        }
+
+        synchronized Map<String, QoS> getSubscriptions() {
+            return new LinkedHashMap<String, QoS>(subscriptions);
+        }
+
+        synchronized int getBacklogSize() {
+            return redeliveries.size() + backlog.size();
+        }
+
+        synchronized boolean isOnline() {
+            return online;
+        }
+
+        private synchronized void dispatched(ConsumerId consumerId, Message message) {
+            String topicName = consumers.get(consumerId);
+            if (topicName != null) {
+                inFlight.put(topicName + ':' + message.getMessageId(), new Delivery(message, topicName));
+                if (closing) {
+                    dispatchedWhileClosing.add(message.getMessageId());
+                }
+            }
+        }
+
+        private synchronized void acknowledged(ConsumerId consumerId, MessageId messageId) {
+            String topicName = consumers.get(consumerId);
+            if (topicName != null) {
+                inFlight.remove(topicName + ':' + messageId);
+            }
+        }
+
+        private long getMemorySize() {
+            long size = SESSION_MEMORY_SIZE + clientId.length() * 2;
+            for (String topicName : subscriptions.keySet()) {
+                size += topicName.length() * 4;
+            }
+            return size;
+        }
+    }
+
+    //----- Lifecycle -------------------------------------------------------//
+
+    @Override
+    public void start() throws Exception {
+        memoryUsage = getBrokerService().getSystemUsage().getMemoryUsage();
+        backlogsInMemory = persistenceAdapter instanceof MemoryPersistenceAdapter;
+        persistenceAdapter.setBrokerName(getBrokerName());
+        if (getBrokerService().isDeleteAllMessagesOnStartup()) {
+            persistenceAdapter.deleteAllMessages();
+        }
+        persistenceAdapter.start();
+        sessionRecords = createStore(SESSIONS_QUEUE);
+        keptMessages = createStore(MESSAGES_QUEUE);
+        references = createStore(REFERENCES_QUEUE);
+        loadSessions();
+
+        fanOutExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ActiveMQ MQTT Session Store");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (offlineSessionTimeout > 0 && offlineSessionTaskSchedule > 0) {
+            getBrokerService().getScheduler().executePeriodically(expireTask, offlineSessionTaskSchedule);
+        }
+        super.start();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        try {
+            super.stop();
+        } finally {
+            getBrokerService().getScheduler().cancel(expireTask);
+            if (fanOutExecutor != null) {
+                fanOutExecutor.shutdown();
+                if (!fanOutExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                    LOG.warn("Messages sent before the stop of the broker were not all kept for the offline MQTT sessions");
+                    fanOutExecutor.shutdownNow();
+                }
+            }
+            for (Session session : sessions.values()) {
+                releaseMemory(session);
+            }
+            memoryUsage.decreaseUsage(keptMemory.getAndSet(0));
+            persistenceAdapter.stop();
+        }
+    }
+
+    /**
+     * Reads the sessions, the kept messages and the references back from the store,
+     * a page at a time, and drops references and messages nothing points to anymore.
+     */
+    private void loadSessions() throws Exception {
+        final ConnectionContext context = BrokerSupport.getConnectionContext(this);
+
+        final List<MessageId> discarded = new ArrayList<MessageId>();
+        recoverPaged(sessionRecords, new PagedRecoveryListener() {
+            @Override
+            void recovered(Message record) throws Exception {
+                String clientId = (String) record.getProperty(CLIENT_ID_PROPERTY);
+                @SuppressWarnings("unchecked")
+                Map<String, Object> subscriptions = (Map<String, Object>) record.getProperty(SUBSCRIPTIONS_PROPERTY);
+                Long offlineSince = (Long) record.getProperty(OFFLINE_SINCE_PROPERTY);
+                if (clientId == null || sessions.containsKey(clientId)) {
+                    discarded.add(record.getMessageId());
+                    return;
+                }
+
+                Session session = new Session(clientId);
+                session.recordId = record.getMessageId();
+                session.offlineSince = offlineSince != null && offlineSince > 0 ? offlineSince : System.currentTimeMillis();
+                if (subscriptions != null) {
+                    for (Map.Entry<String, Object> subscription : subscriptions.entrySet()) {
+                        String topicName = subscription.getKey();
+                        session.subscriptions.put(topicName, QoS.values()[((Number) subscription.getValue()).intValue()]);
+                        session.destinations.put(topicName, new ActiveMQTopic(MQTTProtocolSupport.convertMQTTToActiveMQ(topicName)));
+                    }
+                }
+                for (ActiveMQDestination destination : session.destinations.values()) {
+                    offlineSessions.put(destination, session);
+                }
+                sessions.put(clientId, session);
+                chargeMemory(session);
+            }
+        });
+        for (MessageId messageId : discarded) {
+            sessionRecords.removeMessage(context, createAck(sessionRecords, messageId));
+        }
+        discarded.clear();
+
+        final Map<Long, KeptMessage> messages = new HashMap<Long, KeptMessage>();
+        recoverPaged(keptMessages, new PagedRecoveryListener() {
+            @Override
+            void recovered(Message message) throws Exception {
+                long id = message.getMessageId().getProducerSequenceId();
+                messages.put(id, new KeptMessage(id, message.getSize()));
+            }
+        });
+
+        recoverPaged(references, new PagedRecoveryListener() {
+            @Override
+            void recovered(Message record) throws Exception {
+                Session session = sessions.get((String) record.getProperty(CLIENT_ID_PROPERTY));
+                Long keptMessage = (Long) record.getProperty(KEPT_MESSAGE_PROPERTY);
+                KeptMessage message = keptMessage != null ? messages.get(keptMessage) : null;
+                if (session == null || message == null) {
+                    discarded.add(record.getMessageId());
+                    return;
+                }
+                String topicName = (String) record.getProperty(TOPIC_NAME_PROPERTY);
+                Reference reference = new Reference(record.getMessageId().getProducerSequenceId(), message, topicName);
+                (topicName != null ? session.redeliveries : session.backlog).add(reference);
+                message.references++;
+            }
+        });
+        for (MessageId messageId : discarded) {
+            references.removeMessage(context, createAck(references, messageId));
+        }
+
+        for (KeptMessage message : messages.values()) {
+            if (message.references == 0) {
+                keptMessages.removeMessage(context, createAck(keptMessages, getMessageId(message.sequence)));
+            } else if (backlogsInMemory) {
+                keptMemory.addAndGet(message.size);
+                memoryUsage.increaseUsage(message.size);
+            }
+        }
+        LOG.debug("Loaded {} MQTT sessions keeping {} messages", sessions.size(), messages.size());
+    }
+
+    //----- Session management used by the subscription strategy -------------//
+
+    /**
+     * Returns the session of a client, creating it if the client has none yet, and
+     * assigns it to the given connection. The session keeps collecting messages
+     * until it is activated.
+     *
+     * @param clientId the client id of the MQTT client
+     * @param connectionId the connection the client is connected with
+     * @return the session of the client
+     */
+    Session openSession(String clientId, ConnectionId connectionId) {
+        Session session = sessions.get(clientId);
+        if (session == null) {
+            Session created = new Session(clientId);
+            created.offlineSince = System.currentTimeMillis();
+            session = sessions.putIfAbsent(clientId, created);
+            if (session == null) {
+                session = created;
+                synchronized (session) {
+                    chargeMemory(session);
+                }
+            }
+        }
+        synchronized (session) {
+            session.connectionId = connectionId;
+        }
+        sessionsByConnection.put(connectionId, session);
+        return session;
+    }
+
+    /**
+     * Marks a session as connected once the subscriptions of the client exist. The
+     * messages kept for it are then taken with {@link #nextDeliveries(Session)}.
+     *
+     * @param session the session to activate
+     * @throws IOException if the session could not be stored
+     */
+    void activateSession(Session session) throws IOException {
+        synchronized (session) {
+            // messages dispatched to a previous connection that was never closed cleanly
+            requeueInFlight(session);
+            if (!session.online) {
+                session.online = true;
+                session.offlineSince = 0;
+                for (ActiveMQDestination destination : session.destinations.values()) {
+                    offlineSessions.remove(destination, session);
+                }
+                storeRecord(session);
+            }
+        }
+        // the messages sent while the session was offline are all kept before they are taken
+        awaitFanOut();
+    }
+
+    /**
+     * Takes the next page of messages kept for a connected session and removes them
+     * from the store.
+     *
+     * @param session the session to take the messages of
+     * @return at most maxPageSize messages, the ones that were in flight first, in the
+     *         order they were sent, or an empty list once all were taken
+     * @throws IOException if the messages could not be read from the store
+     */
+    List<Delivery> nextDeliveries(Session session) throws IOException {
+        synchronized (session) {
+            if (!session.online || session.getBacklogSize() == 0) {
+                return Collections.emptyList();
+            }
+            List<Delivery> deliveries = new ArrayList<Delivery>(Math.min(maxPageSize, session.getBacklogSize()));
+            while (deliveries.size() < maxPageSize) {
+                Reference reference = session.redeliveries.poll();
+                if (reference == null) {
+                    reference = session.backlog.poll();
+                    if (reference == null) {
+                        break;
+                    }
+                }
+                Message message = keptMessages.getMessage(getMessageId(reference.message.sequence));
+                if (message != null) {
+                    // the stored copy is shared with other sessions
+                    message = message.copy();
+                    message.setMessageId(new MessageId((String) message.getProperty(MESSAGE_ID_PROPERTY)));
+                    message.removeProperty(MESSAGE_ID_PROPERTY);
+                    deliveries.add(new Delivery(message, reference.topicName));
+                }
+                release(reference);
+            }
+            return deliveries;
+        }
+    }
+
+    /**
+     * Discards the session of a client, as requested with clean session true.
+     *
+     * @param clientId the client id of the MQTT client
+     */
+    void removeSession(String clientId) {
+        if (clientId == null) {
+            return;
+        }
+        Session session = sessions.remove(clientId);
+        if (session != null) {
+            synchronized (session) {
+                session.removed = true;
+                if (!session.online) {
+                    for (ActiveMQDestination destination : session.destinations.values()) {
+                        offlineSessions.remove(destination, session);
+                    }
+                }
+                if (session.connectionId != null) {
+                    sessionsByConnection.remove(session.connectionId, session);
+                }
+                for (ConsumerId consumerId : session.consumers.keySet()) {
+                    sessionsByConsumer.remove(consumerId, session);
+                }
+                session.consumers.clear();
+                session.inFlight.clear();
+                session.keptWhileClosing.clear();
+                try {
+                    releaseAll(session.redeliveries);
+                    releaseAll(session.backlog);
+                    if (session.recordId != null) {
+                        sessionRecords.removeMessage(BrokerSupport.getConnectionContext(this), createAck(sessionRecords, session.recordId));
+                        session.recordId = null;
+                    }
+                } catch (IOException e) {
+                    LOG.warn("Could not remove the stored state of MQTT session {}", clientId, e);
+                }
+                releaseMemory(session);
+            }
+        }
+    }
+
+    void addSubscription(Session session, String topicName, QoS qos, ActiveMQDestination destination, ConsumerId consumerId) throws IOException {
+        synchronized (session) {
+            QoS previous = session.subscriptions.put(topicName, qos);
+            session.destinations.put(topicName, destination);
+            session.consumers.put(consumerId, topicName);
+            if (previous != qos) {
+                chargeMemory(session);
+                storeRecord(session);
+            }
+        }
+        sessionsByConsumer.put(consumerId, session);
+    }
+
+    void removeSubscription(Session session, String topicName, ConsumerId consumerId) throws IOException {
+        synchronized (session) {
+            session.destinations.remove(topicName);
+            session.consumers.remove(consumerId);
+            if (session.subscriptions.remove(topicName) != null) {
+                chargeMemory(session);
+                storeRecord(session);
+            }
+        }
+        sessionsByConsumer.remove(consumerId);
+    }
+
+    /**
+     * @param clientId the client id of the MQTT client
+     * @return the session of the client or null if it has none
+     */
+    Session getSession(String clientId) {
+        return sessions.get(clientId);
+    }
+
+    /**
+     * @return the number of sessions kept, connected or not
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * @param clientId the client id of the MQTT client
+     * @return the number of messages kept for the session of the client
+     */
+    public int getBacklogSize(String clientId) {
+        Session session = sessions.get(clientId);
+        return session != null ? session.getBacklogSize() : 0;
+    }
+
+    /**
+     * @return the number of messages stored for the sessions, each message is stored
+     *         once however many sessions keep it
+     * @throws IOException if the store could not be read
+     */
+    public int getKeptMessageCount() throws IOException {
+        return keptMessages.getMessageCount();
+    }
+
+    public PersistenceAdapter getPersistenceAdapter() {
+        return persistenceAdapter;
+    }
+
+    /**
+     * @return the time in milliseconds a session is kept while its client is
+     *         disconnected
+     */
+    public long getOfflineSessionTimeout() {
+        return offlineSessionTimeout;
+    }
+
+    /**
+     * @param offlineSessionTimeout the time in milliseconds a session is kept while
+     *        its client is disconnected, or -1 to keep it until the client connects
+     *        with clean session true
+     */
+    public void setOfflineSessionTimeout(long offlineSessionTimeout) {
+        this.offlineSessionTimeout = offlineSessionTimeout;
+    }
+
+    public long getOfflineSessionTaskSchedule() {
+        return offlineSessionTaskSchedule;
+    }
+
+    /**
+     * @param offlineSessionTaskSchedule the period in milliseconds of the check for
+     *        sessions that were offline longer than the offline session timeout
+     */
+    public void setOfflineSessionTaskSchedule(long offlineSessionTaskSchedule) {
+        this.offlineSessionTaskSchedule = offlineSessionTaskSchedule;
+    }
+
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    /**
+     * @param maxPageSize the number of messages read from the store at a time when
+     *        the store starts and when a session is delivered its messages
+     */
+    public void setMaxPageSize(int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+
+    //----- Broker interception ---------------------------------------------//
+
+    @Override
+    public void send(ProducerBrokerExchange producerExchange, final Message messageSend) throws Exception {
+        super.send(producerExchange, messageSend);
+
+        final ActiveMQDestination destination = messageSend.getDestination();
+        if (destination == null || offlineSessions.isEmpty() || AdvisorySupport.isAdvisoryTopic(destination)) {
+            return;
+        }
+
+        if (messageSend.getTransactionId() != null) {
+            TransactionBroker transactionBroker = (TransactionBroker) getAdaptor(TransactionBroker.class);
+            Transaction transaction = transactionBroker.getTransaction(producerExchange.getConnectionContext(), messageSend.getTransactionId(), false);
+            transaction.addSynchronization(new Synchronization() {
+                @Override
+                public void afterCommit() throws Exception {
+                    fanOut(destination, messageSend);
+                }
+            });
+        } else {
+            fanOut(destination, messageSend);
+        }
+    }
+
+    @Override
+    public void postProcessDispatch(MessageDispatch messageDispatch) {
+        super.postProcessDispatch(messageDispatch);
+        if (messageDispatch.getMessage() != null) {
+            Session session = sessionsByConsumer.get(messageDispatch.getConsumerId());
+            if (session != null) {
+                session.dispatched(messageDispatch.getConsumerId(), messageDispatch.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void acknowledge(ConsumerBrokerExchange consumerExchange, MessageAck ack) throws Exception {
+        super.acknowledge(consumerExchange, ack);
+        Session session = sessionsByConsumer.get(ack.getConsumerId());
+        if (session != null && ack.getLastMessageId() != null) {
+            session.acknowledged(ack.getConsumerId(), ack.getLastMessageId());
+        }
+    }
+
+    @Override
+    public void removeConnection(ConnectionContext context, ConnectionInfo info, Throwable error) throws Exception {
+        Session session = sessionsByConnection.remove(info.getConnectionId());
+        if (session == null) {
+            super.removeConnection(context, info, error);
+            return;
+        }
+
+        // start collecting messages before the subscriptions go away, so that none are missed
+        synchronized (session) {
+            if (session.online && info.getConnectionId().equals(session.connectionId)) {
+                session.online = false;
+                session.closing = true;
+                session.connectionId = null;
+                session.offlineSince = System.currentTimeMillis();
+                for (ActiveMQDestination destination : session.destinations.values()) {
+                    offlineSessions.put(destination, session);
+                }
+            }
+        }
+        try {
+            super.removeConnection(context, info, error);
+        } finally {
+            // the messages sent while the subscriptions went away are all kept first
+            awaitFanOut();
+            synchronized (session) {
+                for (Iterator<ConsumerId> iter = session.consumers.keySet().iterator(); iter.hasNext();) {
+                    ConsumerId consumerId = iter.next();
+                    if (consumerId.getConnectionId().equals(info.getConnectionId().getValue())) {
+                        sessionsByConsumer.remove(consumerId);
+                        iter.remove();
+                    }
+                }
+                if (session.closing) {
+                    session.closing = false;
+                    // a message that was still dispatched to the closing subscriptions is
+                    // either acknowledged or in flight, it is not kept a second time
+                    for (Map.Entry<MessageId, Reference> kept : session.keptWhileClosing.entrySet()) {
+                        if (session.dispatchedWhileClosing.contains(kept.getKey()) && session.backlog.removeLastOccurrence(kept.getValue())) {
+                            release(kept.getValue());
+                        }
+                    }
+                    session.keptWhileClosing.clear();
+                    session.dispatchedWhileClosing.clear();
+                }
+                if (!session.online && !session.removed) {
+                    requeueInFlight(session);
+                    storeRecord(session);
+                }
+            }
+            LOG.debug("MQTT session of {} is offline with {} messages kept", session.getClientId(), session.getBacklogSize());
+        }
+    }
+
+    /**
+     * Looks up the offline sessions a message is for and has it kept for them by the
+     * fan out thread, so the producer does not wait for the store.
+     */
+    @SuppressWarnings("unchecked")
+    private void fanOut(ActiveMQDestination destination, Message message) {
+        if (destination.isComposite()) {
+            for (ActiveMQDestination child : destination.getCompositeDestinations()) {
+                Set<Session> matches = child.isTopic() ? offlineSessions.get(child) : Collections.<Session>emptySet();
+                if (!matches.isEmpty()) {
+                    Message copy = message.copy();
+                    copy.setOriginalDestination(destination);
+                    copy.setDestination(child);
+                    fanOut(matches, copy);
+                }
+            }
+        } else if (destination.isTopic()) {
+            Set<Session> matches = offlineSessions.get(destination);
+            if (!matches.isEmpty()) {
+                fanOut(matches, message.copy());
+            }
+        }
+    }
+
+    private void fanOut(final Set<Session> matches, final Message message) {
+        try {
+            fanOutExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    keep(matches, message);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Message {} not kept for offline MQTT sessions, the store is stopped", message.getMessageId());
+        }
+    }
+
+    /**
+     * Waits until the messages handed to the fan out thread so far are kept.
+     */
+    private void awaitFanOut() {
+        try {
+            fanOutExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (RejectedExecutionException e) {
+            // stopped, nothing is kept anymore
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.debug("Could not wait for the MQTT session store", e);
+        }
+    }
+
+    private void keep(Set<Session> matches, Message message) {
+        if (backlogsInMemory) {
+            if (memoryUsage.isFull()) {
+                if (!memoryFullWarned) {
+                    memoryFullWarned = true;
+                    LOG.warn("Memory usage is full, messages are no longer kept for offline MQTT sessions");
+                }
+                return;
+            }
+            memoryFullWarned = false;
+        }
+
+        KeptMessage kept;
+        try {
+            kept = store(message);
+        } catch (IOException e) {
+            LOG.warn("Could not keep message {} for offline MQTT sessions", message.getMessageId(), e);
+            return;
+        }
+        try {
+            for (Session session : matches) {
+                synchronized (session) {
+                    if (session.removed) {
+                        continue;
+                    }
+                    try {
+                        Reference reference = addReference(session.backlog, session, kept, null);
+                        if (session.closing) {
+                            session.keptWhileClosing.put(message.getMessageId(), reference);
+                        }
+                    } catch (IOException e) {
+                        LOG.warn("Could not keep message {} for MQTT session {}", message.getMessageId(), session.getClientId(), e);
+                    }
+                }
+            }
+        } finally {
+            try {
+                release(kept);
+            } catch (IOException e) {
+                LOG.warn("Could not remove kept message {}", message.getMessageId(), e);
+            }
+        }
+    }
+
+    //----- Implementation --------------------------------------------------//
+
+    /**
+     * Stores a copy of a message under an id of the store. The message is held by
+     * one reference until the references of the sessions are added.
+     */
+    private KeptMessage store(Message message) throws IOException {
+        KeptMessage kept = new KeptMessage(sequence.incrementAndGet(), message.getSize());
+        Message copy = message.copy();
+        copy.setProperty(MESSAGE_ID_PROPERTY, message.getMessageId().toString());
+        copy.setMessageId(getMessageId(kept.sequence));
+        copy.setMemoryUsage(null);
+        keptMessages.addMessage(BrokerSupport.getConnectionContext(this), copy);
+        kept.references = 1;
+        if (backlogsInMemory) {
+            keptMemory.addAndGet(kept.size);
+            memoryUsage.increaseUsage(kept.size);
+        }
+        return kept;
+    }
+
+    /**
+     * Adds a reference of a session to a kept message. Must be called with the
+     * session locked.
+     */
+    private Reference addReference(ArrayDeque<Reference> queue, Session session, KeptMessage message, String topicName) throws IOException {
+        ActiveMQMessage record = new ActiveMQMessage();
+        record.setMessageId(getMessageId(sequence.incrementAndGet()));
+        record.setDestination(references.getDestination());
+        record.setPersistent(true);
+        record.setProperty(CLIENT_ID_PROPERTY, session.getClientId());
+        record.setProperty(KEPT_MESSAGE_PROPERTY, message.sequence);
+        if (topicName != null) {
+            record.setProperty(TOPIC_NAME_PROPERTY, topicName);
+        }
+        references.addMessage(BrokerSupport.getConnectionContext(this), record);
+
+        synchronized (message) {
+            message.references++;
+        }
+        Reference reference = new Reference(record.getMessageId().getProducerSequenceId(), message, topicName);
+        queue.add(reference);
+        return reference;
+    }
+
+    private void release(Reference reference) throws IOException {
+        references.removeMessage(BrokerSupport.getConnectionContext(this), createAck(references, getMessageId(reference.sequence)));
+        release(reference.message);
+    }
+
+    private void releaseAll(ArrayDeque<Reference> queue) throws IOException {
+        Reference reference;
+        while ((reference = queue.poll()) != null) {
+            release(reference);
+        }
+    }
+
+    /**
+     * Drops a reference to a kept message, removing the message once no session
+     * references it anymore.
+     */
+    private void release(KeptMessage message) throws IOException {
+        synchronized (message) {
+            if (--message.references > 0) {
+                return;
+            }
+        }
+        keptMessages.removeMessage(BrokerSupport.getConnectionContext(this), createAck(keptMessages, getMessageId(message.sequence)));
+        if (backlogsInMemory) {
+            keptMemory.addAndGet(-message.size);
+            memoryUsage.decreaseUsage(message.size);
+        }
+    }
+
+    /**
+     * Keeps the messages in flight for redelivery to the same subscriptions,
+     * ahead of the backlog as they were sent first. Must be called with the
+     * session locked.
+     */
+    private void requeueInFlight(Session session) throws IOException {
+        for (Delivery delivery : session.inFlight.values()) {
+            Message redelivery = delivery.getMessage().copy();
+            redelivery.incrementRedeliveryCounter();
+            KeptMessage kept = store(redelivery);
+            try {
+                addReference(session.redeliveries, session, kept, delivery.getTopicName());
+            } finally {
+                release(kept);
+            }
+        }
+        session.inFlight.clear();
+    }
+
+    private void expireSessions() {
+        long expireBefore = System.currentTimeMillis() - offlineSessionTimeout;
+        for (Session session : sessions.values()) {
+            boolean expired;
+            synchronized (session) {
+                expired = !session.online && !session.closing && session.connectionId == null &&
+                          session.offlineSince > 0 && session.offlineSince < expireBefore;
+            }
+            if (expired && sessions.get(session.getClientId()) == session) {
+                LOG.info("Removing MQTT session of {} that was offline longer than {} ms", session.getClientId(), offlineSessionTimeout);
+                removeSession(session.getClientId());
+            }
+        }
+    }
+
+    /**
+     * Writes the subscriptions of a session to the store, replacing its previous record.
+     * Must be called with the session locked.
+     */
+    private void storeRecord(Session session) throws IOException {
+        ActiveMQMessage record = new ActiveMQMessage();
+        record.setMessageId(getMessageId(sequence.incrementAndGet()));
+        record.setDestination(sessionRecords.getDestination());
+        record.setPersistent(true);
+        record.setTimestamp(System.currentTimeMillis());
+        Map<String, Object> subscriptions = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, QoS> subscription : session.subscriptions.entrySet()) {
+            subscriptions.put(subscription.getKey(), subscription.getValue().ordinal());
+        }
+        record.setProperty(CLIENT_ID_PROPERTY, session.getClientId());
+        record.setProperty(SUBSCRIPTIONS_PROPERTY, subscriptions);
+        record.setProperty(OFFLINE_SINCE_PROPERTY, session.offlineSince);
+
+        sessionRecords.addMessage(BrokerSupport.getConnectionContext(this), record);
+        if (session.recordId != null) {
+            sessionRecords.removeMessage(BrokerSupport.getConnectionContext(this), createAck(sessionRecords, session.recordId));
+        }
+        session.recordId = record.getMessageId();
+    }
+
+    private void chargeMemory(Session session) {
+        long size = session.getMemorySize();
+        if (size > session.sessionMemory) {
+            memoryUsage.increaseUsage(size - session.sessionMemory);
+        } else if (size < session.sessionMemory) {
+            memoryUsage.decreaseUsage(session.sessionMemory - size);
+        }
+        session.sessionMemory = size;
+    }
+
+    private void releaseMemory(Session session) {
+        memoryUsage.decreaseUsage(session.sessionMemory);
+        session.sessionMemory = 0;
+    }
+
+    private MessageId getMessageId(long sequenceId) {
+        return new MessageId(producerId, sequenceId);
+    }
+
+    private MessageStore createStore(String name) throws Exception {
+        MessageStore store = persistenceAdapter.createQueueMessageStore(new ActiveMQQueue(name));
+        store.start();
+        return store;
+    }
+
+    /**
+     * Reads all messages of a store, maxPageSize messages at a time, and moves the
+     * sequence of the store ids past the ones read.
+     */
+    private void recoverPaged(MessageStore store, PagedRecoveryListener listener) throws Exception {
+        store.resetBatching();
+        do {
+            listener.count = 0;
+            store.recoverNextMessages(maxPageSize, listener);
+        } while (listener.count >= maxPageSize);
+    }
+
+    private static MessageAck createAck(MessageStore store, MessageId messageId) {
+        MessageAck ack = new MessageAck();
+        ack.setAckType(MessageAck.STANDARD_ACK_TYPE);
+        ack.setDestination(store.getDestination());
+        ack.setFirstMessageId(messageId);
+        ack.setLastMessageId(messageId);
+        ack.setMessageCount(1);
+        return ack;
+    }
+
+    private abstract class PagedRecoveryListener implements MessageRecoveryListener {
+
+        private int count;
+
+        abstract void recovered(Message message) throws Exception;
+
+        @Override
+        public boolean recoverMessage(Message message) throws Exception {
+            count++;
+            long id = message.getMessageId().getProducerSequenceId();
+            if (id > sequence.get()) {
+                sequence.set(id);
+            }
+            recovered(message);
+            return true;
+        }
+
+        @Override
+        public boolean recoverMessageReference(MessageId messageReference) throws Exception {
+            return true;
+        }
+
+        @Override
+        public boolean hasSpace() {
+            return true;
+        }
+
+        @Override
+        public boolean isDuplicate(MessageId ref) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.mqtt.strategy;
+
+import java.io.File;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.BrokerServiceAware;
+import org.apache.activemq.store.PersistenceAdapter;
+import org.apache.activemq.store.memory.MemoryPersistenceAdapter;
+
+/**
+ * A broker plugin that installs the {@link MQTTSessionStore} used by MQTT transports
+ * configured with <code>transport.subscriptionStrategy=mqtt-session-subscriptions</code>.
+ *
+ * Unless a persistence adapter is configured the sessions of a persistent broker are
+ * kept in a KahaDB store in the <code>mqtt-sessions</code> directory of the broker
+ * data directory, and those of a non persistent broker in memory.
+ *
+ * @org.apache.xbean.XBean element="mqttSessionStorePlugin"
+ */
+public class MQTTSessionStorePlugin implements BrokerPlugin {
+
+    static final String DEFAULT_ADAPTER_CLASS = "org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter";
+
+    private PersistenceAdapter persistenceAdapter;
+    private File directory;
+    private long offlineSessionTimeout = -1;
+    private long offlineSessionTaskSchedule = 300000;
+    private int maxPageSize = 200;
+
+    @Override
+    public Broker installPlugin(Broker broker) throws Exception {
+        PersistenceAdapter adapter = persistenceAdapter;
+        if (adapter == null) {
+            if (broker.getBrokerService().isPersistent()) {
+                try {
+                    adapter = (PersistenceAdapter) getClass().getClassLoader().loadClass(DEFAULT_ADAPTER_CLASS).getDeclaredConstructor().newInstance();
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalStateException("Kahadb class KahaDBPersistenceAdapter not found. Add activemq-kahadb jar or configure a persistenceAdapter.", e);
+                }
+                adapter.setDirectory(directory != null ? directory : new File(broker.getBrokerService().getBrokerDataDirectory(), "mqtt-sessions"));
+            } else {
+                adapter = new MemoryPersistenceAdapter();
+            }
+        }
+        if (adapter instanceof BrokerServiceAware) {
+            ((BrokerServiceAware) adapter).setBrokerService(broker.getBrokerService());
+        }
+        MQTTSessionStore store = new MQTTSessionStore(broker, adapter);
+        store.setOfflineSessionTimeout(offlineSessionTimeout);
+        store.setOfflineSessionTaskSchedule(offlineSessionTaskSchedule);
+        store.setMaxPageSize(maxPageSize);
+        return store;
+    }
+
+    public PersistenceAdapter getPersistenceAdapter() {
+        return persistenceAdapter;
+    }
+
+    /**
+     * @param persistenceAdapter the adapter the sessions and their messages are kept
+     *        in, it must not be the persistence adapter of the broker
+     */
+    public void setPersistenceAdapter(PersistenceAdapter persistenceAdapter) {
+        this.persistenceAdapter = persistenceAdapter;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param directory the directory of the default KahaDB store
+     */
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public long getOfflineSessionTimeout() {
+        return offlineSessionTimeout;
+    }
+
+    /**
+     * @param offlineSessionTimeout the time in milliseconds a session is kept while
+     *        its client is disconnected, or -1 to keep it until the client connects
+     *        with clean session true
+     */
+    public void setOfflineSessionTimeout(long offlineSessionTimeout) {
+        this.offlineSessionTimeout = offlineSessionTimeout;
+    }
+
+    public long getOfflineSessionTaskSchedule() {
+        return offlineSessionTaskSchedule;
+    }
+
+    /**
+     * @param offlineSessionTaskSchedule the period in milliseconds of the check for
+     *        expired offline sessions
+     */
+    public void setOfflineSessionTaskSchedule(long offlineSessionTaskSchedule) {
+        this.offlineSessionTaskSchedule = offlineSessionTaskSchedule;
+    }
+
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    /**
+     * @param maxPageSize the number of messages read from the store at a time when
+     *        the broker starts and when a session is delivered its messages
+     */
+    public void setMaxPageSize(int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+}
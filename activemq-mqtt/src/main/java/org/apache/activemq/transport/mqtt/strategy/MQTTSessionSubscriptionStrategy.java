@@ -0,0 +1,253 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.mqtt.strategy;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.activemq.ActiveMQPrefetchPolicy;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.PrefetchSubscription;
+import org.apache.activemq.broker.region.RegionBroker;
+import org.apache.activemq.broker.region.Subscription;
+import org.apache.activemq.broker.region.TopicRegion;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.command.ConsumerInfo;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.filter.DestinationFilter;
+import org.apache.activemq.transport.mqtt.MQTTProtocolException;
+import org.apache.activemq.transport.mqtt.MQTTProtocolSupport;
+import org.apache.activemq.transport.mqtt.MQTTSubscription;
+import org.fusesource.mqtt.client.QoS;
+import org.fusesource.mqtt.client.Topic;
+import org.fusesource.mqtt.codec.CONNECT;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Subscription strategy that keeps the sessions of clients connecting with clean
+ * session false in the broker wide {@link MQTTSessionStore} instead of in durable
+ * topic subscriptions. The subscriptions of a connected client are plain topic
+ * subscriptions, the messages for a disconnected client are kept by the store and
+ * delivered a page at a time when the client connects again. Subscriptions of a
+ * session requesting QoS 2 are granted QoS 1.
+ *
+ * Requires the {@link MQTTSessionStorePlugin} to be installed in the broker.
+ */
+public class MQTTSessionSubscriptionStrategy extends AbstractMQTTSubscriptionStrategy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MQTTSessionSubscriptionStrategy.class);
+
+    private MQTTSessionStore sessionStore;
+    private MQTTSessionStore.Session session;
+    private boolean restoring;
+
+    @Override
+    public void onConnect(CONNECT connect) throws MQTTProtocolException {
+        sessionStore = findSessionStore();
+
+        if (connect.cleanSession()) {
+            sessionStore.removeSession(protocol.getClientId());
+            // durable subscriptions left over from another strategy
+            deleteDurableSubs(lookupSubscription(protocol.getClientId()));
+            return;
+        }
+
+        session = sessionStore.openSession(protocol.getClientId(), protocol.getConnectionId());
+        // the retained messages were sent when the subscriptions were created, the
+        // restored subscriptions only receive what the session kept
+        restoring = true;
+        try {
+            for (Map.Entry<String, QoS> subscription : session.getSubscriptions().entrySet()) {
+                onSubscribe(new Topic(subscription.getKey(), subscription.getValue()));
+                // a SUBSCRIBE of the client recovers them again
+                MQTTSubscription restored = mqttSubscriptionByTopic.get(subscription.getKey());
+                if (restored != null) {
+                    restored.getConsumerInfo().setRetroactive(true);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not restore the MQTT session subscriptions.", e);
+        } finally {
+            restoring = false;
+        }
+
+        try {
+            sessionStore.activateSession(session);
+            deliverKeptMessages();
+        } catch (IOException e) {
+            throw new MQTTProtocolException("Error restoring the MQTT session messages: " + e.getMessage(), true, e);
+        }
+    }
+
+    @Override
+    public byte onSubscribe(Topic topic) throws MQTTProtocolException {
+        // a message redelivered after a restart of the broker can't keep its packet id,
+        // so the session grants at least once delivery instead of exactly once
+        if (session != null && topic.qos() == QoS.EXACTLY_ONCE) {
+            topic = new Topic(topic.name(), QoS.AT_LEAST_ONCE);
+        }
+        return super.onSubscribe(topic);
+    }
+
+    @Override
+    public byte onSubscribe(String topicName, QoS requestedQoS) throws MQTTProtocolException {
+        ActiveMQDestination destination = new ActiveMQTopic(MQTTProtocolSupport.convertMQTTToActiveMQ(topicName));
+
+        ConsumerInfo consumerInfo = new ConsumerInfo(getNextConsumerId());
+        consumerInfo.setDestination(destination);
+        consumerInfo.setPrefetchSize(ActiveMQPrefetchPolicy.DEFAULT_TOPIC_PREFETCH);
+        consumerInfo.setRetroactive(!restoring);
+        consumerInfo.setDispatchAsync(true);
+
+        if (protocol.getActiveMQSubscriptionPrefetch() > 0) {
+            consumerInfo.setPrefetchSize(protocol.getActiveMQSubscriptionPrefetch());
+        }
+
+        byte qos = doSubscribe(consumerInfo, topicName, requestedQoS);
+        // only subscriptions that get messages acknowledged are kept in the session
+        if (session != null && qos == requestedQoS.ordinal() && requestedQoS.ordinal() >= QoS.AT_LEAST_ONCE.ordinal()) {
+            try {
+                sessionStore.addSubscription(session, topicName, requestedQoS, destination, consumerInfo.getConsumerId());
+            } catch (IOException e) {
+                throw new MQTTProtocolException("Error storing the MQTT session subscription: " + e.getMessage(), false, e);
+            }
+        }
+        return qos;
+    }
+
+    @Override
+    public void onUnSubscribe(String topicName) throws MQTTProtocolException {
+        MQTTSubscription subscription = mqttSubscriptionByTopic.get(topicName);
+        if (subscription != null) {
+            doUnSubscribe(subscription);
+            if (session != null) {
+                try {
+                    sessionStore.removeSubscription(session, topicName, subscription.getConsumerInfo().getConsumerId());
+                } catch (IOException e) {
+                    throw new MQTTProtocolException("Error storing the MQTT session subscription: " + e.getMessage(), false, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Dispatches the messages kept for the session to their subscriptions, a page
+     * of messages at a time.
+     */
+    private void deliverKeptMessages() throws IOException, MQTTProtocolException {
+        List<MQTTSessionStore.Delivery> deliveries = sessionStore.nextDeliveries(session);
+        if (deliveries.isEmpty()) {
+            return;
+        }
+
+        RegionBroker regionBroker;
+        try {
+            regionBroker = (RegionBroker) brokerService.getBroker().getAdaptor(RegionBroker.class);
+        } catch (Exception e) {
+            throw new MQTTProtocolException("Error delivering the MQTT session messages: " + e.getMessage(), false, e);
+        }
+        final TopicRegion topicRegion = (TopicRegion) regionBroker.getTopicRegion();
+
+        String connectionInfoClientId = protocol.getClientId();
+        if (connectionInfoClientId == null || connectionInfoClientId.isEmpty()) {
+            connectionInfoClientId = protocol.getConnectionId().toString();
+        }
+        final ConnectionContext connectionContext = regionBroker.getConnectionContext(connectionInfoClientId);
+
+        int delivered = 0;
+        int kept = 0;
+        while (!deliveries.isEmpty()) {
+            kept += deliveries.size();
+            for (MQTTSessionStore.Delivery delivery : deliveries) {
+                if (deliver(delivery, topicRegion, connectionContext)) {
+                    delivered++;
+                }
+            }
+            deliveries = sessionStore.nextDeliveries(session);
+        }
+        LOG.debug("Delivered {} of {} messages kept for MQTT session {}", delivered, kept, protocol.getClientId());
+    }
+
+    private boolean deliver(MQTTSessionStore.Delivery delivery, TopicRegion topicRegion, ConnectionContext connectionContext) throws MQTTProtocolException {
+        Message message = delivery.getMessage();
+        if (message.isExpired()) {
+            return false;
+        }
+        MQTTSubscription target = findTarget(delivery);
+        if (target == null) {
+            return false;
+        }
+        Subscription subscription = topicRegion.getSubscriptions().get(target.getConsumerInfo().getConsumerId());
+        if (subscription == null) {
+            return false;
+        }
+        try {
+            if (message.getRegionDestination() == null) {
+                Destination topic = brokerService.getDestination(message.getDestination());
+                while (topic instanceof org.apache.activemq.broker.region.DestinationFilter) {
+                    topic = ((org.apache.activemq.broker.region.DestinationFilter) topic).getNext();
+                }
+                message.setRegionDestination(topic);
+            }
+            boolean delivered = subscription.addRecoveredMessage(connectionContext, message);
+            if (subscription instanceof PrefetchSubscription) {
+                ((PrefetchSubscription) subscription).dispatchPending();
+            }
+            return delivered;
+        } catch (Exception e) {
+            throw new MQTTProtocolException("Error delivering the MQTT session messages: " + e.getMessage(), false, e);
+        }
+    }
+
+    /**
+     * @return the subscription a message was in flight to, or else the matching
+     *         subscription with the highest QoS
+     */
+    private MQTTSubscription findTarget(MQTTSessionStore.Delivery delivery) {
+        if (delivery.getTopicName() != null) {
+            MQTTSubscription subscription = mqttSubscriptionByTopic.get(delivery.getTopicName());
+            if (subscription != null) {
+                return subscription;
+            }
+        }
+        MQTTSubscription target = null;
+        for (MQTTSubscription candidate : mqttSubscriptionByTopic.values()) {
+            if (DestinationFilter.parseFilter(candidate.getDestination()).matches(delivery.getMessage().getDestination()) &&
+                (target == null || candidate.getQoS().ordinal() > target.getQoS().ordinal())) {
+                target = candidate;
+            }
+        }
+        return target;
+    }
+
+    private MQTTSessionStore findSessionStore() throws MQTTProtocolException {
+        MQTTSessionStore store;
+        try {
+            store = (MQTTSessionStore) brokerService.getBroker().getAdaptor(MQTTSessionStore.class);
+        } catch (Exception e) {
+            throw new MQTTProtocolException("Error looking up the MQTT session store: " + e.getMessage(), true, e);
+        }
+        if (store == null) {
+            throw new MQTTProtocolException("The mqtt-session-subscriptions strategy requires the MQTTSessionStorePlugin", true);
+        }
+        return store;
+    }
+}
@@ -17,6 +17,7 @@
 package org.apache.activemq.transport.mqtt;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.times;
 
@@ -26,15 +27,23 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.policy.RetainedMessageSubscriptionRecoveryPolicy;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQTopic;
 import org.apache.activemq.command.Command;
 import org.apache.activemq.command.ConnectionInfo;
 import org.apache.activemq.command.ProducerInfo;
 import org.apache.activemq.command.RemoveInfo;
 import org.apache.activemq.command.Response;
 import org.apache.activemq.transport.mqtt.strategy.MQTTSubscriptionStrategy;
+import org.apache.activemq.util.ByteSequence;
+import org.fusesource.hawtbuf.Buffer;
+import org.fusesource.hawtbuf.UTF8Buffer;
+import org.fusesource.mqtt.client.QoS;
 import org.fusesource.mqtt.codec.CONNACK;
 import org.fusesource.mqtt.codec.CONNECT;
 import org.fusesource.mqtt.codec.MQTTFrame;
+import org.fusesource.mqtt.codec.PUBLISH;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -132,4 +141,43 @@ public class MQTTProtocolConverterTest {
         Mockito.verify(transport, times(4)).sendToActiveMQ(removeInfo.capture());
 
     }
+
+    @Test
+    public void testPublishPayloadIsNotCopied() throws Exception {
+        MQTTProtocolConverter converter = new MQTTProtocolConverter(transport, broker);
+        MQTTSubscriptionStrategy strategy = Mockito.mock(MQTTSubscriptionStrategy.class);
+        converter.setSubsciptionStrategy(strategy);
+
+        CONNECT connect = Mockito.mock(CONNECT.class);
+        Mockito.when(connect.version()).thenReturn(3);
+        Mockito.when(connect.cleanSession()).thenReturn(true);
+        converter.onMQTTConnect(connect);
+
+        ActiveMQTopic topic = new ActiveMQTopic("foo.bar");
+        Mockito.when(strategy.onSend("foo.bar")).thenReturn(topic);
+        Mockito.when(strategy.onSend(topic)).thenReturn("foo.bar");
+
+        byte[] frame = "xxpayloadxx".getBytes();
+        PUBLISH publish = new PUBLISH();
+        publish.topicName(new UTF8Buffer("foo/bar"));
+        publish.qos(QoS.AT_LEAST_ONCE);
+        publish.retain(true);
+        publish.payload(new Buffer(frame, 2, 7));
+
+        ActiveMQMessage message = converter.convertMessage(publish);
+        message.onSend();
+        ByteSequence content = message.getContent();
+        assertSame(frame, content.getData());
+        assertEquals(2, content.getOffset());
+        assertEquals(7, content.getLength());
+        assertEquals(topic, message.getDestination());
+        assertTrue(message.getBooleanProperty(RetainedMessageSubscriptionRecoveryPolicy.RETAIN_PROPERTY));
+
+        PUBLISH delivered = converter.convertMessage(message);
+        assertSame(frame, delivered.payload().data);
+        assertEquals(new Buffer("payload".getBytes()), delivered.payload());
+        assertEquals("foo/bar", delivered.topicName().toString());
+        assertEquals(QoS.AT_LEAST_ONCE, delivered.qos());
+        assertSame(delivered.topicName(), converter.convertMessage(message).topicName());
+    }
 }
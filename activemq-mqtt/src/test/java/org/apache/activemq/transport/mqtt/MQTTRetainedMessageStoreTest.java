@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.mqtt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.Session;
+
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.RegionBroker;
+import org.apache.activemq.broker.region.policy.RetainedMessageSubscriptionRecoveryPolicy;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.store.kahadb.retained.RetainedMessageStoreImpl;
+import org.fusesource.mqtt.client.BlockingConnection;
+import org.fusesource.mqtt.client.MQTT;
+import org.fusesource.mqtt.client.Message;
+import org.fusesource.mqtt.client.QoS;
+import org.fusesource.mqtt.client.Topic;
+import org.junit.Test;
+
+/**
+ * Keeps retained messages in a store across broker restarts and recovers them
+ * for wildcard subscriptions.
+ */
+public class MQTTRetainedMessageStoreTest extends MQTTTestSupport {
+
+    private static final int TOPIC_COUNT = 20;
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    @Override
+    protected void createPlugins(List<BrokerPlugin> plugins) throws Exception {
+        RetainedMessageStoreImpl store = new RetainedMessageStoreImpl();
+        store.setDirectory(new File(KAHADB_DIRECTORY + getTestName() + "-retained"));
+        // recover in several batches
+        store.setRecoverBatchSize(3);
+
+        RetainedMessageStorePlugin plugin = new RetainedMessageStorePlugin();
+        plugin.setRetainedMessageStore(store);
+        plugins.add(plugin);
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testRetainedMessagesSurviveRestart() throws Exception {
+        BlockingConnection connection = createMQTTConnection("writer", true).blockingConnection();
+        connection.connect();
+        for (int i = 0; i < TOPIC_COUNT; i++) {
+            connection.publish("sensors/" + i + "/temp", ("old-" + i).getBytes(), QoS.AT_LEAST_ONCE, true);
+            connection.publish("sensors/" + i + "/temp", ("" + i).getBytes(), QoS.AT_LEAST_ONCE, true);
+        }
+        connection.publish("sensors/0/temp", new byte[0], QoS.AT_LEAST_ONCE, true);
+        connection.publish("other/temp", "other".getBytes(), QoS.AT_LEAST_ONCE, true);
+        connection.disconnect();
+
+        restartBroker();
+
+        connection = createMQTTConnection("reader", true).blockingConnection();
+        connection.connect();
+        connection.subscribe(new Topic[] {new Topic("sensors/+/temp", QoS.AT_LEAST_ONCE)});
+
+        Set<String> received = new HashSet<String>();
+        for (int i = 1; i < TOPIC_COUNT; i++) {
+            Message message = connection.receive(5, TimeUnit.SECONDS);
+            assertNotNull("retained message " + i, message);
+            assertTrue(new String(message.getPayload()), message.getTopic().endsWith("/temp"));
+            assertEquals(message.getTopic(), "sensors/" + new String(message.getPayload()) + "/temp");
+            received.add(message.getTopic());
+            message.ack();
+        }
+        assertEquals(TOPIC_COUNT - 1, received.size());
+        assertNull(connection.receive(500, TimeUnit.MILLISECONDS));
+        connection.disconnect();
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testRecoveryDoesNotCreateTopics() throws Exception {
+        BlockingConnection connection = createMQTTConnection("writer", true).blockingConnection();
+        connection.connect();
+        for (int i = 0; i < TOPIC_COUNT; i++) {
+            connection.publish("sensors/" + i + "/temp", ("" + i).getBytes(), QoS.AT_LEAST_ONCE, true);
+        }
+        connection.disconnect();
+
+        // the retained messages of the removed topics stay in the store
+        for (int i = 0; i < TOPIC_COUNT; i += 2) {
+            brokerService.removeDestination(new ActiveMQTopic("sensors." + i + ".temp"));
+        }
+
+        connection = createMQTTConnection("reader", true).blockingConnection();
+        connection.connect();
+        connection.subscribe(new Topic[] {new Topic("sensors/+/temp", QoS.AT_LEAST_ONCE)});
+
+        Set<String> received = new HashSet<String>();
+        for (int i = 1; i < TOPIC_COUNT; i += 2) {
+            Message message = connection.receive(5, TimeUnit.SECONDS);
+            assertNotNull("retained message " + i, message);
+            received.add(message.getTopic());
+            message.ack();
+        }
+        assertNull(connection.receive(500, TimeUnit.MILLISECONDS));
+        connection.disconnect();
+
+        Map<ActiveMQDestination, Destination> topics =
+            ((RegionBroker) brokerService.getRegionBroker()).getTopicRegion().getDestinationMap();
+        for (int i = 0; i < TOPIC_COUNT; i++) {
+            assertEquals("sensors/" + i + "/temp", i % 2 == 1, received.contains("sensors/" + i + "/temp"));
+            assertEquals("sensors." + i + ".temp", i % 2 == 1, topics.containsKey(new ActiveMQTopic("sensors." + i + ".temp")));
+        }
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testRetainedMessageOnResubscribe() throws Exception {
+        MQTT mqtt = createMQTTConnection("durable", false);
+        BlockingConnection connection = mqtt.blockingConnection();
+        connection.connect();
+        connection.publish("TopicA", "RETAIN".getBytes(), QoS.EXACTLY_ONCE, true);
+
+        for (int i = 0; i < 2; i++) {
+            connection.subscribe(new Topic[] {new Topic("TopicA", QoS.AT_LEAST_ONCE)});
+            Message message = connection.receive(5, TimeUnit.SECONDS);
+            assertNotNull("retained message on subscription " + i, message);
+            assertEquals("RETAIN", new String(message.getPayload()));
+            message.ack();
+            assertNull(connection.receive(500, TimeUnit.MILLISECONDS));
+        }
+        connection.unsubscribe(new String[] {"TopicA"});
+
+        connection.publish("TopicA", new byte[0], QoS.AT_MOST_ONCE, true);
+        connection.subscribe(new Topic[] {new Topic("TopicA", QoS.AT_LEAST_ONCE)});
+        assertNull(connection.receive(500, TimeUnit.MILLISECONDS));
+        connection.disconnect();
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testRetainedMessageNotRedeliveredOnDurableReconnect() throws Exception {
+        MQTT mqtt = createMQTTConnection("durable", false);
+        BlockingConnection connection = mqtt.blockingConnection();
+        connection.connect();
+        connection.publish("TopicA", "RETAIN".getBytes(), QoS.AT_LEAST_ONCE, true);
+        connection.subscribe(new Topic[] {new Topic("TopicA", QoS.AT_LEAST_ONCE)});
+        Message message = connection.receive(5, TimeUnit.SECONDS);
+        assertNotNull("retained message on subscription", message);
+        assertEquals("RETAIN", new String(message.getPayload()));
+        message.ack();
+        connection.disconnect();
+
+        for (int i = 0; i < 2; i++) {
+            connection = mqtt.blockingConnection();
+            connection.connect();
+            assertNull("retained message on reconnect " + i, connection.receive(500, TimeUnit.MILLISECONDS));
+            connection.disconnect();
+        }
+
+        restartBroker();
+
+        connection = mqtt.blockingConnection();
+        connection.connect();
+        assertNull("retained message on reconnect after restart", connection.receive(500, TimeUnit.MILLISECONDS));
+
+        // messages published while the subscription is active are still delivered
+        connection.publish("TopicA", "LIVE".getBytes(), QoS.AT_LEAST_ONCE, false);
+        message = connection.receive(5, TimeUnit.SECONDS);
+        assertNotNull(message);
+        assertEquals("LIVE", new String(message.getPayload()));
+        message.ack();
+        connection.disconnect();
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testRetainPropertyRemovedFromSentMessage() throws Exception {
+        jakarta.jms.Connection jmsConnection = cf.createConnection();
+        try {
+            jmsConnection.start();
+            Session session = jmsConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(session.createTopic("TopicA"));
+
+            BlockingConnection connection = createMQTTConnection("writer", true).blockingConnection();
+            connection.connect();
+            connection.publish("TopicA", "RETAIN".getBytes(), QoS.AT_LEAST_ONCE, true);
+            connection.disconnect();
+
+            jakarta.jms.Message received = consumer.receive(5000);
+            assertNotNull(received);
+            assertFalse(received.propertyExists(RetainedMessageSubscriptionRecoveryPolicy.RETAIN_PROPERTY));
+        } finally {
+            jmsConnection.close();
+        }
+    }
+}
@@ -0,0 +1,393 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.mqtt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.jmx.BrokerViewMBean;
+import org.apache.activemq.transport.mqtt.strategy.MQTTSessionStore;
+import org.apache.activemq.transport.mqtt.strategy.MQTTSessionStorePlugin;
+import org.apache.activemq.usage.MemoryUsage;
+import org.apache.activemq.util.Wait;
+import org.fusesource.mqtt.client.BlockingConnection;
+import org.fusesource.mqtt.client.MQTT;
+import org.fusesource.mqtt.client.Message;
+import org.fusesource.mqtt.client.QoS;
+import org.fusesource.mqtt.client.Topic;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Run the basic tests with the sessions kept in the MQTT session store.
+ */
+public class MQTTSessionSubscriptionsTest extends MQTTTest {
+
+    private long offlineSessionTimeout = -1;
+    private int maxPageSize = 200;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        protocolConfig = "transport.subscriptionStrategy=mqtt-session-subscriptions";
+        super.setUp();
+    }
+
+    @Override
+    protected void createPlugins(List<BrokerPlugin> plugins) throws Exception {
+        MQTTSessionStorePlugin plugin = new MQTTSessionStorePlugin();
+        plugin.setOfflineSessionTimeout(offlineSessionTimeout);
+        plugin.setOfflineSessionTaskSchedule(100);
+        plugin.setMaxPageSize(maxPageSize);
+        plugins.add(plugin);
+    }
+
+    @Override
+    protected QoS getGrantedQoS(QoS requestedQoS) {
+        return requestedQoS == QoS.EXACTLY_ONCE ? QoS.AT_LEAST_ONCE : requestedQoS;
+    }
+
+    private MQTTSessionStore getSessionStore() throws Exception {
+        return (MQTTSessionStore) brokerService.getBroker().getAdaptor(MQTTSessionStore.class);
+    }
+
+    private void assertBacklogSize(final String clientId, final int size) throws Exception {
+        assertTrue("backlog of " + clientId, Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return getSessionStore().getBacklogSize(clientId) == size;
+            }
+        }));
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testOfflineSessionsHoldNoSubscriptions() throws Exception {
+        final int sessionCount = 20;
+        for (int i = 0; i < sessionCount; i++) {
+            BlockingConnection connection = createMQTTConnection("device-" + i, false).blockingConnection();
+            connection.connect();
+            connection.subscribe(new Topic[] {new Topic("devices/" + i + "/#", QoS.AT_LEAST_ONCE), new Topic("broadcast", QoS.AT_LEAST_ONCE)});
+            connection.disconnect();
+        }
+
+        BrokerViewMBean brokerView = getProxyToBroker();
+        assertEquals(0, brokerView.getDurableTopicSubscribers().length);
+        assertEquals(0, brokerView.getInactiveDurableTopicSubscribers().length);
+        assertEquals(0, brokerView.getTopicSubscribers().length);
+        assertEquals(sessionCount, getSessionStore().getSessionCount());
+
+        BlockingConnection publisher = createMQTTConnection("publisher", true).blockingConnection();
+        publisher.connect();
+        publisher.publish("broadcast", "all".getBytes(), QoS.AT_LEAST_ONCE, false);
+        for (int i = 0; i < sessionCount; i++) {
+            publisher.publish("devices/" + i + "/config", ("config-" + i).getBytes(), QoS.AT_LEAST_ONCE, false);
+        }
+        publisher.disconnect();
+
+        for (int i = 0; i < sessionCount; i++) {
+            BlockingConnection connection = createMQTTConnection("device-" + i, false).blockingConnection();
+            connection.connect();
+            Message message = connection.receive(5, TimeUnit.SECONDS);
+            assertNotNull(message);
+            assertEquals("all", new String(message.getPayload()));
+            message.ack();
+            message = connection.receive(5, TimeUnit.SECONDS);
+            assertNotNull(message);
+            assertEquals("devices/" + i + "/config", message.getTopic());
+            assertEquals("config-" + i, new String(message.getPayload()));
+            message.ack();
+            assertNull(connection.receive(500, TimeUnit.MILLISECONDS));
+            connection.disconnect();
+        }
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testBacklogIsKeptAndDiscardedWithCleanSession() throws Exception {
+        final int messageCount = 2000;
+
+        MQTT mqtt = createMQTTConnection("device", false);
+        BlockingConnection connection = mqtt.blockingConnection();
+        connection.connect();
+        connection.subscribe(new Topic[] {new Topic("updates", QoS.AT_LEAST_ONCE)});
+        connection.disconnect();
+
+        BlockingConnection publisher = createMQTTConnection("publisher", true).blockingConnection();
+        publisher.connect();
+        for (int i = 0; i < messageCount; i++) {
+            publisher.publish("updates", ("" + i).getBytes(), QoS.AT_LEAST_ONCE, false);
+        }
+        assertBacklogSize("device", messageCount);
+
+        connection = mqtt.blockingConnection();
+        connection.connect();
+        for (int i = 0; i < messageCount; i++) {
+            Message message = connection.receive(5, TimeUnit.SECONDS);
+            assertNotNull(message);
+            assertEquals("" + i, new String(message.getPayload()));
+            message.ack();
+        }
+        assertNull(connection.receive(500, TimeUnit.MILLISECONDS));
+        connection.disconnect();
+
+        publisher.publish("updates", "discarded".getBytes(), QoS.AT_LEAST_ONCE, false);
+        publisher.disconnect();
+
+        connection = createMQTTConnection("device", true).blockingConnection();
+        connection.connect();
+        assertNull(connection.receive(500, TimeUnit.MILLISECONDS));
+        connection.disconnect();
+        assertEquals(0, getSessionStore().getSessionCount());
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testSessionMemoryIsChargedAndReleased() throws Exception {
+        final MemoryUsage memoryUsage = brokerService.getSystemUsage().getMemoryUsage();
+        final long initialUsage = memoryUsage.getUsage();
+
+        BlockingConnection connection = createMQTTConnection("device", false).blockingConnection();
+        connection.connect();
+        connection.subscribe(new Topic[] {new Topic("updates", QoS.AT_LEAST_ONCE)});
+        connection.disconnect();
+        long sessionUsage = memoryUsage.getUsage();
+        assertTrue("session charged to memory usage", sessionUsage > initialUsage);
+
+        BlockingConnection publisher = createMQTTConnection("publisher", true).blockingConnection();
+        publisher.connect();
+        publisher.publish("updates", new byte[1024 * 64], QoS.AT_LEAST_ONCE, false);
+        publisher.disconnect();
+        assertBacklogSize("device", 1);
+        assertTrue("backlog charged to memory usage", memoryUsage.getUsage() >= sessionUsage + 1024 * 64);
+
+        connection = createMQTTConnection("device", true).blockingConnection();
+        connection.connect();
+        connection.disconnect();
+        assertTrue("memory usage released", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return memoryUsage.getUsage() == initialUsage;
+            }
+        }));
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testOfflineSessionsExpire() throws Exception {
+        stopBroker();
+        offlineSessionTimeout = 1000;
+        startBroker();
+
+        BlockingConnection connection = createMQTTConnection("device", false).blockingConnection();
+        connection.connect();
+        connection.subscribe(new Topic[] {new Topic("updates", QoS.AT_LEAST_ONCE)});
+        assertEquals(1, getSessionStore().getSessionCount());
+
+        // a connected session does not expire
+        Thread.sleep(2000);
+        assertEquals(1, getSessionStore().getSessionCount());
+        connection.disconnect();
+
+        assertTrue("offline session expired", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return getSessionStore().getSessionCount() == 0;
+            }
+        }, 10000, 100));
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testExactlyOnceIsGrantedAsAtLeastOnce() throws Exception {
+        BlockingConnection connection = createMQTTConnection("device", false).blockingConnection();
+        connection.connect();
+        byte[] granted = connection.subscribe(new Topic[] {new Topic("updates", QoS.EXACTLY_ONCE)});
+        assertEquals(QoS.AT_LEAST_ONCE.ordinal(), granted[0]);
+        connection.disconnect();
+
+        connection = createMQTTConnection("device", true).blockingConnection();
+        connection.connect();
+        granted = connection.subscribe(new Topic[] {new Topic("updates", QoS.EXACTLY_ONCE)});
+        assertEquals(QoS.EXACTLY_ONCE.ordinal(), granted[0]);
+        connection.disconnect();
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testRetainedMessageNotResentOnReconnect() throws Exception {
+        BlockingConnection publisher = createMQTTConnection("publisher", true).blockingConnection();
+        publisher.connect();
+        publisher.publish("config", "retained".getBytes(), QoS.AT_LEAST_ONCE, true);
+
+        MQTT mqtt = createMQTTConnection("device", false);
+        BlockingConnection connection = mqtt.blockingConnection();
+        connection.connect();
+        connection.subscribe(new Topic[] {new Topic("config", QoS.AT_LEAST_ONCE)});
+        Message message = connection.receive(5, TimeUnit.SECONDS);
+        assertNotNull(message);
+        assertEquals("retained", new String(message.getPayload()));
+        message.ack();
+        connection.disconnect();
+
+        for (int i = 0; i < 2; i++) {
+            connection = mqtt.blockingConnection();
+            connection.connect();
+            assertNull("retained message on reconnect " + i, connection.receive(500, TimeUnit.MILLISECONDS));
+            connection.disconnect();
+        }
+
+        publisher.publish("config", "live".getBytes(), QoS.AT_LEAST_ONCE, false);
+        publisher.disconnect();
+
+        connection = mqtt.blockingConnection();
+        connection.connect();
+        message = connection.receive(5, TimeUnit.SECONDS);
+        assertNotNull(message);
+        assertEquals("live", new String(message.getPayload()));
+        message.ack();
+        connection.disconnect();
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testSessionAndBacklogSurviveRestart() throws Exception {
+        stopBroker();
+        this.persistent = true;
+        startBroker();
+
+        final int messageCount = 10;
+
+        MQTT mqtt = createMQTTConnection("device", false);
+        BlockingConnection connection = mqtt.blockingConnection();
+        connection.connect();
+        connection.subscribe(new Topic[] {new Topic("updates/#", QoS.AT_LEAST_ONCE)});
+        connection.disconnect();
+
+        BlockingConnection publisher = createMQTTConnection("publisher", true).blockingConnection();
+        publisher.connect();
+        for (int i = 0; i < messageCount; i++) {
+            publisher.publish("updates/" + i, ("" + i).getBytes(), QoS.AT_LEAST_ONCE, false);
+        }
+        publisher.disconnect();
+
+        restartBroker();
+        assertEquals(1, getSessionStore().getSessionCount());
+        assertEquals(messageCount, getSessionStore().getBacklogSize("device"));
+
+        // the subscription is restored with the session, the client does not subscribe again
+        connection = mqtt.blockingConnection();
+        connection.connect();
+        for (int i = 0; i < messageCount; i++) {
+            Message message = connection.receive(5, TimeUnit.SECONDS);
+            assertNotNull(message);
+            assertEquals("updates/" + i, message.getTopic());
+            assertEquals("" + i, new String(message.getPayload()));
+            message.ack();
+        }
+        assertNull(connection.receive(500, TimeUnit.MILLISECONDS));
+        connection.disconnect();
+
+        restartBroker();
+        assertEquals(0, getSessionStore().getBacklogSize("device"));
+
+        connection = createMQTTConnection("device", true).blockingConnection();
+        connection.connect();
+        connection.disconnect();
+
+        restartBroker();
+        assertEquals(0, getSessionStore().getSessionCount());
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testMessageIsKeptOnceForAllSessions() throws Exception {
+        final int sessionCount = 5;
+        final int messageCount = 10;
+
+        for (int i = 0; i < sessionCount; i++) {
+            BlockingConnection connection = createMQTTConnection("device-" + i, false).blockingConnection();
+            connection.connect();
+            connection.subscribe(new Topic[] {new Topic("broadcast", QoS.AT_LEAST_ONCE)});
+            connection.disconnect();
+        }
+
+        BlockingConnection publisher = createMQTTConnection("publisher", true).blockingConnection();
+        publisher.connect();
+        for (int i = 0; i < messageCount; i++) {
+            publisher.publish("broadcast", ("" + i).getBytes(), QoS.AT_LEAST_ONCE, false);
+        }
+        publisher.disconnect();
+
+        for (int i = 0; i < sessionCount; i++) {
+            assertBacklogSize("device-" + i, messageCount);
+        }
+        assertEquals(messageCount, getSessionStore().getKeptMessageCount());
+
+        for (int i = 0; i < sessionCount; i++) {
+            BlockingConnection connection = createMQTTConnection("device-" + i, false).blockingConnection();
+            connection.connect();
+            for (int j = 0; j < messageCount; j++) {
+                Message message = connection.receive(5, TimeUnit.SECONDS);
+                assertNotNull(message);
+                assertEquals("" + j, new String(message.getPayload()));
+                message.ack();
+            }
+            assertNull(connection.receive(500, TimeUnit.MILLISECONDS));
+            connection.disconnect();
+            assertEquals(i < sessionCount - 1 ? messageCount : 0, getSessionStore().getKeptMessageCount());
+        }
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testBacklogIsRecoveredAndDeliveredInPages() throws Exception {
+        stopBroker();
+        this.persistent = true;
+        this.maxPageSize = 7;
+        startBroker();
+
+        final int messageCount = 50;
+
+        MQTT mqtt = createMQTTConnection("device", false);
+        BlockingConnection connection = mqtt.blockingConnection();
+        connection.connect();
+        connection.subscribe(new Topic[] {new Topic("updates", QoS.AT_LEAST_ONCE)});
+        connection.disconnect();
+
+        BlockingConnection publisher = createMQTTConnection("publisher", true).blockingConnection();
+        publisher.connect();
+        for (int i = 0; i < messageCount; i++) {
+            publisher.publish("updates", ("" + i).getBytes(), QoS.AT_LEAST_ONCE, false);
+        }
+        publisher.disconnect();
+        assertBacklogSize("device", messageCount);
+
+        restartBroker();
+        assertEquals(messageCount, getSessionStore().getBacklogSize("device"));
+        assertEquals(messageCount, getSessionStore().getKeptMessageCount());
+
+        connection = mqtt.blockingConnection();
+        connection.connect();
+        for (int i = 0; i < messageCount; i++) {
+            Message message = connection.receive(5, TimeUnit.SECONDS);
+            assertNotNull(message);
+            assertEquals("" + i, new String(message.getPayload()));
+            message.ack();
+        }
+        assertNull(connection.receive(500, TimeUnit.MILLISECONDS));
+        connection.disconnect();
+        assertEquals(0, getSessionStore().getKeptMessageCount());
+    }
+}
@@ -510,7 +510,7 @@ public class MQTTTest extends MQTTTestSupport {
                 Thread.sleep(1000);
                 waitCount++;
             }
-            assertEquals(i, actualQoS[0]);
+            assertEquals(getGrantedQoS(QoS.values()[i]).ordinal(), actualQoS[0]);
             msg.ack();
 
             connection.unsubscribe(new String[]{topic});
@@ -555,7 +555,7 @@ public class MQTTTest extends MQTTTestSupport {
                 Thread.sleep(1000);
                 waitCount++;
             }
-            assertEquals(qos.ordinal(), actualQoS[0]);
+            assertEquals(getGrantedQoS(qos).ordinal(), actualQoS[0]);
             actualQoS[0] = -1;
         }
 
@@ -943,7 +943,7 @@ public class MQTTTest extends MQTTTestSupport {
 
         final String TOPIC = "TopicA";
         final byte[] qos = connection.subscribe(new Topic[] { new Topic(TOPIC, QoS.EXACTLY_ONCE) });
-        assertEquals(QoS.EXACTLY_ONCE.ordinal(), qos[0]);
+        assertEquals(getGrantedQoS(QoS.EXACTLY_ONCE).ordinal(), qos[0]);
         connection.publish(TOPIC, TOPIC.getBytes(), QoS.EXACTLY_ONCE, false);
         // kill transport
         connection.kill();
@@ -957,7 +957,7 @@ public class MQTTTest extends MQTTTestSupport {
             }
         }, TimeUnit.SECONDS.toMillis(30), TimeUnit.MILLISECONDS.toMillis(100)));
 
-        assertEquals(QoS.EXACTLY_ONCE.ordinal(), qos[0]);
+        assertEquals(getGrantedQoS(QoS.EXACTLY_ONCE).ordinal(), qos[0]);
         Message msg = newConnection.receive(1000, TimeUnit.MILLISECONDS);
         assertNotNull(msg);
         assertEquals(TOPIC, new String(msg.getPayload()));
@@ -1993,4 +1993,11 @@ public class MQTTTest extends MQTTTestSupport {
           }
        }
     }
+
+    /**
+     * @return the QoS granted to a subscription of a client with clean session false
+     */
+    protected QoS getGrantedQoS(QoS requestedQoS) {
+        return requestedQoS;
+    }
 }
@@ -30,12 +30,18 @@ public class StompAckEntry {
     private final MessageId messageId;
     private final StompSubscription subscription;
     private final MessageDispatch dispatch;
+    private final long sequence;
 
     public StompAckEntry(MessageDispatch dispatch, String ackId, StompSubscription subscription) {
+        this(dispatch, ackId, subscription, 0);
+    }
+
+    public StompAckEntry(MessageDispatch dispatch, String ackId, StompSubscription subscription, long sequence) {
         this.messageId = dispatch.getMessage().getMessageId();
         this.subscription = subscription;
         this.ackId = ackId;
         this.dispatch = dispatch;
+        this.sequence = sequence;
     }
 
     public MessageAck onMessageAck(TransactionId transactionId) {
@@ -62,6 +68,13 @@ public class StompAckEntry {
         return this.subscription;
     }
 
+    /**
+     * @return the position of the message in the dispatch order of its subscription
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
     @Override
     public String toString() {
         return "AckEntry[ msgId:" + messageId + ", ackId:" + ackId + ", sub:" + subscription + " ]";
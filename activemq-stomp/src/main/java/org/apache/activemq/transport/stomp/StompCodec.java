@@ -40,6 +40,7 @@ public class StompCodec {
     String action;
     HashMap<String, String> headers;
     int contentLength = -1;
+    byte[] content;
     int readLength = 0;
     int previousByte = -1;
     boolean awaitingCommandStart = true;
@@ -54,6 +55,18 @@ public class StompCodec {
        int i = 0;
        int b;
        while(i++ < readSize) {
+           if (processedHeaders && contentLength != -1 && readLength < contentLength) {
+               // copy the content in one go, straight into the body of the frame
+               if (content == null) {
+                   content = new byte[contentLength];
+               }
+               int length = Math.min(contentLength - readLength, readSize - i + 1);
+               input.read(content, readLength, length);
+               readLength += length;
+               i += length - 1;
+               continue;
+           }
+
            b = input.read();
            // skip repeating nulls
            if (!processedHeaders && previousByte == 0 && b == 0) {
@@ -114,13 +127,9 @@ public class StompCodec {
                        }
                    }
                } else {
-                   // read desired content length
-                   if (readLength++ == contentLength) {
-                       processCommand();
-                       readLength = 0;
-                   } else {
-                       currentCommand.write(b);
-                   }
+                   // the byte following the content ends the frame
+                   processCommand();
+                   readLength = 0;
                }
            }
 
@@ -129,12 +138,19 @@ public class StompCodec {
     }
 
     protected void processCommand() throws Exception {
-        StompFrame frame = new StompFrame(action, headers, currentCommand.toByteArray());
+        byte[] data;
+        if (contentLength != -1) {
+            data = content != null ? content : new byte[0];
+        } else {
+            data = currentCommand.toByteArray();
+        }
+        StompFrame frame = new StompFrame(action, headers, data);
         transport.doConsume(frame);
         processedHeaders = false;
         awaitingCommandStart = true;
         currentCommand.reset();
         contentLength = -1;
+        content = null;
         frameSize.set(0);
     }
 
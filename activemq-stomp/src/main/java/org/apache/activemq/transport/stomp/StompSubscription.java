@@ -17,9 +17,12 @@
 package org.apache.activemq.transport.stomp;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 
 import jakarta.jms.JMSException;
@@ -57,7 +60,13 @@ public class StompSubscription {
 
     protected final Map<MessageId, StompAckEntry> dispatchedMessage = new LinkedHashMap<>();
     protected final Map<String, StompAckEntry> pendingAcks; // STOMP v1.2 requires ACK ID tracking
-    protected final LinkedList<StompAckEntry> transactedMessages = new LinkedList<>();
+    protected final Map<MessageId, StompAckEntry> transactedMessages = new LinkedHashMap<>();
+    // client ack mode: the messages not yet covered by a cumulative ACK, in dispatch order
+    protected final ArrayDeque<StompAckEntry> unackedMessages = new ArrayDeque<>();
+
+    private StompAckEntry lastTransacted;
+    private boolean nackedInTransaction;
+    private long nextSequence;
 
     protected String ackMode = AUTO_ACK;
     protected ActiveMQDestination destination;
@@ -77,10 +86,14 @@ public class StompSubscription {
         String ackId = null;
         if (isClientAck() || isIndividualAck()) {
             ackId = ACK_ID_GENERATOR.generateId();
-            StompAckEntry pendingAck = new StompAckEntry(md, ackId, this);
+            StompAckEntry pendingAck;
 
             synchronized (this) {
+                pendingAck = new StompAckEntry(md, ackId, this, nextSequence++);
                 dispatchedMessage.put(message.getMessageId(), pendingAck);
+                if (isClientAck()) {
+                    unackedMessages.addLast(pendingAck);
+                }
             }
             if (protocolConverter.isStomp12()) {
                 this.pendingAcks.put(ackId, pendingAck);
@@ -126,31 +139,47 @@ public class StompSubscription {
         // Restore the pending ACKs so that their ACK IDs are again valid for a client
         // to operate on.
         LOG.trace("Transaction Abort restoring {} pending ACKs to valid state.", transactedMessages.size());
-        for (StompAckEntry ackEntry : transactedMessages) {
+        StompAckEntry firstUnacked = unackedMessages.peekFirst();
+        List<StompAckEntry> restored = new ArrayList<>();
+        for (StompAckEntry ackEntry : transactedMessages.values()) {
             if (protocolConverter.isStomp12()) {
                 pendingAcks.put(ackEntry.getAckId(), ackEntry);
             }
+            // cumulative ACKs took these out of the unacked messages
+            if (isClientAck() && dispatchedMessage.containsKey(ackEntry.getMessageId()) &&
+                (firstUnacked == null || ackEntry.getSequence() < firstUnacked.getSequence())) {
+                restored.add(ackEntry);
+            }
+        }
+        restored.sort(Comparator.comparingLong(StompAckEntry::getSequence));
+        for (int i = restored.size() - 1; i >= 0; i--) {
+            unackedMessages.addFirst(restored.get(i));
         }
         transactedMessages.clear();
+        lastTransacted = null;
+        nackedInTransaction = false;
     }
 
     void onStompCommit(TransactionId transactionId) {
         MessageAck ack = null;
         synchronized (this) {
-            for (Iterator<StompAckEntry> iterator = dispatchedMessage.values().iterator(); iterator.hasNext();) {
-                StompAckEntry ackEntry = iterator.next();
-                if (transactedMessages.contains(ackEntry)) {
-                    iterator.remove();
-                }
+            for (MessageId messageId : transactedMessages.keySet()) {
+                dispatchedMessage.remove(messageId);
+            }
+            // transacted NACKs leave their entries behind, cumulative ACKs already took theirs out
+            if (nackedInTransaction && isClientAck()) {
+                unackedMessages.removeIf(entry -> transactedMessages.containsKey(entry.getMessageId()));
             }
 
             // For individual Ack we already sent an Ack that will be applied on commit
             // we don't send a second standard Ack as that would produce an error.
             if (!transactedMessages.isEmpty() && isClientAck()) {
-                ack = new MessageAck(transactedMessages.getLast().getMessageDispatch(), MessageAck.STANDARD_ACK_TYPE, transactedMessages.size());
+                ack = new MessageAck(lastTransacted.getMessageDispatch(), MessageAck.STANDARD_ACK_TYPE, transactedMessages.size());
                 ack.setTransactionId(transactionId);
-                transactedMessages.clear();
             }
+            transactedMessages.clear();
+            lastTransacted = null;
+            nackedInTransaction = false;
         }
         // avoid contention with onMessageDispatch
         if (ack != null) {
@@ -171,39 +200,46 @@ public class StompSubscription {
         ack.setConsumerId(consumerInfo.getConsumerId());
 
         if (isClientAck()) {
+            // The ACK covers every message dispatched up to the acked one, the whole
+            // range goes to the broker as a single MessageAck.
+            final long cutPoint = ackEntry.getSequence();
+            int count = 0;
             if (transactionId == null) {
                 ack.setAckType(MessageAck.STANDARD_ACK_TYPE);
-            } else {
-                ack.setAckType(MessageAck.DELIVERED_ACK_TYPE);
-            }
-            int count = 0;
-            for (Iterator<StompAckEntry> iterator = dispatchedMessage.values().iterator(); iterator.hasNext();) {
-                StompAckEntry entry = iterator.next();
-                MessageId current = entry.getMessageId();
-
-                if (entry.getAckId() != null) {
-                    pendingAcks.remove(entry.getAckId());
-                }
-
-                if (transactionId != null) {
-                    if (!transactedMessages.contains(entry)) {
-                        transactedMessages.add(entry);
-                        count++;
+                for (Iterator<StompAckEntry> iterator = dispatchedMessage.values().iterator(); iterator.hasNext();) {
+                    StompAckEntry entry = iterator.next();
+                    if (entry.getSequence() > cutPoint) {
+                        break;
+                    }
+                    if (entry.getAckId() != null) {
+                        pendingAcks.remove(entry.getAckId());
                     }
-                } else {
                     iterator.remove();
                     count++;
                 }
-
-                if (current.equals(msgId)) {
-                    ack.setLastMessageId(current);
-                    break;
+                while (!unackedMessages.isEmpty() && unackedMessages.peekFirst().getSequence() <= cutPoint) {
+                    unackedMessages.pollFirst();
+                }
+            } else {
+                // only the messages after the previous cut point are new to the transaction
+                ack.setAckType(MessageAck.DELIVERED_ACK_TYPE);
+                while (!unackedMessages.isEmpty() && unackedMessages.peekFirst().getSequence() <= cutPoint) {
+                    StompAckEntry entry = unackedMessages.pollFirst();
+                    if (!dispatchedMessage.containsKey(entry.getMessageId()) ||
+                        transactedMessages.containsKey(entry.getMessageId())) {
+                        continue;
+                    }
+                    if (entry.getAckId() != null) {
+                        pendingAcks.remove(entry.getAckId());
+                    }
+                    transactedMessages.put(entry.getMessageId(), entry);
+                    lastTransacted = entry;
+                    count++;
                 }
-            }
-            ack.setMessageCount(count);
-            if (transactionId != null) {
                 ack.setTransactionId(transactionId);
             }
+            ack.setLastMessageId(ackEntry.getMessageId());
+            ack.setMessageCount(count);
         } else if (isIndividualAck()) {
             if (ackEntry.getAckId() != null) {
                 pendingAcks.remove(ackEntry.getAckId());
@@ -212,7 +248,8 @@ public class StompSubscription {
             ack.setMessageID(msgId);
             ack.setMessageCount(1);
             if (transactionId != null) {
-                transactedMessages.add(dispatchedMessage.get(msgId));
+                transactedMessages.put(msgId, ackEntry);
+                lastTransacted = ackEntry;
                 ack.setTransactionId(transactionId);
             } else {
                 dispatchedMessage.remove(msgId);
@@ -222,15 +259,14 @@ public class StompSubscription {
         return ack;
     }
 
-    public MessageAck onStompMessageNack(String messageId, TransactionId transactionId) throws ProtocolException {
+    public synchronized MessageAck onStompMessageNack(String messageId, TransactionId transactionId) throws ProtocolException {
         MessageId msgId = new MessageId(messageId);
 
-        if (!dispatchedMessage.containsKey(msgId)) {
+        final StompAckEntry ackEntry = dispatchedMessage.get(msgId);
+        if (ackEntry == null) {
             return null;
         }
 
-        final StompAckEntry ackEntry = dispatchedMessage.get(msgId);
-
         if (ackEntry.getAckId() != null) {
             pendingAcks.remove(ackEntry.getAckId());
         }
@@ -241,10 +277,15 @@ public class StompSubscription {
         ack.setAckType(MessageAck.POISON_ACK_TYPE);
         ack.setMessageID(msgId);
         if (transactionId != null) {
-            transactedMessages.add(ackEntry);
+            transactedMessages.put(msgId, ackEntry);
+            lastTransacted = ackEntry;
+            nackedInTransaction = true;
             ack.setTransactionId(transactionId);
         } else {
             dispatchedMessage.remove(msgId);
+            if (isClientAck()) {
+                unackedMessages.remove(ackEntry);
+            }
         }
 
         return ack;
@@ -20,16 +20,19 @@ import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.activemq.util.ByteArrayInputStream;
 import org.apache.activemq.util.ByteArrayOutputStream;
 import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.DataByteArrayInputStream;
 import org.apache.activemq.wireformat.WireFormat;
 
 /**
@@ -45,6 +48,47 @@ public class StompWireFormat implements WireFormat {
     private static final int MAX_HEADER_LENGTH = 1024 * 10;
     private static final int MAX_HEADERS = 1000;
 
+    // commands and header names that are decoded to a shared String instance
+    private static final String[][] KNOWN_NAMES = new String[32][];
+
+    static {
+        String[] names = {
+            Stomp.Commands.STOMP, Stomp.Commands.CONNECT, Stomp.Commands.SEND, Stomp.Commands.DISCONNECT,
+            Stomp.Commands.SUBSCRIBE, Stomp.Commands.UNSUBSCRIBE, Stomp.Commands.BEGIN, Stomp.Commands.COMMIT,
+            Stomp.Commands.ABORT, Stomp.Commands.ACK, Stomp.Commands.NACK,
+            Stomp.Responses.CONNECTED, Stomp.Responses.ERROR, Stomp.Responses.MESSAGE, Stomp.Responses.RECEIPT,
+            Stomp.Headers.RECEIPT_REQUESTED, Stomp.Headers.TRANSACTION, Stomp.Headers.CONTENT_LENGTH,
+            Stomp.Headers.CONTENT_TYPE, Stomp.Headers.TRANSFORMATION, Stomp.Headers.AMQ_MESSAGE_TYPE,
+            Stomp.Headers.Response.RECEIPT_ID,
+            Stomp.Headers.Send.DESTINATION, Stomp.Headers.Send.CORRELATION_ID, Stomp.Headers.Send.REPLY_TO,
+            Stomp.Headers.Send.EXPIRATION_TIME, Stomp.Headers.Send.PRIORITY, Stomp.Headers.Send.TYPE,
+            Stomp.Headers.Send.PERSISTENT,
+            Stomp.Headers.Message.MESSAGE_ID, Stomp.Headers.Message.ACK_ID, Stomp.Headers.Message.REDELIVERED,
+            Stomp.Headers.Message.TIMESTAMP, Stomp.Headers.Message.SUBSCRIPTION, Stomp.Headers.Message.BROWSER,
+            Stomp.Headers.Message.USERID, Stomp.Headers.Message.ORIGINAL_DESTINATION,
+            Stomp.Headers.Subscribe.ID, Stomp.Headers.Subscribe.SELECTOR,
+            Stomp.Headers.Connect.LOGIN, Stomp.Headers.Connect.PASSCODE, Stomp.Headers.Connect.CLIENT_ID,
+            Stomp.Headers.Connect.REQUEST_ID, Stomp.Headers.Connect.ACCEPT_VERSION, Stomp.Headers.Connect.HOST,
+            Stomp.Headers.Connect.HEART_BEAT,
+            Stomp.Headers.Connected.SESSION, Stomp.Headers.Connected.RESPONSE_ID, Stomp.Headers.Connected.SERVER,
+            Stomp.Headers.Connected.VERSION, Stomp.Headers.Error.MESSAGE
+        };
+
+        List<List<String>> byLength = new ArrayList<>(KNOWN_NAMES.length);
+        for (int i = 0; i < KNOWN_NAMES.length; i++) {
+            byLength.add(new ArrayList<String>());
+        }
+        for (String name : names) {
+            List<String> sameLength = byLength.get(name.length());
+            if (!sameLength.contains(name)) {
+                sameLength.add(name);
+            }
+        }
+        for (int i = 0; i < KNOWN_NAMES.length; i++) {
+            KNOWN_NAMES[i] = byLength.get(i).toArray(new String[0]);
+        }
+    }
+
     public static final int MAX_DATA_LENGTH = 1024 * 1024 * 100;
     public static final long DEFAULT_MAX_FRAME_SIZE = Long.MAX_VALUE;
     public static final long DEFAULT_CONNECTION_TIMEOUT = 30000;
@@ -185,26 +229,61 @@ public class StompWireFormat implements WireFormat {
 
     private String readLine(DataInput in, int maxLength, String errorMessage) throws IOException {
         ByteSequence sequence = readHeaderLine(in, maxLength, errorMessage);
-        return new String(sequence.getData(), sequence.getOffset(), sequence.getLength(), "UTF-8").trim();
+        int offset = sequence.getOffset();
+        int end = offset + sequence.getLength();
+        while (offset < end && (sequence.data[offset] & 0xff) <= ' ') {
+            offset++;
+        }
+        while (end > offset && (sequence.data[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        String known = knownName(sequence.data, offset, end - offset);
+        if (known != null) {
+            return known;
+        }
+        return new String(sequence.data, offset, end - offset, StandardCharsets.UTF_8).trim();
     }
 
     private ByteSequence readHeaderLine(DataInput in, int maxLength, String errorMessage) throws IOException {
-        byte b;
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(maxLength);
-        while ((b = in.readByte()) != '\n') {
-            if (baos.size() > maxLength) {
-                baos.close();
-                throw new ProtocolException(errorMessage, true);
+        ByteSequence line;
+        if (in instanceof DataByteArrayInputStream) {
+            // the line is a slice of the buffer being parsed
+            DataByteArrayInputStream data = (DataByteArrayInputStream) in;
+            byte[] buffer = data.getRawData();
+            int start = data.position();
+            int end = start;
+            while (true) {
+                if (end == buffer.length) {
+                    throw new EOFException();
+                }
+                if (buffer[end] == '\n') {
+                    break;
+                }
+                if (end - start > maxLength) {
+                    throw new ProtocolException(errorMessage, true);
+                }
+                end++;
+            }
+            data.skipBytes(end - start + 1);
+            line = new ByteSequence(buffer, start, end - start);
+        } else {
+            byte b;
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.min(maxLength, 256));
+            while ((b = in.readByte()) != '\n') {
+                if (baos.size() > maxLength) {
+                    baos.close();
+                    throw new ProtocolException(errorMessage, true);
+                }
+                baos.write(b);
             }
-            baos.write(b);
-        }
 
-        baos.close();
-        ByteSequence line = baos.toByteSequence();
+            baos.close();
+            line = baos.toByteSequence();
+        }
 
         if (stompVersion.equals(Stomp.V1_0) || stompVersion.equals(Stomp.V1_2)) {
             int lineLength = line.getLength();
-            if (lineLength > 0 && line.data[lineLength-1] == '\r') {
+            if (lineLength > 0 && line.data[line.offset + lineLength - 1] == '\r') {
                 line.setLength(lineLength-1);
             }
         }
@@ -244,23 +323,19 @@ public class StompWireFormat implements WireFormat {
 
                 try {
 
-                    ByteArrayInputStream headerLine = new ByteArrayInputStream(line);
-                    ByteArrayOutputStream stream = new ByteArrayOutputStream(line.length);
-
                     // First complete the name
-                    int result = -1;
-                    while ((result = headerLine.read()) != -1) {
-                        if (result != ':') {
-                            stream.write(result);
-                        } else {
-                            break;
-                        }
+                    int end = line.offset + line.length;
+                    int separator = line.offset;
+                    while (separator < end && line.data[separator] != ':') {
+                        separator++;
                     }
 
-                    ByteSequence nameSeq = stream.toByteSequence();
-
-                    String name = new String(nameSeq.getData(), nameSeq.getOffset(), nameSeq.getLength(), "UTF-8");
-                    String value = decodeHeader(headerLine);
+                    String name = knownName(line.data, line.offset, separator - line.offset);
+                    if (name == null) {
+                        name = new String(line.data, line.offset, separator - line.offset, StandardCharsets.UTF_8);
+                    }
+                    int valueOffset = Math.min(separator + 1, end);
+                    String value = decodeHeader(line.data, valueOffset, end - valueOffset);
                     if (stompVersion.equals(Stomp.V1_0)) {
                         value = value.trim();
                     }
@@ -269,8 +344,6 @@ public class StompWireFormat implements WireFormat {
                         headers.put(name, value);
                     }
 
-                    stream.close();
-
                 } catch (Exception e) {
                     throw new ProtocolException("Unable to parser header line [" + line + "]", true);
                 }
@@ -332,47 +405,64 @@ public class StompWireFormat implements WireFormat {
         return result;
     }
 
-    private String decodeHeader(InputStream header) throws IOException {
-        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
-        PushbackInputStream stream = new PushbackInputStream(header);
-
-        int value = -1;
-        while( (value = stream.read()) != -1) {
-            if (value == 92) {
+    private String decodeHeader(byte[] header, int offset, int length) {
+        int end = offset + length;
+        int escape = offset;
+        while (escape < end && header[escape] != Stomp.ESCAPE) {
+            escape++;
+        }
+        if (escape == end) {
+            return new String(header, offset, length, StandardCharsets.UTF_8);
+        }
 
-                int next = stream.read();
-                if (next != -1) {
-                    switch(next) {
-                    case 110:
-                        decoded.write(Stomp.BREAK);
-                        break;
-                    case 99:
-                        decoded.write(Stomp.COLON);
-                        break;
-                    case 92:
-                        decoded.write(Stomp.ESCAPE);
-                        break;
-                    case 114:
-                        if(stompVersion.equals(Stomp.V1_2)) {
-                            decoded.write(Stomp.CARRIAGE_RETURN);
-                            break;
-                        }
-                    default:
-                        stream.unread(next);
-                        decoded.write(value);
+        byte[] decoded = new byte[length];
+        int size = escape - offset;
+        System.arraycopy(header, offset, decoded, 0, size);
+        for (int i = escape; i < end; i++) {
+            byte value = header[i];
+            if (value == Stomp.ESCAPE && i + 1 < end) {
+                switch(header[i + 1]) {
+                case 110:
+                    decoded[size++] = Stomp.BREAK;
+                    i++;
+                    continue;
+                case 99:
+                    decoded[size++] = Stomp.COLON;
+                    i++;
+                    continue;
+                case 92:
+                    decoded[size++] = Stomp.ESCAPE;
+                    i++;
+                    continue;
+                case 114:
+                    if(stompVersion.equals(Stomp.V1_2)) {
+                        decoded[size++] = Stomp.CARRIAGE_RETURN;
+                        i++;
+                        continue;
                     }
-                } else {
-                    decoded.write(value);
+                default:
                 }
-
-            } else {
-                decoded.write(value);
             }
+            decoded[size++] = value;
         }
 
-        decoded.close();
+        return new String(decoded, 0, size, StandardCharsets.UTF_8);
+    }
 
-        return new String(decoded.toByteArray(), "UTF-8");
+    private static String knownName(byte[] data, int offset, int length) {
+        if (length >= KNOWN_NAMES.length) {
+            return null;
+        }
+        for (String name : KNOWN_NAMES[length]) {
+            int i = 0;
+            while (i < length && name.charAt(i) == data[offset + i]) {
+                i++;
+            }
+            if (i == length) {
+                return name;
+            }
+        }
+        return null;
     }
 
     @Override
@@ -374,6 +374,104 @@ public class Stomp12Test extends StompTestSupport {
         }, TimeUnit.SECONDS.toMillis(5), TimeUnit.MILLISECONDS.toMillis(25)));
     }
 
+    @Test(timeout = 60000)
+    public void testClientAckEachMessageInTransaction() throws Exception {
+        final int MESSAGE_COUNT = 200;
+        final int COMMITTED_COUNT = 80;
+
+        stompConnection.setVersion(Stomp.V1_2);
+
+        String connect = "STOMP\r\n" +
+                         "accept-version:1.2\r\n" +
+                         "login:system\r\n" +
+                         "passcode:manager\r\n" +
+                         "\r\n" +
+                         "\u0000\r\n";
+
+        stompConnection.sendFrame(connect);
+
+        String f = stompConnection.receiveFrame();
+        LOG.info("Broker sent: " + f);
+        assertTrue(f.startsWith("CONNECTED"));
+
+        for (int n = 0; n < MESSAGE_COUNT; n++) {
+            String message = "SEND\n" + "destination:/queue/" + getQueueName() + "\n\n" + String.format("%d", n) + Stomp.NULL;
+            stompConnection.sendFrame(message);
+        }
+
+        String subscribe = "SUBSCRIBE\n" +
+                           "id:1\n" +
+                           "activemq.prefetchSize:" + MESSAGE_COUNT + "\n" +
+                           "ack:client\n" +
+                           "destination:/queue/" + getQueueName() + "\n" +
+                           "receipt:1\n" +
+                           "\n" + Stomp.NULL;
+
+        stompConnection.sendFrame(subscribe);
+
+        StompFrame receipt = stompConnection.receive();
+        assertTrue(receipt.getAction().startsWith("RECEIPT"));
+
+        List<String> ackIds = new ArrayList<>(MESSAGE_COUNT);
+        for (int n = 0; n < MESSAGE_COUNT; n++) {
+            StompFrame received = stompConnection.receive();
+            assertTrue(received.getAction().equals("MESSAGE"));
+            assertEquals(String.format("%d", n), received.getBody());
+            ackIds.add(received.getHeaders().get(Stomp.Headers.Message.ACK_ID));
+        }
+
+        // ACK every message, each one covering everything before it, then abort
+        stompConnection.sendFrame("BEGIN\n" + "transaction:tx1" + "\n\n" + Stomp.NULL);
+        for (String ackId : ackIds) {
+            stompConnection.sendFrame("ACK\n" + "transaction:tx1" + "\n" + "id:" + ackId + "\n\n" + Stomp.NULL);
+        }
+        stompConnection.sendFrame("ABORT\n" + "transaction:tx1" + "\n" + "receipt:2" + "\n\n" + Stomp.NULL);
+
+        receipt = stompConnection.receive();
+        assertTrue(receipt.getAction().startsWith("RECEIPT"));
+        assertEquals("2", receipt.getHeaders().get("receipt-id"));
+        assertEquals(MESSAGE_COUNT, getProxyToQueue(getQueueName()).getQueueSize());
+
+        // the aborted messages can be acked again, commit only the first part of them
+        stompConnection.sendFrame("BEGIN\n" + "transaction:tx2" + "\n\n" + Stomp.NULL);
+        for (int n = 0; n < COMMITTED_COUNT; n++) {
+            stompConnection.sendFrame("ACK\n" + "transaction:tx2" + "\n" + "id:" + ackIds.get(n) + "\n\n" + Stomp.NULL);
+        }
+        stompConnection.sendFrame("COMMIT\n" + "transaction:tx2" + "\n" + "receipt:3" + "\n\n" + Stomp.NULL);
+
+        receipt = stompConnection.receive();
+        assertTrue(receipt.getAction().startsWith("RECEIPT"));
+        assertEquals("3", receipt.getHeaders().get("receipt-id"));
+
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisified() throws Exception {
+                return getProxyToQueue(getQueueName()).getQueueSize() == MESSAGE_COUNT - COMMITTED_COUNT;
+            }
+        }, TimeUnit.SECONDS.toMillis(5), TimeUnit.MILLISECONDS.toMillis(25)));
+
+        // an already committed message is no longer known
+        stompConnection.sendFrame("ACK\n" + "id:" + ackIds.get(COMMITTED_COUNT - 1) + "\n" + "receipt:4" + "\n\n" + Stomp.NULL);
+        StompFrame error = stompConnection.receive();
+        assertTrue(error.getAction().startsWith("ERROR"));
+
+        stompConnection.sendFrame("ACK\n" + "id:" + ackIds.get(MESSAGE_COUNT - 1) + "\n" + "receipt:5" + "\n\n" + Stomp.NULL);
+        receipt = stompConnection.receive();
+        assertTrue(receipt.getAction().startsWith("RECEIPT"));
+        assertEquals("5", receipt.getHeaders().get("receipt-id"));
+
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisified() throws Exception {
+                return getProxyToQueue(getQueueName()).getQueueSize() == 0;
+            }
+        }, TimeUnit.SECONDS.toMillis(5), TimeUnit.MILLISECONDS.toMillis(25)));
+
+        stompConnection.sendFrame("DISCONNECT\n\n" + Stomp.NULL);
+    }
+
     @Test(timeout = 60000)
     public void testClientIndividualAck() throws Exception {
         stompConnection.setVersion(Stomp.V1_2);
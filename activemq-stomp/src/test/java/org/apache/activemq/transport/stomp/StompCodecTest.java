@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.stomp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.activemq.transport.tcp.TcpTransport;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class StompCodecTest {
+
+    private TcpTransport transport;
+    private StompWireFormat wireFormat;
+
+    @Before
+    public void setUp() throws Exception {
+        wireFormat = new StompWireFormat();
+        wireFormat.setStompVersion(Stomp.V1_2);
+        transport = Mockito.mock(TcpTransport.class);
+        Mockito.when(transport.getWireFormat()).thenReturn(wireFormat);
+    }
+
+    @Test
+    public void testFramesSplitAcrossReads() throws Exception {
+        byte[] body = new byte[1000];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        byte[] first = frame("SEND\ndestination:/queue/a\ncontent-length:" + body.length + "\n\n", body);
+        byte[] second = frame("SEND\ndestination:/queue/b\n\n", "text".getBytes(StandardCharsets.UTF_8));
+        byte[] stream = new byte[first.length + 1 + second.length];
+        System.arraycopy(first, 0, stream, 0, first.length);
+        stream[first.length] = '\n';
+        System.arraycopy(second, 0, stream, first.length + 1, second.length);
+
+        for (int chunk : new int[] {1, 7, 100, stream.length}) {
+            Mockito.reset(transport);
+            Mockito.when(transport.getWireFormat()).thenReturn(wireFormat);
+            StompCodec codec = new StompCodec(transport);
+            for (int offset = 0; offset < stream.length; offset += chunk) {
+                int length = Math.min(chunk, stream.length - offset);
+                byte[] read = new byte[length];
+                System.arraycopy(stream, offset, read, 0, length);
+                codec.parse(new ByteArrayInputStream(read), length);
+            }
+
+            List<StompFrame> frames = consumedFrames(2);
+            assertEquals("/queue/a", frames.get(0).getHeaders().get(Stomp.Headers.Send.DESTINATION));
+            assertArrayEquals("chunk " + chunk, body, frames.get(0).getContent());
+            assertEquals("/queue/b", frames.get(1).getHeaders().get(Stomp.Headers.Send.DESTINATION));
+            assertEquals("text", frames.get(1).getBody());
+        }
+    }
+
+    @Test
+    public void testHeaders() throws Exception {
+        StompCodec codec = new StompCodec(transport);
+        byte[] frame = frame("SEND\r\ndestination:/topic/a\r\ncustom:a\\cb\\\\c\\nd\\re\r\nname:välue:x\r\n\r\n", new byte[0]);
+        codec.parse(new ByteArrayInputStream(frame), frame.length);
+
+        StompFrame consumed = consumedFrames(1).get(0);
+        assertSame(Stomp.Commands.SEND, consumed.getAction());
+        String destination = null;
+        for (String name : consumed.getHeaders().keySet()) {
+            if (name.equals(Stomp.Headers.Send.DESTINATION)) {
+                destination = name;
+            }
+        }
+        assertSame(Stomp.Headers.Send.DESTINATION, destination);
+        assertEquals("/topic/a", consumed.getHeaders().get(Stomp.Headers.Send.DESTINATION));
+        assertEquals("a:b\\c\nd\re", consumed.getHeaders().get("custom"));
+        assertEquals("välue:x", consumed.getHeaders().get("name"));
+        assertEquals(0, consumed.getContent().length);
+    }
+
+    private List<StompFrame> consumedFrames(int count) {
+        ArgumentCaptor<StompFrame> frames = ArgumentCaptor.forClass(StompFrame.class);
+        Mockito.verify(transport, Mockito.times(count)).doConsume(frames.capture());
+        return frames.getAllValues();
+    }
+
+    private static byte[] frame(String headers, byte[] body) {
+        byte[] head = headers.getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[head.length + body.length + 1];
+        System.arraycopy(head, 0, frame, 0, head.length);
+        System.arraycopy(body, 0, frame, head.length, body.length);
+        return frame;
+    }
+}
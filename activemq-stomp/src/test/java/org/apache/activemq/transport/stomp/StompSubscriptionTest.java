@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.stomp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.ConnectionId;
+import org.apache.activemq.command.ConsumerId;
+import org.apache.activemq.command.ConsumerInfo;
+import org.apache.activemq.command.LocalTransactionId;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageDispatch;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.apache.activemq.command.SessionId;
+import org.apache.activemq.command.TransactionId;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests the ACK bookkeeping of a client ack mode StompSubscription
+ */
+public class StompSubscriptionTest {
+
+    private static final int MESSAGE_COUNT = 10;
+
+    private final ActiveMQQueue destination = new ActiveMQQueue("StompSubscriptionTest");
+    private StompSubscription subscription;
+    private final List<MessageId> dispatched = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        ProtocolConverter converter = Mockito.mock(ProtocolConverter.class);
+        Mockito.when(converter.isStomp12()).thenReturn(true);
+        Mockito.when(converter.getStompTransport()).thenReturn(Mockito.mock(StompTransport.class));
+        Mockito.when(converter.convertMessage(Mockito.any(ActiveMQTextMessage.class), Mockito.anyBoolean())).thenReturn(new StompFrame());
+
+        ConsumerInfo consumerInfo = new ConsumerInfo(new ConsumerId(new SessionId(new ConnectionId("StompSubscriptionTest"), 1), 1));
+        consumerInfo.setDestination(destination);
+
+        subscription = new StompSubscription(converter, "1", consumerInfo, null, new ConcurrentHashMap<String, StompAckEntry>());
+        subscription.setAckMode(StompSubscription.CLIENT_ACK);
+
+        ProducerId producerId = new ProducerId(consumerInfo.getConsumerId().getParentId(), 1);
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            ActiveMQTextMessage message = new ActiveMQTextMessage();
+            message.setMessageId(new MessageId(producerId, i));
+            message.setDestination(destination);
+            message.setText("message " + i);
+
+            MessageDispatch md = new MessageDispatch();
+            md.setConsumerId(consumerInfo.getConsumerId());
+            md.setDestination(destination);
+            md.setMessage(message);
+            subscription.onMessageDispatch(md);
+            dispatched.add(message.getMessageId());
+        }
+    }
+
+    @Test
+    public void testNackWithoutAckDrainsUnackedMessages() throws Exception {
+        assertEquals(MESSAGE_COUNT, subscription.unackedMessages.size());
+
+        // NACK from the tail so that no entry ever reaches the head of the queue through an ACK
+        for (int i = MESSAGE_COUNT - 1; i >= 0; i--) {
+            MessageAck ack = subscription.onStompMessageNack(dispatched.get(i).toString(), null);
+            assertNotNull(ack);
+            assertTrue(ack.isPoisonAck());
+            assertEquals(i, subscription.unackedMessages.size());
+        }
+
+        assertTrue(subscription.dispatchedMessage.isEmpty());
+    }
+
+    @Test
+    public void testTransactedNackDrainsUnackedMessagesOnCommit() throws Exception {
+        TransactionId transactionId = new LocalTransactionId();
+
+        subscription.onStompMessageNack(dispatched.get(MESSAGE_COUNT - 1).toString(), transactionId);
+        subscription.onStompMessageNack(dispatched.get(MESSAGE_COUNT / 2).toString(), transactionId);
+        assertEquals(MESSAGE_COUNT, subscription.unackedMessages.size());
+
+        subscription.onStompCommit(transactionId);
+        assertEquals(MESSAGE_COUNT - 2, subscription.unackedMessages.size());
+
+        MessageAck ack = subscription.onStompMessageAck(dispatched.get(MESSAGE_COUNT - 2).toString(), null);
+        assertEquals(MESSAGE_COUNT - 2, ack.getMessageCount());
+        assertTrue(subscription.unackedMessages.isEmpty());
+        assertTrue(subscription.dispatchedMessage.isEmpty());
+    }
+}
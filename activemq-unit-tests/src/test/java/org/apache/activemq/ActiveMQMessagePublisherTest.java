@@ -0,0 +1,299 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.Queue;
+import jakarta.jms.Session;
+import jakarta.jms.TextMessage;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ActiveMQMessagePublisherTest {
+
+    private static final int PREFETCH = 10;
+
+    private BrokerService broker;
+    private ActiveMQConnection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setUseJmx(false);
+        broker.setPersistent(false);
+        broker.addConnector("tcp://localhost:0");
+        broker.start();
+        broker.waitUntilStarted();
+
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(broker.getTransportConnectors().get(0).getPublishableConnectString());
+        factory.getPrefetchPolicy().setQueuePrefetch(PREFETCH);
+        connection = (ActiveMQConnection) factory.createConnection();
+        connection.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (Exception e) {}
+        }
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testSendAsyncCompletes() throws Exception {
+        ActiveMQSession session = (ActiveMQSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Queue queue = session.createQueue("test.send.async");
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(queue);
+
+        List<CompletableFuture<Void>> sends = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            sends.add(producer.sendAsync(session.createTextMessage("message " + i)).toCompletableFuture());
+        }
+        CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+        assertEquals(50, getDestination("test.send.async").getDestinationStatistics().getMessages().getCount());
+    }
+
+    @Test(timeout = 30000)
+    public void testSendAsyncOnClosedProducerCompletesExceptionally() throws Exception {
+        ActiveMQSession session = (ActiveMQSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(session.createQueue("test.send.closed"));
+        Message message = session.createTextMessage("closed");
+        producer.close();
+
+        try {
+            producer.sendAsync(message).toCompletableFuture().get(10, TimeUnit.SECONDS);
+            fail("Send on a closed producer should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof JMSException);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testDeliveryFollowsDemand() throws Exception {
+        sendMessages("test.publisher.demand", 100);
+
+        ActiveMQSession session = (ActiveMQSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessagePublisher publisher = session.createFlowPublisher(session.createQueue("test.publisher.demand"));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.request(5);
+        assertTrue(Wait.waitFor(() -> subscriber.received.size() == 5, 10000, 50));
+
+        // no further demand, the broker must stop at the consumer's prefetch
+        final Destination destination = getDestination("test.publisher.demand");
+        assertTrue(Wait.waitFor(() -> destination.getDestinationStatistics().getInflight().getCount() == PREFETCH, 10000, 50));
+        TimeUnit.MILLISECONDS.sleep(500);
+        assertEquals(5, subscriber.received.size());
+        assertEquals(PREFETCH, destination.getDestinationStatistics().getInflight().getCount());
+
+        subscriber.request(95);
+        assertTrue(Wait.waitFor(() -> subscriber.received.size() == 100, 10000, 50));
+        for (int i = 0; i < 100; i++) {
+            assertEquals("message " + i, ((TextMessage) subscriber.received.get(i)).getText());
+        }
+        assertNull(subscriber.error.get());
+    }
+
+    @Test(timeout = 60000)
+    public void testMessagesArrivingAfterDemandAreDelivered() throws Exception {
+        ActiveMQSession session = (ActiveMQSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessagePublisher publisher = session.createFlowPublisher(session.createQueue("test.publisher.late"));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.request(Long.MAX_VALUE);
+
+        sendMessages("test.publisher.late", 30);
+        assertTrue(Wait.waitFor(() -> subscriber.received.size() == 30, 10000, 50));
+    }
+
+    @Test(timeout = 60000)
+    public void testCancelReleasesUndeliveredMessages() throws Exception {
+        sendMessages("test.publisher.cancel", 20);
+
+        ActiveMQSession session = (ActiveMQSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessagePublisher publisher = session.createFlowPublisher(session.createQueue("test.publisher.cancel"));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.request(3);
+        assertTrue(Wait.waitFor(() -> subscriber.received.size() == 3, 10000, 50));
+
+        subscriber.subscription.cancel();
+        final Destination destination = getDestination("test.publisher.cancel");
+        assertTrue(Wait.waitFor(() -> destination.getConsumers().isEmpty(), 10000, 50));
+
+        MessageConsumer consumer = session.createConsumer(session.createQueue("test.publisher.cancel"));
+        for (int i = 3; i < 20; i++) {
+            TextMessage message = (TextMessage) consumer.receive(5000);
+            assertNotNull(message);
+            assertEquals("message " + i, message.getText());
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testNonPositiveDemandSignalsError() throws Exception {
+        ActiveMQSession session = (ActiveMQSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessagePublisher publisher = session.createFlowPublisher(session.createQueue("test.publisher.error"));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.request(0);
+        assertTrue(subscriber.error.get() instanceof IllegalArgumentException);
+        final Destination destination = getDestination("test.publisher.error");
+        assertTrue(Wait.waitFor(() -> destination.getConsumers().isEmpty(), 10000, 50));
+    }
+
+    @Test(timeout = 30000)
+    public void testConsumerCloseCompletes() throws Exception {
+        ActiveMQSession session = (ActiveMQSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessagePublisher publisher = session.createFlowPublisher(session.createQueue("test.publisher.close"));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.request(1);
+
+        publisher.getConsumer().close();
+        assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+        assertNull(subscriber.error.get());
+    }
+
+    @Test(timeout = 30000)
+    public void testSessionCloseCompletes() throws Exception {
+        ActiveMQSession session = (ActiveMQSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessagePublisher publisher = session.createFlowPublisher(session.createQueue("test.publisher.close"));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        // no demand is needed for the terminal signal
+        session.close();
+        assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+        assertNull(subscriber.error.get());
+    }
+
+    @Test(timeout = 30000)
+    public void testConnectionCloseCompletes() throws Exception {
+        ActiveMQSession session = (ActiveMQSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessagePublisher publisher = session.createFlowPublisher(session.createQueue("test.publisher.close"));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.request(Long.MAX_VALUE);
+
+        connection.close();
+        assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+        assertNull(subscriber.error.get());
+    }
+
+    @Test(timeout = 30000)
+    public void testConnectionFailureSignalsError() throws Exception {
+        ActiveMQSession session = (ActiveMQSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessagePublisher publisher = session.createFlowPublisher(session.createQueue("test.publisher.failure"));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.request(Long.MAX_VALUE);
+
+        broker.stop();
+        broker.waitUntilStopped();
+        assertTrue(Wait.waitFor(() -> subscriber.error.get() != null, 10000, 50));
+        assertTrue(subscriber.error.get() instanceof JMSException);
+        assertEquals(1, subscriber.completed.getCount());
+    }
+
+    @Test(timeout = 30000)
+    public void testSecondSubscriberIsRejected() throws Exception {
+        ActiveMQSession session = (ActiveMQSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessagePublisher publisher = session.createFlowPublisher(session.createQueue("test.publisher.single"));
+        publisher.subscribe(new RecordingSubscriber());
+
+        RecordingSubscriber second = new RecordingSubscriber();
+        publisher.subscribe(second);
+        assertTrue(second.error.get() instanceof IllegalStateException);
+    }
+
+    private void sendMessages(String queueName, int count) throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(new ActiveMQQueue(queueName));
+        for (int i = 0; i < count; i++) {
+            producer.send(session.createTextMessage("message " + i));
+        }
+        session.close();
+    }
+
+    private Destination getDestination(String queueName) throws Exception {
+        return broker.getDestination(new ActiveMQQueue(queueName));
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<Message> {
+
+        final List<Message> received = new CopyOnWriteArrayList<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        volatile Flow.Subscription subscription;
+
+        void request(long n) {
+            subscription.request(n);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Message item) {
+            received.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.set(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
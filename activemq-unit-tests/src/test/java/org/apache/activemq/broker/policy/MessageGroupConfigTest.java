@@ -23,6 +23,7 @@ import org.apache.activemq.broker.region.group.CachedMessageGroupMap;
 import org.apache.activemq.broker.region.group.MessageGroupHashBucket;
 import org.apache.activemq.broker.region.group.MessageGroupMap;
 import org.apache.activemq.broker.region.group.SimpleMessageGroupMap;
+import org.apache.activemq.broker.region.group.StripedMessageGroupMap;
 import org.apache.activemq.broker.region.policy.PolicyEntry;
 import org.apache.activemq.broker.region.policy.PolicyMap;
 import org.apache.activemq.command.ActiveMQDestination;
@@ -69,6 +70,12 @@ public class MessageGroupConfigTest extends TestSupport {
         assertEquals(2,result.getBucketCount());
     }
 
+    public void testStripedGroupConfiguration() throws Exception {
+        StripedMessageGroupMap result = (StripedMessageGroupMap) doTestGroupConfiguration("striped?stripeCount=5&cacheSize=100", StripedMessageGroupMap.class);
+        assertEquals(8, result.getStripeCount());
+        assertEquals(100, result.getMaximumCacheSize());
+    }
+
     public MessageGroupMap doTestGroupConfiguration(String type, Class classType) throws Exception {
         broker = new BrokerService();
 
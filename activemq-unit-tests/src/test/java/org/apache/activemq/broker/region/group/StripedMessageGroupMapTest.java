@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.group;
+
+import org.apache.activemq.command.ConsumerId;
+
+public class StripedMessageGroupMapTest extends MessageGroupMapTest {
+
+    @Override
+    protected MessageGroupMap createMessageGroupMap() {
+        return new StripedMessageGroupMap(16, 0);
+    }
+
+    public void testReassignedGroupNotRemovedWithPreviousOwner() throws Exception {
+        ConsumerId first = createConsumerId();
+        ConsumerId second = createConsumerId();
+
+        map.put("a", first);
+        map.put("b", first);
+        map.put("a", second);
+
+        MessageGroupSet set = map.removeConsumer(first);
+        assertTrue(set.contains("b"));
+        assertFalse(set.contains("a"));
+        assertGet("a", second);
+
+        assertEquals(second, map.removeGroup("a"));
+        assertFalse(map.removeConsumer(second).contains("a"));
+    }
+
+    public void testLeastRecentlyUsedGroupEvicted() throws Exception {
+        map = new StripedMessageGroupMap(1, 2);
+        ConsumerId consumer = createConsumerId();
+
+        map.put("1", consumer);
+        map.put("2", consumer);
+        assertGet("1", consumer);
+        map.put("3", consumer);
+
+        assertGet("2", null);
+        MessageGroupSet set = map.removeConsumer(consumer);
+        assertTrue(set.contains("1"));
+        assertTrue(set.contains("3"));
+        assertFalse(set.contains("2"));
+    }
+
+    public void testCacheSizeSharedBetweenStripes() throws Exception {
+        StripedMessageGroupMap striped = new StripedMessageGroupMap(16, 100);
+        assertEquals(16, striped.getStripeCount());
+        assertEquals(100, striped.getCacheCapacity());
+
+        striped = new StripedMessageGroupMap(16, 5);
+        assertEquals(4, striped.getStripeCount());
+        assertEquals(5, striped.getCacheCapacity());
+
+        map = striped;
+        ConsumerId consumer = createConsumerId();
+        for (int i = 0; i < 50; i++) {
+            map.put("group-" + i, consumer);
+        }
+        assertTrue(map.getGroups().size() <= 5);
+    }
+}
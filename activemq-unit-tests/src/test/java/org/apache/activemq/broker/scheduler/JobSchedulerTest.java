@@ -20,14 +20,25 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.activemq.store.kahadb.JournalCommand;
+import org.apache.activemq.store.kahadb.data.KahaRemoveScheduledJobCommand;
+import org.apache.activemq.store.kahadb.data.KahaRemoveScheduledJobsCommand;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
 import org.apache.activemq.store.kahadb.scheduler.JobSchedulerStoreImpl;
 import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.IOHelper;
+import org.apache.activemq.util.Wait;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -60,6 +71,80 @@ public class JobSchedulerTest {
         assertEquals(0, latch.getCount());
     }
 
+    @Test
+    public void testBurstAtSameTimeIsFiredAndRemoved() throws Exception {
+        final int COUNT = 5000;
+        final CountDownLatch latch = new CountDownLatch(COUNT);
+        scheduler.addListener(new JobListener() {
+            @Override
+            public void scheduledJob(String id, ByteSequence job) {
+                latch.countDown();
+            }
+        });
+        for (int i = 0; i < COUNT; i++) {
+            String test = new String("test" + i);
+            scheduler.schedule("id" + i, new ByteSequence(test.getBytes()), 1000);
+        }
+        latch.await(30, TimeUnit.SECONDS);
+        assertEquals(0, latch.getCount());
+        assertTrue(Wait.waitFor(() -> scheduler.getAllJobs().isEmpty(), 10000, 100));
+
+        // jobs due at the same time are removed with one range remove, not one remove each
+        CountingJobSchedulerStore counting = (CountingJobSchedulerStore) store;
+        assertTrue("range removes: " + counting.rangeRemoves.get(), counting.rangeRemoves.get() > 0);
+        assertTrue("job removes: " + counting.jobRemoves.get(), counting.jobRemoves.get() < COUNT / 10);
+    }
+
+    @Test(timeout = 60000)
+    public void testCronSchedulingDuringRangeRemove() throws Exception {
+        final int COUNT = 2000;
+        final int CRON_COUNT = 200;
+        final CountDownLatch latch = new CountDownLatch(COUNT);
+        scheduler.addListener(new JobListener() {
+            @Override
+            public void scheduledJob(String id, ByteSequence job) {
+                if (id.startsWith("burst")) {
+                    latch.countDown();
+                }
+            }
+        });
+        for (int i = 0; i < COUNT; i++) {
+            scheduler.schedule("burst" + i, new ByteSequence(("burst" + i).getBytes()), 500);
+        }
+
+        // cron jobs fire within the next minute, the jobs removed by range are scheduled after that
+        final long removeStart = System.currentTimeMillis() + 90000;
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> cron = executor.submit(() -> {
+                for (int i = 0; i < CRON_COUNT; i++) {
+                    scheduler.schedule("cron" + i, new ByteSequence(("cron" + i).getBytes()), "* * * * *");
+                }
+                return null;
+            });
+            Future<?> remove = executor.submit(() -> {
+                for (int round = 0; round < 10; round++) {
+                    for (int i = 0; i < COUNT / 10; i++) {
+                        scheduler.schedule("late" + round + ":" + i, new ByteSequence(("late" + i).getBytes()), "", 120000 + i, 0, 0);
+                    }
+                    scheduler.removeAllJobs(removeStart, Long.MAX_VALUE);
+                }
+                return null;
+            });
+            cron.get(30, TimeUnit.SECONDS);
+            remove.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertTrue(scheduler.getAllJobs(removeStart, Long.MAX_VALUE).isEmpty());
+        assertTrue(Wait.waitFor(() -> scheduler.getAllJobs().size() == CRON_COUNT, 10000, 100));
+        for (Job job : scheduler.getAllJobs()) {
+            assertTrue(job.getJobId(), job.getJobId().startsWith("cron"));
+        }
+    }
+
     @Test
     public void testAddCronAndByteSequence() throws Exception {
 
@@ -177,6 +262,55 @@ public class JobSchedulerTest {
         assertEquals(size, COUNT);
     }
 
+    @Test
+    public void testRemoveStringCollection() throws Exception {
+        final int COUNT = 100;
+        long time = 20000;
+
+        List<String> toRemove = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            String str = new String("test" + i);
+            scheduler.schedule("id" + i, new ByteSequence(str.getBytes()), "", time + i, 1000, -1);
+            if (i % 2 == 0) {
+                toRemove.add("id" + i);
+            }
+        }
+        toRemove.add("unknown");
+
+        scheduler.remove(toRemove);
+        List<Job> remaining = scheduler.getAllJobs();
+        assertEquals(COUNT / 2, remaining.size());
+        for (Job job : remaining) {
+            assertTrue(Integer.parseInt(job.getJobId().substring(2)) % 2 == 1);
+        }
+    }
+
+    @Test
+    public void testRemoveStringAfterRestart() throws Exception {
+        final int COUNT = 10;
+        long time = 20000;
+
+        for (int i = 0; i < COUNT; i++) {
+            String str = new String("test" + i);
+            scheduler.schedule("id" + i, new ByteSequence(str.getBytes()), "", time, 1000, -1);
+        }
+
+        scheduler.stopDispatching();
+        store.stop();
+        startStore(new File("target/test/ScheduledJobsDB"));
+
+        assertEquals(COUNT, scheduler.getAllJobs().size());
+        scheduler.remove("id3");
+        scheduler.remove("id3");
+        assertEquals(COUNT - 1, scheduler.getAllJobs().size());
+
+        // a removed id can be scheduled again
+        scheduler.schedule("id3", new ByteSequence("test3".getBytes()), "", time, 1000, -1);
+        assertEquals(COUNT, scheduler.getAllJobs().size());
+        scheduler.remove("id3");
+        assertEquals(COUNT - 1, scheduler.getAllJobs().size());
+    }
+
     @Test
     public void testGetExecutionCount() throws Exception {
         final String jobId = "Job-1";
@@ -278,7 +412,7 @@ public class JobSchedulerTest {
     }
 
     protected JobSchedulerStore createJobSchedulerStore() throws Exception {
-        return new JobSchedulerStoreImpl();
+        return new CountingJobSchedulerStore();
     }
 
     protected void startStore(File directory) throws Exception {
@@ -294,4 +428,20 @@ public class JobSchedulerTest {
         scheduler.stopDispatching();
         store.stop();
     }
+
+    private static class CountingJobSchedulerStore extends JobSchedulerStoreImpl {
+
+        private final AtomicInteger jobRemoves = new AtomicInteger();
+        private final AtomicInteger rangeRemoves = new AtomicInteger();
+
+        @Override
+        public Location store(JournalCommand<?> command, boolean sync, Runnable before, Runnable after, Runnable onJournalStoreComplete) throws IOException {
+            if (command instanceof KahaRemoveScheduledJobCommand) {
+                jobRemoves.incrementAndGet();
+            } else if (command instanceof KahaRemoveScheduledJobsCommand) {
+                rangeRemoves.incrementAndGet();
+            }
+            return super.store(command, sync, before, after, onJournalStoreComplete);
+        }
+    }
 }
@@ -17,6 +17,7 @@
 package org.apache.activemq.broker.virtual;
 
 import java.util.Arrays;
+import java.io.File;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -125,6 +126,7 @@ public class MirroredQueueCorrectMemoryUsageTest extends EmbeddedBrokerTestSuppo
         broker.setSystemUsage(memoryManager);
         // Set the persistent adapter
         KahaDBPersistenceAdapter persistenceAdapter = new KahaDBPersistenceAdapter();
+        persistenceAdapter.setDirectory(new File("target/activemq-data/MirroredQueueCorrectMemoryUsageTest"));
         persistenceAdapter.setJournalMaxFileLength((int)TEN_MB);
         // Delete all current messages...
         IOHelper.deleteFile(persistenceAdapter.getDirectory());
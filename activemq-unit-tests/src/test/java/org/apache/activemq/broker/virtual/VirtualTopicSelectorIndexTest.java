@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.virtual;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import jakarta.jms.Connection;
+import jakarta.jms.Message;
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerFilter;
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.DestinationFilter;
+import org.apache.activemq.broker.region.DestinationInterceptor;
+import org.apache.activemq.broker.region.Subscription;
+import org.apache.activemq.broker.region.virtual.SelectorAwareVirtualTopicInterceptor;
+import org.apache.activemq.broker.region.virtual.VirtualDestination;
+import org.apache.activemq.broker.region.virtual.VirtualDestinationInterceptor;
+import org.apache.activemq.broker.region.virtual.VirtualTopic;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.command.ConsumerInfo;
+import org.apache.activemq.selector.SelectorParser;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Routes messages of a selector aware virtual topic to consumer queues whose
+ * consumers share selectors, as those consumers come and go.
+ */
+public class VirtualTopicSelectorIndexTest {
+
+    private final ActiveMQTopic topic = new ActiveMQTopic("VirtualTopic.Index");
+
+    private BrokerService broker;
+    private Connection connection;
+    private Session session;
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setAdvisorySupport(false);
+
+        VirtualTopic virtualTopic = new VirtualTopic();
+        virtualTopic.setSelectorAware(true);
+        VirtualDestinationInterceptor interceptor = new VirtualDestinationInterceptor();
+        interceptor.setVirtualDestinations(new VirtualDestination[]{virtualTopic});
+        broker.setDestinationInterceptors(new DestinationInterceptor[]{interceptor});
+        broker.setPlugins(new BrokerPlugin[]{new BrokerPlugin() {
+            @Override
+            public Broker installPlugin(Broker broker) throws Exception {
+                return new BrokerFilter(broker) {
+                    @Override
+                    public Subscription addConsumer(ConnectionContext context, ConsumerInfo info) throws Exception {
+                        // stands in for a network bridge consumer, which limits what it takes on more than its selector
+                        if (info.getDestination().equals(queue("Bridged"))) {
+                            info.setAdditionalPredicate(SelectorParser.parse("color <> 'red'"));
+                        }
+                        return super.addConsumer(context, info);
+                    }
+                };
+            }
+        }});
+        broker.start();
+        broker.waitUntilStarted();
+
+        connection = new ActiveMQConnectionFactory(broker.getVmConnectorURI()).createConnection();
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testSharedSelectorsRouteToEachQueue() throws Exception {
+        session.createConsumer(queue("A"), "color = 'red'");
+        session.createConsumer(queue("B"), "color = 'red'");
+        session.createConsumer(queue("C"), "color = 'blue'");
+        session.createConsumer(queue("D"));
+        session.createConsumer(queue("E"), "color = 'red'");
+        session.createConsumer(queue("E"), "color = 'green'");
+
+        send("red", "blue", "green", "red");
+
+        assertEnqueued("A", 2);
+        assertEnqueued("B", 2);
+        assertEnqueued("C", 1);
+        assertEnqueued("D", 4);
+        assertEnqueued("E", 3);
+    }
+
+    @Test(timeout = 60000)
+    public void testRoutingFollowsConsumerChanges() throws Exception {
+        MessageConsumer red = session.createConsumer(queue("A"), "color = 'red'");
+        send("red", "blue");
+        assertEnqueued("A", 1);
+
+        red.close();
+        session.createConsumer(queue("A"), "color = 'blue'");
+        send("red", "blue");
+        assertEnqueued("A", 2);
+
+        session.createConsumer(queue("A"));
+        send("red", "green");
+        assertEnqueued("A", 4);
+    }
+
+    @Test(timeout = 60000)
+    public void testAdditionalPredicateRespected() throws Exception {
+        session.createConsumer(queue("Bridged"));
+        send("red", "blue", "green");
+        assertEnqueued("Bridged", 2);
+    }
+
+    @Test(timeout = 60000)
+    public void testRemovedQueuesDropped() throws Exception {
+        session.createConsumer(queue("A"), "color = 'red'");
+        MessageConsumer blue = session.createConsumer(queue("B"), "color = 'blue'");
+        send("red", "blue");
+        assertEquals(2, indexedQueues());
+
+        blue.close();
+        assertTrue("consumer removed", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return broker.getDestination(queue("B")).getConsumers().isEmpty();
+            }
+        }));
+        broker.removeDestination(queue("B"));
+        send("red", "blue");
+        assertEnqueued("A", 2);
+        assertEquals(1, indexedQueues());
+    }
+
+    private int indexedQueues() throws Exception {
+        Destination destination = broker.getDestination(topic);
+        while (!(destination instanceof SelectorAwareVirtualTopicInterceptor)) {
+            destination = ((DestinationFilter) destination).getNext();
+        }
+        Field indexField = SelectorAwareVirtualTopicInterceptor.class.getDeclaredField("selectorIndex");
+        indexField.setAccessible(true);
+        Object index = indexField.get(destination);
+        Field queuesField = index.getClass().getDeclaredField("queues");
+        queuesField.setAccessible(true);
+        return ((Map<?, ?>) queuesField.get(index)).size();
+    }
+
+    private void send(String... colors) throws Exception {
+        MessageProducer producer = session.createProducer(topic);
+        for (String color : colors) {
+            Message message = session.createTextMessage(color);
+            message.setStringProperty("color", color);
+            producer.send(message);
+        }
+        producer.close();
+    }
+
+    private ActiveMQQueue queue(String name) {
+        return new ActiveMQQueue("Consumer." + name + ".VirtualTopic.Index");
+    }
+
+    private void assertEnqueued(String name, long expected) throws Exception {
+        assertEquals("enqueued on " + name, expected,
+            broker.getDestination(queue(name)).getDestinationStatistics().getEnqueues().getCount());
+    }
+}
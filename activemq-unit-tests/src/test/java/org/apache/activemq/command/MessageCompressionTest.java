@@ -17,12 +17,14 @@
 package org.apache.activemq.command;
 
 import java.io.UnsupportedEncodingException;
+import java.util.zip.Deflater;
 
 import jakarta.jms.BytesMessage;
 import jakarta.jms.JMSException;
 import jakarta.jms.MessageConsumer;
 import jakarta.jms.MessageProducer;
 import jakarta.jms.Session;
+import jakarta.jms.StreamMessage;
 
 import junit.framework.TestCase;
 
@@ -103,6 +105,106 @@ public class MessageCompressionTest extends TestCase {
                    compressedSize < unCompressedSize);
     }
 
+    public void testMessagesBelowThresholdAreNotCompressed() throws Exception {
+
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(connectionUri);
+        factory.setUseCompression(true);
+        factory.setCompressionThreshold(TEXT.length() * 2);
+        sendTestMessage(factory, TEXT);
+        ActiveMQTextMessage message = receiveTestMessage(factory);
+        assertFalse(message.isCompressed());
+        assertEquals(TEXT, message.getText());
+
+        sendTestBytesMessage(factory, TEXT);
+        ActiveMQBytesMessage bytesMessage = receiveTestBytesMessage(factory);
+        assertFalse(bytesMessage.isCompressed());
+
+        factory.setCompressionThreshold(TEXT.length() / 2);
+        sendTestMessage(factory, TEXT);
+        message = receiveTestMessage(factory);
+        assertTrue(message.isCompressed());
+        assertEquals(TEXT, message.getText());
+    }
+
+    public void testCompressionLevel() throws Exception {
+
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(connectionUri);
+        factory.setUseCompression(true);
+        factory.setCompressionLevel(Deflater.BEST_SPEED);
+        sendTestBytesMessage(factory, TEXT);
+        ActiveMQBytesMessage message = receiveTestBytesMessage(factory);
+        assertTrue(message.isCompressed());
+        byte[] bytes = new byte[TEXT.getBytes("UTF8").length];
+        message.readBytes(bytes);
+        assertEquals(TEXT, new String(bytes, "UTF8"));
+
+        sendTestMessage(factory, TEXT);
+        ActiveMQTextMessage textMessage = receiveTestMessage(factory);
+        assertTrue(textMessage.isCompressed());
+        assertEquals(TEXT, textMessage.getText());
+    }
+
+    public void testStreamMessageCompression() throws Exception {
+
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(connectionUri);
+        factory.setUseCompression(true);
+        factory.setCompressionLevel(Deflater.BEST_SPEED);
+        sendTestStreamMessage(factory, TEXT);
+        ActiveMQStreamMessage message = receiveTestStreamMessage(factory);
+        int compressedSize = message.getContent().getLength();
+        assertTrue(message.isCompressed());
+        assertEquals(TEXT, message.readString());
+
+        factory.setCompressionThreshold(TEXT.length() * 2);
+        sendTestStreamMessage(factory, TEXT);
+        message = receiveTestStreamMessage(factory);
+        int unCompressedSize = message.getContent().getLength();
+        assertFalse(message.isCompressed());
+        assertEquals(TEXT, message.readString());
+
+        assertTrue("expected: compressed Size '" + compressedSize + "' < unCompressedSize '" + unCompressedSize + "'",
+                   compressedSize < unCompressedSize);
+    }
+
+    public void testInvalidCompressionLevelRejected() throws Exception {
+
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(connectionUri);
+        try {
+            factory.setCompressionLevel(10);
+            fail("Should have rejected the compression level");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        ActiveMQConnection connection = (ActiveMQConnection) factory.createConnection();
+        try {
+            connection.setCompressionLevel(-2);
+            fail("Should have rejected the compression level");
+        } catch (IllegalArgumentException expected) {
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void sendTestStreamMessage(ActiveMQConnectionFactory factory, String message) throws JMSException {
+        ActiveMQConnection connection = (ActiveMQConnection) factory.createConnection();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(queue);
+        StreamMessage streamMessage = session.createStreamMessage();
+        streamMessage.writeString(message);
+        producer.send(streamMessage);
+        connection.close();
+    }
+
+    private ActiveMQStreamMessage receiveTestStreamMessage(ActiveMQConnectionFactory factory) throws JMSException {
+        ActiveMQConnection connection = (ActiveMQConnection) factory.createConnection();
+        connection.start();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = session.createConsumer(queue);
+        ActiveMQStreamMessage rc = (ActiveMQStreamMessage) consumer.receive();
+        connection.close();
+        return rc;
+    }
+
     private void sendTestMessage(ActiveMQConnectionFactory factory, String message) throws JMSException {
         ActiveMQConnection connection = (ActiveMQConnection) factory.createConnection();
         Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
@@ -346,6 +346,43 @@ public class DestinationMapTest extends TestCase {
         assertMapValue("FOO.A", v1);
     }
 
+    public void testChooseValueFollowsMapChanges() throws Exception {
+        DummyPolicyEntry any = createEntry(">", "any");
+        DummyPolicyEntry foo = createEntry("FOO.>", "foo");
+        ActiveMQDestination destination = createDestination("FOO.A");
+
+        assertNull(map.chooseValue(destination));
+
+        map.put(any.getDestination(), any);
+        assertSame(any, map.chooseValue(destination));
+        assertSame(any, map.chooseValue(destination));
+
+        map.put(foo.getDestination(), foo);
+        assertSame(foo, map.chooseValue(destination));
+
+        map.remove(foo.getDestination(), foo);
+        assertSame(any, map.chooseValue(destination));
+
+        map.removeAll(any.getDestination());
+        assertNull(map.chooseValue(destination));
+    }
+
+    public void testChooseValueWithoutCache() throws Exception {
+        map.setChosenValueCacheSize(0);
+        DummyPolicyEntry any = createEntry(">", "any");
+        map.put(any.getDestination(), any);
+
+        assertSame(any, map.chooseValue(createDestination("FOO.A")));
+        assertSame(any, map.chooseValue(createDestination("FOO.A")));
+    }
+
+    protected DummyPolicyEntry createEntry(String name, String description) {
+        DummyPolicyEntry entry = new DummyPolicyEntry();
+        entry.setDestination(createDestination(name));
+        entry.setDescription(description);
+        return entry;
+    }
+
     protected void loadSample2() {
         put("TEST.FOO", v1);
         put("TEST.*", v2);
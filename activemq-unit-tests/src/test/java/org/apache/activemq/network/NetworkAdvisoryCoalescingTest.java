@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.jms.Connection;
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
+import jakarta.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.advisory.AdvisorySupport;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ConsumerId;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a bridge collecting consumer advisories only applies the net
+ * change in remote demand.
+ */
+public class NetworkAdvisoryCoalescingTest {
+
+    private static final long COALESCE_PERIOD = 1000;
+
+    private BrokerService localBroker;
+    private BrokerService remoteBroker;
+    private Connection localConnection;
+    private Connection remoteConnection;
+
+    @Before
+    public void setUp() throws Exception {
+        remoteBroker = new BrokerService();
+        remoteBroker.setBrokerName("remote");
+        remoteBroker.setPersistent(false);
+        remoteBroker.setUseJmx(false);
+        remoteBroker.addConnector("tcp://localhost:0");
+        remoteBroker.start();
+        remoteBroker.waitUntilStarted();
+
+        localBroker = new BrokerService();
+        localBroker.setBrokerName("local");
+        localBroker.setPersistent(false);
+        localBroker.setUseJmx(false);
+        URI remoteURI = remoteBroker.getTransportConnectors().get(0).getConnectUri();
+        NetworkConnector connector = localBroker.addNetworkConnector("static:(" + remoteURI + ")");
+        connector.setAdvisoryCoalescePeriod(COALESCE_PERIOD);
+        localBroker.start();
+        localBroker.waitUntilStarted();
+        assertTrue("bridge started", Wait.waitFor(() -> connector.activeBridges().size() == 1));
+
+        localConnection = new ActiveMQConnectionFactory(localBroker.getVmConnectorURI()).createConnection();
+        localConnection.start();
+        remoteConnection = new ActiveMQConnectionFactory(remoteBroker.getVmConnectorURI()).createConnection();
+        remoteConnection.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (localConnection != null) {
+            localConnection.close();
+        }
+        if (remoteConnection != null) {
+            remoteConnection.close();
+        }
+        if (localBroker != null) {
+            localBroker.stop();
+        }
+        if (remoteBroker != null) {
+            remoteBroker.stop();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testShortLivedConsumerIsNotBridged() throws Exception {
+        ActiveMQQueue queue = new ActiveMQQueue("coalesce.short");
+        Session localSession = localConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer advisories = localSession.createConsumer(AdvisorySupport.getConsumerAdvisoryTopic(queue));
+
+        Session remoteSession = remoteConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        remoteSession.createConsumer(queue).close();
+
+        TimeUnit.MILLISECONDS.sleep(COALESCE_PERIOD * 2);
+        assertNull("no bridge consumer created", advisories.receive(500));
+    }
+
+    @Test(timeout = 60000)
+    public void testDemandMovingBetweenConsumersKeepsSubscription() throws Exception {
+        final ActiveMQQueue queue = new ActiveMQQueue("coalesce.rolling");
+        Session remoteSession = remoteConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer first = remoteSession.createConsumer(queue);
+
+        final Destination localQueue = localBroker.getDestination(queue);
+        assertTrue("bridge consumer registered", Wait.waitFor(() -> localQueue.getConsumers().size() == 1));
+        ConsumerId bridgeConsumerId = localQueue.getConsumers().get(0).getConsumerInfo().getConsumerId();
+
+        first.close();
+        MessageConsumer second = remoteSession.createConsumer(queue);
+
+        TimeUnit.MILLISECONDS.sleep(COALESCE_PERIOD * 2);
+        assertEquals(1, localQueue.getConsumers().size());
+        assertEquals(bridgeConsumerId, localQueue.getConsumers().get(0).getConsumerInfo().getConsumerId());
+
+        Session localSession = localConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = localSession.createProducer(queue);
+        producer.send(localSession.createTextMessage("rolled"));
+        TextMessage message = (TextMessage) second.receive(10000);
+        assertNotNull(message);
+        assertEquals("rolled", message.getText());
+
+        second.close();
+        assertTrue("bridge consumer removed", Wait.waitFor(() -> localQueue.getConsumers().isEmpty()));
+    }
+}
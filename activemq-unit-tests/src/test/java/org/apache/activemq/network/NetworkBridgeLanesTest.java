@@ -0,0 +1,230 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jakarta.jms.Connection;
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
+import jakarta.jms.TextMessage;
+import javax.management.ObjectName;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Bridges several destinations over a network connector with more than one lane.
+ */
+public class NetworkBridgeLanesTest {
+
+    private static final int LANES = 3;
+    private static final int QUEUES = 8;
+    private static final int MESSAGE_COUNT = 100;
+
+    private BrokerService localBroker;
+    private BrokerService remoteBroker;
+    private NetworkConnector connector;
+    private Connection localConnection;
+    private Connection remoteConnection;
+
+    @Before
+    public void setUp() throws Exception {
+        remoteBroker = new BrokerService();
+        remoteBroker.setBrokerName("remote");
+        remoteBroker.setPersistent(false);
+        remoteBroker.setUseJmx(true);
+        remoteBroker.getManagementContext().setCreateConnector(false);
+        remoteBroker.addConnector("tcp://localhost:0");
+        remoteBroker.start();
+        remoteBroker.waitUntilStarted();
+
+        localBroker = new BrokerService();
+        localBroker.setBrokerName("local");
+        localBroker.setPersistent(false);
+        localBroker.setUseJmx(true);
+        localBroker.getManagementContext().setCreateConnector(false);
+        URI remoteURI = remoteBroker.getTransportConnectors().get(0).getConnectUri();
+        connector = localBroker.addNetworkConnector("static:(" + remoteURI + ")");
+        connector.setBridgeLanes(LANES);
+        localBroker.start();
+        localBroker.waitUntilStarted();
+
+        localConnection = new ActiveMQConnectionFactory(localBroker.getVmConnectorURI()).createConnection();
+        localConnection.start();
+        remoteConnection = new ActiveMQConnectionFactory(remoteBroker.getVmConnectorURI()).createConnection();
+        remoteConnection.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (localConnection != null) {
+            localConnection.close();
+        }
+        if (remoteConnection != null) {
+            remoteConnection.close();
+        }
+        if (localBroker != null) {
+            localBroker.stop();
+        }
+        if (remoteBroker != null) {
+            remoteBroker.stop();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testEachQueueBridgedByOneLane() throws Exception {
+        assertTrue("all lanes started", Wait.waitFor(() -> connector.activeBridges().size() == LANES));
+
+        Session remoteSession = remoteConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        List<MessageConsumer> consumers = new ArrayList<>();
+        Set<Integer> lanes = new HashSet<>();
+        for (int i = 0; i < QUEUES; i++) {
+            ActiveMQQueue queue = new ActiveMQQueue("lanes." + i);
+            consumers.add(remoteSession.createConsumer(queue));
+            lanes.add(Math.floorMod(queue.hashCode(), LANES));
+        }
+        assertTrue("queues spread over lanes", lanes.size() > 1);
+
+        for (int i = 0; i < QUEUES; i++) {
+            final ActiveMQQueue queue = new ActiveMQQueue("lanes." + i);
+            assertTrue("bridge consumer registered for " + queue, Wait.waitFor(() -> {
+                Destination destination = localBroker.getDestination(queue);
+                return destination.getConsumers().size() == 1;
+            }));
+        }
+
+        Session localSession = localConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        for (int i = 0; i < QUEUES; i++) {
+            MessageProducer producer = localSession.createProducer(new ActiveMQQueue("lanes." + i));
+            for (int j = 0; j < MESSAGE_COUNT; j++) {
+                producer.send(localSession.createTextMessage("message " + j));
+            }
+        }
+
+        for (int i = 0; i < QUEUES; i++) {
+            MessageConsumer consumer = consumers.get(i);
+            for (int j = 0; j < MESSAGE_COUNT; j++) {
+                TextMessage message = (TextMessage) consumer.receive(10000);
+                assertNotNull("lanes." + i + " message " + j, message);
+                assertEquals("message " + j, message.getText());
+            }
+            assertNull(consumer.receive(100));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testOverlappingTopicSubscriptionsForwardOnce() throws Exception {
+        assertTrue("all lanes started", Wait.waitFor(() -> connector.activeBridges().size() == LANES));
+
+        ActiveMQTopic wildcard = new ActiveMQTopic("lanes.topic.>");
+        ActiveMQTopic topic = new ActiveMQTopic("lanes.topic.bar");
+        assertNotEquals("subscriptions hash to different lanes",
+            Math.floorMod(wildcard.hashCode(), LANES), Math.floorMod(topic.hashCode(), LANES));
+
+        Session remoteSession = remoteConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer wildcardConsumer = remoteSession.createConsumer(wildcard);
+        MessageConsumer topicConsumer = remoteSession.createConsumer(topic);
+
+        assertTrue("bridge consumer registered", Wait.waitFor(() -> localBroker.getDestination(topic).getConsumers().size() > 0));
+        // give a demand subscription created by another lane the time to show up
+        Thread.sleep(1000);
+        assertEquals("one demand subscription forwards the topic", 1, localBroker.getDestination(topic).getConsumers().size());
+
+        Session localSession = localConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = localSession.createProducer(topic);
+        for (int j = 0; j < MESSAGE_COUNT; j++) {
+            producer.send(localSession.createTextMessage("message " + j));
+        }
+
+        for (MessageConsumer consumer : Arrays.asList(wildcardConsumer, topicConsumer)) {
+            for (int j = 0; j < MESSAGE_COUNT; j++) {
+                TextMessage message = (TextMessage) consumer.receive(10000);
+                assertNotNull("message " + j, message);
+                assertEquals("message " + j, message.getText());
+            }
+            assertNull("no duplicate", consumer.receive(500));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testEachLaneRegisteredInJmx() throws Exception {
+        assertTrue("all lanes started", Wait.waitFor(() -> connector.activeBridges().size() == LANES));
+
+        ObjectName query = new ObjectName(connector.getObjectName() + ",networkBridge=*");
+        assertTrue("every lane has its bridge MBean", Wait.waitFor(() ->
+            localBroker.getManagementContext().queryNames(query, null).size() == LANES));
+
+        Set<ObjectName> names = new HashSet<>();
+        for (NetworkBridge bridge : connector.activeBridges()) {
+            assertNotNull(bridge.getMbeanObjectName());
+            names.add(bridge.getMbeanObjectName());
+        }
+        assertEquals(LANES, names.size());
+    }
+
+    @Test(timeout = 60000)
+    public void testLanesReconnectTogether() throws Exception {
+        assertTrue("all lanes started", Wait.waitFor(() -> connector.activeBridges().size() == LANES));
+        List<NetworkBridge> original = new ArrayList<>(connector.activeBridges());
+
+        original.get(LANES - 1).serviceRemoteException(new Exception("lane failure"));
+
+        assertTrue("lanes established again", Wait.waitFor(() -> {
+            List<NetworkBridge> bridges = new ArrayList<>(connector.activeBridges());
+            if (bridges.size() != LANES) {
+                return false;
+            }
+            for (NetworkBridge bridge : bridges) {
+                if (original.contains(bridge)) {
+                    return false;
+                }
+            }
+            return true;
+        }));
+
+        final ActiveMQQueue queue = new ActiveMQQueue("lanes.reconnect");
+        Session remoteSession = remoteConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = remoteSession.createConsumer(queue);
+        assertTrue("bridge consumer registered", Wait.waitFor(() -> localBroker.getDestination(queue).getConsumers().size() == 1));
+
+        Session localSession = localConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        localSession.createProducer(queue).send(localSession.createTextMessage("after reconnect"));
+        TextMessage message = (TextMessage) consumer.receive(10000);
+        assertNotNull(message);
+        assertEquals("after reconnect", message.getText());
+    }
+}
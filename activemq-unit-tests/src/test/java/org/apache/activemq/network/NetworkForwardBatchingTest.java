@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.SocketFactory;
+
+import jakarta.jms.Connection;
+import jakarta.jms.DeliveryMode;
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
+import jakarta.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.transport.TransportFactory;
+import org.apache.activemq.transport.tcp.TcpTransportFactory;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Forwards messages over a bridge that batches its writes to the remote broker.
+ */
+public class NetworkForwardBatchingTest {
+
+    private static final int MESSAGE_COUNT = 2000;
+    private static final String COUNTING_SCHEME = "writecountingtcp";
+    private static final AtomicInteger WRITES = new AtomicInteger();
+
+    static {
+        // a tcp transport that counts the writes to its socket
+        TransportFactory.registerTransportFactory(COUNTING_SCHEME, new TcpTransportFactory() {
+            @Override
+            protected SocketFactory createSocketFactory() throws IOException {
+                return new SocketFactory() {
+                    @Override
+                    public Socket createSocket() {
+                        return new Socket() {
+                            @Override
+                            public OutputStream getOutputStream() throws IOException {
+                                return new FilterOutputStream(super.getOutputStream()) {
+                                    @Override
+                                    public void write(byte[] b, int off, int len) throws IOException {
+                                        WRITES.incrementAndGet();
+                                        out.write(b, off, len);
+                                    }
+                                };
+                            }
+                        };
+                    }
+
+                    @Override
+                    public Socket createSocket(String host, int port) {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public Socket createSocket(InetAddress host, int port) {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        });
+    }
+
+    private final ActiveMQQueue queue = new ActiveMQQueue("forward.batching");
+
+    private BrokerService localBroker;
+    private BrokerService remoteBroker;
+    private Connection localConnection;
+    private Connection remoteConnection;
+
+    @Before
+    public void setUp() throws Exception {
+        remoteBroker = new BrokerService();
+        remoteBroker.setBrokerName("remote");
+        remoteBroker.setPersistent(false);
+        remoteBroker.setUseJmx(false);
+        remoteBroker.addConnector("tcp://localhost:0");
+        remoteBroker.start();
+        remoteBroker.waitUntilStarted();
+
+        localBroker = new BrokerService();
+        localBroker.setBrokerName("local");
+        localBroker.setPersistent(false);
+        localBroker.setUseJmx(false);
+        URI remoteURI = remoteBroker.getTransportConnectors().get(0).getConnectUri();
+        NetworkConnector connector = localBroker.addNetworkConnector("static:(" + COUNTING_SCHEME + "://localhost:" + remoteURI.getPort() + ")");
+        connector.setForwardBatchSize(50);
+        localBroker.start();
+        localBroker.waitUntilStarted();
+
+        localConnection = new ActiveMQConnectionFactory(localBroker.getVmConnectorURI()).createConnection();
+        localConnection.start();
+        remoteConnection = new ActiveMQConnectionFactory(remoteBroker.getVmConnectorURI()).createConnection();
+        remoteConnection.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (localConnection != null) {
+            localConnection.close();
+        }
+        if (remoteConnection != null) {
+            remoteConnection.close();
+        }
+        if (localBroker != null) {
+            localBroker.stop();
+        }
+        if (remoteBroker != null) {
+            remoteBroker.stop();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testForwardInBatches() throws Exception {
+        final Destination localQueue = localBroker.getDestination(queue);
+        Session localSession = localConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = localSession.createProducer(queue);
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            producer.setDeliveryMode(i % 2 == 0 ? DeliveryMode.PERSISTENT : DeliveryMode.NON_PERSISTENT);
+            producer.send(localSession.createTextMessage("message " + i));
+        }
+
+        // the bridge only starts forwarding once there is demand, by then a backlog is waiting
+        int writesBefore = WRITES.get();
+        Session remoteSession = remoteConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = remoteSession.createConsumer(queue);
+
+        // The local queue keeps persistent and non persistent messages in separate
+        // cursors, so each kind is forwarded in order but the two are not interleaved
+        int[] next = new int[] { 0, 1 };
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            TextMessage message = (TextMessage) consumer.receive(10000);
+            assertNotNull("message " + i, message);
+            int kind = message.getJMSDeliveryMode() == DeliveryMode.PERSISTENT ? 0 : 1;
+            assertEquals("message " + next[kind], message.getText());
+            next[kind] += 2;
+        }
+        assertEquals(MESSAGE_COUNT, next[0]);
+        assertEquals(MESSAGE_COUNT + 1, next[1]);
+
+        assertTrue("all forwarded messages acked locally",
+            Wait.waitFor(() -> localQueue.getDestinationStatistics().getMessages().getCount() == 0));
+        assertEquals(MESSAGE_COUNT, localQueue.getDestinationStatistics().getDequeues().getCount());
+
+        int writes = WRITES.get() - writesBefore;
+        assertTrue("forwarded " + MESSAGE_COUNT + " messages with " + writes + " socket writes", writes < MESSAGE_COUNT / 2);
+    }
+}
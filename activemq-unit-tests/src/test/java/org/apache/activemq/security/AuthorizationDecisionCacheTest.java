@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.security;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTempQueue;
+import org.apache.activemq.filter.DestinationMapEntry;
+import org.apache.activemq.jaas.GroupPrincipal;
+import org.apache.activemq.security.AuthorizationDecisionCache.Operation;
+import org.junit.Test;
+
+/**
+ * Caches authorization decisions until the authorization map changes.
+ */
+public class AuthorizationDecisionCacheTest {
+
+    private final ActiveMQQueue queue = new ActiveMQQueue("USERS.FOO");
+
+    @Test
+    public void testDecisionsFollowMapChanges() throws Exception {
+        DefaultAuthorizationMap map = createMap("admins");
+        AuthorizationDecisionCache cache = new AuthorizationDecisionCache(100);
+        SecurityContext user = createContext("users");
+
+        assertFalse(cache.isAuthorized(map, user, queue, Operation.READ));
+        assertFalse(cache.isAuthorized(map, user, queue, Operation.READ));
+
+        AuthorizationEntry entry = createEntry("USERS.FOO", "users");
+        map.put(queue, entry);
+        assertTrue(cache.isAuthorized(map, user, queue, Operation.READ));
+        assertTrue(cache.isAuthorized(map, createContext("users"), queue, Operation.WRITE));
+        assertFalse(cache.isAuthorized(map, createContext("guests"), queue, Operation.READ));
+
+        map.remove(queue, entry);
+        assertFalse(cache.isAuthorized(map, user, queue, Operation.READ));
+
+        assertTrue(cache.isAuthorized(createMap("users"), user, queue, Operation.READ));
+    }
+
+    @Test
+    public void testTemporaryDestinationsShareDecisions() throws Exception {
+        DefaultAuthorizationMap map = createMap("admins");
+        AuthorizationDecisionCache cache = new AuthorizationDecisionCache(100);
+        SecurityContext user = createContext("users");
+        ActiveMQTempQueue temp1 = new ActiveMQTempQueue("ID:1:1");
+        ActiveMQTempQueue temp2 = new ActiveMQTempQueue("ID:2:1");
+
+        assertTrue(cache.isAuthorized(map, user, temp1, Operation.ADMIN));
+
+        TempDestinationAuthorizationEntry tempEntry = new TempDestinationAuthorizationEntry();
+        tempEntry.setRead("admins");
+        tempEntry.setWrite("admins");
+        tempEntry.setAdmin("admins");
+        map.setTempDestinationAuthorizationEntry(tempEntry);
+        assertFalse(cache.isAuthorized(map, user, temp1, Operation.ADMIN));
+        assertFalse(cache.isAuthorized(map, user, temp2, Operation.ADMIN));
+        assertTrue(cache.isAuthorized(map, createContext("admins"), temp2, Operation.ADMIN));
+    }
+
+    private DefaultAuthorizationMap createMap(String group) throws Exception {
+        List<DestinationMapEntry> entries = new ArrayList<>();
+        entries.add(createEntry(">", group));
+        return new DefaultAuthorizationMap(entries);
+    }
+
+    private AuthorizationEntry createEntry(String queue, String group) throws Exception {
+        AuthorizationEntry entry = new AuthorizationEntry();
+        entry.setQueue(queue);
+        entry.setRead(group);
+        entry.setWrite(group);
+        entry.setAdmin(group);
+        return entry;
+    }
+
+    private SecurityContext createContext(String group) {
+        final Set<Principal> principals = new HashSet<>();
+        principals.add(new GroupPrincipal(group));
+        return new SecurityContext("user") {
+            @Override
+            public Set<Principal> getPrincipals() {
+                return principals;
+            }
+        };
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import jakarta.jms.Connection;
+import jakarta.jms.DeliveryMode;
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
+import jakarta.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Fans messages out to the queues of a virtual topic with the message bodies
+ * shared between the queues in the journal.
+ */
+public class KahaDBSharedMessageBodyTest {
+
+    private static final int MESSAGE_COUNT = 100;
+    private static final int BODY_SIZE = 8 * 1024;
+
+    private final File dataDir = new File("target/activemq-data/KahaDBSharedMessageBodyTest");
+    private final ActiveMQTopic topic = new ActiveMQTopic("VirtualTopic.Shared");
+    private final ActiveMQQueue[] queues = new ActiveMQQueue[] {
+        new ActiveMQQueue("Consumer.A.VirtualTopic.Shared"),
+        new ActiveMQQueue("Consumer.B.VirtualTopic.Shared"),
+        new ActiveMQQueue("Consumer.C.VirtualTopic.Shared")
+    };
+
+    private BrokerService broker;
+
+    @After
+    public void tearDown() throws Exception {
+        stopBroker();
+    }
+
+    @Test(timeout = 60000)
+    public void testBodyJournaledOnce() throws Exception {
+        startBroker(true);
+        String body = sendMessages();
+
+        long journalSize = getStore().getJournal().getDiskSize();
+        assertTrue("journal size " + journalSize, journalSize < 2L * MESSAGE_COUNT * BODY_SIZE);
+
+        stopBroker();
+        startBroker(false);
+        for (ActiveMQQueue queue : queues) {
+            receiveAll(queue, body);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testSharedBodiesSurviveCleanup() throws Exception {
+        startBroker(true);
+        String body = sendMessages();
+
+        // whichever queue holds the bodies, the others must still read them once it is drained
+        for (int i = 0; i < queues.length; i++) {
+            receiveAll(queues[i], body);
+            getStore().checkpoint(true);
+            stopBroker();
+            startBroker(false);
+            for (int j = i + 1; j < queues.length; j++) {
+                assertEquals(MESSAGE_COUNT, broker.getDestination(queues[j]).getDestinationStatistics().getMessages().getCount());
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testCachedBodiesBoundedBySize() throws Exception {
+        startBroker(true);
+        String body = sendMessages();
+
+        // a few bodies fit the cache, so they only keep the last journal files
+        long journalSize = getStore().getJournal().getDiskSize();
+        assertTrue("journal size " + journalSize, journalSize < 2L * MESSAGE_COUNT * BODY_SIZE);
+        assertTrue("pinned files " + getStore().getSharedMessageBodyFileIds(), getStore().getSharedMessageBodyFileIds().size() <= 2);
+
+        for (ActiveMQQueue queue : queues) {
+            receiveAll(queue, body);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testCachedBodiesExpire() throws Exception {
+        startBroker(true);
+        String body = sendMessages();
+        for (ActiveMQQueue queue : queues) {
+            receiveAll(queue, body);
+        }
+
+        // without more traffic the cached bodies stop keeping their files after a cleanup
+        getStore().checkpoint(true);
+        getStore().checkpoint(true);
+        assertTrue("no bodies pinned " + getStore().getSharedMessageBodyFileIds(), getStore().getSharedMessageBodyFileIds().isEmpty());
+        getStore().checkpoint(true);
+        int dataFiles = getStore().getJournal().getFileMap().size();
+        assertTrue("data files left " + dataFiles, dataFiles <= 2);
+    }
+
+    private String sendMessages() throws Exception {
+        char[] chars = new char[BODY_SIZE];
+        Arrays.fill(chars, 'x');
+        String body = new String(chars);
+
+        Connection connection = new ActiveMQConnectionFactory(broker.getVmConnectorURI()).createConnection();
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(topic);
+            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+            for (int i = 0; i < MESSAGE_COUNT; i++) {
+                producer.send(session.createTextMessage(body));
+            }
+        } finally {
+            connection.close();
+        }
+        return body;
+    }
+
+    private void receiveAll(ActiveMQQueue queue, String body) throws Exception {
+        Connection connection = new ActiveMQConnectionFactory(broker.getVmConnectorURI()).createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(queue);
+            for (int i = 0; i < MESSAGE_COUNT; i++) {
+                TextMessage message = (TextMessage) consumer.receive(5000);
+                assertNotNull("message " + i + " on " + queue, message);
+                assertEquals(body, message.getText());
+                assertEquals(queue, message.getJMSDestination());
+            }
+            assertNull(consumer.receive(100));
+        } finally {
+            connection.close();
+        }
+    }
+
+    private KahaDBStore getStore() throws Exception {
+        return ((KahaDBPersistenceAdapter) broker.getPersistenceAdapter()).getStore();
+    }
+
+    private void startBroker(boolean deleteAllMessages) throws Exception {
+        broker = new BrokerService();
+        broker.setUseJmx(false);
+        broker.setAdvisorySupport(false);
+        broker.setDeleteAllMessagesOnStartup(deleteAllMessages);
+        broker.setDestinations(new ActiveMQDestination[] {queues[0], queues[1], queues[2]});
+
+        KahaDBPersistenceAdapter persistenceAdapter = new KahaDBPersistenceAdapter();
+        persistenceAdapter.setDirectory(dataDir);
+        persistenceAdapter.setJournalMaxFileLength(64 * 1024);
+        persistenceAdapter.setShareMessageBodies(true);
+        persistenceAdapter.setSharedMessageBodyCacheMaxSize(4 * BODY_SIZE);
+        broker.setPersistenceAdapter(persistenceAdapter);
+
+        broker.start();
+        broker.waitUntilStarted();
+    }
+
+    private void stopBroker() throws Exception {
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+            broker = null;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.auto.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.net.ServerSocketFactory;
+
+import jakarta.jms.Connection;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.apache.activemq.transport.auto.AutoTcpTransportServer;
+import org.apache.activemq.transport.tcp.TcpTransportServer;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test that the auto+nio transport detects the protocol of new connections without
+ * a thread per connection.
+ */
+public class AutoNIOProtocolDetectionTest {
+
+    private static final byte[] STOMP_CONNECT =
+        "CONNECT\naccept-version:1.1\nhost:localhost\n\n\u0000".getBytes(StandardCharsets.UTF_8);
+
+    private final List<Socket> sockets = new ArrayList<Socket>();
+    private BrokerService brokerService;
+    private TransportConnector connector;
+
+    protected void startBroker(String options) throws Exception {
+        brokerService = new BrokerService();
+        brokerService.setPersistent(false);
+        brokerService.setUseJmx(false);
+        brokerService.setAdvisorySupport(false);
+        connector = brokerService.addConnector("auto+nio://localhost:0" + options);
+        brokerService.start();
+        brokerService.waitUntilStarted();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Socket socket : sockets) {
+            try {
+                socket.close();
+            } catch (Exception ignore) {
+            }
+        }
+        if (brokerService != null) {
+            brokerService.stop();
+            brokerService.waitUntilStopped();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testPendingConnectionsDoNotHoldThreads() throws Exception {
+        startBroker("");
+        final TcpTransportServer server = (TcpTransportServer) connector.getServer();
+        final int pending = 50;
+
+        int threadsBefore = Thread.activeCount();
+        for (int i = 0; i < pending; i++) {
+            // Not enough bytes to detect any protocol
+            Socket socket = createSocket();
+            socket.getOutputStream().write(new byte[] { 'C', 'O', 'N' });
+            socket.getOutputStream().flush();
+        }
+
+        assertTrue("pending connections counted", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return server.getCurrentTransportCount().get() == pending;
+            }
+        }));
+        int threadsAfter = Thread.activeCount();
+        assertTrue("Threads grew from " + threadsBefore + " to " + threadsAfter, threadsAfter - threadsBefore < pending / 2);
+
+        // New connections are still detected while the others wait
+        Connection connection = new ActiveMQConnectionFactory(connector.getPublishableConnectString()).createConnection();
+        try {
+            connection.start();
+            assertEquals(1, connector.getConnections().size());
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testProtocolDetectedFromPartialReads() throws Exception {
+        startBroker("");
+
+        Socket socket = createSocket();
+        OutputStream out = socket.getOutputStream();
+        for (int i = 0; i < STOMP_CONNECT.length; i++) {
+            out.write(STOMP_CONNECT[i]);
+            out.flush();
+            if (i < 8) {
+                TimeUnit.MILLISECONDS.sleep(20);
+            }
+        }
+
+        assertConnected(socket);
+    }
+
+    @Test(timeout = 60000)
+    public void testProtocolDetectionTimeOut() throws Exception {
+        startBroker("?protocolDetectionTimeOut=500");
+        final TcpTransportServer server = (TcpTransportServer) connector.getServer();
+
+        Socket socket = createSocket();
+        socket.getOutputStream().write(new byte[] { 'C', 'O', 'N' });
+        socket.getOutputStream().flush();
+
+        // The broker closes the connection once the time out is reached
+        socket.setSoTimeout(10000);
+        assertEquals(-1, socket.getInputStream().read());
+
+        assertTrue("no dangling connections", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return server.getCurrentTransportCount().get() == 0;
+            }
+        }));
+    }
+
+    @Test(timeout = 60000)
+    public void testDetectionFallsBackWhenDetectionThreadFails() throws Exception {
+        final AtomicBoolean failed = new AtomicBoolean();
+        AutoNioTransportFactory factory = new AutoNioTransportFactory() {
+            @Override
+            protected AutoTcpTransportServer createTcpTransportServer(URI location, ServerSocketFactory serverSocketFactory) throws IOException, URISyntaxException {
+                return new AutoNIOTransportServer(this, location, serverSocketFactory, brokerService, null) {
+                    @Override
+                    protected TransportInfo configureTransport(TcpTransportServer server, Socket socket) throws Exception {
+                        if (failed.compareAndSet(false, true)) {
+                            throw new AssertionError("detection thread failure");
+                        }
+                        return super.configureTransport(server, socket);
+                    }
+                };
+            }
+        };
+
+        brokerService = new BrokerService();
+        brokerService.setPersistent(false);
+        brokerService.setUseJmx(false);
+        brokerService.setAdvisorySupport(false);
+        factory.setBrokerService(brokerService);
+        connector = brokerService.addConnector(new TransportConnector(factory.doBind(new URI("auto+nio://localhost:0"))));
+        brokerService.start();
+        brokerService.waitUntilStarted();
+        final TcpTransportServer server = (TcpTransportServer) connector.getServer();
+
+        // The first connection takes the detection thread down with it
+        Socket first = createSocket();
+        first.getOutputStream().write(STOMP_CONNECT);
+        first.getOutputStream().flush();
+        first.setSoTimeout(10000);
+        try {
+            assertEquals(-1, first.getInputStream().read());
+        } catch (SocketException reset) {
+            // closed before the CONNECT frame was read
+        }
+
+        // Later connections are still served
+        Socket socket = createSocket();
+        socket.getOutputStream().write(STOMP_CONNECT);
+        socket.getOutputStream().flush();
+        assertConnected(socket);
+        assertEquals(1, server.getCurrentTransportCount().get());
+    }
+
+    private void assertConnected(Socket socket) throws Exception {
+        byte[] expected = "CONNECTED".getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[expected.length];
+        InputStream in = socket.getInputStream();
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (byte) in.read();
+        }
+        assertEquals("CONNECTED", new String(frame, StandardCharsets.UTF_8));
+    }
+
+    private Socket createSocket() throws Exception {
+        Socket socket = new Socket("localhost", connector.getConnectUri().getPort());
+        sockets.add(socket);
+        return socket;
+    }
+}
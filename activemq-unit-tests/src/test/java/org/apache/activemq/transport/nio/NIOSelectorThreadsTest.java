@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import jakarta.jms.Connection;
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Queue;
+import jakarta.jms.Session;
+import jakarta.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs traffic over nio and nio+ssl connectors whose connections are spread over
+ * a fixed number of selector threads of their own.
+ */
+public class NIOSelectorThreadsTest {
+
+    private static final int SELECTOR_THREADS = 2;
+    private static final int CONNECTIONS = 6;
+
+    private BrokerService broker;
+    private final List<Connection> connections = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty("javax.net.ssl.trustStore", NIOSSLBasicTest.TRUST_KEYSTORE);
+        System.setProperty("javax.net.ssl.trustStorePassword", NIOSSLBasicTest.PASSWORD);
+        System.setProperty("javax.net.ssl.trustStoreType", NIOSSLBasicTest.KEYSTORE_TYPE);
+        System.setProperty("javax.net.ssl.keyStore", NIOSSLBasicTest.SERVER_KEYSTORE);
+        System.setProperty("javax.net.ssl.keyStoreType", NIOSSLBasicTest.KEYSTORE_TYPE);
+        System.setProperty("javax.net.ssl.keyStorePassword", NIOSSLBasicTest.PASSWORD);
+
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Connection connection : connections) {
+            try {
+                connection.close();
+            } catch (Exception e) {}
+        }
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testSendReceiveOverBalancedSelectors() throws Exception {
+        doTestSendReceiveOverBalancedSelectors("nio", "tcp://localhost:%d");
+    }
+
+    @Test(timeout = 60000)
+    public void testSendReceiveOverBalancedSslSelectors() throws Exception {
+        doTestSendReceiveOverBalancedSelectors("nio+ssl", "ssl://localhost:%d?socket.verifyHostName=false");
+    }
+
+    private void doTestSendReceiveOverBalancedSelectors(String scheme, String clientUri) throws Exception {
+        TransportConnector connector = broker.addConnector(scheme + "://localhost:0?selectorThreads=" + SELECTOR_THREADS);
+        broker.start();
+        broker.waitUntilStarted();
+
+        // The clients use blocking sockets so only the channels of the broker are counted
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(String.format(clientUri, connector.getConnectUri().getPort()));
+
+        for (int i = 0; i < CONNECTIONS; i++) {
+            Connection connection = factory.createConnection();
+            connections.add(connection);
+            connection.start();
+        }
+
+        final SelectorManager manager = ((NIOTransportServer) connector.getServer()).getSelectorManager();
+        assertNotSame(SelectorManager.getInstance(), manager);
+        assertEquals(SELECTOR_THREADS, manager.getSelectorThreads());
+        assertEquals(0, SelectorManager.getInstance().getSelectorThreadChannelCounts().length);
+
+        final int[] channelCounts = manager.getSelectorThreadChannelCounts();
+        assertEquals(SELECTOR_THREADS, channelCounts.length);
+        for (int count : channelCounts) {
+            assertEquals("channels per selector " + Arrays.toString(channelCounts), CONNECTIONS / SELECTOR_THREADS, count);
+        }
+        assertTrue("selector threads " + countSelectorThreads(), Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return countSelectorThreads() == SELECTOR_THREADS;
+            }
+        }));
+
+        for (int i = 0; i < CONNECTIONS; i++) {
+            Session session = connections.get(i).createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("TEST." + i);
+            MessageProducer producer = session.createProducer(queue);
+            MessageConsumer consumer = session.createConsumer(queue);
+            for (int j = 0; j < 100; j++) {
+                producer.send(session.createTextMessage("message " + j));
+            }
+            for (int j = 0; j < 100; j++) {
+                TextMessage message = (TextMessage) consumer.receive(5000);
+                assertNotNull(message);
+                assertEquals("message " + j, message.getText());
+            }
+            session.close();
+        }
+    }
+
+    private int countSelectorThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("Selector Worker")) {
+                count++;
+            }
+        }
+        return count;
+    }
+}